@@ -0,0 +1,82 @@
+package align2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.BenchData;
+import dna.AminoAcid;
+import dna.Data;
+
+/**
+ * BBIndex.findAdvanced on a synthetic genome indexed in memory.
+ * Lives in align2 to reach the package-private index loading and score arrays.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class BBIndexBench {
+	
+	@Setup
+	public void setup() throws IOException {
+		final byte[] genome=BenchData.genome(genomeLen);
+		final String fasta=BenchData.writeFasta(genome, "bbindex_"+genomeLen);
+		BBMap mapper=new BBMap(new String[] {"ref="+fasta, "path="+new File(fasta).getParent(), "nodisk", 
+				"forceanalyze", "k="+KEYLEN, "overwrite=t"});
+		mapper.loadIndex();
+		
+		reads=BenchData.reads(genome, READS, READLEN, 2, null);
+		qual=BenchData.quality(READLEN, 30);
+		readsM=new byte[READS][];
+		for(int i=0; i<READS; i++){readsM[i]=AminoAcid.reverseComplementBases(reads[i]);}
+		
+		msa=MSA.makeMSA(READLEN+10, READLEN*2+200, "MultiStateAligner11ts");
+		index=new BBIndex(KEYLEN, 1, Data.numChroms, 0, msa);
+		offsets=KeyRing.makeOffsets(qual, KEYLEN, 1.9f, 2);
+	}
+	
+	@Benchmark
+	public Object findAdvanced(){
+		final int i=(next++)%READS;
+		final byte[] baseScoresP=index.getBaseScoreArray(READLEN, 0);
+		final int[] keyScoresP=index.getKeyScoreArray(offsets.length, 0);
+		Arrays.fill(keyScoresP, BBIndex.BASE_HIT_SCORE*KEYLEN);
+		return index.findAdvanced(reads[i], readsM[i], qual, baseScoresP, keyScoresP, offsets, i);
+	}
+	
+	@Param({"5000000", "50000000"})
+	public int genomeLen;
+	
+	private byte[][] reads;
+	private byte[][] readsM;
+	private byte[] qual;
+	private int[] offsets;
+	private MSA msa;
+	private BBIndex index;
+	private int next=0;
+	
+	private static final int KEYLEN=13;
+	private static final int READS=4096;
+	private static final int READLEN=150;
+	
+}
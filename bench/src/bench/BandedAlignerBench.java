@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import align2.BandedAlignerConcrete;
+
+/**
+ * BandedAlignerConcrete edit-distance alignment of a read against its source window.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class BandedAlignerBench {
+	
+	@Setup
+	public void setup(){
+		genome=BenchData.genome(GENOME_LEN);
+		final int[] starts=new int[READS];
+		reads=BenchData.reads(genome, READS, readlen, subs, starts);
+		refs=new byte[READS][];
+		for(int i=0; i<READS; i++){
+			refs[i]=new byte[readlen];
+			System.arraycopy(genome, starts[i], refs[i], 0, readlen);
+		}
+		ba=new BandedAlignerConcrete(width);
+	}
+	
+	@Benchmark
+	public int alignForward(){
+		final int i=(next++)%READS;
+		return ba.alignForward(reads[i], refs[i], 0, 0, width/2, false);
+	}
+	
+	@Benchmark
+	public int alignQuadruple(){
+		final int i=(next++)%READS;
+		return ba.alignQuadruple(reads[i], refs[i], width/2, false);
+	}
+	
+	@Param({"150", "1000"})
+	public int readlen;
+	
+	@Param({"2", "10"})
+	public int subs;
+	
+	@Param({"21", "101"})
+	public int width;
+	
+	private byte[] genome;
+	private byte[][] reads;
+	private byte[][] refs;
+	private BandedAlignerConcrete ba;
+	private int next=0;
+	
+	private static final int GENOME_LEN=1000000;
+	private static final int READS=1024;
+	
+}
@@ -0,0 +1,92 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import jgi.RandomGenome;
+import dna.AminoAcid;
+import fileIO.ReadWrite;
+
+/**
+ * Deterministic inputs shared by the benchmark suites.
+ * Everything is derived from fixed seeds so runs on different builds are comparable.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class BenchData {
+	
+	/** Random genome of the given length, without Ns */
+	public static byte[] genome(int len){
+		return RandomGenome.randomChrom(new Random(SEED), len);
+	}
+	
+	/**
+	 * Reads sampled from the genome with a fixed number of substitutions each.
+	 * @param genome Source sequence
+	 * @param count Number of reads
+	 * @param readlen Length of each read
+	 * @param subs Substitutions per read
+	 * @param starts If non-null, receives each read's genomic start
+	 */
+	public static byte[][] reads(byte[] genome, int count, int readlen, int subs, int[] starts){
+		final Random randy=new Random(SEED+1);
+		final byte[][] reads=new byte[count][];
+		for(int i=0; i<count; i++){
+			final int start=randy.nextInt(genome.length-readlen);
+			byte[] bases=new byte[readlen];
+			System.arraycopy(genome, start, bases, 0, readlen);
+			for(int j=0; j<subs; j++){addSNP(bases, randy);}
+			reads[i]=bases;
+			if(starts!=null){starts[i]=start;}
+		}
+		return reads;
+	}
+	
+	/** 
+	 * Substitutes one random base, as RandomReads3.addSNP does.
+	 * RandomReads3 itself cannot be instantiated without a loaded genome.
+	 */
+	public static void addSNP(byte[] bases, Random randy){
+		final int index=randy.nextInt(bases.length);
+		final int oldNum=AminoAcid.baseToNumber[bases[index]];
+		final int num=(Math.max(oldNum, 0)+randy.nextInt(3)+1)%4;
+		bases[index]=AminoAcid.numberToBase[num];
+	}
+	
+	/** Constant quality array matching the read length */
+	public static byte[] quality(int readlen, int q){
+		final byte[] qual=new byte[readlen];
+		for(int i=0; i<readlen; i++){qual[i]=(byte)q;}
+		return qual;
+	}
+	
+	/** Writes the genome as a single-scaffold fasta in a temp directory and returns the path */
+	public static String writeFasta(byte[] genome, String name) throws IOException {
+		File dir=new File(System.getProperty("java.io.tmpdir"), "bbbench_"+SEED);
+		dir.mkdirs();
+		File f=new File(dir, name+".fa");
+		StringBuilder sb=new StringBuilder(genome.length+genome.length/60+20);
+		sb.append(">").append(name).append('\n');
+		for(int i=0; i<genome.length; i+=60){
+			for(int j=i, lim=Math.min(i+60, genome.length); j<lim; j++){sb.append((char)genome[j]);}
+			sb.append('\n');
+		}
+		ReadWrite.writeString(sb, f.getAbsolutePath());
+		return f.getAbsolutePath();
+	}
+	
+	/** Encodes a read into a 2-bit kmer starting at the given position */
+	public static long kmer(byte[] bases, int start, int k){
+		long kmer=0;
+		for(int i=start; i<start+k; i++){
+			kmer=(kmer<<2)|AminoAcid.baseToNumber[bases[i]];
+		}
+		return kmer;
+	}
+	
+	public static final long SEED=12345L;
+	
+}
@@ -0,0 +1,65 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stream.FASTQ;
+import stream.Read;
+
+/**
+ * FASTQ record parsing from preloaded lines, excluding file I/O.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class FastqBench {
+	
+	@Setup
+	public void setup(){
+		final byte[] genome=BenchData.genome(GENOME_LEN);
+		final byte[][] reads=BenchData.reads(genome, READS, readlen, 1, null);
+		final byte[] qual=new byte[readlen];
+		for(int i=0; i<readlen; i++){qual[i]=(byte)(33+2+(i*7)%39);}
+		quads=new byte[READS][][];
+		for(int i=0; i<READS; i++){
+			quads[i]=new byte[][] {("@read_"+i+" 1:N:0:ACGTACGT").getBytes(), reads[i], "+".getBytes(), qual};
+		}
+	}
+	
+	@Benchmark
+	public Read quadToRead(){
+		final int i=(next++)%READS;
+		final byte[][] quad=quads[i];
+		//quadToRead may modify the arrays, so parse copies
+		final byte[][] copy=new byte[][] {quad[0].clone(), quad[1].clone(), quad[2], quad[3].clone()};
+		return FASTQ.quadToRead(copy, true, false, null, i);
+	}
+	
+	@Param({"150", "250"})
+	public int readlen;
+	
+	private byte[][][] quads;
+	private int next=0;
+	
+	private static final int GENOME_LEN=1000000;
+	private static final int READS=4096;
+	
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kmer.AbstractKmerTable;
+import dna.AminoAcid;
+
+/**
+ * Kmer insertion into the HashArray1D tables used by KmerTableSet,
+ * distributed across ways the same way KmerTableSet.getTableForKey does.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class KmerTableBench {
+	
+	@Setup(Level.Trial)
+	public void setupKmers(){
+		final byte[] genome=BenchData.genome(GENOME_LEN);
+		kmers=new long[KMERS];
+		final long mask=(k>31 ? -1L : ~((-1L)<<(2*k)));
+		long kmer=BenchData.kmer(genome, 0, k);
+		for(int i=0; i<KMERS; i++){
+			kmers[i]=kmer;
+			kmer=((kmer<<2)|AminoAcid.baseToNumber[genome[i+k]])&mask;
+		}
+	}
+	
+	@Setup(Level.Iteration)
+	public void setupTables(){
+		tables=AbstractKmerTable.preallocate(WAYS, AbstractKmerTable.ARRAY1D, INITIAL_SIZE, true);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int increment(){
+		int created=0;
+		for(int j=0; j<BATCH; j++){
+			final long kmer=kmers[next];
+			next=(next+1)%KMERS;
+			created+=tables[(int)(kmer%WAYS)].incrementAndReturnNumCreated(kmer);
+		}
+		return created;
+	}
+	
+	@Param({"31"})
+	public int k;
+	
+	private long[] kmers;
+	private AbstractKmerTable[] tables;
+	private int next=0;
+	
+	private static final int GENOME_LEN=4000000;
+	private static final int KMERS=GENOME_LEN-64;
+	private static final int WAYS=31;
+	private static final int INITIAL_SIZE=128000;
+	private static final int BATCH=1024;
+	
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import align2.MultiStateAligner11ts;
+
+/**
+ * MultiStateAligner11ts fill and traceback on reads with substitutions.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class MSABench {
+	
+	@Setup
+	public void setup(){
+		genome=BenchData.genome(GENOME_LEN);
+		starts=new int[READS];
+		reads=BenchData.reads(genome, READS, readlen, subs, starts);
+		msa=new MultiStateAligner11ts(readlen+10, readlen+2*PADDING+10);
+	}
+	
+	@Benchmark
+	public void fill(Blackhole bh){
+		final int i=(next++)%READS;
+		final int start=Math.max(0, starts[i]-PADDING);
+		bh.consume(msa.fillLimited(reads[i], genome, start, starts[i]+readlen-1+PADDING, 0, null));
+	}
+	
+	@Benchmark
+	public void fillAndTraceback(Blackhole bh){
+		final int i=(next++)%READS;
+		final int start=Math.max(0, starts[i]-PADDING), stop=starts[i]+readlen-1+PADDING;
+		final int[] max=msa.fillLimited(reads[i], genome, start, stop, 0, null);
+		if(max!=null){
+			bh.consume(msa.traceback(reads[i], genome, start, stop, max[0], max[1], max[2], false));
+		}
+	}
+	
+	@Param({"100", "150", "250"})
+	public int readlen;
+	
+	@Param({"1", "4"})
+	public int subs;
+	
+	private byte[] genome;
+	private byte[][] reads;
+	private int[] starts;
+	private MultiStateAligner11ts msa;
+	private int next=0;
+	
+	private static final int GENOME_LEN=1000000;
+	private static final int READS=1024;
+	private static final int PADDING=10;
+	
+}
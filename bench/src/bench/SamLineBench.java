@@ -0,0 +1,66 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stream.ByteBuilder;
+import stream.SamLine;
+
+/**
+ * SamLine.toBytes for mapped lines with optional tags.
+ * 
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class SamLineBench {
+	
+	@Setup
+	public void setup(){
+		final byte[] genome=BenchData.genome(GENOME_LEN);
+		final int[] starts=new int[LINES];
+		final byte[][] reads=BenchData.reads(genome, LINES, READLEN, 1, starts);
+		final StringBuilder qual=new StringBuilder(READLEN);
+		for(int i=0; i<READLEN; i++){qual.append((char)(33+30));}
+		lines=new SamLine[LINES];
+		for(int i=0; i<LINES; i++){
+			String s="read_"+i+"\t"+(i%2==0 ? 99 : 147)+"\tchr1\t"+(starts[i]+1)+"\t60\t"+READLEN+"M\t=\t"+(starts[i]+201)+"\t350\t"+
+					new String(reads[i])+"\t"+qual+"\tNM:i:1\tAM:i:60";
+			lines[i]=new SamLine(s.getBytes());
+		}
+		bb=new ByteBuilder(1000);
+	}
+	
+	@Benchmark
+	public int toBytes(){
+		final int i=(next++)%LINES;
+		bb.setLength(0);
+		lines[i].toBytes(bb);
+		return bb.length();
+	}
+	
+	private SamLine[] lines;
+	private ByteBuilder bb;
+	private int next=0;
+	
+	private static final int GENOME_LEN=1000000;
+	private static final int LINES=4096;
+	private static final int READLEN=150;
+	
+}
@@ -159,6 +159,7 @@ public abstract class AbstractMapThread extends Thread {
 //		index=new BBIndex(KEYLEN, minChrom, maxChrom, KFILTER, msa);
 		GENERATE_KEY_SCORES_FROM_QUALITY=AbstractIndex.GENERATE_KEY_SCORES_FROM_QUALITY;
 		readstats=(ReadStats.collectingStats() ? new ReadStats() : null);
+		stageStats=(StageStats.ENABLED ? new StageStats() : null);
 		
 		PROCESS_EDIT_FILTER=(SUBFILTER>=0 || DELFILTER>=0 || INSFILTER>=0 || INDELFILTER>=0 || DELLENFILTER>=0 || INSLENFILTER>=0 || EDITFILTER>=0);
 	}
@@ -560,7 +561,17 @@ public abstract class AbstractMapThread extends Thread {
 			
 //			System.err.println("Returning a list..."+"\n"+readlist);
 			
-			writeList(readlist, black, ln.id);
+			if(stageStats!=null){
+				final long t0=stageStats.start();
+				for(Read r : readlist){
+					stageStats.reads+=1+r.mateCount();
+					stageStats.bases+=r.length()+r.mateLength();
+				}
+				writeList(readlist, black, ln.id);
+				stageStats.add(StageStats.OUTPUT, t0);
+			}else{
+				writeList(readlist, black, ln.id);
+			}
 			
 			
 					//System.err.println("Left from adding list "+readlist.get(0).numericID);
@@ -580,6 +591,7 @@ public abstract class AbstractMapThread extends Thread {
 		//System.err.println("Returning a list... (final)");
 		assert(readlist.isEmpty());
 		cris.returnList(ln.id, true);
+		if(splitRouter!=null){splitRouter.mergeStats();}
 		finish();
 	}
 	
@@ -606,7 +618,12 @@ public abstract class AbstractMapThread extends Thread {
 		}
 		
 		if(BBSplitter.streamTable!=null || BBSplitter.TRACK_SET_STATS || BBSplitter.TRACK_SCAF_STATS){
-			BBSplitter.printReads(readlist, listNumID, null, CLEARZONE1());
+			if(SplitRouter.ENABLED){
+				if(splitRouter==null){splitRouter=new SplitRouter();}
+				splitRouter.printReads(readlist, listNumID, CLEARZONE1());
+			}else{
+				BBSplitter.printReads(readlist, listNumID, null, CLEARZONE1());
+			}
 		}
 		
 		if(outStreamUnmapped!=null){
@@ -733,7 +750,9 @@ public abstract class AbstractMapThread extends Thread {
 		if(verbose){System.err.println("Max Score: "+maxScore);}
 		assert(maxScore>0);
 		
+		final long t0=(stageStats==null ? 0 : stageStats.start());
 		ArrayList<SiteScore> list=index.findAdvanced(basesP, basesM, r.quality, baseScoresP, keyScoresP, offsets, r.numericID);
+		if(stageStats!=null){stageStats.add(StageStats.FIND, t0);}
 		if(verbose){System.err.println("list: "+list);}
 		
 		r.sites=list;
@@ -760,6 +779,14 @@ public abstract class AbstractMapThread extends Thread {
 	 * If problems are encountered such that it is prudent to do slow-alignment, a number lower than 1 will be returned. 
 	 */
 	final int scoreNoIndels(final Read r, final byte[] basesP, final byte[] basesM, final int maxSwScore, final int maxImperfectSwScore){
+		if(stageStats==null){return scoreNoIndelsInner(r, basesP, basesM, maxSwScore, maxImperfectSwScore);}
+		final long t0=stageStats.start();
+		final int x=scoreNoIndelsInner(r, basesP, basesM, maxSwScore, maxImperfectSwScore);
+		stageStats.add(StageStats.SCORE_NOINDEL, t0);
+		return x;
+	}
+	
+	private final int scoreNoIndelsInner(final Read r, final byte[] basesP, final byte[] basesM, final int maxSwScore, final int maxImperfectSwScore){
 		
 		if(!SLOW_ALIGN || r.numSites()==0){return 0;}
 		
@@ -858,6 +885,16 @@ public abstract class AbstractMapThread extends Thread {
 	
 	/** Assumes list is sorted */
 	public final void genMatchString(final Read r, final byte[] basesP, final byte[] basesM, final int maxImperfectSwScore, final int maxSwScore, boolean setSSScore, final boolean recur){
+		if(stageStats==null){
+			genMatchStringInner(r, basesP, basesM, maxImperfectSwScore, maxSwScore, setSSScore, recur);
+			return;
+		}
+		final long t0=stageStats.start();
+		genMatchStringInner(r, basesP, basesM, maxImperfectSwScore, maxSwScore, setSSScore, recur);
+		stageStats.add(StageStats.MATCH_STRING, t0);
+	}
+	
+	private final void genMatchStringInner(final Read r, final byte[] basesP, final byte[] basesM, final int maxImperfectSwScore, final int maxSwScore, boolean setSSScore, final boolean recur){
 		if(verbose){System.err.println("\n\n\n\n\ngenMatchString for read\n"+r+"\n\n\n\n\n");}
 		assert(Read.CHECKSITES(r, basesM));
 		assert(checkTopSite(r));
@@ -989,6 +1026,11 @@ public abstract class AbstractMapThread extends Thread {
 				assert(ss.stop()-ss.start()==(bases.length-1));
 				ss.match=makePerfectMatchString(bases.length);
 				assert(ss.isPerfect(bases)) : id+", "+ss; //TODO: Slow assertion
+			}else if(!LOCAL_ALIGN && UngappedAligner.align(ss, bases, msa)){
+				//Ungapped alignment is provably optimal, so the MSA is not needed
+				if(verbose){System.err.println("Ungapped fast path:\n"+id+", "+ss);}
+				ss.setPerfectFlag(maxSwScore, bases);
+				assert(Read.CHECKSITE(ss, bases, id));
 			}else{
 				int oldScore=ss.slowScore;
 				assert(ss.gaps==null || ss.gaps[0]==ss.start() && ss.gaps[ss.gaps.length-1]==ss.stop()) : "\nrid="+id+"; ss="+ss+"\n"+new String(basesP)+"\n";
@@ -1142,6 +1184,16 @@ public abstract class AbstractMapThread extends Thread {
 	
 	
 	final void rescue(Read anchor, Read loose, byte[] basesP, byte[] basesM, int searchDist){
+		if(stageStats==null){
+			rescueInner(anchor, loose, basesP, basesM, searchDist);
+			return;
+		}
+		final long t0=stageStats.start();
+		rescueInner(anchor, loose, basesP, basesM, searchDist);
+		stageStats.add(StageStats.RESCUE, t0);
+	}
+	
+	private final void rescueInner(Read anchor, Read loose, byte[] basesP, byte[] basesM, int searchDist){
 		
 		if(mappedRetained2>1000 && numMated*20L<mappedRetained2){return;}//skip rescue; mating is not working.
 		if(searchDist>MAX_RESCUE_DIST){return;}//too slow
@@ -1162,6 +1214,7 @@ public abstract class AbstractMapThread extends Thread {
 		
 		if(bestLooseScore==maxLooseSwScore && bestAnchorScore==maxAnchorSwScore
 				&& anchor.topSite().pairedScore>0){return;}
+		rescueIndex.clear();
 
 		int rescueScoreLimit=(int)(0.95f*bestAnchorScore);
 //		int retainScoreLimit=(int)(bestLooseScore>0 ? 0.58f*bestLooseScore : 0.58f*maxLooseSwScore);
@@ -1245,6 +1298,17 @@ public abstract class AbstractMapThread extends Thread {
 	
 	final void slowRescue(final byte[] bases, SiteScore ss, final int maxScore, final int maxImperfectScore, 
 			boolean findTipDeletionsRight, boolean findTipDeletionsLeft){
+		if(stageStats==null){
+			slowRescueInner(bases, ss, maxScore, maxImperfectScore, findTipDeletionsRight, findTipDeletionsLeft);
+			return;
+		}
+		final long t0=stageStats.start();
+		slowRescueInner(bases, ss, maxScore, maxImperfectScore, findTipDeletionsRight, findTipDeletionsLeft);
+		stageStats.add(StageStats.SLOW_RESCUE, t0);
+	}
+	
+	private final void slowRescueInner(final byte[] bases, SiteScore ss, final int maxScore, final int maxImperfectScore, 
+			boolean findTipDeletionsRight, boolean findTipDeletionsLeft){
 		
 		int swscoreNoIndel=msa.scoreNoIndels(bases, ss.chrom, ss.start());
 		final int oldStart=ss.start();
@@ -1417,7 +1481,18 @@ public abstract class AbstractMapThread extends Thread {
 	}
 	
 	
-	public abstract void scoreSlow(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
+	public final void scoreSlow(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
+			final int maxSwScore, final int maxImperfectSwScore){
+		if(stageStats==null){
+			scoreSlowInner(list, basesP, basesM, maxSwScore, maxImperfectSwScore);
+			return;
+		}
+		final long t0=stageStats.start();
+		scoreSlowInner(list, basesP, basesM, maxSwScore, maxImperfectSwScore);
+		stageStats.add(StageStats.SCORE_SLOW, t0);
+	}
+	
+	abstract void scoreSlowInner(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
 			final int maxSwScore, final int maxImperfectSwScore);
 	
 	/** This is only for saving ambiguous xy which is now irrelevant. */
@@ -2324,8 +2399,14 @@ public abstract class AbstractMapThread extends Thread {
 		int bestStart=-1;
 		int bestAbsdif=Integer.MAX_VALUE;
 		
+		//Starts sharing fewer kmers than thresh have more than minMismatches, so the scan could never accept them.
+		final int thresh=(lowerBound>upperBound ? 0 : rescueIndex.fillCounts(bases, ref, lowerBound, upperBound, minMismatches));
+		final int[] counts=rescueIndex.counts;
+		final int countOffset=lowerBound;
+		
 		if(searchRight){
 			for(int start=lowerBound; start<=upperBound/* && minMismatches>0*/; start++){
+				if(thresh>0 && counts[start-countOffset]<thresh){continue;}
 				int mismatches=0;
 				int contig=0;
 				int currentContig=0;
@@ -2356,6 +2437,7 @@ public abstract class AbstractMapThread extends Thread {
 			}
 		}else{
 			for(int start=upperBound; start>=lowerBound/* && minMismatches>0*/; start--){
+				if(thresh>0 && counts[start-countOffset]<thresh){continue;}
 				int mismatches=0;
 				int contig=0;
 				int currentContig=0;
@@ -2831,6 +2913,12 @@ public abstract class AbstractMapThread extends Thread {
 	public final String MSA_TYPE;
 	final MSA msa;
 	public final ReadStats readstats;
+	/** Kmer filter for quickRescue; the loose read's kmers are hashed once per rescue call */
+	private final RescueIndex rescueIndex=new RescueIndex();
+	/** Created on first use, when BBSplitter output or stats are enabled */
+	private SplitRouter splitRouter=null;
+	/** Per-stage timing; null unless StageStats.ENABLED */
+	final StageStats stageStats;
 	public final CoveragePileup pileup;
 	public final int POINTS_MATCH, POINTS_MATCH2;
 	public final int KEYLEN;
@@ -164,6 +164,24 @@ public abstract class AbstractMapper {
 					sysout=System.err; 
 					Data.sysout=System.err;
 				}
+			}else if(a.equals("splitrouter") || a.equals("fastsplit")){
+				SplitRouter.ENABLED=Tools.parseBoolean(b);
+			}else if(a.equals("kmerrescue")){
+				RescueIndex.ENABLED=Tools.parseBoolean(b);
+			}else if(a.equals("fastungapped") || a.equals("ungappedfastpath")){
+				UngappedAligner.ENABLED=Tools.parseBoolean(b);
+			}else if(a.equals("stagestats") || a.equals("stagetimes")){
+				if(b!=null && (b.equalsIgnoreCase("none") || b.equalsIgnoreCase("null"))){
+					StageStats.ENABLED=false;
+					StageStats.STATS_FILE=null;
+				}else if(b==null || Tools.parseBoolean(b) || b.equalsIgnoreCase("f") || b.equalsIgnoreCase("false")){
+					StageStats.ENABLED=Tools.parseBoolean(b);
+				}else{
+					StageStats.ENABLED=true;
+					StageStats.STATS_FILE=b;
+				}
+			}else if(a.equals("stagestatsinterval") || a.equals("stagetimesinterval")){
+				StageStats.INTERVAL_MILLIS=(long)(Double.parseDouble(b)*1000);
 			}else if(a.equals("path") || a.equals("root")){
 				Data.setPath(b);
 			}else if(a.equals("ref") || a.equals("reference") || a.equals("fasta")){
@@ -885,6 +903,9 @@ public abstract class AbstractMapper {
 			sysout.println("   \t"+t);
 			t.start();
 		}
+		if(SplitRouter.ENABLED && (BBSplitter.streamTable!=null || BBSplitter.TRACK_SET_STATS || BBSplitter.TRACK_SCAF_STATS)){
+			SplitRouter.makeTables();
+		}
 
 		{
 			String syncObj=new String("syncObj");
@@ -976,7 +997,7 @@ public abstract class AbstractMapper {
 		FileFormat ff1=FileFormat.testInput(in1, FileFormat.FASTQ, 0, 0, true, true, false);
 		FileFormat ff2=FileFormat.testInput(in2, FileFormat.FASTQ, 0, 0, true, true, false);
 		
-		if(ff1.fastq() || ff1.fasta() || ff1.samOrBam() || ff1.scarf() || ff1.bread()){
+		if(ff1.fastq() || ff1.fasta() || ff1.samOrBam() || ff1.scarf() || ff1.bread() || ff1.bbr()){
 			cris=ConcurrentReadInputStream.getReadInputStream(maxReads, ff1.samOrBam(), ff1, ff2, qf1, qf2);
 		}else if(ff1.sequential()){
 			if(maxReads<0){maxReads=Long.MAX_VALUE;}
@@ -1863,6 +1884,7 @@ public abstract class AbstractMapper {
 		}
 		
 		ReadStats.writeAll();
+		StageStats.writeAll(nanos);
 		if(pile!=null){
 			CoveragePileup.overwrite=overwrite;
 			CoveragePileup.append=append;
@@ -2491,6 +2513,7 @@ public abstract class AbstractMapper {
 		}
 		
 		errorState|=ReadStats.writeAll();
+		StageStats.writeAll(nanos);
 		
 		if(pile!=null){
 			CoveragePileup.overwrite=overwrite;
@@ -249,7 +249,7 @@ public final class BBMapThread extends AbstractMapThread{
 	}
 	
 	
-	public void scoreSlow(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
+	void scoreSlowInner(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
 			final int maxSwScore, final int maxImperfectSwScore){
 		
 		int minMsaLimit;
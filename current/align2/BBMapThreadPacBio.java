@@ -243,7 +243,7 @@ public final class BBMapThreadPacBio extends AbstractMapThread{
 	}
 	
 	
-	public void scoreSlow(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
+	void scoreSlowInner(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
 			final int maxSwScore, final int maxImperfectSwScore){
 		
 		int minMsaLimit;
@@ -283,7 +283,7 @@ public final class BBMapThreadPacBioSkimmer extends AbstractMapThread{
 	}
 	
 	
-	public void scoreSlow(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
+	void scoreSlowInner(final ArrayList<SiteScore> list, final byte[] basesP, final byte[] basesM, 
 			final int maxSwScore, final int maxImperfectSwScore){
 		
 		final int minMsaLimit;
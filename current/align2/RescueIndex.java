@@ -0,0 +1,195 @@
+package align2;
+
+import java.util.Arrays;
+
+import dna.AminoAcid;
+
+/**
+ * Per-thread kmer filter for quickRescue.
+ * Hashes the kmers of the loose read, scans the reference window once,
+ * and counts shared kmers on each diagonal (candidate start).
+ * By the q-gram lemma, a start with at most M mismatches shares at least
+ * (len-k+1)-k*M kmers with the read, so starts below that count can be skipped
+ * without changing the rescue result.
+ * The kmer length is chosen per call, shrinking until that count is well above
+ * what a random start would share, so the filter still works for the large
+ * mismatch budgets used when the mate is unmapped.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+final class RescueIndex {
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Methods            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Forgets the hashed read; must be called before reusing a bases array for a different sequence */
+	void clear(){
+		lastBases=null;
+		lastK=0;
+	}
+	
+	/**
+	 * Counts shared kmers per candidate start in [lowerBound, upperBound].
+	 * @param maxMismatches Most mismatches a start may have and still be accepted by the scan
+	 * @return Minimum count a start needs to be worth scoring, or 0 if the filter does not apply.
+	 * In that case the counts are invalid and every start must be scored.
+	 */
+	int fillCounts(final byte[] bases, final byte[] ref, final int lowerBound, final int upperBound, final int maxMismatches){
+		final int windows=upperBound-lowerBound+1;
+		if(!ENABLED || windows<MIN_WINDOWS || bases.length>MAX_READ_LEN){return 0;}
+
+		//Undefined read bases can match the reference in quickRescue but never form kmers, so count them as mismatches
+		int undefined=0;
+		for(byte b : bases){
+			if(AminoAcid.baseToNumber[b]<0){undefined++;}
+		}
+		
+		int k=0, thresh=0;
+		for(int kk=MAX_K; kk>=MIN_K && k==0; kk--){
+			final int t=threshold(bases.length, kk, maxMismatches+undefined);
+			if(selective(bases.length, kk, t)){
+				k=kk;
+				thresh=t;
+			}
+		}
+		if(k==0){return 0;}
+
+		//The same read is rescued near each anchor site, so its table is kept between calls
+		if(bases!=lastBases || k!=lastK){
+			hashRead(bases, k);
+			lastBases=bases;
+			lastK=k;
+		}
+
+		if(counts.length<windows){counts=new int[(int)Tools.min(Integer.MAX_VALUE, windows*2L)];}
+		else{Arrays.fill(counts, 0, Tools.min(counts.length, lastWindows), 0);}
+		lastWindows=windows;
+
+		final int shift=2*k;
+		final int mask=~((-1)<<shift);
+		final int refStop=Tools.min(ref.length, upperBound+bases.length);
+		int kmer=0, len=0;
+		for(int j=Tools.max(0, lowerBound); j<refStop; j++){
+			final int x=AminoAcid.baseToNumber[ref[j]];
+			if(x<0){
+				len=0;
+				kmer=0;
+			}else{
+				kmer=((kmer<<2)|x)&mask;
+				len++;
+				if(len>=k){
+					final int refPos=j-k+1;
+					for(int p=get(kmer); p>=0; p=next[p]){
+						final int diag=refPos-p-lowerBound;
+						if(diag>=0 && diag<windows){counts[diag]++;}
+					}
+				}
+			}
+		}
+		return thresh;
+	}
+
+	/** Shared-kmer count guaranteed for any start with at most maxMismatches, or 0 if none */
+	static int threshold(final int len, final int k, final int maxMismatches){
+		if(len<k){return 0;}
+		final int qgram=(len-k+1)-k*maxMismatches;
+		if(qgram>=1){return qgram;}
+		return (len/k>maxMismatches ? 1 : 0); //Pigeonhole on disjoint kmers
+	}
+
+	/** True if thresh is positive and well above the shared-kmer count expected at a random start */
+	private static boolean selective(final int len, final int k, final int thresh){
+		if(thresh<1){return false;}
+		final long expected=(len-k+1L)*SELECTIVITY;
+		return thresh>=(expected>>(2*k));
+	}
+
+	/** Hashes each valid kmer start position in the read */
+	private void hashRead(final byte[] bases, final int k){
+		final int size=Integer.highestOneBit(Tools.max(16, bases.length*4-1))<<1;
+		if(keys.length<size){
+			keys=new int[size];
+			heads=new int[size];
+		}
+		if(next.length<bases.length){next=new int[bases.length];}
+		tableMask=size-1;
+		Arrays.fill(keys, 0, size, -1);
+
+		final int shift=2*k;
+		final int mask=~((-1)<<shift);
+		int kmer=0, len=0;
+		for(int i=0; i<bases.length; i++){
+			final int x=AminoAcid.baseToNumber[bases[i]];
+			if(x<0){
+				len=0;
+				kmer=0;
+			}else{
+				kmer=((kmer<<2)|x)&mask;
+				len++;
+				if(len>=k){put(kmer, i-k+1);}
+			}
+		}
+	}
+
+	private void put(final int kmer, final int pos){
+		int cell=hash(kmer)&tableMask;
+		while(keys[cell]!=-1 && keys[cell]!=kmer){cell=(cell+1)&tableMask;}
+		if(keys[cell]==-1){
+			keys[cell]=kmer;
+			next[pos]=-1;
+		}else{
+			next[pos]=heads[cell];
+		}
+		heads[cell]=pos;
+	}
+
+	private int get(final int kmer){
+		int cell=hash(kmer)&tableMask;
+		while(keys[cell]!=-1){
+			if(keys[cell]==kmer){return heads[cell];}
+			cell=(cell+1)&tableMask;
+		}
+		return -1;
+	}
+
+	private static int hash(int x){
+		x^=(x>>>15);
+		x*=0x2c1b3c6d;
+		return x^(x>>>12);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Shared kmer count per candidate start, offset by lowerBound */
+	int[] counts=new int[2048];
+	private int lastWindows=0;
+
+	private int[] keys=new int[0];
+	private int[] heads=new int[0];
+	private int[] next=new int[0];
+	private int tableMask=0;
+	/** Read and kmer length currently in the table */
+	private byte[] lastBases=null;
+	private int lastK=0;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	static final int MAX_K=12;
+	static final int MIN_K=4;
+	/** A kmer length is used only if the threshold is at least this multiple of the random expectation */
+	static final int SELECTIVITY=8;
+	/** Below this many candidate starts, the plain scan is cheaper */
+	static final int MIN_WINDOWS=64;
+	static final int MAX_READ_LEN=100000;
+
+	/** Use kmer filtering in quickRescue */
+	public static boolean ENABLED=true;
+
+}
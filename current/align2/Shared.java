@@ -12,6 +12,10 @@ public class Shared {
 	public static int READ_BUFFER_LENGTH=200;
 	private static int READ_BUFFER_NUM_BUFFERS=setBuffers();
 	public static long READ_BUFFER_MAX_DATA=400000;
+	/** Let input streams tune list length and buffer count at runtime; see stream.BatchTuner */
+	public static boolean ADAPTIVE_READ_BUFFERS=true;
+	private static final int DEFAULT_READ_BUFFER_LENGTH=READ_BUFFER_LENGTH;
+	private static final long DEFAULT_READ_BUFFER_MAX_DATA=READ_BUFFER_MAX_DATA;
 	
 	/** Temporary, for testing; will be made non-global */
 	public static boolean AMINO_IN=false;
@@ -98,6 +102,7 @@ public class Shared {
 	}
 	
 	public static int capBuffers(int num){
+		BUFFERS_CAPPED=true;
 		return setBuffers(Tools.min(num, READ_BUFFER_NUM_BUFFERS));
 	}
 	
@@ -118,6 +123,21 @@ public class Shared {
 		return READ_BUFFER_NUM_BUFFERS;
 	}
 	
+	/**
+	 * True if input streams should tune their buffers.
+	 * Programs that set their own list length or data limit in code keep them fixed.
+	 */
+	public static boolean adaptiveBuffers(){
+		return ADAPTIVE_READ_BUFFERS && READ_BUFFER_LENGTH==DEFAULT_READ_BUFFER_LENGTH && READ_BUFFER_MAX_DATA==DEFAULT_READ_BUFFER_MAX_DATA;
+	}
+	
+	/** True if a program capped the buffer count, so adaptive buffering should not add more */
+	public static boolean buffersCapped(){
+		return BUFFERS_CAPPED;
+	}
+	
+	private static boolean BUFFERS_CAPPED=false;
+	
 	public static boolean LOW_MEMORY=false;
 	
 	/** Ratio of -Xms to -Xmx parameters */
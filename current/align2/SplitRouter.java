@@ -0,0 +1,481 @@
+package align2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import stream.ConcurrentReadOutputStream;
+import stream.Read;
+import stream.SiteScore;
+
+import align2.BBSplitter.SetCount;
+
+import dna.Data;
+
+/**
+ * Integer-indexed replacement for BBSplitter.printReads.
+ * Scaffold-to-set and scaffold-to-stat lookups are resolved once into arrays by makeTables();
+ * each mapping thread owns one router, which holds sets as bitsets, fills one list per set index,
+ * and accumulates set and scaffold stats locally until mergeStats() is called.
+ * Output and stats are identical to printReads and printReadsAndProcessAmbiguous.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+final class SplitRouter {
+
+	SplitRouter(){
+		makeTables();
+		numSets=setNames.length;
+		words=Tools.max(1, (numSets+63)>>>6);
+		p1=new long[words];
+		s1=new long[words];
+		p2=new long[words];
+		s2=new long[words];
+		temp=new long[words];
+		lists=newListArray(numSets);
+		setCounts=(setCountArray==null ? null : new long[4*numSets]);
+		scafCounts=(scafCountArray==null ? null : new long[4*scafCountArray.length]);
+		scafStamps=(scafCountArray==null ? null : new int[scafCountArray.length]);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Tables            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Builds the lookup tables for the current index and BBSplitter streams and count tables.
+	 * Does nothing if they are already current.
+	 */
+	static synchronized void makeTables(){
+		if(tableScaffoldNames==Data.scaffoldNames && tableStreams==BBSplitter.streamTable && tableStreamsA==BBSplitter.streamTableAmbiguous
+				&& tableSetCounts==BBSplitter.setCountTable && tableScafCounts==BBSplitter.scafCountTable){return;}
+		final byte[][][] b3=Data.scaffoldNames;
+		assert(b3!=null);
+
+		//Assign an index to every set name that appears in a scaffold prefix or an output stream name
+		final LinkedHashMap<String, Integer> setMap=new LinkedHashMap<String, Integer>();
+		if(BBSplitter.setCountTable!=null){
+			for(String s : BBSplitter.setCountTable.keySet()){addName(s, setMap);}
+		}
+		if(BBSplitter.streamTable!=null){
+			for(String s : BBSplitter.streamTable.keySet()){addName(s, setMap);}
+		}
+		if(BBSplitter.streamTableAmbiguous!=null){
+			for(String s : BBSplitter.streamTableAmbiguous.keySet()){addName(s, setMap);}
+		}
+
+		final HashMap<String, Integer> scafMap;
+		final ArrayList<SetCount> scafList;
+		if(BBSplitter.scafCountTable!=null){
+			scafMap=new HashMap<String, Integer>((int)Tools.min(Integer.MAX_VALUE, BBSplitter.scafCountTable.size()*2L+16));
+			scafList=new ArrayList<SetCount>(BBSplitter.scafCountTable.size());
+			for(SetCount sc : BBSplitter.scafCountTable.values()){
+				scafMap.put(sc.name, scafList.size());
+				scafList.add(sc);
+			}
+		}else{
+			scafMap=null;
+			scafList=null;
+		}
+
+		//Identical prefixes share one array
+		final HashMap<String, int[]> prefixMap=new HashMap<String, int[]>();
+		final int[][][] sets=new int[b3.length][][];
+		final int[][] ids=(scafMap==null ? null : new int[b3.length][]);
+		for(int chrom=0; chrom<b3.length; chrom++){
+			final byte[][] b2=b3[chrom];
+			if(b2==null){continue;}
+			sets[chrom]=new int[b2.length][];
+			if(ids!=null){ids[chrom]=new int[b2.length];}
+			for(int i=0; i<b2.length; i++){
+				final byte[] bname=b2[i];
+				if(bname==null){continue;}
+				final int idx=Tools.indexOf(bname, (byte)'$');
+				if(idx>=0){
+					final String prefix=new String(bname, 0, idx);
+					int[] array=prefixMap.get(prefix);
+					if(array==null){
+						array=toSetArray(prefix, setMap);
+						prefixMap.put(prefix, array);
+					}
+					sets[chrom][i]=array;
+				}
+				if(ids!=null){
+					final String s=(Data.scaffoldPrefixes && idx>=0 ? new String(bname, idx+1, bname.length-idx-1) : new String(bname));
+					Integer x=scafMap.get(s);
+					if(x==null){
+						SetCount sc=new SetCount(s);
+						BBSplitter.scafCountTable.put(s, sc);
+						x=scafList.size();
+						scafMap.put(s, x);
+						scafList.add(sc);
+					}
+					ids[chrom][i]=x;
+				}
+			}
+		}
+
+		setNames=setMap.keySet().toArray(new String[setMap.size()]);
+		scafSets=sets;
+		scafIds=ids;
+		streams=toStreamArray(BBSplitter.streamTable, setMap);
+		streamsAmbiguous=toStreamArray(BBSplitter.streamTableAmbiguous, setMap);
+		if(BBSplitter.setCountTable!=null){
+			setCountArray=new SetCount[setNames.length];
+			for(int i=0; i<setNames.length; i++){setCountArray[i]=BBSplitter.setCountTable.get(setNames[i]);}
+		}else{
+			setCountArray=null;
+		}
+		scafCountArray=(scafList==null ? null : scafList.toArray(new SetCount[scafList.size()]));
+
+		tableScaffoldNames=b3;
+		tableStreams=BBSplitter.streamTable;
+		tableStreamsA=BBSplitter.streamTableAmbiguous;
+		tableSetCounts=BBSplitter.setCountTable;
+		tableScafCounts=BBSplitter.scafCountTable;
+	}
+
+	private static void addName(String s, LinkedHashMap<String, Integer> setMap){
+		if(!setMap.containsKey(s)){setMap.put(s, setMap.size());}
+	}
+
+	/** Splits a prefix on commas, like BBSplitter.toListNames, and returns the sorted unique set indices */
+	private static int[] toSetArray(String prefix, LinkedHashMap<String, Integer> setMap){
+		final String[] split=(prefix.indexOf(',')<0 ? new String[] {prefix} : prefix.split(","));
+		final HashSet<Integer> unique=new HashSet<Integer>();
+		for(String s : split){
+			addName(s, setMap);
+			unique.add(setMap.get(s));
+		}
+		final int[] array=new int[unique.size()];
+		int i=0;
+		for(Integer x : unique){array[i]=x; i++;}
+		Arrays.sort(array);
+		return array;
+	}
+
+	private static ConcurrentReadOutputStream[] toStreamArray(HashMap<String, ConcurrentReadOutputStream> table, LinkedHashMap<String, Integer> setMap){
+		if(table==null){return null;}
+		final ConcurrentReadOutputStream[] array=new ConcurrentReadOutputStream[setMap.size()];
+		for(String s : table.keySet()){array[setMap.get(s)]=table.get(s);}
+		return array;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Routing            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Equivalent to BBSplitter.printReads.
+	 * @param readlist List of reads to print
+	 * @param listID ID of read list, from ReadInputStream
+	 * @param clearzone Min distance between best and next-best site to be considered unambiguous
+	 */
+	void printReads(ArrayList<Read> readlist, long listID, int clearzone){
+		if(clearzone>=0 || BBSplitter.TRACK_SET_STATS || BBSplitter.TRACK_SCAF_STATS){
+			printReadsAndProcessAmbiguous(readlist, listID, clearzone);
+			return;
+		}
+		assert(streams!=null);
+		for(Read r : readlist){
+			if(r!=null){
+				clear(p1);
+				add(p1, readSets(r));
+				if(r.mate!=null){add(p1, readSets(r.mate));}
+				addToLists(p1, r);
+			}
+		}
+		flush(streams, listID);
+	}
+
+	private void printReadsAndProcessAmbiguous(ArrayList<Read> readlist, long listID, int clearzone){
+		final boolean doSets=(BBSplitter.TRACK_SET_STATS || streams!=null);
+		final int mode=BBSplitter.AMBIGUOUS2_MODE;
+		for(final Read r1 : readlist){
+			final Read r2=(r1==null ? null : r1.mate);
+
+			if(scafCounts!=null){
+				if(r1!=null){addToScafCounts(r1, clearzone);}
+				if(r2!=null){addToScafCounts(r2, clearzone);}
+			}
+
+			if(r1!=null && doSets && getSets(r1, r2, clearzone)){
+				final boolean e1=isEmpty(p1), f1=isEmpty(s1), e2=isEmpty(p2), f2=isEmpty(s2);
+				boolean ambiguous=false;
+				if(!e1 && !e2 && !Arrays.equals(p1, p2)){ambiguous=true;}
+				else if(!e1 && !f1 && !containsAll(p1, s1)){ambiguous=true;}
+				else if(!e2 && !f2 && !containsAll(p2, s2)){ambiguous=true;}
+
+				final long[] primary=temp;
+				clear(primary);
+				if(mode==BBSplitter.AMBIGUOUS2_FIRST || mode==BBSplitter.AMBIGUOUS2_UNSET){//pick one
+					if(r2==null || r1.mapScore>=r2.mapScore){or(primary, p1);}
+					else{or(primary, p2);}
+				}else{//merge
+					or(primary, p1);
+					or(primary, p2);
+				}
+
+				boolean usePrimary=true, useAmbig=false;
+				if(ambiguous){
+					if(mode==BBSplitter.AMBIGUOUS2_SPLIT){
+						or(primary, s1);
+						or(primary, s2);
+						usePrimary=false;
+						useAmbig=true;
+					}else if(mode==BBSplitter.AMBIGUOUS2_ALL){
+						or(primary, s1);
+						or(primary, s2);
+					}else if(mode==BBSplitter.AMBIGUOUS2_RANDOM){
+						throw new RuntimeException("AMBIGUOUS2_RANDOM: Not yet implemented.");
+					}else if(mode==BBSplitter.AMBIGUOUS2_TOSS){
+						usePrimary=false;
+					}
+				}
+
+				if(usePrimary && streams!=null){addToLists(primary, r1);}
+				if(useAmbig && streamsAmbiguous!=null){addToListsA(primary, r1);}
+
+				if(setCounts!=null){
+					clear(primary);
+					or(primary, p1);
+					or(primary, p2);
+					if(ambiguous){
+						or(primary, s1);
+						or(primary, s2);
+					}
+					final int incrR=1+(r2==null ? 0 : 1);
+					final int incrB=r1.length()+r1.mateLength();
+					final int offset=(ambiguous ? AMBIG : MAPPED);
+					for(int i=0; i<words; i++){
+						for(long bits=primary[i]; bits!=0; bits&=(bits-1)){
+							final int set=(i<<6)+Long.numberOfTrailingZeros(bits);
+							setCounts[4*set+offset]+=incrR;
+							setCounts[4*set+offset+1]+=incrB;
+						}
+					}
+				}
+			}
+		}
+		if(streams!=null){flush(streams, listID);}
+		if(streamsAmbiguous!=null){flushA(streamsAmbiguous, listID);}
+	}
+
+	/** Equivalent to BBSplitter.getSets; fills p1, s1, p2, and s2, or returns false if neither read is mapped */
+	private boolean getSets(Read r1, Read r2, int clearzone){
+		if(!r1.mapped() && (r2==null || !r2.mapped())){return false;}
+		clear(p1);
+		clear(s1);
+		clear(p2);
+		clear(s2);
+		if(r1.mapped()){addSiteSets(r1, clearzone, p1, s1);}
+		if(r2!=null && r2.mapped()){addSiteSets(r2, clearzone, p2, s2);}
+		return true;
+	}
+
+	private static void addSiteSets(Read r, int clearzone, long[] primary, long[] other){
+		final SiteScore s0=r.topSite();
+		add(primary, siteSets(s0));
+		for(int i=1; i<r.sites.size(); i++){
+			SiteScore ss=r.sites.get(i);
+			if(ss.score+clearzone<s0.score){break;}
+			add(other, siteSets(ss));
+		}
+	}
+
+	/** Equivalent to BBSplitter.addToScafCounts */
+	private void addToScafCounts(Read r, int clearzone){
+		if(!r.mapped()){return;}
+		final int offset=(r.ambiguous() ? AMBIG : MAPPED);
+		final int len=r.length();
+		if(!r.ambiguous()){
+			final int id=scafIds[r.chrom][Data.scaffoldIndex(r.chrom, (r.start+r.stop)/2)];
+			scafCounts[4*id+offset]++;
+			scafCounts[4*id+offset+1]+=len;
+			return;
+		}
+		stamp++;
+		if(stamp==0){
+			Arrays.fill(scafStamps, 0);
+			stamp=1;
+		}
+		final SiteScore s0=r.topSite();
+		for(SiteScore ss : r.sites){
+			if(ss.score+clearzone<s0.score){break;}
+			final int id=scafIds[ss.chrom][Data.scaffoldIndex(ss.chrom, (ss.start+ss.stop)/2)];
+			if(scafStamps[id]!=stamp){
+				scafStamps[id]=stamp;
+				scafCounts[4*id+offset]++;
+				scafCounts[4*id+offset+1]+=len;
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Output Lists         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private void addToLists(long[] bits, Read r){
+		for(int i=0; i<words; i++){
+			for(long x=bits[i]; x!=0; x&=(x-1)){
+				final int set=(i<<6)+Long.numberOfTrailingZeros(x);
+				if(streams[set]!=null){
+					if(lists[set]==null){lists[set]=new ArrayList<Read>();}
+					lists[set].add(r);
+				}
+			}
+		}
+	}
+
+	private void addToListsA(long[] bits, Read r){
+		if(listsA==null){listsA=newListArray(numSets);}
+		for(int i=0; i<words; i++){
+			for(long x=bits[i]; x!=0; x&=(x-1)){
+				final int set=(i<<6)+Long.numberOfTrailingZeros(x);
+				if(streamsAmbiguous[set]!=null){
+					if(listsA[set]==null){listsA[set]=new ArrayList<Read>();}
+					listsA[set].add(r);
+				}
+			}
+		}
+	}
+
+	/** Sends one list to every stream, even if empty, to keep list IDs straight; lists are owned by the streams afterward */
+	private void flush(ConcurrentReadOutputStream[] array, long listID){
+		for(int i=0; i<numSets; i++){
+			if(array[i]!=null){
+				array[i].add(lists[i]==null ? blank : lists[i], listID);
+			}
+			lists[i]=null;
+		}
+	}
+
+	private void flushA(ConcurrentReadOutputStream[] array, long listID){
+		for(int i=0; i<numSets; i++){
+			if(array[i]!=null){
+				array[i].add(listsA==null || listsA[i]==null ? blank : listsA[i], listID);
+			}
+			if(listsA!=null){listsA[i]=null;}
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArrayList<Read>[] newListArray(int len){
+		return new ArrayList[len];
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Stats             ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Adds this thread's counts to the shared SetCount tables and resets them */
+	void mergeStats(){
+		merge(setCounts, setCountArray);
+		merge(scafCounts, scafCountArray);
+	}
+
+	private static void merge(long[] counts, SetCount[] array){
+		if(counts==null){return;}
+		for(int i=0; i<array.length; i++){
+			final int x=4*i;
+			if(counts[x]!=0 || counts[x+1]!=0 || counts[x+2]!=0 || counts[x+3]!=0){
+				final SetCount sc=array[i];
+				assert(sc!=null) : i;
+				synchronized(sc){
+					sc.mappedReads+=counts[x+MAPPED];
+					sc.mappedBases+=counts[x+MAPPED+1];
+					sc.ambiguousReads+=counts[x+AMBIG];
+					sc.ambiguousBases+=counts[x+AMBIG+1];
+				}
+				counts[x]=counts[x+1]=counts[x+2]=counts[x+3]=0;
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Bitsets            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static int[] readSets(Read r){
+		if(!r.mapped()){return null;}
+		return scafSets[r.chrom][Data.scaffoldIndex(r.chrom, (r.start+r.stop)/2)];
+	}
+
+	private static int[] siteSets(SiteScore ss){
+		return scafSets[ss.chrom][Data.scaffoldIndex(ss.chrom, (ss.start+ss.stop)/2)];
+	}
+
+	private static void add(long[] bits, int[] sets){
+		if(sets==null){return;}
+		for(int set : sets){bits[set>>>6]|=(1L<<set);}
+	}
+
+	private static void or(long[] a, long[] b){
+		for(int i=0; i<a.length; i++){a[i]|=b[i];}
+	}
+
+	private static void clear(long[] bits){
+		for(int i=0; i<bits.length; i++){bits[i]=0;}
+	}
+
+	private static boolean isEmpty(long[] bits){
+		for(long x : bits){
+			if(x!=0){return false;}
+		}
+		return true;
+	}
+
+	/** True if a contains every element of b */
+	private static boolean containsAll(long[] a, long[] b){
+		for(int i=0; i<a.length; i++){
+			if((b[i]&~a[i])!=0){return false;}
+		}
+		return true;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final int numSets;
+	private final int words;
+	private final long[] p1, s1, p2, s2, temp;
+
+	/** Output list per set index for the current batch */
+	private final ArrayList<Read>[] lists;
+	private ArrayList<Read>[] listsA;
+
+	/** Per set or scaffold index: mapped reads, mapped bases, ambiguous reads, ambiguous bases */
+	private final long[] setCounts, scafCounts;
+	private final int[] scafStamps;
+	private int stamp=0;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final int MAPPED=0, AMBIG=2;
+
+	/** Set name per set index */
+	private static String[] setNames;
+	/** Sorted set indices per chrom and scaffold; null for scaffolds without a prefix */
+	private static int[][][] scafSets;
+	/** Scaffold stat index per chrom and scaffold */
+	private static int[][] scafIds;
+	private static ConcurrentReadOutputStream[] streams, streamsAmbiguous;
+	private static SetCount[] setCountArray, scafCountArray;
+
+	private static byte[][][] tableScaffoldNames;
+	private static HashMap<String, ConcurrentReadOutputStream> tableStreams, tableStreamsA;
+	private static LinkedHashMap<String, SetCount> tableSetCounts, tableScafCounts;
+
+	private static final ArrayList<Read> blank=new ArrayList<Read>(0);
+
+	/** Route split output and stats through integer tables instead of per-read name lookups */
+	public static boolean ENABLED=true;
+
+}
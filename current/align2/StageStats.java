@@ -0,0 +1,195 @@
+package align2;
+
+import java.util.ArrayList;
+
+import fileIO.ReadWrite;
+
+/**
+ * Per-thread counters and nanosecond accumulators for the stages of a mapping thread.
+ * Each AbstractMapThread owns one instance and updates it without synchronization;
+ * instances are merged at the end, and optionally sampled periodically by a daemon thread.
+ * Stages may be nested (e.g. scoring inside rescue); each stage is charged only its exclusive time,
+ * so stage times sum to the total time measured.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class StageStats {
+
+	public StageStats(){this(true);}
+
+	public StageStats(boolean addToList){
+		if(addToList){
+			synchronized(StageStats.class){
+				objectList.add(this);
+			}
+			startReporter();
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Methods            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Begins timing a stage; must be paired with add() */
+	public final long start(){
+		assert(depth<childNanos.length) : depth;
+		childNanos[depth]=0;
+		depth++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time elapsed since startNanos, minus time spent in nested stages, to the stage,
+	 * and increments its count.
+	 * @param startNanos Value returned by start()
+	 */
+	public final void add(int stage, long startNanos){
+		final long elapsed=System.nanoTime()-startNanos;
+		assert(depth>0);
+		depth--;
+		nanos[stage]+=elapsed-childNanos[depth];
+		counts[stage]++;
+		if(depth>0){childNanos[depth-1]+=elapsed;}
+	}
+
+	public final void add(StageStats ss){
+		for(int i=0; i<STAGES; i++){
+			nanos[i]+=ss.nanos[i];
+			counts[i]+=ss.counts[i];
+		}
+		reads+=ss.reads;
+		bases+=ss.bases;
+	}
+
+	public static StageStats mergeAll(){
+		StageStats x=new StageStats(false);
+		synchronized(StageStats.class){
+			for(StageStats ss : objectList){x.add(ss);}
+		}
+		return x;
+	}
+
+	/** Writes merged stats to the stats file, if present, and stops the periodic reporter. */
+	public static void writeAll(long elapsedNanos){
+		if(!ENABLED){return;}
+		stopReporter();
+		StageStats ss=mergeAll();
+		if(STATS_FILE!=null){
+			ReadWrite.writeString(ss.toText(elapsedNanos, useJson(STATS_FILE)), STATS_FILE, false);
+		}else{
+			System.err.println("\n"+ss.toText(elapsedNanos, false));
+		}
+	}
+
+	private static boolean useJson(String fname){
+		return fname!=null && (fname.endsWith(".json") || fname.endsWith(".json.gz"));
+	}
+
+	public StringBuilder toText(long elapsedNanos, boolean json){
+		StringBuilder sb=new StringBuilder(1000);
+		if(json){
+			sb.append("{\n\t\"elapsed_ns\": ").append(elapsedNanos).append(",\n");
+			sb.append("\t\"reads\": ").append(reads).append(",\n");
+			sb.append("\t\"bases\": ").append(bases).append(",\n");
+			sb.append("\t\"stages\": {\n");
+			for(int i=0; i<STAGES; i++){
+				sb.append("\t\t\"").append(STAGE_NAMES[i]).append("\": {\"count\": ").append(counts[i]);
+				sb.append(", \"exclusive_ns\": ").append(nanos[i]).append("}").append(i<STAGES-1 ? ",\n" : "\n");
+			}
+			sb.append("\t}\n}\n");
+		}else{
+			sb.append("#Elapsed\t").append(elapsedNanos).append('\n');
+			sb.append("#Reads\t").append(reads).append('\n');
+			sb.append("#Bases\t").append(bases).append('\n');
+			sb.append("#Stage\tCount\tExclusiveNanos\tAvgNanos\tPctStageTime\n");
+			long sum=0;
+			for(int i=0; i<STAGES; i++){sum+=nanos[i];}
+			for(int i=0; i<STAGES; i++){
+				sb.append(STAGE_NAMES[i]).append('\t').append(counts[i]).append('\t').append(nanos[i]).append('\t');
+				sb.append(String.format("%.1f", nanos[i]/(double)Tools.max(1, counts[i]))).append('\t');
+				sb.append(String.format("%.2f", nanos[i]*100.0/Tools.max(1, sum))).append('\n');
+			}
+		}
+		return sb;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------       Periodic Reporter      ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Starts a daemon thread that appends a snapshot to the stats file every INTERVAL_MILLIS. */
+	public static synchronized void startReporter(){
+		if(!ENABLED || STATS_FILE==null || INTERVAL_MILLIS<1 || reporter!=null){return;}
+		reporter=new Reporter();
+		reporter.setDaemon(true);
+		reporter.start();
+	}
+
+	private static synchronized void stopReporter(){
+		if(reporter!=null){
+			reporter.interrupt();
+			try {
+				reporter.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			reporter=null;
+		}
+	}
+
+	private static class Reporter extends Thread {
+
+		@Override
+		public void run(){
+			final long start=System.nanoTime();
+			final String fname=STATS_FILE+".interval"+(useJson(STATS_FILE) ? ".json" : ".tsv");
+			boolean append=false;
+			while(!isInterrupted()){
+				try {
+					Thread.sleep(INTERVAL_MILLIS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				//Unsynchronized reads of other threads' counters; values may be slightly stale, which is fine for monitoring.
+				StageStats ss=mergeAll();
+				ReadWrite.writeString(ss.toText(System.nanoTime()-start, useJson(STATS_FILE)), fname, append);
+				append=true;
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public final long[] nanos=new long[STAGES];
+	public final long[] counts=new long[STAGES];
+	public long reads=0;
+	public long bases=0;
+
+	/** Time spent in completed nested stages, for each stage currently being timed */
+	private final long[] childNanos=new long[MAX_DEPTH];
+	private int depth=0;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public static final int FIND=0, SCORE_NOINDEL=1, SCORE_SLOW=2, RESCUE=3, SLOW_RESCUE=4, MATCH_STRING=5, OUTPUT=6;
+	public static final int STAGES=7;
+	private static final int MAX_DEPTH=16;
+	public static final String[] STAGE_NAMES={"find", "scoreNoIndels", "scoreSlow", "rescue", "slowRescue", "matchString", "output"};
+
+	/** Enable per-stage timing in mapping threads */
+	public static boolean ENABLED=false;
+	/** Destination for final (and periodic) stats; .json extension selects JSON, otherwise TSV */
+	public static String STATS_FILE=null;
+	/** Period for interval snapshots; 0 disables */
+	public static long INTERVAL_MILLIS=0;
+
+	private static Reporter reporter=null;
+	private static ArrayList<StageStats> objectList=new ArrayList<StageStats>();
+
+}
@@ -14,6 +14,7 @@ import java.util.regex.Pattern;
 import stream.FASTQ;
 import stream.FastaReadInputStream;
 import stream.Read;
+import stream.ReadPipe;
 import stream.SamLine;
 import stream.SiteScore;
 
@@ -466,13 +467,13 @@ public final class Tools {
 		if(s==null){return false;}
 		s=s.toLowerCase();
 		return s.equals("stdout") || s.equals("stderr") || s.equals("standardout") || s.equals("standarderr")
-				|| s.equals("/dev/null") || s.startsWith("stdout.") || s.startsWith("stderr.");
+				|| s.equals("/dev/null") || s.startsWith("stdout.") || s.startsWith("stderr.") || ReadPipe.isPipeName(s);
 	}
 	
 	public static final boolean isSpecialInputName(String s){
 		if(s==null){return false;}
 		s=s.toLowerCase();
-		return s.equals("stdin") || s.equals("standardin") || s.startsWith("stdin.");
+		return s.equals("stdin") || s.equals("standardin") || s.startsWith("stdin.") || ReadPipe.isPipeName(s);
 	}
 	
 	public static final boolean canRead(String s){
@@ -0,0 +1,89 @@
+package align2;
+
+import stream.SiteScore;
+import dna.ChromosomeArray;
+import dna.Data;
+
+/**
+ * Finalizes ungapped sites without filling an MSA matrix.
+ * A site qualifies when its ungapped score is at least maxGappedScore,
+ * the best score any alignment containing an indel could reach,
+ * so the ungapped alignment is provably optimal.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class UngappedAligner {
+
+	/**
+	 * Attempts to finalize an ungapped site.
+	 * On success, sets the match string, stop, and slow score, and returns true.
+	 * On failure the site is unchanged and the caller should fall back to the MSA.
+	 * @param ss Site with start set and length equal to bases.length
+	 * @param bases Read bases on the site's strand
+	 * @param msa Aligner whose scoring is used
+	 * @return True if the site was finalized
+	 */
+	public static boolean align(final SiteScore ss, final byte[] bases, final MSA msa){
+		if(!ENABLED || ss.gaps!=null || ss.stop()-ss.start()+1!=bases.length){return false;}
+		final ChromosomeArray cha=Data.getChromosome(ss.chrom);
+		final int start=ss.start();
+		if(start<0 || start+bases.length-1>cha.maxIndex){return false;}
+
+		final int maxQ=msa.maxQuality(bases.length);
+		final int maxI=maxGappedScore(msa, bases.length);
+		final int budget=mismatchBudget(msa, maxQ, maxI);
+		if(countMismatches(bases, cha.array, start, budget)>budget){return false;}
+
+		//Filled into a new array so a rejected site keeps its old match string
+		final byte[][] matchR=new byte[][] {new byte[bases.length]};
+		final int score=msa.scoreNoIndelsAndMakeMatchString(bases, cha.array, start, matchR);
+		if(score<maxI){return false;}
+
+		ss.match=matchR[0];
+		ss.setStop(start+bases.length-1);
+		ss.setSlowScore(score);
+		return true;
+	}
+
+	/**
+	 * Upper bound on the score of any alignment of numBases containing an indel.
+	 * Unlike msa.maxImperfectScore, which subtracts the costlier indel, this uses the cheaper one.
+	 */
+	static int maxGappedScore(final MSA msa, final int numBases){
+		return msa.maxQuality(numBases)+Tools.max(msa.POINTS_DEL(), msa.POINTS_INS()-msa.POINTS_MATCH2());
+	}
+
+	/**
+	 * Maximum number of non-matching positions allowing the ungapped score to reach maxI.
+	 * Each non-match loses at least POINTS_MATCH2 minus the mildest mismatch penalty.
+	 */
+	static int mismatchBudget(final MSA msa, final int maxQ, final int maxI){
+		int mildest=Tools.max(Tools.max(msa.POINTS_SUB(), msa.POINTS_SUB2()), Tools.max(msa.POINTS_SUB3(), msa.POINTS_NOCALL()));
+		mildest=Tools.max(mildest, msa.POINTS_NOREF());
+		final int minLoss=Tools.max(1, msa.POINTS_MATCH2()-mildest);
+		return (maxQ-maxI)/minLoss;
+	}
+
+	/**
+	 * Counts positions where read and reference differ, or either is undefined.
+	 * Stops early once the count exceeds limit.
+	 * @return Number of mismatches, or some value greater than limit
+	 */
+	public static int countMismatches(final byte[] read, final byte[] ref, final int refStart, final int limit){
+		int mismatches=0;
+		for(int i=0, j=refStart; i<read.length; i++, j++){
+			final byte c=read[i], r=ref[j];
+			if(c!=r || c=='N'){
+				mismatches++;
+				if(mismatches>limit){break;}
+			}
+		}
+		return mismatches;
+	}
+
+	/** Allow ungapped sites to bypass the MSA during match string generation */
+	public static boolean ENABLED=true;
+
+}
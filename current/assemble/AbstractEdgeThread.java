@@ -0,0 +1,207 @@
+package assemble;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dna.AminoAcid;
+import dna.Timer;
+
+import ukmer.HashArrayU1D;
+import ukmer.Kmer;
+import ukmer.KmerTableSetU;
+
+import kmer.AbstractKmerTableSet;
+import kmer.HashArray1D;
+import kmer.KmerTableSet;
+
+/**
+ * Records which of the 8 possible neighbors of each kmer are present, as a byte per cell.
+ * Bits 0-3 are right extensions and bits 4-7 left extensions, relative to the stored key.
+ * Once set, fillRightCounts and fillLeftCounts only probe neighbors whose bit is set.
+ * Masks remain valid as long as no kmers are added; removed kmers simply probe as 0.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ */
+public abstract class AbstractEdgeThread extends Thread{
+
+	/**
+	 * Constructor
+	 */
+	public AbstractEdgeThread(int id_, AtomicInteger nextTable_){
+		id=id_;
+		nextTable=nextTable_;
+		assert(nextTable.get()==0);
+	}
+
+	@Override
+	public final void run(){
+		while(processNextTable()){}
+	}
+
+	abstract boolean processNextTable();
+
+	/*--------------------------------------------------------------*/
+
+	public static long process(final int threads, AbstractKmerTableSet tables, boolean print){
+		Timer t=new Timer();
+
+		//Masks are filled using full probing
+		tables.setEdgeMasks(false);
+
+		final AtomicInteger nextTable=new AtomicInteger(0);
+		long edgesFound=0;
+
+		/* Create EdgeThreads */
+		ArrayList<AbstractEdgeThread> alpt=new ArrayList<AbstractEdgeThread>(threads);
+		for(int i=0; i<threads; i++){
+			final AbstractEdgeThread aet;
+			if(tables.getClass()==KmerTableSet.class){
+				aet=new EdgeThread1(i, nextTable, (KmerTableSet)tables);
+			}else{
+				aet=new EdgeThread2(i, nextTable, (KmerTableSetU)tables);
+			}
+			alpt.add(aet);
+		}
+		for(AbstractEdgeThread pt : alpt){pt.start();}
+
+		for(AbstractEdgeThread pt : alpt){
+			while(pt.getState()!=Thread.State.TERMINATED){
+				try {
+					pt.join();
+				} catch (InterruptedException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+
+			edgesFound+=pt.edgesFoundT;
+		}
+
+		tables.setEdgeMasks(true);
+
+		t.stop();
+		if(print){
+			outstream.println("Found "+edgesFound+" edges.");
+			outstream.println("Edge time: "+t);
+		}
+
+		return edgesFound;
+	}
+
+	/** Converts counts to a 4-bit presence mask */
+	static final int toBits(final int[] counts){
+		int bits=0;
+		for(int i=0; i<4; i++){
+			if(counts[i]>0){bits|=(1<<i);}
+		}
+		return bits;
+	}
+
+	/*--------------------------------------------------------------*/
+
+	private static class EdgeThread1 extends AbstractEdgeThread{
+
+		/**
+		 * Constructor
+		 */
+		public EdgeThread1(int id_, AtomicInteger nextTable_, KmerTableSet tables_){
+			super(id_, nextTable_);
+			tables=tables_;
+			k=tables.k;
+			shift=2*k;
+			shift2=shift-2;
+			mask=~((-1L)<<shift);
+		}
+
+		@Override
+		boolean processNextTable(){
+			final int tnum=nextTable.getAndAdd(1);
+			if(tnum>=tables.ways){return false;}
+			final HashArray1D table=tables.getTable(tnum);
+			final long[] keys=table.array();
+			final int lim=table.arrayLength();
+			table.initializeEdges();
+			for(int cell=0; cell<lim; cell++){
+				final long key=keys[cell];
+				if(key>=0){
+					final long rkey=AminoAcid.reverseComplementBinaryFast(key, k);
+					tables.fillRightCounts(key, rkey, rightCounts, mask, shift2);
+					tables.fillLeftCounts(key, rkey, leftCounts, mask, shift2);
+					final int right=toBits(rightCounts), left=toBits(leftCounts);
+					table.setCellEdges(cell, right|(left<<4));
+					edgesFoundT+=Integer.bitCount(right)+Integer.bitCount(left);
+				}
+			}
+			return true;
+		}
+
+		private final KmerTableSet tables;
+		private final int k, shift, shift2;
+		private final long mask;
+		private final int[] rightCounts=new int[4];
+		private final int[] leftCounts=new int[4];
+
+	}
+
+	/*--------------------------------------------------------------*/
+
+	private static class EdgeThread2 extends AbstractEdgeThread{
+
+		/**
+		 * Constructor
+		 */
+		public EdgeThread2(int id_, AtomicInteger nextTable_, KmerTableSetU tables_){
+			super(id_, nextTable_);
+			tables=tables_;
+			kmer=new Kmer(tables.k, tables.mult);
+		}
+
+		@Override
+		boolean processNextTable(){
+			final int tnum=nextTable.getAndAdd(1);
+			if(tnum>=tables.ways){return false;}
+			final HashArrayU1D table=tables.getTable(tnum);
+			final int lim=table.arrayLength();
+			table.initializeEdges();
+			for(int cell=0; cell<lim; cell++){
+				if(table.fillKmer(cell, kmer)!=null){
+					tables.fillRightCounts(kmer, rightCounts);
+					tables.fillLeftCounts(kmer, leftCounts);
+					int right=toBits(rightCounts), left=toBits(leftCounts);
+					if(kmer.key()!=kmer.array1()){//Store relative to the key orientation
+						final int temp=right;
+						right=flip(left);
+						left=flip(temp);
+					}
+					table.setCellEdges(cell, right|(left<<4));
+					edgesFoundT+=Integer.bitCount(right)+Integer.bitCount(left);
+				}
+			}
+			return true;
+		}
+
+		/** Maps base i to its complement, 3-i */
+		private static int flip(final int bits){
+			return Integer.reverse(bits)>>>28;
+		}
+
+		private final KmerTableSetU tables;
+		private final Kmer kmer;
+		private final int[] rightCounts=new int[4];
+		private final int[] leftCounts=new int[4];
+
+	}
+
+	/*--------------------------------------------------------------*/
+
+	long edgesFoundT=0;
+
+	final int id;
+
+	final AtomicInteger nextTable;
+
+	/** Print messages to this stream */
+	static PrintStream outstream=System.err;
+
+}
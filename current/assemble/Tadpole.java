@@ -260,6 +260,10 @@ public abstract class Tadpole {
 				kmerRangeMin=(int)Tools.parseKMG(b);
 			}else if(a.equals("maxcountretain") || a.equals("maxcr") || a.equals("maxdepthretain") || a.equals("maxdr")){
 				kmerRangeMax=(int)Tools.parseKMG(b);
+			}else if(a.equals("unitigs") || a.equals("compact")){
+				useUnitigs=Tools.parseBoolean(b);
+			}else if(a.equals("edgemasks") || a.equals("edges")){
+				useEdgeMasks=Tools.parseBoolean(b);
 			}else if(a.equals("contigpasses")){
 				contigPasses=(int)Tools.parseKMG(b);
 			}else if(a.equals("contigpassmult")){
@@ -679,6 +683,10 @@ public abstract class Tadpole {
 			AbstractRemoveThread.process(THREADS, kmerRangeMin, kmerRangeMax, tables(), true);
 		}
 		
+		if(useEdgeMasks){
+			AbstractEdgeThread.process(THREADS, tables(), true);
+		}
+		
 		if(mode==extendMode || mode==correctMode || mode==discardMode){
 			outstream.println("\nExtending/error-correcting/discarding.\n");
 			
@@ -775,6 +783,12 @@ public abstract class Tadpole {
 	abstract long shave(boolean shave, boolean rinse);
 	abstract void initializeOwnership();
 	
+	/**
+	 * Emits contigs for non-branching paths before the per-kmer build, and claims their kmers.
+	 * Must leave the result identical to what the build would have produced for those paths.
+	 */
+	abstract void buildUnitigs(ArrayList<Read> list);
+	
 	/**
 	 * Build contigs.
 	 */
@@ -786,6 +800,16 @@ public abstract class Tadpole {
 			
 			if(useOwnership){
 				initializeOwnership();
+				if(useUnitigs){
+					ArrayList<Read> unitigs=new ArrayList<Read>();
+					buildUnitigs(unitigs);
+					for(Read contig : unitigs){
+						allContigs.add(contig);
+						contigsBuilt++;
+						basesBuilt+=contig.length();
+						longestContig=Tools.max(longestContig, contig.length());
+					}
+				}
 			}
 			
 		}else if(mode==insertMode){
@@ -1416,6 +1440,10 @@ public abstract class Tadpole {
 	
 	protected int kmerRangeMin=0;
 	protected int kmerRangeMax=Integer.MAX_VALUE;
+	/** Precompute a neighbor bitmask per kmer so extension only probes existing neighbors */
+	protected boolean useEdgeMasks=false;
+	/** Build contigs from non-branching paths in a separate pass that needs no contended ownership claims */
+	protected boolean useUnitigs=false;
 	
 	protected int processingMode=-1;
 
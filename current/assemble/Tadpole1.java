@@ -94,6 +94,15 @@ public class Tadpole1 extends Tadpole {
 		tables.initializeOwnership();
 	}
 	
+	@Override
+	void buildUnitigs(ArrayList<Read> list){
+		if(!tables.rcompEnabled() || minCountSeed<minCountExtend || branchMult1<=0 || extendRight>=0){
+			outstream.println("Unitig compaction does not support these settings; skipping.");
+			return;
+		}
+		new UnitigCompactor1(this, tables, THREADS).process(list);
+	}
+	
 	@Override
 	long shave(boolean shave, boolean rinse){
 		final Shaver shaver=new Shaver1(tables, THREADS);
@@ -139,6 +148,8 @@ public class Tadpole1 extends Tadpole {
 	private final void release(byte[] array, int len, int id){tables.release(array, len, id);}
 	private final int fillRightCounts(long kmer, long rkmer, int[] counts, long mask, int shift2){return tables.fillRightCounts(kmer, rkmer, counts, mask, shift2);}
 	private final int fillLeftCounts(long kmer, long rkmer, int[] counts, long mask, int shift2){return tables.fillLeftCounts(kmer, rkmer, counts, mask, shift2);}
+	private final int fillRightCounts(long kmer, long rkmer, int[] counts, long mask, int shift2, int edges, int[] nextEdges){return tables.fillRightCounts(kmer, rkmer, counts, mask, shift2, edges, nextEdges);}
+	private final int fillLeftCounts(long kmer, long rkmer, int[] counts, long mask, int shift2, int edges){return tables.fillLeftCounts(kmer, rkmer, counts, mask, shift2, edges, null);}
 	private final StringBuilder toText(long kmer){return AbstractKmerTable.toText(kmer, k);}
 	
 	/*--------------------------------------------------------------*/
@@ -639,7 +650,11 @@ public class Tadpole1 extends Tadpole {
 			return -1;
 		}
 		
-		int rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2);
+		//Edge masks of each right extension come back with its count, so the next kmer needs no extra lookup
+		final int[] nextEdges=(useEdgeMasks ? new int[4] : null);
+		int edges=(useEdgeMasks ? tables.getEdges(kmer, rkmer) : -1);
+		
+		int rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2, edges, nextEdges);
 		int rightMax=rightCounts[rightMaxPos];
 //		int rightSecondPos=Tools.secondHighestPosition(rightCounts);
 //		int rightSecond=rightCounts[rightSecondPos];
@@ -657,13 +672,14 @@ public class Tadpole1 extends Tadpole {
 			//Now consider the next kmer
 			kmer=((kmer<<2)|(long)x)&mask;
 			rkmer=(rkmer>>>2)|(x2<<shift2);
+			edges=(nextEdges==null ? -1 : nextEdges[rightMaxPos]);
 			
 			assert(tables.getCount(kmer, rkmer)==rightMax);
 			count=rightMax;
 			
 			assert(count>=minCountExtend) : count;
 			
-			rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2);
+			rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2, edges, nextEdges);
 			rightMax=rightCounts[rightMaxPos];
 //			rightSecondPos=Tools.secondHighestPosition(rightCounts);
 //			rightSecond=rightCounts[rightSecondPos];
@@ -740,19 +756,23 @@ public class Tadpole1 extends Tadpole {
 		if(verbose){outstream.println("Owner: "+owner);}
 		if(owner>id){return BAD_OWNER;}
 		
+		//Edge masks of each right extension come back with its count, so the next kmer needs no extra lookup
+		final int[] nextEdges=(useEdgeMasks ? new int[4] : null);
+		int edges=(useEdgeMasks ? tables.getEdges(kmer, rkmer) : -1);
+		
 		int leftMaxPos=0;
 		int leftMax=minCountExtend;
 		int leftSecondPos=1;
 		int leftSecond=0;
 		
 		if(leftCounts!=null){
-			leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2);
+			leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2, edges);
 			leftMax=leftCounts[leftMaxPos];
 			leftSecondPos=Tools.secondHighestPosition(leftCounts);
 			leftSecond=leftCounts[leftSecondPos];
 		}
 		
-		int rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2);
+		int rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2, edges, nextEdges);
 		int rightMax=rightCounts[rightMaxPos];
 		int rightSecondPos=Tools.secondHighestPosition(rightCounts);
 		int rightSecond=rightCounts[rightSecondPos];
@@ -798,6 +818,7 @@ public class Tadpole1 extends Tadpole {
 			//Now consider the next kmer
 			kmer=((kmer<<2)|(long)x)&mask;
 			rkmer=(rkmer>>>2)|(x2<<shift2);
+			edges=(nextEdges==null ? -1 : nextEdges[rightMaxPos]);
 			
 			key=toValue(kmer, rkmer);
 			table=tables.getTableForKey(key);
@@ -808,13 +829,13 @@ public class Tadpole1 extends Tadpole {
 			assert(count>=minCountExtend) : count;
 
 			if(leftCounts!=null){
-				leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2);
+				leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2, edges);
 				leftMax=leftCounts[leftMaxPos];
 				leftSecondPos=Tools.secondHighestPosition(leftCounts);
 				leftSecond=leftCounts[leftSecondPos];
 			}
 			
-			rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2);
+			rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2, edges, nextEdges);
 			rightMax=rightCounts[rightMaxPos];
 			rightSecondPos=Tools.secondHighestPosition(rightCounts);
 			rightSecond=rightCounts[rightSecondPos];
@@ -934,19 +955,23 @@ public class Tadpole1 extends Tadpole {
 			return 0;
 		}
 		
+		//Edge masks of each right extension come back with its count, so the next kmer needs no extra lookup
+		final int[] nextEdges=(useEdgeMasks ? new int[4] : null);
+		int edges=(useEdgeMasks ? tables.getEdges(kmer, rkmer) : -1);
+		
 		int leftMaxPos=0;
 		int leftMax=minCountExtend;
 		int leftSecondPos=1;
 		int leftSecond=0;
 		
 		if(leftCounts!=null){
-			leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2);
+			leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2, edges);
 			leftMax=leftCounts[leftMaxPos];
 			leftSecondPos=Tools.secondHighestPosition(leftCounts);
 			leftSecond=leftCounts[leftSecondPos];
 		}
 		
-		int rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2);
+		int rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2, edges, nextEdges);
 		int rightMax=rightCounts[rightMaxPos];
 		int rightSecondPos=Tools.secondHighestPosition(rightCounts);
 		int rightSecond=rightCounts[rightSecondPos];
@@ -983,6 +1008,7 @@ public class Tadpole1 extends Tadpole {
 			//Now consider the next kmer
 			kmer=((kmer<<2)|(long)x)&mask;
 			rkmer=(rkmer>>>2)|(x2<<shift2);
+			edges=(nextEdges==null ? -1 : nextEdges[rightMaxPos]);
 			
 			key=toValue(kmer, rkmer);
 			table=tables.getTableForKey(key);
@@ -993,13 +1019,13 @@ public class Tadpole1 extends Tadpole {
 			assert(count>=minCountExtend) : count;
 			
 			if(leftCounts!=null){
-				leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2);
+				leftMaxPos=fillLeftCounts(kmer, rkmer, leftCounts, mask, shift2, edges);
 				leftMax=leftCounts[leftMaxPos];
 				leftSecondPos=Tools.secondHighestPosition(leftCounts);
 				leftSecond=leftCounts[leftSecondPos];
 			}
 			
-			rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2);
+			rightMaxPos=fillRightCounts(kmer, rkmer, rightCounts, mask, shift2, edges, nextEdges);
 			rightMax=rightCounts[rightMaxPos];
 			rightSecondPos=Tools.secondHighestPosition(rightCounts);
 			rightSecond=rightCounts[rightSecondPos];
@@ -97,6 +97,11 @@ public class Tadpole2 extends Tadpole {
 		tables.initializeOwnership();
 	}
 	
+	@Override
+	void buildUnitigs(ArrayList<Read> list){
+		outstream.println("unitigs=t is only supported for k<32; building contigs normally.");
+	}
+	
 	@Override
 	long shave(boolean shave, boolean rinse){
 		final Shaver2 shaver=new Shaver2(tables, THREADS);
@@ -138,6 +143,8 @@ public class Tadpole2 extends Tadpole {
 	private final void release(byte[] array, int len, int id, Kmer kmer){tables.release(array, len, id, kmer);}
 	private final int fillRightCounts(Kmer kmer, int[] counts){return tables.fillRightCounts(kmer, counts);}
 	private final int fillLeftCounts(Kmer kmer, int[] counts){return tables.fillLeftCounts(kmer, counts);}
+	private final int fillRightCounts(Kmer kmer, int[] counts, int edges, int[] nextEdges){return tables.fillRightCounts(kmer, counts, edges, nextEdges);}
+	private final int fillLeftCounts(Kmer kmer, int[] counts, int edges){return tables.fillLeftCounts(kmer, counts, edges, null);}
 	private final StringBuilder toText(Kmer kmer){return AbstractKmerTableU.toText(kmer);}
 	private final StringBuilder toText(long[] key, int k){return AbstractKmerTableU.toText(key, k);}
 	
@@ -643,7 +650,11 @@ public class Tadpole2 extends Tadpole {
 			return -1;
 		}
 		
-		int rightMaxPos=fillRightCounts(kmer1, rightCounts);
+		//Edge masks of each right extension come back with its count, so the next kmer needs no extra lookup
+		final int[] nextEdges=(useEdgeMasks ? new int[4] : null);
+		int edges=(useEdgeMasks ? tables.getEdges(kmer1) : -1);
+		
+		int rightMaxPos=fillRightCounts(kmer1, rightCounts, edges, nextEdges);
 		int rightMax=rightCounts[rightMaxPos];
 //		int rightSecondPos=Tools.secondHighestPosition(rightCounts);
 //		int rightSecond=rightCounts[rightSecondPos];
@@ -657,13 +668,14 @@ public class Tadpole2 extends Tadpole {
 //			final byte b=AminoAcid.numberToBase[rightMaxPos];
 			final long x=rightMaxPos;
 			kmer1.addRightNumeric(x);
+			edges=(nextEdges==null ? -1 : nextEdges[rightMaxPos]);
 			
 			assert(tables.getCount(kmer1)==rightMax);
 			count=rightMax;
 			
 			assert(count>=minCountExtend) : count;
 			
-			rightMaxPos=fillRightCounts(kmer1, rightCounts);
+			rightMaxPos=fillRightCounts(kmer1, rightCounts, edges, nextEdges);
 			rightMax=rightCounts[rightMaxPos];
 //			rightSecondPos=Tools.secondHighestPosition(rightCounts);
 //			rightSecond=rightCounts[rightSecondPos];
@@ -721,19 +733,23 @@ public class Tadpole2 extends Tadpole {
 		if(verbose){outstream.println("Owner: "+owner);}
 		if(owner>id){return BAD_OWNER;}
 		
+		//Edge masks of each right extension come back with its count, so the next kmer needs no extra lookup
+		final int[] nextEdges=(useEdgeMasks ? new int[4] : null);
+		int edges=(useEdgeMasks ? tables.getEdges(kmer) : -1);
+		
 		int leftMaxPos=0;
 		int leftMax=minCountExtend;
 		int leftSecondPos=1;
 		int leftSecond=0;
 		
 		if(leftCounts!=null){
-			leftMaxPos=fillLeftCounts(kmer, leftCounts);
+			leftMaxPos=fillLeftCounts(kmer, leftCounts, edges);
 			leftMax=leftCounts[leftMaxPos];
 			leftSecondPos=Tools.secondHighestPosition(leftCounts);
 			leftSecond=leftCounts[leftSecondPos];
 		}
 		
-		int rightMaxPos=fillRightCounts(kmer, rightCounts);
+		int rightMaxPos=fillRightCounts(kmer, rightCounts, edges, nextEdges);
 		int rightMax=rightCounts[rightMaxPos];
 		int rightSecondPos=Tools.secondHighestPosition(rightCounts);
 		int rightSecond=rightCounts[rightSecondPos];
@@ -772,6 +788,7 @@ public class Tadpole2 extends Tadpole {
 			
 			//Now consider the next kmer
 			final long evicted=kmer.addRightNumeric(rightMaxPos);
+			edges=(nextEdges==null ? -1 : nextEdges[rightMaxPos]);
 			
 			table=tables.getTable(kmer);
 			
@@ -781,13 +798,13 @@ public class Tadpole2 extends Tadpole {
 			assert(count>=minCountExtend) : count;
 
 			if(leftCounts!=null){
-				leftMaxPos=fillLeftCounts(kmer, leftCounts);
+				leftMaxPos=fillLeftCounts(kmer, leftCounts, edges);
 				leftMax=leftCounts[leftMaxPos];
 				leftSecondPos=Tools.secondHighestPosition(leftCounts);
 				leftSecond=leftCounts[leftSecondPos];
 			}
 			
-			rightMaxPos=fillRightCounts(kmer, rightCounts);
+			rightMaxPos=fillRightCounts(kmer, rightCounts, edges, nextEdges);
 			rightMax=rightCounts[rightMaxPos];
 			rightSecondPos=Tools.secondHighestPosition(rightCounts);
 			rightSecond=rightCounts[rightSecondPos];
@@ -884,19 +901,23 @@ public class Tadpole2 extends Tadpole {
 			return 0;
 		}
 		
+		//Edge masks of each right extension come back with its count, so the next kmer needs no extra lookup
+		final int[] nextEdges=(useEdgeMasks ? new int[4] : null);
+		int edges=(useEdgeMasks ? tables.getEdges(kmer) : -1);
+		
 		int leftMaxPos=0;
 		int leftMax=minCountExtend;
 		int leftSecondPos=1;
 		int leftSecond=0;
 		
 		if(leftCounts!=null){
-			leftMaxPos=fillLeftCounts(kmer, leftCounts);
+			leftMaxPos=fillLeftCounts(kmer, leftCounts, edges);
 			leftMax=leftCounts[leftMaxPos];
 			leftSecondPos=Tools.secondHighestPosition(leftCounts);
 			leftSecond=leftCounts[leftSecondPos];
 		}
 		
-		int rightMaxPos=fillRightCounts(kmer, rightCounts);
+		int rightMaxPos=fillRightCounts(kmer, rightCounts, edges, nextEdges);
 		int rightMax=rightCounts[rightMaxPos];
 		int rightSecondPos=Tools.secondHighestPosition(rightCounts);
 		int rightSecond=rightCounts[rightSecondPos];
@@ -928,6 +949,7 @@ public class Tadpole2 extends Tadpole {
 			
 			//Now consider the next kmer
 			final long evicted=kmer.addRightNumeric(rightMaxPos);
+			edges=(nextEdges==null ? -1 : nextEdges[rightMaxPos]);
 			
 			table=tables.getTable(kmer);
 			
@@ -937,13 +959,13 @@ public class Tadpole2 extends Tadpole {
 			assert(count>=minCountExtend) : count;
 			
 			if(leftCounts!=null){
-				leftMaxPos=fillLeftCounts(kmer, leftCounts);
+				leftMaxPos=fillLeftCounts(kmer, leftCounts, edges);
 				leftMax=leftCounts[leftMaxPos];
 				leftSecondPos=Tools.secondHighestPosition(leftCounts);
 				leftSecond=leftCounts[leftSecondPos];
 			}
 			
-			rightMaxPos=fillRightCounts(kmer, rightCounts);
+			rightMaxPos=fillRightCounts(kmer, rightCounts, edges, nextEdges);
 			rightMax=rightCounts[rightMaxPos];
 			rightSecondPos=Tools.secondHighestPosition(rightCounts);
 			rightSecond=rightCounts[rightSecondPos];
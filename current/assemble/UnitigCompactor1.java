@@ -0,0 +1,359 @@
+package assemble;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kmer.AbstractKmerTable;
+import kmer.HashArray1D;
+import kmer.KmerTableSet;
+import stream.ByteBuilder;
+import stream.Read;
+import structures.IntList;
+import structures.LongList;
+import align2.Tools;
+import dna.AminoAcid;
+import dna.Timer;
+
+/**
+ * Collapses non-branching paths of the kmer graph into unitigs before contig building.
+ *
+ * Pass 1 classifies every kmer in parallel, storing one byte per cell:
+ * whether it can be part of a contig (count>=minCountExtend and not a junction),
+ * and its best left and right extensions.
+ * Pass 2 walks each path once, from its ends, using only those bytes,
+ * and emits it as a contig if any kmer reaches minCountSeed.
+ * Each path is emitted by the walk starting at its lower end key, so no ownership claims are contended;
+ * kmers of walked paths are then marked as owned so the normal build skips them.
+ *
+ * Cycles, hairpins, and paths longer than maxContigLen have no unique ends,
+ * and are left to the normal per-kmer build, which handles them as before.
+ * Only used when enabled with unitigs=t; contigs match the normal build's sequences,
+ * but orientation, order, and numbering differ.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class UnitigCompactor1 {
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Constructor          ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public UnitigCompactor1(Tadpole1 tad_, KmerTableSet tables_, int threads_){
+		tad=tad_;
+		tables=tables_;
+		threads=threads_;
+		k=tables.k;
+		shift=2*k;
+		shift2=shift-2;
+		mask=~((-1L)<<shift);
+		ways=tables.ways;
+		owner=threads;
+		states=new byte[ways][];
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Builds contigs from unitigs and adds them to the list.
+	 * Ownership must be initialized.
+	 * @return Number of kmers claimed by unitigs
+	 */
+	public long process(ArrayList<Read> contigs){
+		Timer t=new Timer();
+
+		{
+			final AtomicInteger nextTable=new AtomicInteger(0);
+			ArrayList<ClassifyThread> alct=new ArrayList<ClassifyThread>(threads);
+			for(int i=0; i<threads; i++){alct.add(new ClassifyThread(nextTable));}
+			for(ClassifyThread ct : alct){ct.start();}
+			for(ClassifyThread ct : alct){join(ct);}
+		}
+
+		long kmersClaimed=0, unitigs=0;
+		{
+			final AtomicInteger nextTable=new AtomicInteger(0);
+			ArrayList<WalkThread> alwt=new ArrayList<WalkThread>(threads);
+			for(int i=0; i<threads; i++){alwt.add(new WalkThread(nextTable));}
+			for(WalkThread wt : alwt){wt.start();}
+			for(WalkThread wt : alwt){
+				join(wt);
+				contigs.addAll(wt.contigsT);
+				kmersClaimed+=wt.kmersClaimedT;
+				unitigs+=wt.unitigsT;
+			}
+		}
+
+		for(int i=0; i<ways; i++){states[i]=null;}
+
+		t.stop();
+		outstream.println("Unitigs:                    \t"+unitigs);
+		outstream.println("Kmers in unitigs:           \t"+kmersClaimed);
+		outstream.println("Unitig time:                \t"+t);
+		return kmersClaimed;
+	}
+
+	private static void join(Thread x){
+		while(x.getState()!=Thread.State.TERMINATED){
+			try {
+				x.join();
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Classification        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Returns the state of a kmer in its key orientation:
+	 * NODE if it could be extended through, plus its best right and left extensions; or 0.
+	 * These are the same tests used by Tadpole1.extendToRight.
+	 */
+	private int classify(final long key, final int[] leftCounts, final int[] rightCounts){
+		final long rkey=AminoAcid.reverseComplementBinaryFast(key, k);
+		final int leftMaxPos=tables.fillLeftCounts(key, rkey, leftCounts, mask, shift2);
+		final int leftSecondPos=Tools.secondHighestPosition(leftCounts);
+		final int rightMaxPos=tables.fillRightCounts(key, rkey, rightCounts, mask, shift2);
+		final int rightSecondPos=Tools.secondHighestPosition(rightCounts);
+		if(tad.isJunction(rightCounts[rightMaxPos], rightCounts[rightSecondPos], leftCounts[leftMaxPos], leftCounts[leftSecondPos])){
+			return 0;
+		}
+		return NODE|(rightMaxPos<<1)|(leftMaxPos<<3);
+	}
+
+	/** Best extension to the right when walking in this orientation */
+	private static int walkRight(final int state, final boolean fwd){
+		return fwd ? (state>>1)&3 : 3-((state>>3)&3);
+	}
+
+	/** Best extension to the left when walking in this orientation */
+	private static int walkLeft(final int state, final boolean fwd){
+		return fwd ? (state>>3)&3 : 3-((state>>1)&3);
+	}
+
+	private class ClassifyThread extends Thread {
+
+		ClassifyThread(AtomicInteger nextTable_){
+			nextTable=nextTable_;
+		}
+
+		@Override
+		public void run(){
+			for(int tnum=nextTable.getAndIncrement(); tnum<ways; tnum=nextTable.getAndIncrement()){
+				final HashArray1D table=tables.getTable(tnum);
+				final long[] keys=table.array();
+				final int[] values=table.values();
+				final int lim=table.arrayLength();
+				final byte[] st=new byte[lim];
+				for(int cell=0; cell<lim; cell++){
+					final long key=keys[cell];
+					if(key>=0 && values[cell]>=tad.minCountExtend){
+						st[cell]=(byte)classify(key, leftCounts, rightCounts);
+					}
+				}
+				states[tnum]=st;
+			}
+		}
+
+		private final AtomicInteger nextTable;
+		private final int[] leftCounts=new int[4];
+		private final int[] rightCounts=new int[4];
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Walking            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private class WalkThread extends Thread {
+
+		WalkThread(AtomicInteger nextTable_){
+			nextTable=nextTable_;
+		}
+
+		@Override
+		public void run(){
+			for(int tnum=nextTable.getAndIncrement(); tnum<ways; tnum=nextTable.getAndIncrement()){
+				final HashArray1D table=tables.getTable(tnum);
+				final long[] keys=table.array();
+				final byte[] st=states[tnum];
+				final int lim=table.arrayLength();
+				for(int cell=0; cell<lim; cell++){
+					final int state=st[cell];
+					if((state&NODE)!=0 && (state&CLAIMED)==0){
+						final long key=keys[cell];
+						final long rkey=AminoAcid.reverseComplementBinaryFast(key, k);
+						if(!hasInEdge(key, rkey, state, true)){walk(key, rkey, state, true);}
+						if(!hasInEdge(rkey, key, state, false)){walk(rkey, key, state, false);}
+					}
+				}
+			}
+		}
+
+		/** Looks up the state of a key, and remembers its table, cell, and count */
+		private int lookup(final long key){
+			lastTable=(int)(key%ways);
+			final HashArray1D table=tables.getTable(lastTable);
+			lastCell=table.findCell(key);
+			if(lastCell>=0){
+				lastCount=table.readCellValue(lastCell);
+				return states[lastTable][lastCell];
+			}
+			if(lastCell==AbstractKmerTable.HASH_COLLISION){
+				lastCount=table.getValue(key);
+				return (lastCount>=tad.minCountExtend ? classify(key, leftCounts, rightCounts) : 0);
+			}
+			lastCount=0;
+			return 0;
+		}
+
+		/** True if the kmer is reachable from a left neighbor when walking in this orientation */
+		private boolean hasInEdge(final long kmer, final long rkmer, final int state, final boolean fwd){
+			final long x=walkLeft(state, fwd);
+			final long kmer2=(kmer>>>2)|(x<<shift2);
+			final long rkmer2=((rkmer<<2)|(3-x))&mask;
+			final long key2=Tools.max(kmer2, rkmer2);
+			final int state2=lookup(key2);
+			return (state2&NODE)!=0 && walkRight(state2, key2==kmer2)==(int)(kmer&3);
+		}
+
+		/** Walks right from a path end, and emits the path if this is its canonical end */
+		private void walk(long kmer, long rkmer, int state, final boolean fwd0){
+			final long startKey=Tools.max(kmer, rkmer);
+			
+			//Extension from the key orientation of an end kmer that immediately hits a branch yields no contig,
+			//so such a kmer cannot seed the path.
+			boolean startSeeds=true;
+			if(!fwd0){
+				final long x=walkLeft(state, false);
+				lookup(Tools.max((kmer>>>2)|(x<<shift2), ((rkmer<<2)|(3-x))&mask));
+				startSeeds=(lastCount<tad.minCountExtend);
+			}
+			
+			bb.clear();
+			bb.appendKmer(kmer, k);
+			keysT.clear();
+			cellsT.clear();
+			lookup(startKey);
+			final int startCount=lastCount;
+			add(startKey);
+			int innerMax=0, stopCount=startCount;
+			boolean fwd=fwd0;
+
+			while(true){
+				final long x=walkRight(state, fwd);
+				final long kmer2=((kmer<<2)|x)&mask;
+				final long rkmer2=(rkmer>>>2)|((3-x)<<shift2);
+				final long key2=Tools.max(kmer2, rkmer2);
+				final int state2=lookup(key2);
+				if((state2&NODE)==0){break;}
+				final boolean fwd2=(key2==kmer2);
+				if(walkLeft(state2, fwd2)!=(int)(kmer>>>shift2)){break;}
+				if(bb.length()>=tad.maxContigLen){return;}//Too long; leave it for the normal build
+				bb.append(AminoAcid.numberToBase[(int)x]);
+				add(key2);
+				if(keysT.size>2){innerMax=Tools.max(innerMax, stopCount);}
+				stopCount=lastCount;
+				kmer=kmer2;
+				rkmer=rkmer2;
+				state=state2;
+				fwd=fwd2;
+			}
+			final boolean stopSeeds=(!fwd || lastCount<tad.minCountExtend);
+
+			final long stopKey=Tools.max(kmer, rkmer);
+			if(startKey>stopKey){return;}//The walk from the other end will emit it
+			if(startKey==stopKey && (bb.length()>k || !fwd0)){return;}//Hairpin, or the second orientation of a lone kmer
+			
+			int maxCount=innerMax;
+			if(startSeeds && keysT.size>1){maxCount=Tools.max(maxCount, startCount);}
+			if(stopSeeds){maxCount=Tools.max(maxCount, stopCount);}
+			if(maxCount<tad.minCountSeed){return;}//Would never be seeded
+
+			claim();
+			unitigsT++;
+			emit();
+		}
+
+		private void add(final long key){
+			keysT.add(key);
+			cellsT.add(lastCell);
+		}
+
+		/** Marks every kmer in the path as owned, so the normal build skips it */
+		private void claim(){
+			for(int i=0; i<keysT.size; i++){
+				final long key=keysT.get(i);
+				final int cell=cellsT.get(i);
+				final int tnum=(int)(key%ways);
+				final HashArray1D table=tables.getTable(tnum);
+				if(cell>=0){
+					states[tnum][cell]|=CLAIMED;
+					table.setCellOwnerExclusive(cell, owner);
+				}else{
+					table.setOwner(key, owner);
+				}
+			}
+			kmersClaimedT+=keysT.size;
+		}
+
+		/** Applies the same filters as contig building */
+		private void emit(){
+			if(tad.trimEnds>0){bb.trimByAmount(tad.trimEnds, tad.trimEnds);}
+			if(bb.length()<k+tad.minExtension || bb.length()<tad.minContigLen){return;}
+			final byte[] contig=bb.toBytes();
+			final float coverage=tables.calcCoverage(contig, contig.length);
+			if(coverage<tad.minCoverage){return;}
+			final long num=tad.contigNum.incrementAndGet();
+			Read r=new Read(contig, -1, -1, -1, "*", null, num, 0);
+			float gc=r.gc();
+			r.id="contig_"+num+",length="+contig.length+",cov="+String.format("%.1f", coverage)+",gc="+String.format("%.3f", gc);
+			contigsT.add(r);
+		}
+
+		private final AtomicInteger nextTable;
+		private final int[] leftCounts=new int[4];
+		private final int[] rightCounts=new int[4];
+		private final ByteBuilder bb=new ByteBuilder();
+		private final LongList keysT=new LongList();
+		private final IntList cellsT=new IntList();
+
+		private int lastTable, lastCell, lastCount;
+
+		final ArrayList<Read> contigsT=new ArrayList<Read>();
+		long kmersClaimedT=0;
+		long unitigsT=0;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final Tadpole1 tad;
+	private final KmerTableSet tables;
+	private final int threads;
+	private final int k, shift, shift2, ways;
+	private final long mask;
+	/** Owner id for claimed kmers; higher than any build thread, so those never take them over */
+	private final int owner;
+
+	/** Per-cell state, indexed by table and cell */
+	private final byte[][] states;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final int NODE=1, CLAIMED=64;
+
+	/** Print messages to this stream */
+	static PrintStream outstream=System.err;
+
+}
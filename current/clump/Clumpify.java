@@ -66,6 +66,8 @@ public class Clumpify {
 				delete=Tools.parseBoolean(b);
 			}else if(a.equals("usetmpdir")){
 				useTmpdir=Tools.parseBoolean(b);
+			}else if(a.equals("binarytemp") || a.equals("bbrtemp")){
+				binaryTemp=Tools.parseBoolean(b);
 			}else{
 				args2.add(arg);
 			}
@@ -100,7 +102,7 @@ public class Clumpify {
 			final String temp;
 			String core=ReadWrite.stripToCore(out1);
 			String path=ReadWrite.getPath(out1);
-			String extension=ReadWrite.getExtension(out1);
+			String extension=(binaryTemp ? ".bbr" : ReadWrite.getExtension(out1));
 			if(useTmpdir && Shared.TMPDIR!=null){
 				temp=Shared.TMPDIR+core+"_temp%_"+Long.toHexString((randy.nextLong()&Long.MAX_VALUE))+extension;
 			}else{
@@ -131,6 +133,8 @@ public class Clumpify {
 	private int groups=16;
 	private boolean useTmpdir=false;
 	private boolean delete=true;
+	/** Write the split groups in the binary read format */
+	private boolean binaryTemp=true;
 	
 	private String in1=null;
 	private String out1=null;
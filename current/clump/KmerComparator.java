@@ -96,7 +96,7 @@ public class KmerComparator implements Comparator<Read> {
 
 		if(b.obj==null){
 			blist=new long[2];
-			b.obj=alist;
+			b.obj=blist;
 			fillLocalMax(b, blist);
 		}else{blist=(long[])b.obj;}
 		
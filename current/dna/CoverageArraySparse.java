@@ -0,0 +1,267 @@
+package dna;
+import java.io.Serializable;
+
+import structures.IntList;
+
+/**
+ * Coverage array that only allocates pages containing covered positions,
+ * so memory is proportional to the covered portion of a huge, sparsely covered scaffold.
+ * Values saturate at the same maximum as CoverageArray2 (16-bit) or CoverageArray3 (32-bit),
+ * and the logical length grows exactly as theirs does, so statistics match.
+ * Pages are char[] in 16-bit mode and int[] in 32-bit mode.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class CoverageArraySparse extends CoverageArray implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 3311524071876406152L;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public CoverageArraySparse(int chrom, int initialLen, boolean bits32){
+		super(chrom);
+		maxValue=(bits32 ? Integer.MAX_VALUE : Character.MAX_VALUE);
+		length=initialLen;
+		if(bits32){pages32=new int[pageCount(initialLen)][];}
+		else{pages16=new char[pageCount(initialLen)][];}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Methods            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * @param loc
+	 * @param amt
+	 */
+	public void increment(int loc, int amt) {
+		set(loc, get(loc)+(long)amt);
+	}
+
+	/**
+	 * @param loc
+	 */
+	public void increment(int loc) {
+		set(loc, get(loc)+1L);
+	}
+
+	public void incrementRange(int min, int max, int amt) {
+		if(min<0){min=0;}
+		if(max>=length){//Increase size
+			int newlen=1+(7*max(length, max))/4;
+			assert(newlen>max);
+			resize(newlen);
+			assert(length==newlen);
+		}else if(max<0){max=-1;}
+		if(min>max || amt==0){return;}
+		for(int p=min>>>PAGE_BITS, lastPage=max>>>PAGE_BITS; p<=lastPage; p++){
+			final int base=p<<PAGE_BITS;
+			final int from=max(min, base)-base, to=min(max, base+PAGE_MASK)-base;
+			if(pages32!=null){
+				final int[] page=getOrAllocPage32(p);
+				for(int i=from; i<=to; i++){
+					page[i]=cap(page[i]+(long)amt);
+				}
+			}else{
+				final char[] page=getOrAllocPage16(p);
+				for(int i=from; i<=to; i++){
+					page[i]=(char)cap(page[i]+(long)amt);
+				}
+			}
+		}
+	}
+
+	public void set(int loc, int val){
+		set(loc, (long)val);
+	}
+
+	public void set(int loc, long val){
+		if(loc>=length){//Increase size
+			int newlen=1+(7*max(length, loc))/4;
+			assert(newlen>loc);
+			resize(newlen);
+			assert(length==newlen);
+		}else if(loc<0){
+			return;
+		}
+
+		final int x=cap(val);
+		final int p=loc>>>PAGE_BITS;
+		if(pages32!=null){
+			if(x!=0 || pages32[p]!=null){getOrAllocPage32(p)[loc&PAGE_MASK]=x;}
+		}else{
+			if(x!=0 || pages16[p]!=null){getOrAllocPage16(p)[loc&PAGE_MASK]=(char)x;}
+		}
+		minIndex=min(loc, minIndex);
+		maxIndex=max(loc, maxIndex);
+	}
+
+	public int get(int loc){
+		if(loc>=length || loc<0){return 0;}
+		if(pages32!=null){
+			final int[] page=pages32[loc>>>PAGE_BITS];
+			return page==null ? 0 : page[loc&PAGE_MASK];
+		}
+		final char[] page=pages16[loc>>>PAGE_BITS];
+		return page==null ? 0 : page[loc&PAGE_MASK];
+	}
+
+	/**
+	 * Iterates over covered positions.
+	 * @return The first position at or after loc with nonzero coverage, or -1 if there is none.
+	 */
+	public int nextCovered(int loc){
+		if(loc<0){loc=0;}
+		for(int p=loc>>>PAGE_BITS, pageCount=pageCount(length); p<pageCount; p++){
+			final int base=p<<PAGE_BITS;
+			final int lim=min(PAGE_LEN, length-base);
+			if(pages32!=null){
+				final int[] page=pages32[p];
+				if(page!=null){
+					for(int i=max(loc-base, 0); i<lim; i++){
+						if(page[i]!=0){return base+i;}
+					}
+				}
+			}else{
+				final char[] page=pages16[p];
+				if(page!=null){
+					for(int i=max(loc-base, 0); i<lim; i++){
+						if(page[i]!=0){return base+i;}
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value at this index if the array were sorted in descending order,
+	 * without sorting it.  Covered positions are tallied in a histogram;
+	 * only values too high for the histogram (32-bit mode) are gathered and sorted.
+	 */
+	public int valueAtDescendingRank(int rank){
+		if(rank<0){return 0;}
+		final int[] hist=new int[HIST_LEN];
+		final IntList high=new IntList();
+		for(int i=nextCovered(0); i>=0; i=nextCovered(i+1)){
+			final int x=get(i);
+			if(x<HIST_LEN){hist[x]++;}
+			else{high.add(x);}
+		}
+		if(rank<high.size){
+			high.sort();
+			return high.get(high.size-1-rank);
+		}
+		rank-=high.size;
+		for(int x=HIST_LEN-1; x>0; x--){
+			if(rank<hist[x]){return x;}
+			rank-=hist[x];
+		}
+		return 0;
+	}
+
+	/** Identical to Tools.standardDeviation on the equivalent dense array */
+	public double standardDeviation(){
+		if(length<1){return 0;}
+		long sum=0;
+		for(int i=nextCovered(0); i>=0; i=nextCovered(i+1)){
+			sum+=get(i);
+		}
+		final double avg=sum/(double)length;
+		double sumdev2=0;
+		for(int i=0; i<length; i++){
+			long x=get(i);
+			double dev=avg-x;
+			sumdev2+=(dev*dev);
+		}
+		return Math.sqrt(sumdev2/length);
+	}
+
+	public void resize(int newlen){
+		assert(newlen>maxIndex) : newlen+","+maxIndex;
+		final int newPages=pageCount(newlen);
+		if(pages32!=null && newPages!=pages32.length){
+			int[][] temp=new int[newPages][];
+			System.arraycopy(pages32, 0, temp, 0, min(pages32.length, newPages));
+			pages32=temp;
+		}else if(pages16!=null && newPages!=pages16.length){
+			char[][] temp=new char[newPages][];
+			System.arraycopy(pages16, 0, temp, 0, min(pages16.length, newPages));
+			pages16=temp;
+		}
+		length=newlen;
+	}
+
+	public String toString(){
+		StringBuilder sb=new StringBuilder();
+		sb.append('[');
+		for(int i=0; i<=maxIndex; i++){
+			if(i>0){sb.append(", ");}
+			sb.append(get(i));
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Helper Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private int[] getOrAllocPage32(int p){
+		int[] page=pages32[p];
+		if(page==null){
+			page=pages32[p]=new int[PAGE_LEN];
+		}
+		return page;
+	}
+
+	private char[] getOrAllocPage16(int p){
+		char[] page=pages16[p];
+		if(page==null){
+			page=pages16[p]=new char[PAGE_LEN];
+		}
+		return page;
+	}
+
+	private int cap(long val){
+		if(val>maxValue){
+			if(!OVERFLOWED){
+				System.err.println("Note: Coverage capped at "+maxValue);
+				OVERFLOWED=true;
+			}
+			return maxValue;
+		}
+		return (int)val;
+	}
+
+	private static int pageCount(int len){
+		return (int)((len+(long)PAGE_MASK)>>>PAGE_BITS);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Pages in 32-bit mode, else null */
+	private int[][] pages32;
+	/** Pages in 16-bit mode, else null */
+	private char[][] pages16;
+	private int length;
+	private final int maxValue;
+	public int arrayLength(){return length;}
+
+	private static final int PAGE_BITS=12;
+	public static final int PAGE_LEN=1<<PAGE_BITS;
+	private static final int PAGE_MASK=PAGE_LEN-1;
+	/** Covers every 16-bit value */
+	private static final int HIST_LEN=Character.MAX_VALUE+1;
+
+	private static boolean OVERFLOWED=false;
+
+}
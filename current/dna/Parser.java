@@ -8,6 +8,7 @@ import java.util.HashSet;
 import jgi.CalcTrueQuality;
 import kmer.AbstractKmerTable;
 
+import stream.BatchTuner;
 import stream.ConcurrentDepot;
 import stream.ConcurrentReadInputStream;
 import stream.FASTQ;
@@ -460,10 +461,17 @@ public class Parser {
 			Shared.MPI_KEEP_ALL=Tools.parseBoolean(b);
 		}else if(a.equals("readbufferlength") || a.equals("readbufferlen")){
 			Shared.READ_BUFFER_LENGTH=(int)Tools.parseKMG(b);
+			Shared.ADAPTIVE_READ_BUFFERS=false;
 		}else if(a.equals("readbufferdata")){
 			Shared.READ_BUFFER_MAX_DATA=(int)Tools.parseKMG(b);
+			Shared.ADAPTIVE_READ_BUFFERS=false;
 		}else if(a.equals("readbuffers")){
 			Shared.setBuffers(Integer.parseInt(b));
+			Shared.ADAPTIVE_READ_BUFFERS=false;
+		}else if(a.equals("adaptivebuffers") || a.equals("adaptivebatching")){
+			Shared.ADAPTIVE_READ_BUFFERS=Tools.parseBoolean(b);
+		}else if(a.equals("showbuffers") || a.equals("reportbuffers")){
+			BatchTuner.REPORT=Tools.parseBoolean(b);
 		}else if(a.equals("rbm") || a.equals("renamebymapping")){
 			FASTQ.TAG_CUSTOM=Tools.parseBoolean(b);
 		}else if(a.equals("don") || a.equals("deleteoldname")){
@@ -800,6 +808,8 @@ public class Parser {
 		}else if(a.equals("observationcutoff")){
 			long x=Long.parseLong(b);
 			CalcTrueQuality.OBSERVATION_CUTOFF[pass]=x;
+		}else if(a.equals("binarytable") || a.equals("recaltable")){
+			CalcTrueQuality.USE_BINARY_TABLE=Tools.parseBoolean(b);
 		}else if(a.equals("recalpasses")){
 			CalcTrueQuality.passes=Integer.parseInt(b);
 		}else if(a.equals("recalqmax")){
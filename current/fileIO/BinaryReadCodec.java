@@ -0,0 +1,452 @@
+package fileIO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import stream.ByteBuilder;
+import stream.Read;
+import stream.SamLine;
+
+/**
+ * Encoder and decoder for the binary read container (extension .bbr),
+ * intended for temporary files that are written and reread by the same program.
+ * Bases are packed 2 bits each, with a list of exceptions for other symbols;
+ * quality scores are raw or optionally binned; reads are grouped into independently
+ * deflated blocks, so no text is formatted or parsed.
+ * Mapping fields, match strings, attached SamLines and long[] kmer keys are preserved;
+ * other attached objects are not.
+ *
+ * Layout (big-endian):
+ * header: magic (long), version, flags (ints);
+ * blocks: rawLength, storedLength (-1 if not deflated), pairs (ints), then the payload.
+ * Payload records: mate flag (byte), read 1, and read 2 if present.
+ * Reads: flags, numericID, id, bases, quality, extras; integers are variable-length,
+ * and arrays are preceded by their length.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class BinaryReadCodec {
+
+	public BinaryReadCodec(){this(BIN_QUALITY);}
+
+	/** @param binQuality_ Bin quality scores when writing */
+	public BinaryReadCodec(boolean binQuality_){
+		binQuality=binQuality_;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Header            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public static void writeHeader(OutputStream os) throws IOException {
+		final byte[] header=new byte[HEADER_BYTES];
+		putLong(header, 0, MAGIC);
+		putInt(header, 8, VERSION);
+		putInt(header, 12, 0);
+		os.write(header);
+	}
+
+	/** Reads and checks the header; throws an exception if this is not a binary read file */
+	public static void readHeader(InputStream is, String fname) throws IOException {
+		final byte[] header=new byte[HEADER_BYTES];
+		if(!readFully(is, header, HEADER_BYTES) || getLong(header, 0)!=MAGIC){
+			throw new RuntimeException(fname+" is not a binary read file.");
+		}
+		final int version=getInt(header, 8);
+		if(version!=VERSION){throw new RuntimeException("Unsupported binary read file version "+version+" in "+fname);}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Encoding           ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Appends a record to the pending block.
+	 * @param withMate Also store r.mate, if present, in the same record
+	 */
+	public void add(Read r, boolean withMate){
+		final Read mate=(withMate ? r.mate : null);
+		raw.append((byte)(mate==null ? 0 : 1));
+		writeRead(r);
+		if(mate!=null){writeRead(mate);}
+		pendingPairs++;
+	}
+
+	/** Size of the pending block before compression */
+	public int pendingBytes(){return raw.length;}
+
+	/** Writes the pending block, if any */
+	public void flush(OutputStream os) throws IOException {
+		if(pendingPairs<1){return;}
+		if(deflater==null){deflater=new Deflater(COMPRESSION_LEVEL);}
+		deflater.reset();
+		deflater.setInput(raw.array, 0, raw.length);
+		deflater.finish();
+		if(packed.length<raw.length+64){packed=new byte[raw.length+raw.length/8+64];}
+		int stored=0;
+		while(!deflater.finished() && stored<packed.length){
+			stored+=deflater.deflate(packed, stored, packed.length-stored);
+		}
+
+		final byte[] header=new byte[12];
+		putInt(header, 0, raw.length);
+		putInt(header, 8, pendingPairs);
+		if(deflater.finished() && stored<raw.length){
+			putInt(header, 4, stored);
+			os.write(header);
+			os.write(packed, 0, stored);
+		}else{
+			putInt(header, 4, -1);
+			os.write(header);
+			os.write(raw.array, 0, raw.length);
+		}
+		raw.setLength(0);
+		pendingPairs=0;
+	}
+
+	private void writeRead(Read r){
+		writeVar(r.flags&0xFFFFFFFFL);
+		writeVar(zigzag(r.numericID));
+		writeBytes(r.id==null ? null : r.id.getBytes(UTF8));
+		writeBases(r.bases);
+
+		final byte[] quals=r.quality;
+		if(quals==null){
+			raw.append((byte)0);
+		}else{
+			raw.append((byte)1);
+			writeVar(quals.length);
+			raw.ensureExtra(quals.length);
+			if(binQuality){
+				for(byte q : quals){raw.append(binQuality(q));}
+			}else{
+				raw.append(quals);
+			}
+		}
+
+		int extras=0;
+		if(r.chrom!=-1 || r.start!=0 || r.stop!=0 || r.mapScore!=0){extras|=EX_MAPPING;}
+		if(r.copies!=1 || r.errors!=0){extras|=EX_COUNTS;}
+		if(r.match!=null){extras|=EX_MATCH;}
+		if(r.obj!=null && r.obj.getClass()==SamLine.class){extras|=EX_SAMLINE;}
+		else if(r.obj!=null && r.obj.getClass()==long[].class){extras|=EX_LONGS;}
+		raw.append((byte)extras);
+		if((extras&EX_MAPPING)!=0){
+			writeVar(zigzag(r.chrom));
+			writeVar(zigzag(r.start));
+			writeVar(zigzag(r.stop));
+			writeVar(zigzag(r.mapScore));
+		}
+		if((extras&EX_COUNTS)!=0){
+			writeVar(zigzag(r.copies));
+			writeVar(zigzag(r.errors));
+		}
+		if((extras&EX_MATCH)!=0){writeBytes(r.match);}
+		if((extras&EX_SAMLINE)!=0){writeBytes(((SamLine)r.obj).toText().toString().getBytes(UTF8));}
+		if((extras&EX_LONGS)!=0){
+			final long[] array=(long[])r.obj;
+			writeVar(array.length);
+			for(long x : array){writeVar(zigzag(x));}
+		}
+	}
+
+	/** Writes length+1 (0 for null), a mode byte, then packed or raw bases */
+	private void writeBases(final byte[] bases){
+		if(bases==null){
+			writeVar(0);
+			return;
+		}
+		final int len=bases.length;
+		writeVar(len+1L);
+		int exceptions=0;
+		for(byte b : bases){
+			if(baseToCode[b&0xFF]<0){exceptions++;}
+		}
+		if(exceptions*4>len){
+			raw.append(BASES_RAW);
+			raw.append(bases);
+			return;
+		}
+		raw.append(BASES_PACKED);
+		raw.ensureExtra((len+3)/4);
+		for(int i=0; i<len; i+=4){
+			int x=0;
+			for(int j=0, lim=Math.min(4, len-i); j<lim; j++){
+				final int code=baseToCode[bases[i+j]&0xFF];
+				x|=(code<0 ? 0 : code)<<(2*j);
+			}
+			raw.append((byte)x);
+		}
+		writeVar(exceptions);
+		for(int i=0, last=0; i<len; i++){
+			if(baseToCode[bases[i]&0xFF]<0){
+				writeVar(i-last);
+				raw.append(bases[i]);
+				last=i;
+			}
+		}
+	}
+
+	private void writeBytes(byte[] array){
+		if(array==null){
+			writeVar(0);
+		}else{
+			writeVar(array.length+1L);
+			raw.append(array);
+		}
+	}
+
+	private void writeVar(long x){
+		while((x&~0x7FL)!=0){
+			raw.append((byte)((x&0x7F)|0x80));
+			x>>>=7;
+		}
+		raw.append((byte)x);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Decoding           ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Reads the next block.
+	 * @return Read 1 of each record, with mates attached; null at the end of the stream.
+	 */
+	public ArrayList<Read> readBlock(InputStream is) throws IOException {
+		final byte[] header=new byte[12];
+		if(!readFully(is, header, header.length)){return null;}
+		final int rawLength=getInt(header, 0), stored=getInt(header, 4), pairs=getInt(header, 8);
+		if(buf.length<rawLength){buf=new byte[rawLength];}
+		if(stored<0){
+			if(!readFully(is, buf, rawLength)){throw new IOException("Truncated binary read file.");}
+		}else{
+			if(packed.length<stored){packed=new byte[stored];}
+			if(!readFully(is, packed, stored)){throw new IOException("Truncated binary read file.");}
+			if(inflater==null){inflater=new Inflater();}
+			inflater.reset();
+			inflater.setInput(packed, 0, stored);
+			try {
+				int n=0;
+				while(n<rawLength){
+					final int x=inflater.inflate(buf, n, rawLength-n);
+					if(x==0 && (inflater.finished() || inflater.needsInput())){throw new IOException("Corrupt block in binary read file.");}
+					n+=x;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt block in binary read file.", e);
+			}
+		}
+
+		pos=0;
+		final ArrayList<Read> list=new ArrayList<Read>(pairs);
+		for(int i=0; i<pairs; i++){
+			final boolean hasMate=(buf[pos++]!=0);
+			final Read r=readRead();
+			if(hasMate){
+				r.mate=readRead();
+				r.mate.mate=r;
+			}
+			list.add(r);
+		}
+		assert(pos==rawLength) : pos+", "+rawLength;
+		return list;
+	}
+
+	private Read readRead(){
+		final int flags=(int)readVar();
+		final long numericID=unzigzag(readVar());
+		final byte[] id=readBytes();
+		final byte[] bases=readBases();
+		final byte[] quals;
+		if(buf[pos++]==0){
+			quals=null;
+		}else{
+			final int len=(int)readVar();
+			quals=Arrays.copyOfRange(buf, pos, pos+len);
+			pos+=len;
+		}
+
+		final int extras=buf[pos++];
+		int chrom=-1, start=0, stop=0, mapScore=0;
+		if((extras&EX_MAPPING)!=0){
+			chrom=(int)unzigzag(readVar());
+			start=(int)unzigzag(readVar());
+			stop=(int)unzigzag(readVar());
+			mapScore=(int)unzigzag(readVar());
+		}
+		final Read r=new Read(bases, chrom, start, stop, (id==null ? null : new String(id, UTF8)), quals, numericID, flags);
+		r.flags=flags;
+		r.mapScore=mapScore;
+		if((extras&EX_COUNTS)!=0){
+			r.copies=(int)unzigzag(readVar());
+			r.errors=(int)unzigzag(readVar());
+		}
+		if((extras&EX_MATCH)!=0){r.match=readBytes();}
+		if((extras&EX_SAMLINE)!=0){r.obj=new SamLine(readBytes());}
+		if((extras&EX_LONGS)!=0){
+			final long[] array=new long[(int)readVar()];
+			for(int i=0; i<array.length; i++){array[i]=unzigzag(readVar());}
+			r.obj=array;
+		}
+		return r;
+	}
+
+	private byte[] readBases(){
+		final long x=readVar();
+		if(x==0){return null;}
+		final int len=(int)(x-1);
+		final byte mode=buf[pos++];
+		if(mode==BASES_RAW){
+			final byte[] bases=Arrays.copyOfRange(buf, pos, pos+len);
+			pos+=len;
+			return bases;
+		}
+		assert(mode==BASES_PACKED) : mode;
+		final byte[] bases=new byte[len];
+		for(int i=0; i<len; i+=4){
+			final int packedBases=buf[pos++];
+			for(int j=0, lim=Math.min(4, len-i); j<lim; j++){
+				bases[i+j]=codeToBase[(packedBases>>(2*j))&3];
+			}
+		}
+		final int exceptions=(int)readVar();
+		for(int i=0, loc=0; i<exceptions; i++){
+			loc+=(int)readVar();
+			bases[loc]=buf[pos++];
+		}
+		return bases;
+	}
+
+	private byte[] readBytes(){
+		final long x=readVar();
+		if(x==0){return null;}
+		final int len=(int)(x-1);
+		final byte[] array=Arrays.copyOfRange(buf, pos, pos+len);
+		pos+=len;
+		return array;
+	}
+
+	private long readVar(){
+		long x=0;
+		int shift=0;
+		byte b;
+		do{
+			b=buf[pos++];
+			x|=((long)(b&0x7F))<<shift;
+			shift+=7;
+		}while(b<0);
+		return x;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Helper Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Releases native compression resources */
+	public void close(){
+		if(deflater!=null){deflater.end();}
+		if(inflater!=null){inflater.end();}
+		deflater=null;
+		inflater=null;
+	}
+
+	/** Illumina-style 8-level binning */
+	public static byte binQuality(byte q){
+		if(q<3){return q;}
+		if(q<10){return 6;}
+		if(q<20){return 15;}
+		if(q<25){return 22;}
+		if(q<30){return 27;}
+		if(q<35){return 33;}
+		if(q<40){return 37;}
+		return 40;
+	}
+
+	private static long zigzag(long x){return (x<<1)^(x>>63);}
+
+	private static long unzigzag(long x){return (x>>>1)^-(x&1);}
+
+	/** Returns false if the stream ended before any byte was read */
+	private static boolean readFully(InputStream is, byte[] array, int len) throws IOException {
+		int n=0;
+		while(n<len){
+			final int x=is.read(array, n, len-n);
+			if(x<0){
+				if(n==0){return false;}
+				throw new IOException("Truncated binary read file.");
+			}
+			n+=x;
+		}
+		return true;
+	}
+
+	private static void putInt(byte[] array, int loc, int x){
+		for(int i=3; i>=0; i--, x>>>=8){array[loc+i]=(byte)x;}
+	}
+
+	private static void putLong(byte[] array, int loc, long x){
+		for(int i=7; i>=0; i--, x>>>=8){array[loc+i]=(byte)x;}
+	}
+
+	private static int getInt(byte[] array, int loc){
+		int x=0;
+		for(int i=0; i<4; i++){x=(x<<8)|(array[loc+i]&0xFF);}
+		return x;
+	}
+
+	private static long getLong(byte[] array, int loc){
+		long x=0;
+		for(int i=0; i<8; i++){x=(x<<8)|(array[loc+i]&0xFF);}
+		return x;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final ByteBuilder raw=new ByteBuilder(1<<17);
+	private int pendingPairs=0;
+	private byte[] packed=new byte[0];
+	private byte[] buf=new byte[0];
+	private int pos=0;
+	private Deflater deflater;
+	private Inflater inflater;
+	private final boolean binQuality;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Pending bytes at which writers should flush a block */
+	public static int BLOCK_BYTES=1<<17;
+	/** Deflate level for blocks */
+	public static int COMPRESSION_LEVEL=Deflater.BEST_SPEED;
+	/** Reduce quality scores to 8 levels when writing; lossy, but compresses better */
+	public static boolean BIN_QUALITY=false;
+
+	private static final long MAGIC=0x4242524541445331L; //"BBREADS1"
+	private static final int VERSION=1;
+	private static final int HEADER_BYTES=16;
+
+	private static final byte BASES_PACKED=0, BASES_RAW=1;
+	private static final int EX_MAPPING=1, EX_COUNTS=2, EX_MATCH=4, EX_SAMLINE=8, EX_LONGS=16;
+
+	private static final byte[] codeToBase={'A', 'C', 'G', 'T'};
+	private static final byte[] baseToCode=new byte[256];
+	static{
+		Arrays.fill(baseToCode, (byte)-1);
+		for(int i=0; i<codeToBase.length; i++){baseToCode[codeToBase[i]]=(byte)i;}
+	}
+
+	private static final Charset UTF8=Charset.forName("UTF-8");
+
+}
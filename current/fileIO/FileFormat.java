@@ -12,6 +12,7 @@ import align2.Tools;
 
 import dna.Gene;
 import dna.Parser;
+import stream.ReadPipe;
 
 /**
  * @author Brian Bushnell
@@ -271,6 +272,7 @@ public final class FileFormat {
 		else if(ext.equals("int1d")){r[0]=INT1D;}
 		else if(ext.equals("long1d")){r[0]=LONG1D;}
 		else if(ext.equals("bitset")){r[0]=BITSET;}
+		else if(ext.equals("bbr")){r[0]=BBR;}
 		
 		if(comp!=null){
 			r[1]=Gene.find3(comp, COMPRESSION_ARRAY);
@@ -282,11 +284,13 @@ public final class FileFormat {
 			else if(slc.equals("stdout") || slc.startsWith("stdout.") || slc.equals("standardout")){r[2]=STDIO;}
 		}else if("/dev/null".equalsIgnoreCase(slc)){
 			r[2]=DEVNULL;
+		}else if(ReadPipe.isPipeName(slc)){
+			r[2]=PIPE;
 		}
 		
 		if(verbose){System.err.println("Before reading: \t"+r[0]+", "+toString(r)+", "+forceFileRead+", "+(r[0]!=BAM));}
 		
-		if(r[0]==UNKNOWN || (forceFileRead && r[0]!=BAM)){
+		if(r[0]==UNKNOWN || (forceFileRead && r[0]!=BAM && r[0]!=BBR)){
 			File f=(allowFileRead && r[2]==FILE ? new File(fname) : null);
 			if(f!=null && f.exists() && !f.isDirectory()){
 				
@@ -496,7 +500,7 @@ public final class FileFormat {
 	public final boolean hasName(){return name!=null;}
 	public final boolean canWrite(){
 		assert(write());
-		if(stdio() || devnull()){return true;}
+		if(stdio() || devnull() || pipe()){return true;}
 		assert(hasName());
 		File f=new File(name);
 		if(!f.exists()){return true;}
@@ -505,7 +509,7 @@ public final class FileFormat {
 	}
 	public final boolean canRead(){
 		assert(read());
-		if(stdio()){return true;}
+		if(stdio() || pipe()){return true;}
 		assert(hasName());
 		File f=new File(name);
 		return f.canRead();
@@ -532,6 +536,7 @@ public final class FileFormat {
 	public final boolean int1d(){return format==INT1D;}
 	public final boolean long1d(){return format==LONG1D;}
 	public final boolean bitset(){return format==BITSET;}
+	public final boolean bbr(){return format==BBR;}
 
 	public final boolean unknownCompression(){return compression<=UNKNOWN;}
 	public final boolean raw(){return compression==RAW;}
@@ -546,6 +551,7 @@ public final class FileFormat {
 	public final boolean file(){return type==FILE;}
 	public final boolean stdio(){return type==STDIO;}
 	public final boolean devnull(){return type==DEVNULL;}
+	public final boolean pipe(){return type==PIPE;}
 
 	public final boolean unknownMode(){return mode<=UNKNOWN;}
 	public final boolean read(){return mode==READ;}
@@ -620,12 +626,14 @@ public final class FileFormat {
 	public static final int INT1D=16;
 	public static final int LONG1D=17;
 	public static final int BITSET=18;
+	/** Binary reads; see BinaryReadCodec */
+	public static final int BBR=19;
 	
 	private static final String[] FORMAT_ARRAY=new String[] {
 		"unknown", "fasta", "fastq", "bread", "sam", "csfasta",
 		"qual", "sequential", "random", "sites", "attachment",
 		"bam", "scarf", "text", "phylip", "header", "int1d",
-		"long1d", "bitset"
+		"long1d", "bitset", "bbr"
 	};
 	
 	public static final String[] EXTENSION_LIST=new String[] {
@@ -634,7 +642,7 @@ public final class FileFormat {
 		"bread", "sam", "csfasta", "qual", "bam",
 		"scarf", "phylip", "txt",
 		"gz", "gzip", "bz2", "zip", "xz", "dsrc", "header", "headers",
-		"int1d", "long1d", "bitset"
+		"int1d", "long1d", "bitset", "bbr"
 		
 	};
 	
@@ -659,10 +667,11 @@ public final class FileFormat {
 	public static final int FILE=1;
 	public static final int STDIO=2, STDIN=2, STDOUT=2;
 	public static final int DEVNULL=3;
-//	public static final int NULL=4;
+	/** In-memory ReadPipe */
+	public static final int PIPE=4;
 	
 	private static final String[] TYPE_ARRAY=new String[] {
-		"unknown", "file", "stdio", "devnull"
+		"unknown", "file", "stdio", "devnull", "pipe"
 	};
 	
 	/* Mode */
@@ -0,0 +1,62 @@
+package fileIO;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory-mapped file of any size, addressed by long offsets.
+ * Used by flat binary formats so they can be queried without a load phase.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class MappedFile {
+
+	public MappedFile(String fname){
+		long len=0;
+		try {
+			RandomAccessFile raf=new RandomAccessFile(fname, "r");
+			FileChannel fc=raf.getChannel();
+			len=fc.size();
+			buffers=new MappedByteBuffer[(int)((len+CHUNK_MASK)>>>CHUNK_BITS)];
+			for(int i=0; i<buffers.length; i++){
+				final long start=((long)i)<<CHUNK_BITS;
+				buffers[i]=fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, len-start));
+			}
+			fc.close();
+			raf.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map "+fname, e);
+		}
+		size=len;
+	}
+
+	/** Position must be a multiple of 4 */
+	public int readInt(long pos){
+		return buffers[(int)(pos>>>CHUNK_BITS)].getInt((int)(pos&CHUNK_MASK));
+	}
+
+	/** Position must be a multiple of 4 */
+	public long readLong(long pos){
+		return (((long)readInt(pos))<<32)|(readInt(pos+4)&0xFFFFFFFFL);
+	}
+
+	public byte readByte(long pos){
+		return buffers[(int)(pos>>>CHUNK_BITS)].get((int)(pos&CHUNK_MASK));
+	}
+
+	public void readBytes(long pos, byte[] dest){
+		for(int i=0; i<dest.length; i++){dest[i]=readByte(pos+i);}
+	}
+
+	public final long size;
+	private final MappedByteBuffer[] buffers;
+
+	/** Each mapped buffer covers at most 1GB; aligned ints never span buffers */
+	private static final int CHUNK_BITS=30;
+	private static final long CHUNK_SIZE=1L<<CHUNK_BITS;
+	private static final long CHUNK_MASK=CHUNK_SIZE-1;
+
+}
@@ -3,10 +3,15 @@ package jgi;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 
+import align2.Shared;
 import align2.Tools;
 
 import dna.AminoAcid;
@@ -91,6 +96,8 @@ public final class AssemblyStats2 {
 				
 				if(Parser.isJavaFlag(arg)){
 					//jvm argument; do nothing
+				}else if(a.equals("t") || a.equals("threads")){
+					threads=(b==null || b.equalsIgnoreCase("auto") ? Shared.threads() : Integer.parseInt(b));
 				}else if(Parser.parseCommonStatic(arg, a, b)){
 					//do nothing
 				}else if(Parser.parseZip(arg, a, b)){
@@ -146,6 +153,8 @@ public final class AssemblyStats2 {
 					}
 				}else if(a.equals("cutoff")){
 					cutoff=Tools.parseKMG(b);
+				}else if(a.equals("chunksize")){
+					CHUNK_BYTES=Tools.parseKMG(b);
 				}else if(a.equals("k") || a.equals("bbmapkmer")){
 					bbmapkmer=Integer.parseInt(b);
 				}else if(a.equals("overwrite") || a.equals("ow")){
@@ -240,8 +249,8 @@ public final class AssemblyStats2 {
 		long sum=0;
 		
 		boolean fastqMode=false;
+		FileFormat ff=null;
 		if(is!=System.in){
-			FileFormat ff=null;
 			try {
 				ff=FileFormat.testInput(in, FileFormat.FA, null, false, true, true);
 			} catch (Throwable e) {
@@ -253,12 +262,15 @@ public final class AssemblyStats2 {
 //			assert(ff==null || (!ff.fastq())) : "AssemblyStats only supports fasta files.  To override this message, use the -da flag.";
 		}
 		
-		if(is==null){is=ReadWrite.getInputStream(in, false, true);}
+		final boolean parallel=(is==null && !fastqMode && canCountInParallel(ff));
+		if(is==null && !parallel){is=ReadWrite.getInputStream(in, false, true);}
 		try {
 			if(benchmark){sum=bench(is);}
 			else{
 				if(fastqMode){
 					counts=countFastq(is, gc);
+				}else if(parallel){
+					counts=countFastaParallel(in, gc);
 				}else{
 					counts=countFasta(is, gc);
 				}
@@ -267,7 +279,7 @@ public final class AssemblyStats2 {
 			e.printStackTrace();
 		}
 		try {
-			if(is!=System.in){is.close();}
+			if(is!=null && is!=System.in){is.close();}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -297,21 +309,7 @@ public final class AssemblyStats2 {
 		long limsum=0;
 		long headerlen=0;
 		final byte[] buf=new byte[32768];
-		final TextStreamWriter tswgc=(gcout==null ? null : new TextStreamWriter(gcout, overwrite, false, false));
-		if(tswgc!=null){
-			tswgc.start();
-			if(GCFORMAT==0 || GCFORMAT==1){
-				tswgc.println("#Name\tLength\tA\tC\tG\tT\tN\tIUPAC\tOther\tGC");
-			}else if(GCFORMAT==2){
-				tswgc.println("#Name\tGC");
-			}else if(GCFORMAT==3){
-				tswgc.println("#Name\tLength\tA\tC\tG\tT\tN\tIUPAC\tOther\tGC");
-			}else if(GCFORMAT==4){
-				tswgc.println("#Name\tLength\tGC");
-			}else{
-				throw new RuntimeException("Unknown format.");
-			}
-		}
+		final TextStreamWriter tswgc=startGCWriter(gcout);
 //		assert(false) : GCFORMAT+", "+out+", "+tswgc;
 		final long[] counts=new long[8];
 		final long[] overall=new long[8];
@@ -559,15 +557,7 @@ public final class AssemblyStats2 {
 //		System.err.println("clist="+clist+"\nslist="+slist+"\nsclist1="+sclist1+"\nsclist2="+sclist2+"\nllist="+llist+"\ntlist="+tlist); //***
 		
 		
-		if(tswgc!=null){
-			if(tswgc.fname.equalsIgnoreCase("stdout") || tswgc.fname.startsWith("stdout.")){
-				if(FORMAT>0 && (out==null || out.equalsIgnoreCase("stdout") || out.startsWith("stdout."))){
-					tswgc.print("\n");
-				}
-			}
-			tswgc.poison();
-			tswgc.waitForFinish();
-		}
+		finishGCWriter(tswgc);
 		LIMSUM=limsum;
 		HEADERLENSUM=headerlen;
 		
@@ -581,11 +571,8 @@ public final class AssemblyStats2 {
 		return overall;
 	}
 	
-	public long[] countFastq(final InputStream is, String gcout) throws IOException{
-		
-		long limsum=0;
-		long headerlen=0;
-		final byte[] buf=new byte[32768];
+	/** Starts the per-scaffold gc output stream and prints its header line */
+	private TextStreamWriter startGCWriter(String gcout){
 		final TextStreamWriter tswgc=(gcout==null ? null : new TextStreamWriter(gcout, overwrite, false, false));
 		if(tswgc!=null){
 			tswgc.start();
@@ -601,6 +588,391 @@ public final class AssemblyStats2 {
 				throw new RuntimeException("Unknown format.");
 			}
 		}
+		return tswgc;
+	}
+	
+	private void finishGCWriter(TextStreamWriter tswgc){
+		if(tswgc!=null){
+			if(tswgc.fname.equalsIgnoreCase("stdout") || tswgc.fname.startsWith("stdout.")){
+				if(FORMAT>0 && (out==null || out.equalsIgnoreCase("stdout") || out.startsWith("stdout."))){
+					tswgc.print("\n");
+				}
+			}
+			tswgc.poison();
+			tswgc.waitForFinish();
+		}
+	}
+	
+	/*--------------------------------------------------------------*/
+	/*----------------        Parallel Fasta        ----------------*/
+	/*--------------------------------------------------------------*/
+	
+	/** True if countFastaParallel can be used on this input */
+	private boolean canCountInParallel(FileFormat ff){
+		if(threads<2 || benchmark || in==null){return false;}
+		if(ff==null || !ff.fasta() || !ff.raw() || ReadWrite.isCompressed(in)){return false;}
+		File f=new File(in);
+		return f.isFile() && f.length()>CHUNK_BYTES;
+	}
+	
+	/**
+	 * Multithreaded version of countFasta for an uncompressed fasta file, producing identical results.
+	 * The file is cut into chunks of about CHUNK_BYTES, each starting at a header that is certain
+	 * to begin a new scaffold, and ScanThreads count the chunks concurrently.
+	 * Length and gc histograms are summed per thread and merged at the end;
+	 * long contigs, long scaffolds, and gc lines are kept per chunk and merged in file order.
+	 */
+	public long[] countFastaParallel(final String fname, String gcout) throws IOException{
+		final TextStreamWriter tswgc=startGCWriter(gcout);
+		final RandomAccessFile raf=new RandomAccessFile(fname, "r");
+		final FileChannel channel=raf.getChannel();
+		final long size=channel.size();
+		final ChunkQueue queue=new ChunkQueue(channel, size, tswgc);
+		
+		final ArrayList<ScanThread> alst=new ArrayList<ScanThread>(threads);
+		for(int i=0; i<threads; i++){
+			alst.add(new ScanThread(queue, gcout!=null));
+		}
+		for(ScanThread st : alst){st.start();}
+		
+		final long[] overall=new long[8];
+		long headerlen=0;
+		Throwable error=null;
+		for(ScanThread st : alst){
+			while(st.getState()!=Thread.State.TERMINATED){
+				try {
+					st.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			if(st.error!=null && error==null){error=st.error;}
+			clist.add(st.clist);
+			slist.add(st.slist);
+			sclist1.add(st.sclist1);
+			sclist2.add(st.sclist2);
+			for(int j=0; j<gchistArray.length; j++){
+				gchistArray[j]+=st.gchistArray[j];
+				gchist_by_base[j]+=st.gchist_by_base[j];
+			}
+			for(int j=0; j<overall.length; j++){overall[j]+=st.overall[j];}
+			headerlen+=st.headerlen;
+		}
+		raf.close();
+		if(error!=null){throw new RuntimeException("Error while counting "+fname, error);}
+		assert(queue.pending.isEmpty()) : queue.pending.size();
+		
+		finishGCWriter(tswgc);
+		LIMSUM=size-1; //countFasta adds the final -1 returned by read()
+		HEADERLENSUM=headerlen;
+
+		gc_std=Tools.standardDeviationHistogram(gchistArray)/gcbins2;
+		gchistArray_downsampled=Tools.downsample(gchistArray, gcbins);
+
+		gc_bb_std=Tools.standardDeviationHistogram(gchist_by_base)/gcbins2;
+		gchist_by_base_downsampled=Tools.downsample(gchist_by_base, gcbins);
+		
+		return overall;
+	}
+	
+	/** A contiguous range of the input file, and the results that must be merged in file order */
+	private static final class Chunk {
+		
+		Chunk(int id_, long start_, long stop_){
+			id=id_;
+			start=start_;
+			stop=stop_;
+		}
+		
+		final int id;
+		final long start, stop;
+		
+		/** Contigs of at least cutoff length */
+		final LongList llist=new LongList(4);
+		/** Scaffolds of at least cutoff length */
+		final ArrayList<Triple> tlist=new ArrayList<Triple>(4);
+		/** Per-scaffold gc output */
+		StringBuilder gcText;
+	}
+	
+	/** Hands out chunks in file order, and merges their ordered results as they complete */
+	private final class ChunkQueue {
+		
+		ChunkQueue(FileChannel channel_, long size_, TextStreamWriter tswgc_){
+			channel=channel_;
+			size=size_;
+			tswgc=tswgc_;
+			chunkBytes=Tools.max(CHUNK_BYTES, 1);
+		}
+		
+		/**
+		 * Cuts the next chunk, or returns null at the end of the file.
+		 * Finding the boundary means scanning past the end of a record, which is done under
+		 * the lock so no byte is scanned twice; other threads keep counting meanwhile.
+		 */
+		synchronized Chunk next() throws IOException{
+			if(nextStart>=size || stop){return null;}
+			final long start=nextStart;
+			final long stop=(size-start<=chunkBytes ? size : findBoundary(start+chunkBytes));
+			nextStart=stop;
+			return new Chunk(nextID++, start, stop);
+		}
+		
+		/**
+		 * Returns the first position at or after 'from' holding a '>' that countFasta would
+		 * treat as the start of a header ending a nonempty scaffold, or the file size if none.
+		 * Such a '>' follows a line break, and before that a line with no '>'.  That line is
+		 * entirely bases, since headers end at the first line break, so the scaffold before
+		 * it is nonempty and countFasta is in the same state as at the start of the file.
+		 * The first partial line is skipped, since its contents are unknown.
+		 */
+		private long findBoundary(long from) throws IOException{
+			boolean known=false, inLine=false, lineClean=false, lastClean=false;
+			final ByteBuffer bb=ByteBuffer.allocate(32768);
+			final byte[] buf=bb.array();
+			for(long pos=from; pos<size; ){
+				bb.clear();
+				final int lim=channel.read(bb, pos);
+				if(lim<1){break;}
+				for(int i=0; i<lim; i++){
+					final byte c=buf[i];
+					if(c<=slashr){
+						known=true;
+						if(inLine){
+							lastClean=lineClean;
+							inLine=false;
+						}
+					}else if(known){
+						if(!inLine){
+							if(c==carrot && lastClean){return pos+i;}
+							inLine=true;
+							lineClean=(c!=carrot);
+							lastClean=false;
+						}else if(c==carrot){
+							lineClean=false;
+						}
+					}
+				}
+				pos+=lim;
+			}
+			return size;
+		}
+		
+		/** Called when a chunk has been counted; merges it and any later chunks already finished */
+		synchronized void finished(Chunk c){
+			pending.put(c.id, c);
+			for(Chunk next=pending.remove(nextMerge); next!=null; next=pending.remove(nextMerge)){
+				nextMerge++;
+				llist.append(next.llist);
+				tlist.addAll(next.tlist);
+				if(tswgc!=null && next.gcText.length()>0){tswgc.print(next.gcText);}
+			}
+		}
+		
+		final FileChannel channel;
+		final long size;
+		final long chunkBytes;
+		final TextStreamWriter tswgc;
+		
+		private long nextStart=0;
+		private int nextID=0;
+		private int nextMerge=0;
+		final HashMap<Integer, Chunk> pending=new HashMap<Integer, Chunk>();
+		/** Set if a thread fails, so the others stop */
+		volatile boolean stop=false;
+	}
+	
+	/**
+	 * Counts chunks with the same logic as countFasta.
+	 * A chunk begins in the state countFasta has at the start of the file, and ends either
+	 * at the end of the file or just before a header, where countFasta would finish the
+	 * current scaffold.
+	 */
+	private final class ScanThread extends Thread {
+		
+		ScanThread(ChunkQueue queue_, boolean storeHeaders){
+			queue=queue_;
+			hdr=(storeHeaders ? new StringBuilder() : null);
+			final int initial=(int)Tools.min(1<<15, cutoff+1);
+			clist=new LongList(initial);
+			slist=new LongList(initial);
+			sclist1=new LongList(initial);
+			sclist2=new LongList(initial);
+			gchistArray=new long[AssemblyStats2.this.gchistArray.length];
+			gchist_by_base=new long[gchistArray.length];
+		}
+		
+		@Override
+		public void run(){
+			final ByteBuffer bb=ByteBuffer.allocate(BUF_BYTES);
+			try {
+				for(Chunk c=queue.next(); c!=null; c=queue.next()){
+					countChunk(c, bb);
+					queue.finished(c);
+				}
+			} catch (Throwable e) {
+				error=e;
+				queue.stop=true;
+			}
+		}
+		
+		private void countChunk(Chunk c, ByteBuffer bb) throws IOException{
+			chunk=c;
+			if(hdr!=null){c.gcText=new StringBuilder();}
+			final byte[] buf=bb.array();
+			for(long pos=c.start; pos<c.stop; ){
+				bb.clear();
+				bb.limit((int)Tools.min(bb.capacity(), c.stop-pos));
+				final int lim=queue.channel.read(bb, pos);
+				if(lim<1){throw new IOException("Unexpected end of file at "+pos);}
+				count(buf, lim);
+				pos+=lim;
+			}
+			if(scaffoldlen>0){finishScaffold(c.stop<queue.size);}
+			hdmode=false;
+			contiglen=0;
+			scaffoldlen=0;
+			ns=0;
+			contigs=0;
+			if(hdr!=null){hdr.setLength(0);}
+			chunk=null;
+		}
+		
+		/** The loop body of countFasta */
+		private void count(final byte[] buf, final int lim){
+			int i=0;
+			while(i<lim){
+				if(hdmode){//Scan to end of header.
+					while(i<lim){
+						final byte c=buf[i];
+						i++;
+						if(c<=slashr){
+							hdmode=false;
+							contiglen=0;
+							scaffoldlen=0;
+							ns=0;
+							contigs=0;
+							break;
+						}
+						if(hdr==null){headerlen++;}
+						else{hdr.append((char)c);}
+					}
+				}
+				
+				if(!hdmode){//Scan bases
+					while(i<lim){
+						final byte c=buf[i];
+						final byte cnum=charToNum[c];
+						i++;
+
+						if(c==carrot){//Start of a new header
+							hdmode=true;
+							if(scaffoldlen>0){finishScaffold(true);}
+							break;
+						}
+						
+						if(c>slashr){
+							counts[cnum]++;
+							scaffoldlen++;
+							
+							if(cnum!=5){
+								ns=0;
+								contiglen++;
+							}else{
+								ns++;
+								if(ns==maxNs && contiglen>0){
+									currentContigs.set(contigs, contiglen);
+									contiglen=0;
+									contigs++;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Records a nonempty scaffold, as countFasta does at a header or at the end of the file.
+		 * @param atHeader True if followed by a header; countFasta only adds the header length then
+		 */
+		private void finishScaffold(boolean atHeader){
+			if(contiglen>0 || contigs==0){
+				currentContigs.set(contigs, contiglen);
+				contigs++;
+			}
+			
+			if(scaffoldlen>=minScaffold){
+				int contiglensum=0;
+				for(int j=0; j<contigs; j++){
+					final int cl=currentContigs.get(j);
+					if(cl>0 || contigs==0){
+						contiglensum+=cl;
+						if(cl<cutoff){
+							clist.increment(cl, 1);
+						}else{
+							chunk.llist.add(cl);
+						}
+					}
+				}
+				
+				if(scaffoldlen<cutoff){
+					slist.increment(scaffoldlen, 1);
+					sclist1.increment(scaffoldlen, contigs);
+					sclist2.increment(scaffoldlen, contiglensum);
+				}else{
+					chunk.tlist.add(new Triple(scaffoldlen, contigs, contiglensum));
+				}
+				
+				if(hdr!=null){
+					chunk.gcText.append(toString2(hdr, counts));
+					if(atHeader){headerlen+=hdr.length();}
+					hdr.setLength(0);
+				}
+				{
+					long gc=counts[1]+counts[2];
+					long acgt=gc+counts[0]+counts[3];
+					if(acgt>0){
+						int index=Tools.min((int)((gc*gcbins2)/acgt),gcbins2-1);
+						gchistArray[index]++;
+						gchist_by_base[index]+=scaffoldlen;
+					}
+				}
+				for(int j=0; j<counts.length; j++){
+					overall[j]+=counts[j];
+					counts[j]=0;
+				}
+			}else{
+				Arrays.fill(counts, 0);
+				if(hdr!=null){hdr.setLength(0);}
+			}
+		}
+		
+		private final ChunkQueue queue;
+		private Chunk chunk;
+		
+		private final StringBuilder hdr;
+		private boolean hdmode=false;
+		private int contigs=0;
+		private int contiglen=0;
+		private int scaffoldlen=0;
+		private int ns=0;
+		private final IntList currentContigs=new IntList(10000);
+		private final long[] counts=new long[8];
+		
+		final long[] overall=new long[8];
+		final LongList clist, slist, sclist1, sclist2;
+		final long[] gchistArray, gchist_by_base;
+		long headerlen=0;
+		Throwable error=null;
+	}
+	
+	public long[] countFastq(final InputStream is, String gcout) throws IOException{
+		
+		long limsum=0;
+		long headerlen=0;
+		final byte[] buf=new byte[32768];
+		final TextStreamWriter tswgc=startGCWriter(gcout);
 //		assert(false) : GCFORMAT+", "+out+", "+tswgc;
 		final long[] counts=new long[8];
 		final long[] overall=new long[8];
@@ -785,15 +1157,7 @@ public final class AssemblyStats2 {
 			}
 		}
 		
-		if(tswgc!=null){
-			if(tswgc.fname.equalsIgnoreCase("stdout") || tswgc.fname.startsWith("stdout.")){
-				if(FORMAT>0 && (out==null || out.equalsIgnoreCase("stdout") || out.startsWith("stdout."))){
-					tswgc.print("\n");
-				}
-			}
-			tswgc.poison();
-			tswgc.waitForFinish();
-		}
+		finishGCWriter(tswgc);
 		LIMSUM=limsum;
 		HEADERLENSUM=headerlen;
 		
@@ -1689,6 +2053,9 @@ public final class AssemblyStats2 {
 	public static int GCFORMAT=1;
 	public static int FORMAT=1;
 	private static long cutoff=1000000;
+	/** Approximate bytes per chunk for countFastaParallel; smaller files are counted by one thread */
+	public static long CHUNK_BYTES=16000000;
+	private static final int BUF_BYTES=262144;
 	
 	private static long LIMSUM=0;
 	private static long HEADERLENSUM=0;
@@ -1710,6 +2077,8 @@ public final class AssemblyStats2 {
 	private boolean benchmark=false;
 	private String in=null, out=null, gc=null, gchistFile=null, scaffoldHistFile=null;
 	private int maxNs=-1;
+	/** Threads for counting uncompressed fasta files */
+	private int threads=1;
 	
 	/** Number of decimal places for GC histogram */
 	private final int gchistDecimals1;
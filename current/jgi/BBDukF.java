@@ -9,6 +9,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
 
 import kmer.AbstractKmerTable;
@@ -19,6 +20,8 @@ import stream.FastaReadInputStream;
 import stream.ConcurrentReadOutputStream;
 import stream.KillSwitch;
 import stream.Read;
+import stream.ReadBatchPool;
+import stream.ReadPipe;
 import stream.SamLine;
 import structures.IntList;
 import structures.ListNum;
@@ -716,8 +719,8 @@ public class BBDukF {
 		
 		assert(THREADS>0) : "THREADS must be greater than 0.";
 
-		assert(in1==null || in1.toLowerCase().startsWith("stdin") || in1.toLowerCase().startsWith("standardin") || new File(in1).exists()) : "Can't find "+in1;
-		assert(in2==null || in2.toLowerCase().startsWith("stdin") || in2.toLowerCase().startsWith("standardin") || new File(in2).exists()) : "Can't find "+in2;
+		assert(in1==null || in1.toLowerCase().startsWith("stdin") || in1.toLowerCase().startsWith("standardin") || new File(in1).exists() || ReadPipe.isPipeName(in1)) : "Can't find "+in1;
+		assert(in2==null || in2.toLowerCase().startsWith("stdin") || in2.toLowerCase().startsWith("standardin") || new File(in2).exists() || ReadPipe.isPipeName(in2)) : "Can't find "+in2;
 		
 		if(!((ref!=null || literal!=null) || qtrimLeft || qtrimRight || minAvgQuality>0 || maxNs>=0 || trimByOverlap ||
 				MAKE_QUALITY_HISTOGRAM || MAKE_MATCH_HISTOGRAM || MAKE_BASE_HISTOGRAM || MAKE_QUALITY_ACCURACY || 
@@ -1529,23 +1532,18 @@ public class BBDukF {
 			}
 		}
 		
-		/* Create ProcessThreads */
-		ArrayList<ProcessThread> alpt=new ArrayList<ProcessThread>(THREADS);
-		for(int i=0; i<THREADS; i++){alpt.add(new ProcessThread(cris, ros, rosb, ross, ALLOW_LOCAL_ARRAYS));}
-		for(ProcessThread pt : alpt){pt.start();}
+		/* Process the reads on a work-stealing pool, with one ProcessThread per pool thread */
+		ReadBatchPool<ProcessThread> pool=new ReadBatchPool<ProcessThread>(cris, THREADS, 0, false){
+			@Override
+			protected ProcessThread makeWorker(){
+				return new ProcessThread(ros, rosb, ross, ALLOW_LOCAL_ARRAYS);
+			}
+		};
+		ArrayList<ProcessThread> alpt=pool.process();
 		
-		/* Wait for threads to die, and gather statistics */
+		/* Gather statistics */
 		for(ProcessThread pt : alpt){
 			
-			/* Wait for a thread to die */
-			while(pt.getState()!=Thread.State.TERMINATED){
-				try {
-					pt.join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			
 			/* Accumulate data from per-thread counters */
 			readsIn+=pt.readsInT;
 			basesIn+=pt.basesInT;
@@ -1908,20 +1906,20 @@ public class BBDukF {
 	/**
 	 * Matches read kmers against reference kmers, performs binning and/or trimming, and writes output. 
 	 */
-	private class ProcessThread extends Thread{
+	private class ProcessThread implements ReadBatchPool.Worker{
 		
 		/**
 		 * Constructor
-		 * @param cris_ Read input stream
 		 * @param ros_ Unmatched read output stream (optional)
 		 * @param rosb_ Matched read output stream (optional)
 		 * @param ross_ Singleton read output stream (optional)
 		 */
-		public ProcessThread(ConcurrentReadInputStream cris_, ConcurrentReadOutputStream ros_, ConcurrentReadOutputStream rosb_, ConcurrentReadOutputStream ross_, boolean localArrays){
-			cris=cris_;
+		public ProcessThread(ConcurrentReadOutputStream ros_, ConcurrentReadOutputStream rosb_, ConcurrentReadOutputStream ross_, boolean localArrays){
 			ros=ros_;
 			rosb=rosb_;
 			ross=ross_;
+			bad=(rosb==null ? null : new ArrayList<Read>(Shared.READ_BUFFER_LENGTH));
+			single=new ArrayList<Read>(Shared.READ_BUFFER_LENGTH);
 			
 			readstats=(MAKE_QUALITY_HISTOGRAM || MAKE_MATCH_HISTOGRAM || MAKE_BASE_HISTOGRAM || MAKE_QUALITY_ACCURACY ||
 					MAKE_EHIST || MAKE_INDELHIST || MAKE_LHIST || MAKE_GCHIST || MAKE_IDHIST) ? 
@@ -1956,462 +1954,455 @@ public class BBDukF {
 			}else{
 				entropyCounts=entropyCountCounts=null;
 			}
-			
-			maxBasesOutmT=(maxBasesOutm>0 ? Tools.max(1, maxBasesOutm/THREADS) : -1);
-			maxBasesOutuT=(maxBasesOutu>0 ? Tools.max(1, maxBasesOutu/THREADS) : -1);
 		}
 		
 		@Override
-		public void run(){
-			ListNum<Read> ln=cris.nextList();
-			ArrayList<Read> reads=(ln!=null ? ln.list : null);
-			ArrayList<Read> bad=(rosb==null ? null : new ArrayList<Read>(Shared.READ_BUFFER_LENGTH));
-			ArrayList<Read> single=new ArrayList<Read>(Shared.READ_BUFFER_LENGTH);
+		public boolean processList(ListNum<Read> ln){
+			final ArrayList<Read> reads=ln.list;
+			final long basesOutmT0=basesOutmT, basesOutuT0=basesOutuT;
+			
+			//Lists read before another thread reached the output limit are discarded, as if never read
+			if((maxBasesOutm>0 && basesOutmTotal.get()>=maxBasesOutm) || (maxBasesOutu>0 && basesOutuTotal.get()>=maxBasesOutu)){
+				return false;
+			}
 			
-			//While there are more reads lists...
-			while(reads!=null && reads.size()>0){
+			int removed=0;
+			
+			//For each read (or pair) in the list...
+			for(int i=0; i<reads.size(); i++){
+				final Read r1=reads.get(i);
+				final Read r2=r1.mate;
 				
-				int removed=0;
+				if(!r1.validated()){r1.validate(true);}
+				if(r2!=null && !r2.validated()){r2.validate(true);}
 				
-				//For each read (or pair) in the list...
-				for(int i=0; i<reads.size(); i++){
-					final Read r1=reads.get(i);
-					final Read r2=r1.mate;
-					
-					if(!r1.validated()){r1.validate(true);}
-					if(r2!=null && !r2.validated()){r2.validate(true);}
-					
-					if(readstats!=null){
-						if(MAKE_QUALITY_HISTOGRAM){readstats.addToQualityHistogram(r1);}
-						if(MAKE_BASE_HISTOGRAM){readstats.addToBaseHistogram(r1);}
-						if(MAKE_MATCH_HISTOGRAM){readstats.addToMatchHistogram(r1);}
-						if(MAKE_QUALITY_ACCURACY){readstats.addToQualityAccuracy(r1);}
+				if(readstats!=null){
+					if(MAKE_QUALITY_HISTOGRAM){readstats.addToQualityHistogram(r1);}
+					if(MAKE_BASE_HISTOGRAM){readstats.addToBaseHistogram(r1);}
+					if(MAKE_MATCH_HISTOGRAM){readstats.addToMatchHistogram(r1);}
+					if(MAKE_QUALITY_ACCURACY){readstats.addToQualityAccuracy(r1);}
 
-						if(MAKE_EHIST){readstats.addToErrorHistogram(r1);}
-						if(MAKE_INDELHIST){readstats.addToIndelHistogram(r1);}
-						if(MAKE_LHIST){readstats.addToLengthHistogram(r1);}
-						if(MAKE_GCHIST){readstats.addToGCHistogram(r1);}
-						if(MAKE_IDHIST){readstats.addToIdentityHistogram(r1);}
-					}
+					if(MAKE_EHIST){readstats.addToErrorHistogram(r1);}
+					if(MAKE_INDELHIST){readstats.addToIndelHistogram(r1);}
+					if(MAKE_LHIST){readstats.addToLengthHistogram(r1);}
+					if(MAKE_GCHIST){readstats.addToGCHistogram(r1);}
+					if(MAKE_IDHIST){readstats.addToIdentityHistogram(r1);}
+				}
 
-					if(loglog!=null){loglog.hash(r1);}
-					
-					final int initialLength1=r1.length();
-					final int initialLength2=r1.mateLength();
+				if(loglog!=null){loglog.hash(r1);}
+				
+				final int initialLength1=r1.length();
+				final int initialLength2=r1.mateLength();
 
-					final int minlen1=(int)Tools.max(initialLength1*minLenFraction, minReadLength);
-					final int minlen2=(int)Tools.max(initialLength2*minLenFraction, minReadLength);
-					
-					if(verbose){System.err.println("Considering read "+r1.id+" "+new String(r1.bases));}
-					
+				final int minlen1=(int)Tools.max(initialLength1*minLenFraction, minReadLength);
+				final int minlen2=(int)Tools.max(initialLength2*minLenFraction, minReadLength);
+				
+				if(verbose){System.err.println("Considering read "+r1.id+" "+new String(r1.bases));}
+				
+				readsInT++;
+				basesInT+=initialLength1;
+				if(r2!=null){
 					readsInT++;
-					basesInT+=initialLength1;
-					if(r2!=null){
-						readsInT++;
-						basesInT+=initialLength2;
+					basesInT+=initialLength2;
+				}
+				
+				if(chastityFilter){
+					if(r1!=null && r1.failsChastity()){
+						r1.setDiscarded(true);
+						if(r2!=null){r2.setDiscarded(true);}
 					}
-					
-					if(chastityFilter){
-						if(r1!=null && r1.failsChastity()){
-							r1.setDiscarded(true);
-							if(r2!=null){r2.setDiscarded(true);}
-						}
+				}
+				
+				if(removeBadBarcodes){
+					if(r1!=null && !r1.discarded() && r1.failsBarcode(barcodes, failIfNoBarcode)){
+						if(failBadBarcodes){KillSwitch.kill("Invalid barcode detected: "+r1.id+"\nThis can be disabled with the flag barcodefilter=f");}
+						r1.setDiscarded(true);
+						if(r2!=null){r2.setDiscarded(true);}
 					}
-					
-					if(removeBadBarcodes){
-						if(r1!=null && !r1.discarded() && r1.failsBarcode(barcodes, failIfNoBarcode)){
-							if(failBadBarcodes){KillSwitch.kill("Invalid barcode detected: "+r1.id+"\nThis can be disabled with the flag barcodefilter=f");}
-							r1.setDiscarded(true);
-							if(r2!=null){r2.setDiscarded(true);}
-						}
+				}
+				
+				if(recalibrateQuality){
+					if(r1!=null && !r1.discarded()){
+						CalcTrueQuality.recalibrate(r1);
 					}
-					
-					if(recalibrateQuality){
-						if(r1!=null && !r1.discarded()){
-							CalcTrueQuality.recalibrate(r1);
-						}
-						if(r2!=null && !r2.discarded()){
-							CalcTrueQuality.recalibrate(r2);
-						}
+					if(r2!=null && !r2.discarded()){
+						CalcTrueQuality.recalibrate(r2);
 					}
-					
-					if(filterGC && (initialLength1>0 || initialLength2>0)){
-						float gc1=(initialLength1>0 ? r1.gc() : -1);
-						float gc2=(initialLength2>0 ? r2.gc() : gc1);
-						if(gc1==-1){gc1=gc2;}
-						if(usePairGC){
-							final float gc;
-							if(r2==null){
-								gc=gc1;
-							}else{
-								gc=(gc1*initialLength1+gc2*initialLength2)/(initialLength1+initialLength2);
-							}
-							gc1=gc2=gc;
-						}
-						if(r1!=null && !r1.discarded() && (gc1<minGC || gc1>maxGC)){
-							r1.setDiscarded(true);
-							badGcBasesT+=initialLength1;
-							badGcReadsT++;
-						}
-						if(r2!=null && !r2.discarded() && (gc2<minGC || gc2>maxGC)){
-							r2.setDiscarded(true);
-							badGcBasesT+=initialLength2;
-							badGcReadsT++;
+				}
+				
+				if(filterGC && (initialLength1>0 || initialLength2>0)){
+					float gc1=(initialLength1>0 ? r1.gc() : -1);
+					float gc2=(initialLength2>0 ? r2.gc() : gc1);
+					if(gc1==-1){gc1=gc2;}
+					if(usePairGC){
+						final float gc;
+						if(r2==null){
+							gc=gc1;
+						}else{
+							gc=(gc1*initialLength1+gc2*initialLength2)/(initialLength1+initialLength2);
 						}
+						gc1=gc2=gc;
 					}
-					
-					if(forceTrimLeft>0 || forceTrimRight>0 || forceTrimRight2>0 || forceTrimModulo>0){  
-						if(r1!=null && !r1.discarded()){
-							final int len=r1.length();
-							final int a=forceTrimLeft>0 ? forceTrimLeft : 0;
-							final int b0=forceTrimModulo>0 ? len-1-len%forceTrimModulo : len;
-							final int b1=forceTrimRight>0 ? forceTrimRight : len;
-							final int b2=forceTrimRight2>0 ? len-1-forceTrimRight2 : len;
-							final int b=Tools.min(b0, b1, b2);
-							final int x=TrimRead.trimToPosition(r1, a, b, 1);
-							basesFTrimmedT+=x;
-							readsFTrimmedT+=(x>0 ? 1 : 0);
-							if(r1.length()<minlen1){r1.setDiscarded(true);}
-						}
-						if(r2!=null && !r2.discarded()){
-							final int len=r2.length();
-							final int a=forceTrimLeft>0 ? forceTrimLeft : 0;
-							final int b0=forceTrimModulo>0 ? len-1-len%forceTrimModulo : len;
-							final int b1=forceTrimRight>0 ? forceTrimRight : len;
-							final int b2=forceTrimRight2>0 ? len-1-forceTrimRight2 : len;
-							final int b=Tools.min(b0, b1, b2);
-							final int x=TrimRead.trimToPosition(r2, a, b, 1);
-							basesFTrimmedT+=x;
-							readsFTrimmedT+=(x>0 ? 1 : 0);
-							if(r2.length()<minlen2){r2.setDiscarded(true);}
-						}
+					if(r1!=null && !r1.discarded() && (gc1<minGC || gc1>maxGC)){
+						r1.setDiscarded(true);
+						badGcBasesT+=initialLength1;
+						badGcReadsT++;
+					}
+					if(r2!=null && !r2.discarded() && (gc2<minGC || gc2>maxGC)){
+						r2.setDiscarded(true);
+						badGcBasesT+=initialLength2;
+						badGcReadsT++;
+					}
+				}
+				
+				if(forceTrimLeft>0 || forceTrimRight>0 || forceTrimRight2>0 || forceTrimModulo>0){  
+					if(r1!=null && !r1.discarded()){
+						final int len=r1.length();
+						final int a=forceTrimLeft>0 ? forceTrimLeft : 0;
+						final int b0=forceTrimModulo>0 ? len-1-len%forceTrimModulo : len;
+						final int b1=forceTrimRight>0 ? forceTrimRight : len;
+						final int b2=forceTrimRight2>0 ? len-1-forceTrimRight2 : len;
+						final int b=Tools.min(b0, b1, b2);
+						final int x=TrimRead.trimToPosition(r1, a, b, 1);
+						basesFTrimmedT+=x;
+						readsFTrimmedT+=(x>0 ? 1 : 0);
+						if(r1.length()<minlen1){r1.setDiscarded(true);}
+					}
+					if(r2!=null && !r2.discarded()){
+						final int len=r2.length();
+						final int a=forceTrimLeft>0 ? forceTrimLeft : 0;
+						final int b0=forceTrimModulo>0 ? len-1-len%forceTrimModulo : len;
+						final int b1=forceTrimRight>0 ? forceTrimRight : len;
+						final int b2=forceTrimRight2>0 ? len-1-forceTrimRight2 : len;
+						final int b=Tools.min(b0, b1, b2);
+						final int x=TrimRead.trimToPosition(r2, a, b, 1);
+						basesFTrimmedT+=x;
+						readsFTrimmedT+=(x>0 ? 1 : 0);
+						if(r2.length()<minlen2){r2.setDiscarded(true);}
+					}
+				}
+				
+				boolean remove;
+				if(removePairsIfEitherBad){remove=r1.discarded() || (r2!=null && r2.discarded());}
+				else{remove=r1.discarded() && (r2==null || r2.discarded());}
+				
+				if(remove){
+					if(r1!=null){
+						basesQFilteredT+=r1.length();
+						readsQFilteredT++;
+					}
+					if(r2!=null){
+						basesQFilteredT+=r2.length();
+						readsQFilteredT++;
 					}
+					if(bad!=null){bad.add(r1);}
+				}else{
 					
-					boolean remove;
-					if(removePairsIfEitherBad){remove=r1.discarded() || (r2!=null && r2.discarded());}
-					else{remove=r1.discarded() && (r2==null || r2.discarded());}
+					if(ecc && r1!=null && r2!=null){BBMerge.findOverlapStrict(r1, r2, true);}
 					
-					if(remove){
-						if(r1!=null){
-							basesQFilteredT+=r1.length();
-							readsQFilteredT++;
-						}
-						if(r2!=null){
-							basesQFilteredT+=r2.length();
-							readsQFilteredT++;
-						}
-						if(bad!=null){bad.add(r1);}
-					}else{
+					//Process kmers
+					if(ktrimLeft || ktrimRight || ktrimN){
 						
-						if(ecc && r1!=null && r2!=null){BBMerge.findOverlapStrict(r1, r2, true);}
+						int rlen1=0, rlen2=0;
+						int xsum=0;
+						int rktsum=0;
 						
-						//Process kmers
-						if(ktrimLeft || ktrimRight || ktrimN){
-							
-							int rlen1=0, rlen2=0;
-							int xsum=0;
-							int rktsum=0;
-							
-							if(ktrimN){
-								if(r1!=null){
-									int x=kmask(r1, keySets);
-									xsum+=x;
-									rktsum+=(x>0 ? 1 : 0);
-									rlen1=r1.length();
-									if(rlen1<minlen1){r1.setDiscarded(true);}
-								}
-								if(r2!=null){
-									int x=kmask(r2, keySets);
-									xsum+=x;
-									rktsum+=(x>0 ? 1 : 0);
-									rlen2=r2.length();
-									if(rlen2<minlen2){r2.setDiscarded(true);}
-								}
-							}else{
-								if(r1!=null){
-									int x=ktrim(r1, keySets);
-									xsum+=x;
-									rktsum+=(x>0 ? 1 : 0);
-									rlen1=r1.length();
-									if(rlen1<minlen1){r1.setDiscarded(true);}
-								}
-								if(r2!=null){
-									int x=ktrim(r2, keySets);
-									xsum+=x;
-									rktsum+=(x>0 ? 1 : 0);
-									rlen2=r2.length();
-									if(rlen2<minlen2){r2.setDiscarded(true);}
-								}
+						if(ktrimN){
+							if(r1!=null){
+								int x=kmask(r1, keySets);
+								xsum+=x;
+								rktsum+=(x>0 ? 1 : 0);
+								rlen1=r1.length();
+								if(rlen1<minlen1){r1.setDiscarded(true);}
 							}
-							
-							if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
-									(r1.discarded() && (r2==null || r2.discarded()))){
-								if(!ktrimN){
-									xsum+=(rlen1+rlen2);
-									rktsum=(r1==null ? 0 : 1)+(r2==null ? 0 : 1);
-								}
-								remove=true;
-								if(addTrimmedToBad && bad!=null){bad.add(r1);}
-							}else if(ktrimRight && trimPairsEvenly && xsum>0 && r2!=null && r1.length()!=r2.length()){
-								int x;
-								if(r1.length()>r2.length()){
-									x=TrimRead.trimToPosition(r1, 0, r2.length()-1, 1);
-								}else{
-									x=TrimRead.trimToPosition(r2, 0, r1.length()-1, 1);
-								}
-								if(rktsum<2){rktsum++;}
+							if(r2!=null){
+								int x=kmask(r2, keySets);
 								xsum+=x;
-								assert(r1.length()==r2.length()) : r1.length()+", "+r2.length();
+								rktsum+=(x>0 ? 1 : 0);
+								rlen2=r2.length();
+								if(rlen2<minlen2){r2.setDiscarded(true);}
 							}
-							basesKTrimmedT+=xsum;
-							readsKTrimmedT+=rktsum;
-							
 						}else{
-							//Do kmer matching
-							
-							if(minCoveredFraction>0){
-								if(r1!=null && !r1.discarded()){
-									final int minCoveredBases=(int)Math.ceil(minCoveredFraction*r1.length());
-									final int covered=countCoveredBases(r1, keySets, minCoveredBases);
-									if(covered>=minCoveredBases){r1.setDiscarded(true);}
-								}
-								if(r2!=null && !r2.discarded()){
-									final int minCoveredBases=(int)Math.ceil(minCoveredFraction*r2.length());
-									final int covered=countCoveredBases(r2, keySets, minCoveredBases);
-									if(covered>=minCoveredBases){r2.setDiscarded(true);}
-								}
-							}else{
-
-								final int maxBadKmersR1, maxBadKmersR2;
-								if(minKmerFraction==0){
-									maxBadKmersR1=maxBadKmersR2=maxBadKmers0;
-								}else{
-									final int vk1=r1.numValidKmers(keff), vk2=(r2==null ? 0 : r2.numValidKmers(keff));
-									maxBadKmersR1=Tools.max(maxBadKmers0, (int)((vk1-1)*minKmerFraction));
-									maxBadKmersR2=Tools.max(maxBadKmers0, (int)((vk2-1)*minKmerFraction));
-								}
-								
-								if(!findBestMatch){
-									final int a=(kbig<=k ? countSetKmers(r1, keySets, maxBadKmersR1) : countSetKmersBig(r1, keySets, maxBadKmersR1));
-									final int b=(kbig<=k ? countSetKmers(r2, keySets, maxBadKmersR2) : countSetKmersBig(r2, keySets, maxBadKmersR2));
-
-									if(r1!=null && a>maxBadKmersR1){r1.setDiscarded(true);}
-									if(r2!=null && b>maxBadKmersR2){r2.setDiscarded(true);}
-
-								}else{
-									final int a=findBestMatch(r1, keySets, maxBadKmersR1);
-									final int b=findBestMatch(r2, keySets, maxBadKmersR2);
-
-									if(r1!=null && a>0){r1.setDiscarded(true);}
-									if(r2!=null && b>0){r2.setDiscarded(true);}
-								}
+							if(r1!=null){
+								int x=ktrim(r1, keySets);
+								xsum+=x;
+								rktsum+=(x>0 ? 1 : 0);
+								rlen1=r1.length();
+								if(rlen1<minlen1){r1.setDiscarded(true);}
 							}
-							
-							if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
-									(r1.discarded() && (r2==null || r2.discarded()))){
-								remove=true;
-								if(r1!=null){
-									readsKFilteredT++;
-									basesKFilteredT+=r1.length();
-								}
-								if(r2!=null){
-									readsKFilteredT++;
-									basesKFilteredT+=r2.length();
-								}
-								if(bad!=null){bad.add(r1);}
+							if(r2!=null){
+								int x=ktrim(r2, keySets);
+								xsum+=x;
+								rktsum+=(x>0 ? 1 : 0);
+								rlen2=r2.length();
+								if(rlen2<minlen2){r2.setDiscarded(true);}
 							}
-							
 						}
-					}
-					
-//					assert(false) : remove+", "+trimByOverlap+", "+(r2!=null);
-					
-					if(!remove && trimByOverlap && r2!=null && expectedErrors(r1, r2)<meeFilter){
 						
-						if(aprob==null || aprob.length<r1.length()){aprob=new float[r1.length()];}
-						if(bprob==null || bprob.length<r2.length()){bprob=new float[r2.length()];}
-						
-						//Do overlap trimming
-						r2.reverseComplement();
-//						int bestInsert=BBMergeOverlapper.mateByOverlap(r1, r2, aprob, bprob, overlapVector, minOverlap0, minOverlap,
-//								overlapMargin, overlapMaxMismatches0, overlapMaxMismatches, overlapMinq);
-						int bestInsert=BBMergeOverlapper.mateByOverlapRatio(r1, r2, aprob, bprob, overlapVector, minOverlap0, minOverlap,
-								minInsert0, minInsert, maxRatio, 0.12f, ratioMargin, ratioOffset, 0.95f, 0.95f, useQualityForOverlap);
-						
-						if(bestInsert<minInsert){bestInsert=-1;}
-						boolean ambig=(overlapVector[4]==1);
-						final int bestBad=overlapVector[2];
-						
-						if(bestInsert>0 && !ambig && r1.quality!=null && r2.quality!=null && useQualityForOverlap){
-							if(efilterRatio>0 && bestInsert>0 && !ambig){
-								float bestExpected=BBMergeOverlapper.expectedMismatches(r1, r2, bestInsert);
-								if((bestExpected+efilterOffset)*efilterRatio<bestBad){ambig=true;}
-							}
-							if(pfilterRatio>0 && bestInsert>0 && !ambig){
-								float probability=BBMergeOverlapper.probability(r1, r2, bestInsert);
-								if(probability<pfilterRatio){bestInsert=-1;}
+						if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
+								(r1.discarded() && (r2==null || r2.discarded()))){
+							if(!ktrimN){
+								xsum+=(rlen1+rlen2);
+								rktsum=(r1==null ? 0 : 1)+(r2==null ? 0 : 1);
 							}
-							if(meeFilter>=0 && bestInsert>0 && !ambig){
-								float expected=BBMergeOverlapper.expectedMismatches(r1, r2, bestInsert);
-								if(expected>meeFilter){bestInsert=-1;}
+							remove=true;
+							if(addTrimmedToBad && bad!=null){bad.add(r1);}
+						}else if(ktrimRight && trimPairsEvenly && xsum>0 && r2!=null && r1.length()!=r2.length()){
+							int x;
+							if(r1.length()>r2.length()){
+								x=TrimRead.trimToPosition(r1, 0, r2.length()-1, 1);
+							}else{
+								x=TrimRead.trimToPosition(r2, 0, r1.length()-1, 1);
 							}
+							if(rktsum<2){rktsum++;}
+							xsum+=x;
+							assert(r1.length()==r2.length()) : r1.length()+", "+r2.length();
 						}
+						basesKTrimmedT+=xsum;
+						readsKTrimmedT+=rktsum;
 						
-						r2.reverseComplement();
+					}else{
+						//Do kmer matching
 						
-						if(bestInsert>0 && !ambig){
-							if(bestInsert<r1.length()){
-								if(verbose){System.err.println("Overlap right trimming r1 to "+0+", "+(bestInsert-1));}
-								int x=TrimRead.trimToPosition(r1, 0, bestInsert-1, 1);
-								if(verbose){System.err.println("Trimmed "+x+" bases: "+new String(r1.bases));}
-								readsTrimmedByOverlapT++;
-								basesTrimmedByOverlapT+=x;
+						if(minCoveredFraction>0){
+							if(r1!=null && !r1.discarded()){
+								final int minCoveredBases=(int)Math.ceil(minCoveredFraction*r1.length());
+								final int covered=countCoveredBases(r1, keySets, minCoveredBases);
+								if(covered>=minCoveredBases){r1.setDiscarded(true);}
 							}
-							if(bestInsert<r2.length()){
-								if(verbose){System.err.println("Overlap right trimming r2 to "+0+", "+(bestInsert-1));}
-								int x=TrimRead.trimToPosition(r2, 0, bestInsert-1, 1);
-								if(verbose){System.err.println("Trimmed "+x+" bases: "+new String(r2.bases));}
-								readsTrimmedByOverlapT++;
-								basesTrimmedByOverlapT+=x;
+							if(r2!=null && !r2.discarded()){
+								final int minCoveredBases=(int)Math.ceil(minCoveredFraction*r2.length());
+								final int covered=countCoveredBases(r2, keySets, minCoveredBases);
+								if(covered>=minCoveredBases){r2.setDiscarded(true);}
 							}
-						}
-					}
-					
-					if(!remove){
-						//Do quality trimming
-						
-						int rlen1=0, rlen2=0;
-						if(r1!=null){
-							if(qtrimLeft || qtrimRight){
-								int x=TrimRead.trimFast(r1, qtrimLeft, qtrimRight, trimq, 1);
-								basesQTrimmedT+=x;
-								readsQTrimmedT+=(x>0 ? 1 : 0);
+						}else{
+
+							final int maxBadKmersR1, maxBadKmersR2;
+							if(minKmerFraction==0){
+								maxBadKmersR1=maxBadKmersR2=maxBadKmers0;
+							}else{
+								final int vk1=r1.numValidKmers(keff), vk2=(r2==null ? 0 : r2.numValidKmers(keff));
+								maxBadKmersR1=Tools.max(maxBadKmers0, (int)((vk1-1)*minKmerFraction));
+								maxBadKmersR2=Tools.max(maxBadKmers0, (int)((vk2-1)*minKmerFraction));
 							}
-							rlen1=r1.length();
-							if(rlen1<minlen1 || rlen1>maxReadLength){r1.setDiscarded(true);}
-						}
-						if(r2!=null){
-							if(qtrimLeft || qtrimRight){
-								int x=TrimRead.trimFast(r2, qtrimLeft, qtrimRight, trimq, 1);
-								basesQTrimmedT+=x;
-								readsQTrimmedT+=(x>0 ? 1 : 0);
+							
+							if(!findBestMatch){
+								final int a=(kbig<=k ? countSetKmers(r1, keySets, maxBadKmersR1) : countSetKmersBig(r1, keySets, maxBadKmersR1));
+								final int b=(kbig<=k ? countSetKmers(r2, keySets, maxBadKmersR2) : countSetKmersBig(r2, keySets, maxBadKmersR2));
+
+								if(r1!=null && a>maxBadKmersR1){r1.setDiscarded(true);}
+								if(r2!=null && b>maxBadKmersR2){r2.setDiscarded(true);}
+
+							}else{
+								final int a=findBestMatch(r1, keySets, maxBadKmersR1);
+								final int b=findBestMatch(r2, keySets, maxBadKmersR2);
+
+								if(r1!=null && a>0){r1.setDiscarded(true);}
+								if(r2!=null && b>0){r2.setDiscarded(true);}
 							}
-							rlen2=r2.length();
-							if(rlen2<minlen2 || rlen2>maxReadLength){r2.setDiscarded(true);}
 						}
 						
-						//Discard reads if too short
 						if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
 								(r1.discarded() && (r2==null || r2.discarded()))){
-							basesQTrimmedT+=(r1.length()+r1.mateLength());
 							remove=true;
-							if(addTrimmedToBad && bad!=null){bad.add(r1);}
+							if(r1!=null){
+								readsKFilteredT++;
+								basesKFilteredT+=r1.length();
+							}
+							if(r2!=null){
+								readsKFilteredT++;
+								basesKFilteredT+=r2.length();
+							}
+							if(bad!=null){bad.add(r1);}
 						}
 						
 					}
+				}
+				
+//					assert(false) : remove+", "+trimByOverlap+", "+(r2!=null);
+				
+				if(!remove && trimByOverlap && r2!=null && expectedErrors(r1, r2)<meeFilter){
 					
-					if(!remove){
-						//Do quality filtering
-						
-						//Determine whether to discard the reads based on average quality
-						if(minAvgQuality>0){
-							if(r1!=null && r1.quality!=null && r1.avgQuality(false, minAvgQualityBases)<minAvgQuality){r1.setDiscarded(true);}
-							if(r2!=null && r2.quality!=null && r2.avgQuality(false, minAvgQualityBases)<minAvgQuality){r2.setDiscarded(true);}
+					if(aprob==null || aprob.length<r1.length()){aprob=new float[r1.length()];}
+					if(bprob==null || bprob.length<r2.length()){bprob=new float[r2.length()];}
+					
+					//Do overlap trimming
+					r2.reverseComplement();
+//						int bestInsert=BBMergeOverlapper.mateByOverlap(r1, r2, aprob, bprob, overlapVector, minOverlap0, minOverlap,
+//								overlapMargin, overlapMaxMismatches0, overlapMaxMismatches, overlapMinq);
+					int bestInsert=BBMergeOverlapper.mateByOverlapRatio(r1, r2, aprob, bprob, overlapVector, minOverlap0, minOverlap,
+							minInsert0, minInsert, maxRatio, 0.12f, ratioMargin, ratioOffset, 0.95f, 0.95f, useQualityForOverlap);
+					
+					if(bestInsert<minInsert){bestInsert=-1;}
+					boolean ambig=(overlapVector[4]==1);
+					final int bestBad=overlapVector[2];
+					
+					if(bestInsert>0 && !ambig && r1.quality!=null && r2.quality!=null && useQualityForOverlap){
+						if(efilterRatio>0 && bestInsert>0 && !ambig){
+							float bestExpected=BBMergeOverlapper.expectedMismatches(r1, r2, bestInsert);
+							if((bestExpected+efilterOffset)*efilterRatio<bestBad){ambig=true;}
 						}
-						//Determine whether to discard the reads based on the presence of Ns
-						if(maxNs>=0){
-							if(r1!=null && r1.countUndefined()>maxNs){r1.setDiscarded(true);}
-							if(r2!=null && r2.countUndefined()>maxNs){r2.setDiscarded(true);}
+						if(pfilterRatio>0 && bestInsert>0 && !ambig){
+							float probability=BBMergeOverlapper.probability(r1, r2, bestInsert);
+							if(probability<pfilterRatio){bestInsert=-1;}
 						}
-						//Determine whether to discard the reads based on a lack of useful kmers
-						if(minConsecutiveBases>0){
-							if(r1!=null && !r1.discarded() && !r1.hasMinConsecutiveBases(minConsecutiveBases)){r1.setDiscarded(true);}
-							if(r2!=null && !r2.discarded() && !r2.hasMinConsecutiveBases(minConsecutiveBases)){r2.setDiscarded(true);}
+						if(meeFilter>=0 && bestInsert>0 && !ambig){
+							float expected=BBMergeOverlapper.expectedMismatches(r1, r2, bestInsert);
+							if(expected>meeFilter){bestInsert=-1;}
 						}
-						//Determine whether to discard the reads based on minimum base frequency
-						if(minBaseFrequency>0){
-							if(r1!=null && r1.minBaseCount()<minBaseFrequency*r1.length()){r1.setDiscarded(true);}
-							if(r2!=null && r2.minBaseCount()<minBaseFrequency*r2.length()){r2.setDiscarded(true);}
+					}
+					
+					r2.reverseComplement();
+					
+					if(bestInsert>0 && !ambig){
+						if(bestInsert<r1.length()){
+							if(verbose){System.err.println("Overlap right trimming r1 to "+0+", "+(bestInsert-1));}
+							int x=TrimRead.trimToPosition(r1, 0, bestInsert-1, 1);
+							if(verbose){System.err.println("Trimmed "+x+" bases: "+new String(r1.bases));}
+							readsTrimmedByOverlapT++;
+							basesTrimmedByOverlapT+=x;
 						}
-						
-						//Discard reads if too short
-						if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
-								(r1.discarded() && (r2==null || r2.discarded()))){
-							basesQFilteredT+=(r1.length()+r1.mateLength());
-							readsQFilteredT+=1+r1.mateCount();
-							remove=true;
-							if(addTrimmedToBad && bad!=null){bad.add(r1);}
+						if(bestInsert<r2.length()){
+							if(verbose){System.err.println("Overlap right trimming r2 to "+0+", "+(bestInsert-1));}
+							int x=TrimRead.trimToPosition(r2, 0, bestInsert-1, 1);
+							if(verbose){System.err.println("Trimmed "+x+" bases: "+new String(r2.bases));}
+							readsTrimmedByOverlapT++;
+							basesTrimmedByOverlapT+=x;
 						}
 					}
+				}
+				
+				if(!remove){
+					//Do quality trimming
 					
-					if(!remove && calcEntropy){
-						//Test entropy
-						
-						if(r1!=null && !r1.discarded() && entropyCutoff>averageEntropy(r1.bases, entropyK, entropyWindow, 
-								entropyCounts, entropyCountCounts, entropyKmerspace, verifyEntropy)){r1.setDiscarded(true);}
-						if(r2!=null && !r2.discarded() && entropyCutoff>averageEntropy(r2.bases, entropyK, entropyWindow, 
-								entropyCounts, entropyCountCounts, entropyKmerspace, verifyEntropy)){r2.setDiscarded(true);}
-						
-						if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
-								(r1.discarded() && (r2==null || r2.discarded()))){
-							basesEFilteredT+=(r1.length()+r1.mateLength());
-							readsEFilteredT+=(r1==null ? 0 : 1)+(r2==null ? 0 : 1);
-							remove=true;
-							if(bad!=null){bad.add(r1);}
+					int rlen1=0, rlen2=0;
+					if(r1!=null){
+						if(qtrimLeft || qtrimRight){
+							int x=TrimRead.trimFast(r1, qtrimLeft, qtrimRight, trimq, 1);
+							basesQTrimmedT+=x;
+							readsQTrimmedT+=(x>0 ? 1 : 0);
 						}
+						rlen1=r1.length();
+						if(rlen1<minlen1 || rlen1>maxReadLength){r1.setDiscarded(true);}
 					}
-					
-					if(ross!=null){
-						if(!r1.discarded() && (r2==null || r2.discarded())){
-							Read clone=r1.clone();
-							clone.mate=null;
-							single.add(clone);
-						}else if(r2!=null && r1.discarded() && !r2.discarded()){
-							Read clone=r2.clone();
-							clone.mate=null;
-							single.add(clone);
+					if(r2!=null){
+						if(qtrimLeft || qtrimRight){
+							int x=TrimRead.trimFast(r2, qtrimLeft, qtrimRight, trimq, 1);
+							basesQTrimmedT+=x;
+							readsQTrimmedT+=(x>0 ? 1 : 0);
 						}
+						rlen2=r2.length();
+						if(rlen2<minlen2 || rlen2>maxReadLength){r2.setDiscarded(true);}
 					}
 					
-					if(remove){
-						//Evict read
-						removed++;
-						if(r2!=null){removed++;}
-						reads.set(i, null);
-						
-						readsOutmT+=1+r1.mateCount();
-						basesOutmT+=r1.length()+r1.mateLength();
-					}else{
-						readsOutuT+=1+r1.mateCount();
-						basesOutuT+=r1.length()+r1.mateLength();
+					//Discard reads if too short
+					if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
+							(r1.discarded() && (r2==null || r2.discarded()))){
+						basesQTrimmedT+=(r1.length()+r1.mateLength());
+						remove=true;
+						if(addTrimmedToBad && bad!=null){bad.add(r1);}
 					}
+					
 				}
 				
-				//Send matched list to matched output stream
-				if(rosb!=null){
-					rosb.add(bad, ln.id);
-					bad.clear();
+				if(!remove){
+					//Do quality filtering
+					
+					//Determine whether to discard the reads based on average quality
+					if(minAvgQuality>0){
+						if(r1!=null && r1.quality!=null && r1.avgQuality(false, minAvgQualityBases)<minAvgQuality){r1.setDiscarded(true);}
+						if(r2!=null && r2.quality!=null && r2.avgQuality(false, minAvgQualityBases)<minAvgQuality){r2.setDiscarded(true);}
+					}
+					//Determine whether to discard the reads based on the presence of Ns
+					if(maxNs>=0){
+						if(r1!=null && r1.countUndefined()>maxNs){r1.setDiscarded(true);}
+						if(r2!=null && r2.countUndefined()>maxNs){r2.setDiscarded(true);}
+					}
+					//Determine whether to discard the reads based on a lack of useful kmers
+					if(minConsecutiveBases>0){
+						if(r1!=null && !r1.discarded() && !r1.hasMinConsecutiveBases(minConsecutiveBases)){r1.setDiscarded(true);}
+						if(r2!=null && !r2.discarded() && !r2.hasMinConsecutiveBases(minConsecutiveBases)){r2.setDiscarded(true);}
+					}
+					//Determine whether to discard the reads based on minimum base frequency
+					if(minBaseFrequency>0){
+						if(r1!=null && r1.minBaseCount()<minBaseFrequency*r1.length()){r1.setDiscarded(true);}
+						if(r2!=null && r2.minBaseCount()<minBaseFrequency*r2.length()){r2.setDiscarded(true);}
+					}
+					
+					//Discard reads if too short
+					if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
+							(r1.discarded() && (r2==null || r2.discarded()))){
+						basesQFilteredT+=(r1.length()+r1.mateLength());
+						readsQFilteredT+=1+r1.mateCount();
+						remove=true;
+						if(addTrimmedToBad && bad!=null){bad.add(r1);}
+					}
 				}
 				
-				//Send unmatched list to unmatched output stream
-				if(ros!=null){
-					ros.add((removed>0 ? Tools.condenseNew(reads) : reads), ln.id); //Creates a new list if old one became empty, to prevent shutting down the cris.
+				if(!remove && calcEntropy){
+					//Test entropy
+					
+					if(r1!=null && !r1.discarded() && entropyCutoff>averageEntropy(r1.bases, entropyK, entropyWindow, 
+							entropyCounts, entropyCountCounts, entropyKmerspace, verifyEntropy)){r1.setDiscarded(true);}
+					if(r2!=null && !r2.discarded() && entropyCutoff>averageEntropy(r2.bases, entropyK, entropyWindow, 
+							entropyCounts, entropyCountCounts, entropyKmerspace, verifyEntropy)){r2.setDiscarded(true);}
+					
+					if((removePairsIfEitherBad && (r1.discarded() || (r2!=null && r2.discarded()))) || 
+							(r1.discarded() && (r2==null || r2.discarded()))){
+						basesEFilteredT+=(r1.length()+r1.mateLength());
+						readsEFilteredT+=(r1==null ? 0 : 1)+(r2==null ? 0 : 1);
+						remove=true;
+						if(bad!=null){bad.add(r1);}
+					}
 				}
 				
 				if(ross!=null){
-					ross.add(single, ln.id);
-					single.clear();
+					if(!r1.discarded() && (r2==null || r2.discarded())){
+						Read clone=r1.clone();
+						clone.mate=null;
+						single.add(clone);
+					}else if(r2!=null && r1.discarded() && !r2.discarded()){
+						Read clone=r2.clone();
+						clone.mate=null;
+						single.add(clone);
+					}
 				}
-
-				if(maxBasesOutmT>=0 && basesOutmT>=maxBasesOutmT){break;}
-				if(maxBasesOutuT>=0 && basesOutuT>=maxBasesOutuT){break;}
 				
-				//Fetch a new read list
-				cris.returnList(ln.id, ln.list.isEmpty());
-				ln=cris.nextList();
-				reads=(ln!=null ? ln.list : null);
+				if(remove){
+					//Evict read
+					removed++;
+					if(r2!=null){removed++;}
+					reads.set(i, null);
+					
+					readsOutmT+=1+r1.mateCount();
+					basesOutmT+=r1.length()+r1.mateLength();
+				}else{
+					readsOutuT+=1+r1.mateCount();
+					basesOutuT+=r1.length()+r1.mateLength();
+				}
 			}
-			cris.returnList(ln.id, ln.list.isEmpty());
+			
+			//Send matched list to matched output stream
+			if(rosb!=null){
+				rosb.add(bad, ln.id);
+				bad.clear();
+			}
+			
+			//Send unmatched list to unmatched output stream
+			if(ros!=null){
+				ros.add((removed>0 ? Tools.condenseNew(reads) : reads), ln.id); //Creates a new list if old one became empty, to prevent shutting down the cris.
+			}
+			
+			if(ross!=null){
+				ross.add(single, ln.id);
+				single.clear();
+			}
+			
+			//Stop reading once the output of all threads together reaches the limit
+			boolean more=true;
+			if(maxBasesOutm>0 && basesOutmTotal.addAndGet(basesOutmT-basesOutmT0)>=maxBasesOutm){more=false;}
+			if(maxBasesOutu>0 && basesOutuTotal.addAndGet(basesOutuT-basesOutuT0)>=maxBasesOutu){more=false;}
+			return more;
 		}
 		
 		/*--------------------------------------------------------------*/
@@ -3314,10 +3305,10 @@ public class BBDukF {
 		
 		/*--------------------------------------------------------------*/
 		
-		/** Input read stream */
-		private final ConcurrentReadInputStream cris;
 		/** Output read streams */
 		private final ConcurrentReadOutputStream ros, rosb, ross;
+		/** Buffers for matched and singleton reads of the current list */
+		private final ArrayList<Read> bad, single;
 		
 		private final ReadStats readstats;
 		private final int[] overlapVector;
@@ -3344,9 +3335,6 @@ public class BBDukF {
 		
 		private long readsOutmT=0;
 		private long basesOutmT=0;
-
-		private final long maxBasesOutmT;
-		private final long maxBasesOutuT;
 		
 		private long readsQTrimmedT=0;
 		private long basesQTrimmedT=0;
@@ -3458,6 +3446,8 @@ public class BBDukF {
 	private long maxBasesOutm=-1;
 	/** Quit after this many bases written to outu */
 	private long maxBasesOutu=-1;
+	/** Bases written to outm and outu so far by all threads, for enforcing maxBasesOutm and maxBasesOutu */
+	private final AtomicLong basesOutmTotal=new AtomicLong(0), basesOutuTotal=new AtomicLong(0);
 	
 	/** Maximum input reads (or pairs) to process.  Does not apply to references.  -1 means unlimited. */
 	private long maxReads=-1;
@@ -357,6 +357,8 @@ public class BBMerge {
 				for(String s : b.split(",")){
 					extra.add(s);
 				}
+			}else if(a.equals("bitoverlap") || a.equals("packedoverlap")){
+				BitOverlap.ENABLED=Tools.parseBoolean(b);
 			}else if(a.equals("useratio") || a.equals("ratio") || a.equals("ratiomode")){
 				useRatioMode=Tools.parseBoolean(b);
 			}else if(a.equals("usenormalmode") || a.equals("normalmode")){
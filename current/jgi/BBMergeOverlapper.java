@@ -129,8 +129,11 @@ public final class BBMergeOverlapper {
 			for(int i=0; i<bqual.length; i++){bprob[i]=probCorrect[bqual[i]];}
 		}
 		
+		final BitOverlap bo=BitOverlap.get(abases, bbases);
+		if(bo!=null){bo.setProbs(aprob, alen, bprob, blen);}
+		
 		{
-			float x=findBestRatio_WithQualities(a, b, aprob, bprob, minOverlap0, minOverlap, minInsert, maxRatio, offset);
+			float x=findBestRatio_WithQualities(a, b, aprob, bprob, minOverlap0, minOverlap, minInsert, maxRatio, offset, bo);
 			if(!TAG_CUSTOM && x>maxRatio){
 				rvector[2]=minLength;
 				rvector[4]=0;
@@ -174,6 +177,11 @@ public final class BBMergeOverlapper {
 			final float badlimit=extraMult*(Tools.min(bestRatio, maxRatio)*margin*overlapLength)+1f;
 //			final float badlimit=extraMult*Tools.max(minSecondRatio, Tools.min(bestRatio, maxRatio))*margin*overlapLength+1f;
 
+			if(bo!=null){//Skip windows whose weighted mismatches must exceed badlimit
+				bo.compare(istart, jstart, overlapLength);
+				if(bo.minBad(bo.weightedMismatches)>badlimit){continue;}
+			}
+
 			final int imax=istart+overlapLength;
 			for(int i=istart, j=jstart; i<imax && bad<=badlimit; i++, j++){
 				assert(i>=0 && i<alen && j>=0 && j<blen) : "\njstart="+jstart+", j="+j+
@@ -290,8 +298,11 @@ public final class BBMergeOverlapper {
 		final int alen=abases.length, blen=bbases.length;
 		final int minLength=Tools.min(alen, blen);
 		
+		final BitOverlap bo=BitOverlap.get(abases, bbases);
+		if(bo!=null){bo.setIncrements(gIncr, bIncr, Tools.max(alen, blen));}
+		
 		{
-			float x=findBestRatio(a, b, minOverlap0, minOverlap, minInsert, maxRatio, offset, gIncr, bIncr);
+			float x=findBestRatio(a, b, minOverlap0, minOverlap, minInsert, maxRatio, offset, gIncr, bIncr, bo);
 			if(x>maxRatio){
 				rvector[2]=minLength;
 				rvector[4]=0;
@@ -333,18 +344,25 @@ public final class BBMergeOverlapper {
 			float good=0, bad=0;
 			int badInt=0;
 
-			final int imax=istart+overlapLength;
-			for(int i=istart, j=jstart; i<imax && bad<=badlimit; i++, j++){
-				assert(i>=0 && i<alen && j>=0 && j<blen) : "\njstart="+jstart+", j="+j+
-				", istart="+istart+", i="+i+" \n"+"insert="+insert+", overlap="+overlapLength+", a.length="+a.length()+
-				", b.length="+b.length()+", bad="+bad+", badlimit="+badlimit+", good="+good;
-				final byte ca=abases[i], cb=bbases[j];
-				
-				if(ca==cb){
-					if(ca!=N){good+=gIncr;}
-				}else{
-					bad+=bIncr;
-					badInt++;
+			if(bo!=null){//Same totals as the loop below; partial totals from an early exit are never used
+				bo.compare(istart, jstart, overlapLength);
+				badInt=bo.mismatches;
+				bad=bo.badSum(badInt);
+				good=bo.goodSum(overlapLength-badInt-bo.nMatches);
+			}else{
+				final int imax=istart+overlapLength;
+				for(int i=istart, j=jstart; i<imax && bad<=badlimit; i++, j++){
+					assert(i>=0 && i<alen && j>=0 && j<blen) : "\njstart="+jstart+", j="+j+
+					", istart="+istart+", i="+i+" \n"+"insert="+insert+", overlap="+overlapLength+", a.length="+a.length()+
+					", b.length="+b.length()+", bad="+bad+", badlimit="+badlimit+", good="+good;
+					final byte ca=abases[i], cb=bbases[j];
+
+					if(ca==cb){
+						if(ca!=N){good+=gIncr;}
+					}else{
+						bad+=bIncr;
+						badInt++;
+					}
 				}
 			}
 			
@@ -436,6 +454,14 @@ public final class BBMergeOverlapper {
 	
 	protected static final float findBestRatio_WithQualities(Read a, Read b, final float[] aprob, final float[] bprob, 
 			final int minOverlap0, final int minOverlap, final int minInsert, final float maxRatio, final float offset) {
+		final BitOverlap bo=BitOverlap.get(a.bases, b.bases);
+		if(bo!=null){bo.setProbs(aprob, a.length(), bprob, b.length());}
+		return findBestRatio_WithQualities(a, b, aprob, bprob, minOverlap0, minOverlap, minInsert, maxRatio, offset, bo);
+	}
+	
+	/** @param bo Packed reads with probabilities set, or null to compare bytes */
+	private static final float findBestRatio_WithQualities(Read a, Read b, final float[] aprob, final float[] bprob, 
+			final int minOverlap0, final int minOverlap, final int minInsert, final float maxRatio, final float offset, final BitOverlap bo) {
 		final byte[] abases=a.bases, bbases=b.bases;
 		final int alen=abases.length, blen=bbases.length;
 		
@@ -457,6 +483,11 @@ public final class BBMergeOverlapper {
 			final float badlimit=bestRatio*overlapLength;
 			float good=0, bad=0;
 			
+			if(bo!=null){
+				bo.compare(istart, jstart, overlapLength);
+				if(bo.minBad(bo.weightedMismatches)>badlimit){continue;}
+			}
+			
 			final int imax=istart+overlapLength;
 			for(int i=istart, j=jstart; i<imax && bad<=badlimit; i++, j++){
 				assert(i>=0 && i<alen && j>=0 && j<blen) : "\njstart="+jstart+", j="+j+
@@ -489,6 +520,14 @@ public final class BBMergeOverlapper {
 	
 	protected static final float findBestRatio(Read a, Read b, 
 			final int minOverlap0, final int minOverlap, final int minInsert, final float maxRatio, final float offset, final float gIncr, final float bIncr) {
+		final BitOverlap bo=BitOverlap.get(a.bases, b.bases);
+		if(bo!=null){bo.setIncrements(gIncr, bIncr, Tools.max(a.length(), b.length()));}
+		return findBestRatio(a, b, minOverlap0, minOverlap, minInsert, maxRatio, offset, gIncr, bIncr, bo);
+	}
+	
+	/** @param bo Packed reads with increments set, or null to compare bytes */
+	private static final float findBestRatio(Read a, Read b, final int minOverlap0, final int minOverlap, final int minInsert, 
+			final float maxRatio, final float offset, final float gIncr, final float bIncr, final BitOverlap bo) {
 		final byte[] abases=a.bases, bbases=b.bases;
 		final int alen=abases.length, blen=bbases.length;
 		
@@ -511,16 +550,22 @@ public final class BBMergeOverlapper {
 			final float badlimit=bestRatio*overlapLength;
 			float good=0, bad=0;
 			
-			final int imax=istart+overlapLength;
-			for(int i=istart, j=jstart; i<imax && bad<=badlimit; i++, j++){
-				assert(i>=0 && i<alen && j>=0 && j<blen) : "\njstart="+jstart+", j="+j+
-				", istart="+istart+", i="+i+" \n"+"insert="+insert+", overlap="+overlapLength+", a.length="+a.length()+
-				", b.length="+b.length()+", bad="+bad+", badlimit="+badlimit+", good="+good;
-				final byte ca=abases[i], cb=bbases[j];
-				
-				if(ca==cb){
-					if(ca!=N){good+=gIncr;}
-				}else{bad+=bIncr;}
+			if(bo!=null){
+				bo.compare(istart, jstart, overlapLength);
+				bad=bo.badSum(bo.mismatches);
+				good=bo.goodSum(overlapLength-bo.mismatches-bo.nMatches);
+			}else{
+				final int imax=istart+overlapLength;
+				for(int i=istart, j=jstart; i<imax && bad<=badlimit; i++, j++){
+					assert(i>=0 && i<alen && j>=0 && j<blen) : "\njstart="+jstart+", j="+j+
+					", istart="+istart+", i="+i+" \n"+"insert="+insert+", overlap="+overlapLength+", a.length="+a.length()+
+					", b.length="+b.length()+", bad="+bad+", badlimit="+badlimit+", good="+good;
+					final byte ca=abases[i], cb=bbases[j];
+
+					if(ca==cb){
+						if(ca!=N){good+=gIncr;}
+					}else{bad+=bIncr;}
+				}
 			}
 
 			if(bad<=badlimit){
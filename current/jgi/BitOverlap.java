@@ -0,0 +1,201 @@
+package jgi;
+
+import java.util.Arrays;
+
+/**
+ * Bit-parallel overlap comparison for BBMergeOverlapper.
+ * Both reads are packed into three bit planes (A=000, C=001, G=010, T=011, N=100),
+ * so equality of a whole 64-base window is a few XORs, and counts are popcounts.
+ * Reads containing other symbols are not packed, and the caller falls back to the byte loop.
+ *
+ * Sums of constant increments are precomputed by repeated addition, so they are bit-identical
+ * to the per-base float accumulation in the byte loops.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+final class BitOverlap {
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Packing            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Returns this thread's instance packed with these reads, or null if either cannot be packed */
+	static BitOverlap get(final byte[] abases, final byte[] bbases){
+		if(!ENABLED){return null;}
+		BitOverlap bo=local.get();
+		if(bo==null){
+			bo=new BitOverlap();
+			local.set(bo);
+		}
+		return bo.pack(abases, bbases) ? bo : null;
+	}
+
+	private boolean pack(final byte[] abases, final byte[] bbases){
+		final int words=((Math.max(abases.length, bbases.length)+63)>>>6)+1; //Extra word so windows can always read word+1
+		if(a0.length<words){
+			a0=new long[words]; a1=new long[words]; a2=new long[words]; az=new long[words];
+			b0=new long[words]; b1=new long[words]; b2=new long[words]; bz=new long[words];
+		}
+		useZeros=false;
+		pSumsLen=0;
+		return pack(abases, a0, a1, a2, words) && pack(bbases, b0, b1, b2, words);
+	}
+
+	private static boolean pack(final byte[] bases, final long[] p0, final long[] p1, final long[] p2, final int words){
+		for(int i=0; i<words; i++){p0[i]=p1[i]=p2[i]=0;}
+		for(int i=0; i<bases.length; i++){
+			final int x=code[bases[i]&0xFF];
+			if(x<0){return false;}
+			final long bit=1L<<i;
+			final int w=i>>>6;
+			if((x&1)!=0){p0[w]|=bit;}
+			if((x&2)!=0){p1[w]|=bit;}
+			if((x&4)!=0){p2[w]|=bit;}
+		}
+		return true;
+	}
+
+	/**
+	 * Marks positions with zero probability, which contribute nothing to a weighted mismatch sum,
+	 * and records the smallest product of nonzero probabilities.
+	 */
+	void setProbs(final float[] aprob, final int alen, final float[] bprob, final int blen){
+		final float minA=markZeros(aprob, alen, az), minB=markZeros(bprob, blen, bz);
+		minProduct=minA*minB;
+		useZeros=true;
+		pSumsLen=0;
+	}
+
+	private static float markZeros(final float[] prob, final int len, final long[] z){
+		for(int i=0; i<z.length; i++){z[i]=0;}
+		float min=1;
+		for(int i=0; i<len; i++){
+			final float p=prob[i];
+			if(p<=0){z[i>>>6]|=(1L<<i);}
+			else if(p<min){min=p;}
+		}
+		return min;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------          Comparison          ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Compares a[istart, istart+len) to b[jstart, jstart+len).
+	 * Sets mismatches, nMatches (positions where both are N), and,
+	 * after setProbs, weightedMismatches (mismatches where neither probability is zero).
+	 */
+	void compare(final int istart, final int jstart, final int len){
+		int mm=0, nm=0, wm=0;
+		for(int k=0; k<len; k+=64){
+			final int ia=istart+k, ib=jstart+k;
+			final int n=len-k;
+			final long mask=(n>=64 ? -1L : ~((-1L)<<n));
+			final long an=window(a2, ia);
+			final long neq=((window(a0, ia)^window(b0, ib))|(window(a1, ia)^window(b1, ib))|(an^window(b2, ib)))&mask;
+			mm+=Long.bitCount(neq);
+			nm+=Long.bitCount(an&~neq&mask);
+			if(useZeros){
+				wm+=Long.bitCount(neq&~window(az, ia)&~window(bz, ib));
+			}
+		}
+		mismatches=mm;
+		nMatches=nm;
+		weightedMismatches=wm;
+	}
+
+	/** Returns 64 bits starting at bit offset */
+	private static long window(final long[] array, final int offset){
+		final int w=offset>>>6, s=offset&63;
+		return s==0 ? array[w] : (array[w]>>>s)|(array[w+1]<<(64-s));
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------             Sums             ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Prepares goodSum and badSum for counts up to maxCount */
+	void setIncrements(final float gIncr, final float bIncr, final int maxCount){
+		if(gSums.length<=maxCount || gIncr!=gSumsIncr){
+			gSums=sums(gIncr, Math.max(maxCount+1, gSums.length));
+			gSumsIncr=gIncr;
+		}
+		if(bSums.length<=maxCount || bIncr!=bSumsIncr){
+			bSums=sums(bIncr, Math.max(maxCount+1, bSums.length));
+			bSumsIncr=bIncr;
+		}
+	}
+
+	private static float[] sums(final float incr, final int len){
+		final float[] array=new float[len];
+		float sum=0;
+		for(int i=1; i<len; i++){
+			sum+=incr;
+			array[i]=sum;
+		}
+		return array;
+	}
+
+	/** Identical to adding gIncr count times */
+	float goodSum(int count){return gSums[count];}
+
+	/** Identical to adding bIncr count times */
+	float badSum(int count){return bSums[count];}
+
+	/**
+	 * A lower bound on the weighted mismatch sum for a window with this many weighted mismatches.
+	 * Each such mismatch adds at least minProduct, and float addition is monotonic,
+	 * so the byte loop's sum is at least minProduct added count times.
+	 */
+	float minBad(final int count){
+		if(pSums.length<=count){
+			float[] old=pSums;
+			pSums=new float[Math.max(count+1, old.length*2)];
+			System.arraycopy(old, 0, pSums, 0, pSumsLen);
+		}
+		if(pSumsLen==0){pSumsLen=1;}
+		for(; pSumsLen<=count; pSumsLen++){pSums[pSumsLen]=pSums[pSumsLen-1]+minProduct;}
+		return pSums[count];
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	int mismatches, nMatches, weightedMismatches;
+
+	private long[] a0=new long[0], a1=new long[0], a2=new long[0], az=new long[0];
+	private long[] b0=new long[0], b1=new long[0], b2=new long[0], bz=new long[0];
+	private boolean useZeros=false;
+
+	private float[] gSums=new float[0], bSums=new float[0];
+	private float gSumsIncr=Float.NaN, bSumsIncr=Float.NaN;
+
+	private float minProduct=0;
+	private float[] pSums=new float[256];
+	private int pSumsLen=0;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Use bit-parallel comparison in the Java ratio-mode overlap functions */
+	static boolean ENABLED=true;
+
+	private static final ThreadLocal<BitOverlap> local=new ThreadLocal<BitOverlap>();
+
+	/** 3-bit plane code per byte; -1 for symbols that are not packed */
+	private static final byte[] code=new byte[256];
+	static{
+		Arrays.fill(code, (byte)-1);
+		code['A']=0;
+		code['C']=1;
+		code['G']=2;
+		code['T']=3;
+		code['N']=4;
+	}
+
+}
@@ -1,6 +1,9 @@
 package jgi;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -1098,6 +1101,22 @@ public class CalcTrueQuality {
 			if(qpmatrix!=null){writeMatrix(qpmatrix, qpGoodMatrix, qpBadMatrix, overwrite, append, pass);}
 			if(qmatrix!=null){writeMatrix(qmatrix, qGoodMatrix, qBadMatrix, overwrite, append, pass);}
 			if(pmatrix!=null){writeMatrix(pmatrix, pGoodMatrix, pBadMatrix, overwrite, append, pass);}
+			if(USE_BINARY_TABLE){writeTable();}
+		}
+		
+		/** Writes the matrices selected for recalibration as a FlatCountTable, which loads faster than text */
+		private void writeTable(){
+			final FlatCountTable table=new FlatCountTable(pass);
+			final Object[] good={q102GoodMatrix, qbpGoodMatrix, q10GoodMatrix, q12GoodMatrix, qb12GoodMatrix,
+					qb012GoodMatrix, qb123GoodMatrix, qb234GoodMatrix, q12b12GoodMatrix, qpGoodMatrix, qGoodMatrix};
+			final Object[] bad={q102BadMatrix, qbpBadMatrix, q10BadMatrix, q12BadMatrix, qb12BadMatrix,
+					qb012BadMatrix, qb123BadMatrix, qb234BadMatrix, q12b12BadMatrix, qpBadMatrix, qBadMatrix};
+			for(int id : table.ids){
+				table.add(id, good[id], 0);
+				table.add(id, bad[id], 0);
+				table.add(id, bad[id], 1);
+			}
+			table.write(binaryTable.replace("_p#", "_p"+pass), overwrite);
 		}
 
 		final long[][][][] q102GoodMatrix=new long[2][QMAX2][QMAX2][QMAX2];
@@ -1161,6 +1180,7 @@ public class CalcTrueQuality {
 				assert(quals.length<=LENMAX || !(use_qp[pass] || use_qbp[pass])) : 
 					"\nThese reads are too long ("+quals.length+"bp) for recalibration using position.  Please select different matrices.\n";
 				quals2=new byte[quals.length];
+				final int[] ctx=(table==null ? null : new int[FlatCountTable.VARS]);
 				for(int i=0; i<bases.length; i++){
 					final byte q2;
 					if(!AminoAcid.isFullyDefined(bases[i])){
@@ -1168,13 +1188,15 @@ public class CalcTrueQuality {
 					}else{
 						final float prob;
 						if(USE_WEIGHTED_AVERAGE){
-							prob=estimateErrorProb2(quals, bases, i, pairnum, OBSERVATION_CUTOFF[pass]);
+							table.fillContext(quals, bases, i, pairnum, ctx);
+							final int q1=quals[i];
+							prob=table.errorProb(ctx, fakeSum[q1], fakeBad[q1]);
 						}else if(USE_AVERAGE){
 							prob=estimateErrorProbAvg(quals, bases, i, pairnum);
 						}else{
 							prob=estimateErrorProbMax(quals, bases, i, pairnum);
 						}
-						q2=Tools.max((byte)2, QualityTools.probErrorToPhred(prob, true));
+						q2=phredTable.toPhred(prob);
 					}
 					quals2[i]=q2;
 				}
@@ -1189,6 +1211,25 @@ public class CalcTrueQuality {
 		void load(){
 			synchronized(initialized){
 				if(initialized[pass]){return;}
+				phredTable=new PhredTable();
+				
+				if(USE_WEIGHTED_AVERAGE){
+					if(USE_BINARY_TABLE){table=FlatCountTable.read(binaryTable.replace("_p#", "_p"+pass), pass);}
+					fakeSum=new float[PROB_ERROR.length];
+					fakeBad=new float[PROB_ERROR.length];
+					for(int q=0; q<PROB_ERROR.length; q++){
+						fakeSum[q]=OBSERVATION_CUTOFF[pass];
+						fakeBad[q]=PROB_ERROR[q]*OBSERVATION_CUTOFF[pass];
+						if(fakeBad[q]<BAD_CUTOFF){
+							fakeBad[q]=BAD_CUTOFF;
+							fakeSum[q]=BAD_CUTOFF*INV_PROB_ERROR[q];
+						}
+					}
+					if(table!=null){
+						initialized[pass]=true;
+						return;
+					}
+				}
 				
 				if(use_q102[pass]){
 					q102CountMatrix=loadMatrix(q102matrix.replace("_p#", "_p"+pass), 2, QMAX2, QMAX2, QMAX2);
@@ -1234,6 +1275,17 @@ public class CalcTrueQuality {
 					qCountMatrix=loadMatrix(qmatrix.replace("_p#", "_p"+pass), 2, QMAX2);
 					qProbMatrix=toProbs(qCountMatrix[0], qCountMatrix[1], OBSERVATION_CUTOFF[pass]);
 				}
+				
+				if(USE_WEIGHTED_AVERAGE){
+					table=new FlatCountTable(pass);
+					final Object[] counts={q102CountMatrix, qbpCountMatrix, q10CountMatrix, q12CountMatrix, qb12CountMatrix,
+							qb012CountMatrix, qb123CountMatrix, qb234CountMatrix, q12b12CountMatrix, qpCountMatrix, qCountMatrix};
+					for(int id : table.ids){
+						final Object[] matrix=(Object[])counts[id];
+						table.add(id, matrix[0], 0);
+						table.add(id, matrix[1], 1);
+					}
+				}
 
 				initialized[pass]=true;
 			}
@@ -1506,82 +1558,6 @@ public class CalcTrueQuality {
 			return (float)Math.pow(product, 1.0/x);
 		}
 		
-		public final float estimateErrorProb2(byte[] quals, byte[] bases, int pos, int pairnum, float obs_cutoff){
-			
-			final byte e='E';
-			final int last=quals.length-1;
-			
-			final int q0=(pos>0 ? Tools.mid(QMAX, quals[pos-1], 0) : QEND);
-			final int q1=quals[pos];
-			final int q2=(pos<last ? Tools.mid(QMAX, quals[pos+1], 0) : QEND);
-			
-			byte b0=pos>1 ? bases[pos-2] : e;
-			byte b1=pos>0 ? bases[pos-1] : e;
-			byte b2=bases[pos];
-			byte b3=pos<last ? bases[pos+1] : e;
-			byte b4=pos<last-1 ? bases[pos+2] : e;
-			byte n0=baseToNum[b0];
-			byte n1=baseToNum[b1];
-			byte n2=baseToNum[b2];
-			byte n3=baseToNum[b3];
-			byte n4=baseToNum[b4];
-			
-			long sum=0, bad=0;
-			if(q102CountMatrix!=null){
-				sum+=q102CountMatrix[0][pairnum][q1][q0][q2];
-				bad+=q102CountMatrix[1][pairnum][q1][q0][q2];
-			}
-			if(qbpCountMatrix!=null){
-				sum+=qbpCountMatrix[0][pairnum][q1][n2][pos];
-				bad+=qbpCountMatrix[1][pairnum][q1][n2][pos];
-			}
-			if(q10CountMatrix!=null){
-				sum+=q10CountMatrix[0][pairnum][q1][q0];
-				bad+=q10CountMatrix[1][pairnum][q1][q0];
-			}
-			if(q12CountMatrix!=null){
-				sum+=q12CountMatrix[0][pairnum][q1][q2];
-				bad+=q12CountMatrix[1][pairnum][q1][q2];
-			}
-			if(qb12CountMatrix!=null){
-				sum+=qb12CountMatrix[0][pairnum][q1][n1][n2];
-				bad+=qb12CountMatrix[1][pairnum][q1][n1][n2];
-			}
-			if(qb012CountMatrix!=null){
-				sum+=qb012CountMatrix[0][pairnum][q1][n0][n1][n2];
-				bad+=qb012CountMatrix[1][pairnum][q1][n0][n1][n2];
-			}
-			if(qb123CountMatrix!=null){
-				sum+=qb123CountMatrix[0][pairnum][q1][n1][n2][n3];
-				bad+=qb123CountMatrix[1][pairnum][q1][n1][n2][n3];
-			}
-			if(qb234CountMatrix!=null){
-				sum+=qb234CountMatrix[0][pairnum][q1][n2][n3][n4];
-				bad+=qb234CountMatrix[1][pairnum][q1][n2][n3][n4];
-			}
-			if(q12b12CountMatrix!=null){
-				sum+=q12b12CountMatrix[0][pairnum][q1][q2][n1][n2];
-				bad+=q12b12CountMatrix[1][pairnum][q1][q2][n1][n2];
-			}
-			if(qpCountMatrix!=null){
-				sum+=qpCountMatrix[0][pairnum][q1][pos];
-				bad+=qpCountMatrix[1][pairnum][q1][pos];
-			}
-			if(qCountMatrix!=null){
-				sum+=qCountMatrix[0][pairnum][q1];
-				bad+=qCountMatrix[1][pairnum][q1];
-			}
-
-			final float expectedRate=PROB_ERROR[q1];
-			float fakeSum=obs_cutoff;
-			float fakeBad=expectedRate*obs_cutoff;
-			if(fakeBad<BAD_CUTOFF){
-				fakeBad=BAD_CUTOFF;
-				fakeSum=BAD_CUTOFF*INV_PROB_ERROR[q1];
-			}
-			return (float)((bad+fakeBad)/(sum+fakeSum));
-		}
-		
 		public long[][][][][] q102CountMatrix;
 		public long[][][][][] qbpCountMatrix;
 		
@@ -1608,10 +1584,293 @@ public class CalcTrueQuality {
 		public float[][][] qpProbMatrix;
 		public float[][] qProbMatrix;
 		
+		/** Selected count matrices, for the weighted average */
+		FlatCountTable table;
+		/** Pseudocounts by quality score, for the weighted average */
+		private float[] fakeSum, fakeBad;
+		private PhredTable phredTable;
+		
 		final int pass;
 		
 	}
 	
+	/**
+	 * Converts error probabilities to recalibrated quality scores, max(2, probErrorToPhred(p)),
+	 * without a logarithm.  The conversion never increases with p, and the floats sharing their
+	 * top bits span well under one quality score, so each such bucket contains at most one step
+	 * down.  The step is located by bisection when the table is built, so results are identical.
+	 */
+	static final class PhredTable {
+		
+		PhredTable(){
+			final int buckets=(MAX_BITS>>>SHIFT)+1;
+			start=new byte[buckets];
+			threshold=new int[buckets];
+			for(int b=0; b<buckets; b++){
+				final int lo=b<<SHIFT, hi=((b+1)<<SHIFT)-1;
+				final byte qlo=phred(lo), qhi=phred(hi);
+				start[b]=qlo;
+				if(qlo==qhi){
+					threshold[b]=hi+1;
+				}else{
+					assert(qlo==qhi+1) : b+", "+qlo+", "+qhi;
+					int min=lo+1, max=hi;
+					while(min<max){//Find the first value with a lower score
+						final int mid=(min+max)>>>1;
+						if(phred(mid)<qlo){max=mid;}
+						else{min=mid+1;}
+					}
+					threshold[b]=min;
+				}
+			}
+		}
+		
+		private static byte phred(int bits){
+			return Tools.max((byte)2, QualityTools.probErrorToPhred(Float.intBitsToFloat(bits), true));
+		}
+		
+		byte toPhred(float prob){
+			final int bits=Tools.mid(0, Float.floatToRawIntBits(prob), MAX_BITS);
+			final int b=bits>>>SHIFT;
+			return (byte)(start[b]-1-((bits-threshold[b])>>31));
+		}
+		
+		/** Score of the first value in each bucket */
+		private final byte[] start;
+		/** First value in each bucket with a score one lower */
+		private final int[] threshold;
+		
+		/** Probabilities of 1 or more all get the same score */
+		private static final int MAX_BITS=Float.floatToRawIntBits(1f);
+		/** Buckets keep the exponent and top 8 bits of the mantissa, spanning under 0.02 in phred scale */
+		private static final int SHIFT=15;
+	}
+	
+	/**
+	 * The count matrices selected for one pass, flattened into one array for recalibration.
+	 * Each matrix's cells are {observations, errors} pairs in row-major order, and each
+	 * dimension is indexed by one variable of a base's context, so a cell's location is a
+	 * sum of precomputed strides.  Looking up a base costs the same fixed arithmetic per matrix,
+	 * with no null tests and no chasing through nested arrays.
+	 * The table is immutable once built and is shared by all threads.
+	 */
+	static final class FlatCountTable {
+		
+		/** Lays out an empty table for the matrices selected for this pass */
+		FlatCountTable(int pass){
+			this(selectedMatrices(pass), QMAX2, LENMAX);
+		}
+		
+		private FlatCountTable(int[] ids_, int qmax2_, int lenmax_){
+			ids=ids_;
+			qmax2=qmax2_;
+			lenmax=lenmax_;
+			offsets=new int[ids.length];
+			termEnd=new int[ids.length];
+			int terms=0;
+			for(int id : ids){terms+=VARS_BY_MATRIX[id].length;}
+			termVar=new int[terms];
+			termStride=new int[terms];
+			
+			long size=0;
+			for(int m=0, t=0; m<ids.length; m++){
+				final int[] vars=VARS_BY_MATRIX[ids[m]];
+				final int[] dims=dims(ids[m]);
+				offsets[m]=(int)size;
+				int stride=2;
+				for(int d=vars.length-1; d>=0; d--){
+					termVar[t+d]=vars[d];
+					termStride[t+d]=stride;
+					stride*=dims[d];
+				}
+				t+=vars.length;
+				termEnd[m]=t;
+				size+=stride;
+				assert(size<Integer.MAX_VALUE) : size;
+			}
+			table=new long[(int)size];
+		}
+		
+		/** Indices into NAMES of the matrices enabled for this pass */
+		private static int[] selectedMatrices(int pass){
+			final boolean[][] use={use_q102, use_qbp, use_q10, use_q12, use_qb12, use_qb012, use_qb123, use_qb234, use_q12b12, use_qp, use_q};
+			int count=0;
+			for(boolean[] u : use){if(u[pass]){count++;}}
+			final int[] ids=new int[count];
+			for(int i=0, j=0; i<use.length; i++){
+				if(use[i][pass]){ids[j]=i; j++;}
+			}
+			return ids;
+		}
+		
+		/** Matrix dimensions, matching those used by CountMatrixSet.load() */
+		private int[] dims(int id){
+			final int[] vars=VARS_BY_MATRIX[id];
+			final int[] dims=new int[vars.length];
+			for(int d=0; d<vars.length; d++){
+				final int v=vars[d];
+				dims[d]=(v==PAIRNUM ? 2 : v==Q1 || v==Q0 || v==Q2 ? qmax2 : v==POS ? lenmax : v==N2 ? 4 : BMAX);
+			}
+			return dims;
+		}
+		
+		/*--------------------------------------------------------------*/
+		
+		/**
+		 * Adds a matrix's values into one slot of each of its cells.
+		 * @param id Index into NAMES; must be one of this table's matrices
+		 * @param matrix Nested long array indexed by pairnum then the matrix's dimensions;
+		 * it may be larger than the table in some dimension, if the excess cells are empty
+		 * @param slot 0 for observations, 1 for errors
+		 */
+		void add(int id, Object matrix, int slot){
+			int m=0;
+			while(ids[m]!=id){m++;}
+			add(matrix, m, termEnd[m]-VARS_BY_MATRIX[id].length, offsets[m]+slot);
+		}
+		
+		private void add(Object array, int m, int term, int loc){
+			final int stride=termStride[term];
+			if(term+1==termEnd[m]){
+				final long[] a=(long[])array;
+				final int len=Tools.min(a.length, dimLength(m, term));
+				for(int i=0; i<len; i++){table[loc+i*stride]+=a[i];}
+				for(int i=len; i<a.length; i++){assert(a[i]==0) : NAMES[ids[m]]+", "+i;}
+			}else{
+				final Object[] a=(Object[])array;
+				final int len=Tools.min(a.length, dimLength(m, term));
+				for(int i=0; i<len; i++){add(a[i], m, term+1, loc+i*stride);}
+			}
+		}
+		
+		private int dimLength(int m, int term){
+			final int first=termEnd[m]-VARS_BY_MATRIX[ids[m]].length;
+			return dims(ids[m])[term-first];
+		}
+		
+		/*--------------------------------------------------------------*/
+		
+		/** Fills ctx with the context variables of the base at pos */
+		void fillContext(final byte[] quals, final byte[] bases, final int pos, final int pairnum, final int[] ctx){
+			final byte e='E';
+			final int last=quals.length-1;
+			ctx[PAIRNUM]=pairnum;
+			ctx[Q1]=Tools.mid(0, quals[pos], qmax2-1);
+			ctx[Q0]=(pos>0 ? Tools.mid(QMAX, quals[pos-1], 0) : QEND);
+			ctx[Q2]=(pos<last ? Tools.mid(QMAX, quals[pos+1], 0) : QEND);
+			ctx[N0]=baseToNum[pos>1 ? bases[pos-2] : e];
+			ctx[N1]=baseToNum[pos>0 ? bases[pos-1] : e];
+			ctx[N2]=baseToNum[bases[pos]];
+			ctx[N3]=baseToNum[pos<last ? bases[pos+1] : e];
+			ctx[N4]=baseToNum[pos<last-1 ? bases[pos+2] : e];
+			ctx[POS]=Tools.min(pos, lenmax-1);
+		}
+		
+		/**
+		 * Error probability from the summed counts of every matrix, plus pseudocounts.
+		 * @param ctx Context from fillContext()
+		 */
+		float errorProb(final int[] ctx, final float fakeSum, final float fakeBad){
+			long sum=0, bad=0;
+			for(int m=0, t=0; m<offsets.length; m++){
+				int loc=offsets[m];
+				for(final int lim=termEnd[m]; t<lim; t++){
+					loc+=ctx[termVar[t]]*termStride[t];
+				}
+				sum+=table[loc];
+				bad+=table[loc+1];
+			}
+			return (float)((bad+fakeBad)/(sum+fakeSum));
+		}
+		
+		/*--------------------------------------------------------------*/
+		
+		void write(String fname, boolean overwrite){
+			fname=findPath(fname);
+			final FileFormat ff=FileFormat.testOutput(fname, FileFormat.TEXT, null, false, overwrite, false, false);
+			assert(ff.canWrite()) : "File "+fname+" exists and overwrite=="+overwrite;
+			try {
+				DataOutputStream dos=new DataOutputStream(ReadWrite.getOutputStream(fname, false, true, false));
+				dos.writeInt(MAGIC);
+				dos.writeInt(qmax2);
+				dos.writeInt(lenmax);
+				dos.writeInt(BMAX);
+				dos.writeInt(ids.length);
+				for(int id : ids){dos.writeInt(id);}
+				dos.writeInt(table.length);
+				for(long x : table){dos.writeLong(x);}
+				dos.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Error writing "+fname, e);
+			}
+			if(showStats){System.err.println("Wrote "+fname);}
+		}
+		
+		/**
+		 * Loads a table written by write(), if it holds the matrices selected for this pass
+		 * and is newer than their text files; otherwise returns null.
+		 */
+		static FlatCountTable read(String fname, int pass){
+			if(fname==null){return null;}
+			fname=findPath(fname);
+			final File f=new File(fname);
+			if(!f.isFile()){return null;}
+			
+			final FlatCountTable expected=new FlatCountTable(pass);
+			final String[] textFiles={q102matrix, qbpmatrix, q10matrix, q12matrix, qb12matrix,
+					qb012matrix, qb123matrix, qb234matrix, q12b12matrix, qpmatrix, qmatrix};
+			for(int id : expected.ids){
+				File tf=new File(findPath(textFiles[id].replace("_p#", "_p"+pass)));
+				if(!tf.isFile() || tf.lastModified()>f.lastModified()){return null;}
+			}
+			try {
+				DataInputStream dis=new DataInputStream(ReadWrite.getInputStream(fname, true, false));
+				try {
+					if(dis.readInt()!=MAGIC || dis.readInt()!=expected.qmax2 || dis.readInt()!=expected.lenmax || dis.readInt()!=BMAX){return null;}
+					final int count=dis.readInt();
+					if(count!=expected.ids.length){return null;}
+					for(int id : expected.ids){
+						if(dis.readInt()!=id){return null;}
+					}
+					if(dis.readInt()!=expected.table.length){return null;}
+					final long[] table=expected.table;
+					for(int i=0; i<table.length; i++){table[i]=dis.readLong();}
+				} finally {
+					dis.close();
+				}
+			} catch (IOException e) {
+				System.err.println("Could not read "+fname+"; loading text matrices instead.");
+				return null;
+			}
+			System.err.println("Loaded "+fname+".");
+			return expected;
+		}
+		
+		/*--------------------------------------------------------------*/
+		
+		/** Indices into NAMES of the matrices in this table */
+		final int[] ids;
+		private final int qmax2, lenmax;
+		/** Location of each matrix's first cell */
+		private final int[] offsets;
+		/** Context variable and stride of each dimension of every matrix, concatenated */
+		private final int[] termVar, termStride;
+		/** End of each matrix's dimensions in termVar */
+		private final int[] termEnd;
+		/** Pairs of {observations, errors} */
+		final long[] table;
+
+		static final int PAIRNUM=0, Q1=1, Q0=2, Q2=3, N0=4, N1=5, N2=6, N3=7, N4=8, POS=9, VARS=10;
+		static final String[] NAMES={"q102", "qbp", "q10", "q12", "qb12", "qb012", "qb123", "qb234", "q12b12", "qp", "q"};
+		/** Context variable indexing each dimension of each matrix */
+		private static final int[][] VARS_BY_MATRIX={
+			{PAIRNUM, Q1, Q0, Q2}, {PAIRNUM, Q1, N2, POS}, {PAIRNUM, Q1, Q0}, {PAIRNUM, Q1, Q2},
+			{PAIRNUM, Q1, N1, N2}, {PAIRNUM, Q1, N0, N1, N2}, {PAIRNUM, Q1, N1, N2, N3}, {PAIRNUM, Q1, N2, N3, N4},
+			{PAIRNUM, Q1, Q2, N1, N2}, {PAIRNUM, Q1, POS}, {PAIRNUM, Q1}
+		};
+		private static final int MAGIC=0x52434C54;
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------            Fields            ----------------*/
 	/*--------------------------------------------------------------*/
@@ -1658,6 +1917,8 @@ public class CalcTrueQuality {
 	private static String qpmatrix="?qpmatrix_p#.txt.gz";
 	private static String qmatrix="?qmatrix_p#.txt.gz";
 	private static String pmatrix="?pmatrix_p#.txt.gz";
+	/** Flattened copy of the selected matrices */
+	private static String binaryTable="?recaltable_p#.bin";
 	
 	private static final boolean[] initialized={false, false};
 	
@@ -1696,6 +1957,8 @@ public class CalcTrueQuality {
 	public static boolean USE_AVERAGE=true;
 	public static boolean USE_PAIRNUM=true;
 	public static boolean COUNT_INDELS=true;
+	/** Write and load recalibration matrices as binary FlatCountTables, in addition to text */
+	public static boolean USE_BINARY_TABLE=true;
 	
 	public static long OBSERVATION_CUTOFF[]={100, 200}; //Soft threshold
 	public static float BAD_CUTOFF=0.5f; //Soft threshold
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import stream.Read;
 import stream.SamLine;
@@ -12,12 +14,14 @@ import stream.ScaffoldCoordinates;
 import stream.SiteScore;
 import structures.LongList;
 import align2.ReadStats;
+import align2.Shared;
 import align2.Tools;
 
 import dna.ChromosomeArray;
 import dna.CoverageArray;
 import dna.CoverageArray2;
 import dna.CoverageArray3;
+import dna.CoverageArraySparse;
 import dna.Data;
 import dna.Gene;
 import dna.Parser;
@@ -91,6 +95,8 @@ public class CoveragePileup {
 			}else if(a.equals("out") || a.equals("coveragestats") || a.equals("covstats") || a.equals("stats")){
 				covstats=b;
 				outset=true;
+			}else if(a.equals("multithreaded") || a.equals("mt")){
+				MULTITHREADED=Tools.parseBoolean(b);
 			}else if(a.equals("minscaf") || a.equals("covminscaf")){
 				minscaf=Integer.parseInt(b);
 			}else if(a.equals("minq") || a.equals("minmapq")){
@@ -127,6 +133,12 @@ public class CoveragePileup {
 				binsize=Integer.parseInt(b);
 			}else if(a.equals("32bit")){
 				bits32=Tools.parseBoolean(b);
+			}else if(a.equals("sparse") || a.equals("sparsecov")){
+				if(b!=null && Character.isDigit(b.charAt(0))){
+					sparseMinRef=Tools.parseKMG(b);
+				}else{
+					sparseMinRef=(Tools.parseBoolean(b) ? 0 : Long.MAX_VALUE);
+				}
 			}else if(a.equals("bitset") || a.equals("usebitset") || a.equals("bitsets") || a.equals("usebitsets")){
 //				if(Tools.parseBoolean(b)){arrayMode=BITSET_MODE;}
 				vectorMode=Tools.parseBoolean(b) ? BITSET_MODE : NOTHING_MODE;
@@ -350,9 +362,14 @@ public class CoveragePileup {
 		processReference();
 		
 		if(maxReads<0){maxReads=Long.MAX_VALUE;}
-		for(; line!=null && readsProcessed<maxReads; line=tf.nextLine()){
-			if(tsw!=null){tsw.println(line);}
-			processSamLine(line);
+		final int threads=Shared.threads();
+		if(MULTITHREADED && threads>1 && !PHYSICAL_COVERAGE){
+			processMT(tf, tsw, line, threads);
+		}else{
+			for(; line!=null && readsProcessed<maxReads; line=tf.nextLine()){
+				if(tsw!=null){tsw.println(line);}
+				processSamLine(line);
+			}
 		}
 		
 		tf.close();
@@ -368,6 +385,168 @@ public class CoveragePileup {
 	}
 	
 	
+	/**
+	 * Reads lines on this thread and parses them on worker threads.
+	 * Workers keep their own totals and per-scaffold counts, which are merged at the end.
+	 * Coverage vectors are shared, with arrays locked by stripes of STRIPE_LEN bases rather than by scaffold,
+	 * so threads working on nearby reads of sorted input rarely wait on each other.
+	 * Since all updates are commutative, results are identical to single-threaded processing.
+	 * Header lines in the body (e.g. concatenated sam files) are processed here after the workers go idle,
+	 * since they may add scaffolds.
+	 */
+	private void processMT(final ByteFile tf, final ByteStreamWriter tsw, byte[] line, final int threads){
+		final ArrayBlockingQueue<ArrayList<byte[]>> queue=new ArrayBlockingQueue<ArrayList<byte[]>>(threads*4);
+		assert(STRIPE_LEN%CoverageArraySparse.PAGE_LEN==0) : "Stripes must not share sparse pages.";
+		stripeLocks=new Object[STRIPES];
+		for(int i=0; i<STRIPES; i++){stripeLocks[i]=new Object();}
+		final ArrayList<PileupThread> alpt=new ArrayList<PileupThread>(threads);
+		for(int i=0; i<threads; i++){alpt.add(new PileupThread(queue));}
+		for(PileupThread pt : alpt){pt.start();}
+		
+		ArrayList<byte[]> batch=new ArrayList<byte[]>(LINES_PER_BATCH);
+		long linesSubmitted=0;
+		for(; line!=null && linesSubmitted<maxReads; line=tf.nextLine()){
+			if(tsw!=null){tsw.println(line);}
+			if(line.length>0 && line[0]=='@'){
+				submit(queue, batch);
+				batch=new ArrayList<byte[]>(LINES_PER_BATCH);
+				waitForIdle();
+				processSamLine(line);
+			}else if(line.length>=3){
+				batch.add(line);
+				linesSubmitted++;
+				if(batch.size()>=LINES_PER_BATCH){
+					submit(queue, batch);
+					batch=new ArrayList<byte[]>(LINES_PER_BATCH);
+				}
+			}
+		}
+		submit(queue, batch);
+		
+		for(int i=0; i<threads; i++){submit(queue, POISON);}
+		for(PileupThread pt : alpt){
+			while(pt.getState()!=Thread.State.TERMINATED){
+				try {
+					pt.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			readsProcessed+=pt.readsProcessedT;
+			mappedReads+=pt.mappedReadsT;
+			mappedBases+=pt.mappedBasesT;
+			pt.mergeCounts();
+		}
+	}
+	
+	private void submit(final ArrayBlockingQueue<ArrayList<byte[]>> queue, final ArrayList<byte[]> batch){
+		if(batch!=POISON){
+			if(batch.isEmpty()){return;}
+			synchronized(this){pendingBatches++;}
+		}
+		while(true){
+			try {
+				queue.put(batch);
+				return;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private synchronized void waitForIdle(){
+		while(pendingBatches>0){
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private synchronized void batchFinished(){
+		pendingBatches--;
+		if(pendingBatches==0){notifyAll();}
+	}
+	
+	/** Parses sam lines and adds coverage; see processSamLine(SamLine) */
+	private class PileupThread extends Thread {
+		
+		PileupThread(ArrayBlockingQueue<ArrayList<byte[]>> queue_){
+			queue=queue_;
+		}
+		
+		@Override
+		public void run(){
+			for(ArrayList<byte[]> batch=take(); batch!=POISON; batch=take()){
+				for(byte[] line : batch){
+					processSamLine(new SamLine(line));
+				}
+				batchFinished();
+			}
+		}
+		
+		private ArrayList<byte[]> take(){
+			while(true){
+				try {
+					return queue.take();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		/** Same as CoveragePileup.processSamLine(SamLine) without physical coverage, with per-thread totals */
+		private void processSamLine(SamLine sl){
+			readsProcessedT++;
+			addSamLineCoverage(sl, this);
+		}
+		
+		/**
+		 * Returns this thread's counts for the scaffold.
+		 * The first time a thread sees a scaffold, it locks the scaffold to create its coverage vectors if needed;
+		 * after that the vectors are visible to this thread without locking the scaffold.
+		 */
+		Scaffold counts(final Scaffold scaf){
+			if(scaf==lastScaf){return lastCounts;}
+			Scaffold sc=countMap.get(scaf);
+			if(sc==null){
+				synchronized(scaf){
+					if(scaf.obj1==null){makeVectors(scaf);}
+				}
+				sc=new Scaffold(scaf.name, scaf.length);
+				if(scaf.basecount!=null){sc.basecount=new long[scaf.basecount.length];}
+				countMap.put(scaf, sc);
+			}
+			lastScaf=scaf;
+			lastCounts=sc;
+			return sc;
+		}
+		
+		/** Adds this thread's per-scaffold counts to the shared scaffolds, once the thread has finished */
+		void mergeCounts(){
+			for(Entry<Scaffold, Scaffold> e : countMap.entrySet()){
+				final Scaffold scaf=e.getKey(), sc=e.getValue();
+				scaf.readhits+=sc.readhits;
+				scaf.fraghits+=sc.fraghits;
+				scaf.readhitsMinus+=sc.readhitsMinus;
+				scaf.basehits+=sc.basehits;
+				if(sc.basecount!=null){
+					for(int i=0; i<sc.basecount.length; i++){scaf.basecount[i]+=sc.basecount[i];}
+				}
+			}
+			countMap.clear();
+		}
+		
+		private final ArrayBlockingQueue<ArrayList<byte[]>> queue;
+		/** Maps shared scaffolds to this thread's counts */
+		private final HashMap<Scaffold, Scaffold> countMap=new HashMap<Scaffold, Scaffold>();
+		private Scaffold lastScaf=null, lastCounts=null;
+		long readsProcessedT=0;
+		long mappedReadsT=0;
+		long mappedBasesT=0;
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------             Setup            ----------------*/
 	/*--------------------------------------------------------------*/
@@ -611,13 +790,23 @@ public class CoveragePileup {
 		
 		mappedBases+=readlen;
 		mappedReads++;
-
-		scaf.readhits++;
-		scaf.fraghits+=incrementFrags;
-		if(strand==1){scaf.readhitsMinus++;}
 		
-		if(seq!=null && scaf.basecount!=null){
-			final long[] counts=scaf.basecount;
+		return addScaffoldCoverage(scaf, seq, match, start, stop, readlen, strand, incrementFrags, null);
+	}
+	
+	/**
+	 * Adds a read's counts and coverage to the scaffold.
+	 * @param pt Worker thread, which keeps its own counts and locks coverage vectors while updating them;
+	 * null to update the scaffold directly
+	 */
+	private boolean addScaffoldCoverage(final Scaffold scaf, final byte[] seq, byte match[], final int start, final int stop, final int readlen, final int strand, int incrementFrags, final PileupThread pt){
+		final Scaffold sc=(pt==null ? scaf : pt.counts(scaf));
+		sc.readhits++;
+		sc.fraghits+=incrementFrags;
+		if(strand==1){sc.readhitsMinus++;}
+		
+		if(seq!=null && sc.basecount!=null){
+			final long[] counts=sc.basecount;
 			for(int i=0; i<seq.length; i++){
 				counts[charToNum[seq[i]]]++;
 			}
@@ -625,44 +814,79 @@ public class CoveragePileup {
 		
 		if(!INCLUDE_DELETIONS && !START_ONLY){
 			assert(match!=null) : "Coverage excluding deletions cannot be calculated without a match string.";
-			return addCoverageIgnoringDeletions(scaf, seq, match, start, stop, readlen, strand, incrementFrags);
+			return addCoverageIgnoringDeletions(scaf, sc, seq, match, start, stop, readlen, strand, incrementFrags, pt);
 		}
 		
 		final int basehits=stop-start+1;
-		scaf.basehits+=basehits;
+		sc.basehits+=basehits;
 		
+		if(scaf.obj1==null){makeVectors(scaf);}
 		if(USE_COVERAGE_ARRAYS){
-			if(scaf.obj1==null){
-				scaf.obj1=(bits32 ? new CoverageArray3(table.size(), scaf.length+1) : new CoverageArray2(table.size(), scaf.length+1));
-				if(STRANDED){
-					scaf.obj2=(bits32 ? new CoverageArray3(table.size(), scaf.length+1) : new CoverageArray2(table.size(), scaf.length+1));
-				}
-			}
 			CoverageArray ca=(CoverageArray)(STRANDED && strand==1 ? scaf.obj2 : scaf.obj1);
-			if(START_ONLY){
+			if(pt!=null){
+				incrementStriped(ca, scaf, start, START_ONLY ? start : stop);
+			}else if(START_ONLY){
 				ca.increment(start);
 			}else{
 				ca.incrementRange(start, stop, 1);
 			}
 		}else if(USE_BITSETS){
-			if(scaf.obj1==null){
-				scaf.obj1=new BitSet(scaf.length+1);
-				if(STRANDED){
-					scaf.obj2=new BitSet(scaf.length+1);
-				}
-			}
 			BitSet bs=(BitSet)(STRANDED && strand==1 ? scaf.obj2 : scaf.obj1);
-			if(START_ONLY){
-				bs.set(start);
-			}else{
-				bs.set(start, stop+1);
+			synchronized(bs){//BitSets are not safe for concurrent writes, even to disjoint ranges
+				if(START_ONLY){
+					bs.set(start);
+				}else{
+					bs.set(start, stop+1);
+				}
 			}
 		}
 		
 		return true;
 	}
 	
-	private boolean addCoverageIgnoringDeletions(final Scaffold scaf, final byte[] seq, byte match[], final int start, final int stop, final int readlen, final int strand, int incrementFrags){
+	/** Creates the scaffold's coverage arrays or bitsets, if either is in use */
+	private void makeVectors(final Scaffold scaf){
+		if(USE_COVERAGE_ARRAYS){
+			scaf.obj1=newCoverageArray(scaf);
+			if(STRANDED){
+				scaf.obj2=newCoverageArray(scaf);
+			}
+		}else if(USE_BITSETS){
+			scaf.obj1=new BitSet(scaf.length+1);
+			if(STRANDED){
+				scaf.obj2=new BitSet(scaf.length+1);
+			}
+		}
+	}
+	
+	/** Sparse arrays only allocate covered regions, and are used for scaffolds longer than a page in huge references */
+	private CoverageArray newCoverageArray(final Scaffold scaf){
+		final int len=scaf.length+1;
+		if(refBases>=sparseMinRef && len>CoverageArraySparse.PAGE_LEN){
+			return new CoverageArraySparse(table.size(), len, bits32);
+		}
+		return (bits32 ? new CoverageArray3(table.size(), len) : new CoverageArray2(table.size(), len));
+	}
+	
+	/**
+	 * Increments coverage from min to max inclusive, for worker threads.
+	 * Each stripe of the range is updated under its own lock, so threads only wait for reads in the same stripe.
+	 * Arrays are allocated at full scaffold length and never resized here, so disjoint stripes are independent.
+	 */
+	private void incrementStriped(final CoverageArray ca, final Scaffold scaf, final int min, final int max){
+		final int salt=scaf.hashCode()*31;
+		for(int a=min; a<=max; ){
+			final int stripe=a>>>STRIPE_BITS;
+			final int b=Tools.min(max, ((stripe+1)<<STRIPE_BITS)-1);
+			synchronized(stripeLocks[(salt+stripe)&STRIPE_MASK]){
+				ca.incrementRange(a, b, 1);
+			}
+			a=b+1;
+		}
+	}
+	
+	/** @param sc Scaffold or worker thread counts to which base hits are added */
+	private boolean addCoverageIgnoringDeletions(final Scaffold scaf, final Scaffold sc, final byte[] seq, byte match[], final int start, final int stop, final int readlen, final int strand, int incrementFrags, final PileupThread pt){
 		assert(!INCLUDE_DELETIONS && !START_ONLY);
 		assert(match!=null) : "Coverage excluding deletions cannot be calculated without a match string.";
 		
@@ -671,52 +895,53 @@ public class CoveragePileup {
 		}
 		
 		int basehits=0;
+		if(scaf.obj1==null){makeVectors(scaf);}
 		if(USE_COVERAGE_ARRAYS){
-			if(scaf.obj1==null){
-				scaf.obj1=(bits32 ? new CoverageArray3(table.size(), scaf.length+1) : new CoverageArray2(table.size(), scaf.length+1));
-				if(STRANDED){
-					scaf.obj2=(bits32 ? new CoverageArray3(table.size(), scaf.length+1) : new CoverageArray2(table.size(), scaf.length+1));
-				}
-			}
 			CoverageArray ca=(CoverageArray)(STRANDED && strand==1 ? scaf.obj2 : scaf.obj1);
+			int runStart=-1, runStop=-1;//Worker threads add each run of covered bases at once
 			for(int rpos=start, mpos=0; mpos<match.length && rpos<=stop; mpos++){
 				byte m=match[mpos];
 				if(m=='m' || m=='S' || m=='N'){
-					ca.increment(rpos, 1);
+					if(pt==null){ca.increment(rpos, 1);}
+					else{
+						if(runStart<0){runStart=rpos;}
+						runStop=rpos;
+					}
 					basehits++;
 					rpos++;
 				}else if(m=='X' || m=='Y' || m=='C' || m=='I'){
 					//do nothing
 				}else if(m=='D'){
+					if(runStart>=0){
+						incrementStriped(ca, scaf, runStart, runStop);
+						runStart=-1;
+					}
 					rpos++;
 				}else{
 					assert(false) : "Unhandled symbol "+m;
 				}
 			}
+			if(runStart>=0){incrementStriped(ca, scaf, runStart, runStop);}
 		}else if(USE_BITSETS){
-			if(scaf.obj1==null){
-				scaf.obj1=new BitSet(scaf.length+1);
-				if(STRANDED){
-					scaf.obj2=new BitSet(scaf.length+1);
-				}
-			}
 			BitSet bs=(BitSet)(STRANDED && strand==1 ? scaf.obj2 : scaf.obj1);
-			for(int rpos=start, mpos=0; mpos<match.length && rpos<=stop; mpos++){
-				byte m=match[mpos];
-				if(m=='m' || m=='S' || m=='N'){
-					bs.set(rpos);
-					basehits++;
-					rpos++;
-				}else if(m=='X' || m=='Y' || m=='C' || m=='I'){
-					//do nothing
-				}else if(m=='D'){
-					rpos++;
-				}else{
-					assert(false) : "Unhandled symbol "+m;
+			synchronized(bs){
+				for(int rpos=start, mpos=0; mpos<match.length && rpos<=stop; mpos++){
+					byte m=match[mpos];
+					if(m=='m' || m=='S' || m=='N'){
+						bs.set(rpos);
+						basehits++;
+						rpos++;
+					}else if(m=='X' || m=='Y' || m=='C' || m=='I'){
+						//do nothing
+					}else if(m=='D'){
+						rpos++;
+					}else{
+						assert(false) : "Unhandled symbol "+m;
+					}
 				}
 			}
 		}
-		scaf.basehits+=basehits;
+		sc.basehits+=basehits;
 		
 		return true;
 	}
@@ -765,21 +990,47 @@ public class CoveragePileup {
 				final int length=USE_TLEN ? sl.tlen : Tools.max(stop1, stop2)-Tools.min(start1, start2)+1;
 				addCoverage(sl.rnameS(), null, null, Tools.min(start1, start2), Tools.max(stop1, stop2), length, strand, 2);
 			}
-		}else if(sl.mapped() && (USE_SECONDARY || sl.primary()) && sl.mapq>=minMapq){
-			assert(sl.seq!=null || sl.cigar!=null) : "This program requires bases or a cigar string for every sam line.  Problem line:\n"+sl+"\n";
-//			assert(sl.seq!=null) : sl.toString();
-			final int length=sl.length();
-			final int start=sl.start(INCLUDE_SOFT_CLIP, false);
-			final int stop=sl.stop(start, INCLUDE_SOFT_CLIP, false);
-//			assert(false && length==stop-start+1) : length+", "+start+", "+stop+", "+(stop-start+1);
-//			assert(false) : "'"+new String(sl.rname())+"', '"+sl.rnameS()+"'";
-//			assert(false) : "'"+sl.rnameS()+"'";
-			final byte[] match=(INCLUDE_DELETIONS ? null : sl.toShortMatch(true));
-			return addCoverage(sl.rnameS(), sl.seq, match, start, stop, length, sl.strand(), sl.hasMate() ? 1 : 2);
+		}else{
+			return addSamLineCoverage(sl, null);
 		}
 		return false;
 	}
 	
+	/**
+	 * Adds coverage for this sam line alone (not physical coverage), if it is mapped and passes the filters.
+	 * @param pt Worker thread whose totals are incremented; null to update the global totals
+	 * @return True if coverage was added
+	 */
+	private boolean addSamLineCoverage(SamLine sl, PileupThread pt){
+		if(!sl.mapped() || (!USE_SECONDARY && !sl.primary()) || sl.mapq<minMapq){return false;}
+		assert(sl.seq!=null || sl.cigar!=null) : "This program requires bases or a cigar string for every sam line.  Problem line:\n"+sl+"\n";
+//		assert(sl.seq!=null) : sl.toString();
+		final int length=sl.length();
+		final int start0=sl.start(INCLUDE_SOFT_CLIP, false);
+		final int stop0=sl.stop(start0, INCLUDE_SOFT_CLIP, false);
+//		assert(false && length==stop-start+1) : length+", "+start+", "+stop+", "+(stop-start+1);
+		final byte[] match=(INCLUDE_DELETIONS ? null : sl.toShortMatch(true));
+		
+		final Scaffold scaf=table.get(sl.rnameS());
+		if(scaf==null){
+			assert(false) : "Can't find "+sl.rnameS();
+			return false;
+		}
+		final int start=Tools.max(start0, 0);
+		final int stop=Tools.min(stop0, scaf.length-1);
+		assert(start>=0 && stop>=0) : "\nAn error was encountered when processing a read. Output will not be valid.\n"+
+			"\nscafName="+scaf.name+"\nstart="+start+"\nstop="+stop+"\nreadlen="+length+"\nscaf="+scaf;
+		
+		if(pt==null){
+			mappedBases+=length;
+			mappedReads++;
+			return addScaffoldCoverage(scaf, sl.seq, match, start, stop, length, sl.strand(), sl.hasMate() ? 1 : 2, null);
+		}
+		pt.mappedBasesT+=length;
+		pt.mappedReadsT++;
+		return addScaffoldCoverage(scaf, sl.seq, match, start, stop, length, sl.strand(), sl.hasMate() ? 1 : 2, pt);
+	}
+	
 	
 	public boolean processRead(Read r){
 		readsProcessed++;
@@ -988,6 +1239,45 @@ public class CoveragePileup {
 		return baseCount;
 	}
 	
+	/** Same as the char[] version, but reads through get() so sparse arrays need not be expanded */
+	public int basesUnderAverageCoverage(final CoverageArray ca, final double avg, final int window){
+		final int length=ca.arrayLength();
+		if(length<window){return 0;}
+		final long limit=(long)Math.ceil(window*avg);
+		long covSum=0;
+		int baseCount=0;
+		for(int i=0; i<window; i++){
+			covSum+=ca.get(i);
+		}
+		
+		boolean below=false;
+		int lastStop=-1, lastStart=0;
+		for(int a=0, b=window; b<length; a++, b++){
+			if(covSum>=limit){
+				if(below){//end range
+					baseCount+=b-Tools.max(lastStop+1, lastStart);
+					lastStop=b-1;
+					below=false;
+				}
+			}else{
+				if(!below){//start range
+					lastStart=a;
+					below=true;
+				}
+			}
+			covSum-=ca.get(a);
+			assert(covSum>=0);
+			covSum+=ca.get(b);
+		}
+		
+		if(below){//end range
+			baseCount+=length-Tools.max(lastStop+1, lastStart);
+		}
+		
+		assert(baseCount>=0);
+		return baseCount;
+	}
+	
 	public long[] writeStats(String fname, int strand){
 //		System.err.println("Writing stats for "+fname+", "+strand);
 		final TextStreamWriter tsw=(fname==null ? null : new TextStreamWriter(fname, overwrite, false, true));
@@ -1026,7 +1316,12 @@ public class CoveragePileup {
 //						sum+=x;
 						if(x>0){covered++;}
 					}
-					if(bits32){
+					if(ca.getClass()==CoverageArraySparse.class){
+						CoverageArraySparse cas=(CoverageArraySparse)ca;
+						stdev=cas.standardDeviation();
+						underWindowAverage=basesUnderAverageCoverage(cas, LOW_COV_DEPTH, LOW_COV_WINDOW);
+						median=cas.valueAtDescendingRank(scaf.length/2);
+					}else if(bits32){
 						int[] array=((CoverageArray3)ca).array;
 						stdev=Tools.standardDeviation(array);
 						underWindowAverage=basesUnderAverageCoverage(array, LOW_COV_DEPTH, LOW_COV_WINDOW);
@@ -1717,6 +2012,8 @@ public class CoveragePileup {
 	public int initialScaffolds=4096;
 	public int binsize=1000;
 	public boolean bits32=false;
+	/** Use sparse coverage arrays when the reference has at least this many bases */
+	public long sparseMinRef=4000000000L;
 	public int minMapq=0;
 	
 	/** Don't print coverage info for scaffolds shorter than this */
@@ -1724,6 +2021,11 @@ public class CoveragePileup {
 	
 	public HashMap<String, Object> pairTable=new HashMap<String, Object>();
 	
+	/** Batches submitted to worker threads and not yet finished */
+	private int pendingBatches=0;
+	/** Locks for stripes of coverage arrays; see incrementStriped */
+	private Object[] stripeLocks;
+	
 	/*--------------------------------------------------------------*/
 	/*----------------        Static Fields         ----------------*/
 	/*--------------------------------------------------------------*/
@@ -1790,6 +2092,15 @@ public class CoveragePileup {
 	/** Include deletions/introns in coverage */
 	public static boolean INCLUDE_DELETIONS=true; //TODO: Not enabled; use BBMask increment method to implement.
 
+	/** Parse sam lines on multiple threads when processing a file */
+	public static boolean MULTITHREADED=true;
+	
+	private static final int LINES_PER_BATCH=200;
+	/** Coverage arrays are locked in stripes of STRIPE_LEN bases in multithreaded mode */
+	private static final int STRIPE_BITS=12, STRIPE_LEN=1<<STRIPE_BITS;
+	private static final int STRIPES=1024, STRIPE_MASK=STRIPES-1;
+	private static final ArrayList<byte[]> POISON=new ArrayList<byte[]>(0);
+	
 	/** Translation array for tracking base counts */
 	private static final byte[] charToNum=AssemblyStats2.makeCharToNum();
 	
@@ -13,6 +13,9 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import stream.ConcurrentCollectionReadInputStream;
@@ -23,7 +26,10 @@ import stream.FastaReadInputStream;
 import stream.FastqReadInputStream;
 import stream.ConcurrentReadOutputStream;
 import stream.Read;
+import structures.ConcurrentUnionFind;
+import structures.IntList;
 import structures.ListNum;
+import structures.LongList;
 import structures.LongM;
 import align2.BandedAligner;
 import align2.ReadLengthComparator;
@@ -778,6 +784,7 @@ public final class Dedupe {
 		
 		ArrayList<HashThread> alht=new ArrayList<HashThread>(THREADS);
 		for(int i=0; i<THREADS; i++){alht.add(new HashThread(false, false, false, false, true));}
+		ArrayList<LongList> edgeLists=(makeClusters && !subsetMode ? new ArrayList<LongList>(THREADS) : null);
 		
 		for(HashThread ht : alht){ht.start();}
 		for(HashThread ht : alht){
@@ -797,6 +804,7 @@ public final class Dedupe {
 			overlaps+=ht.overlapsT;
 			baseOverlaps+=ht.baseOverlapsT;
 			overlapCollisions+=ht.overlapCollisionsT;
+			if(edgeLists!=null){edgeLists.add(ht.edgesT);}
 		}
 		alht.clear();
 		if(verbose){System.err.println("Attempting to close input streams (3).");}
@@ -829,7 +837,7 @@ public final class Dedupe {
 			}else{
 				assert(clusterQueue.isEmpty());
 			}
-			makeClusters(t, list);
+			makeClusters(t, list, edgeLists);
 		}
 		
 		list.clear();
@@ -996,31 +1004,26 @@ public final class Dedupe {
 		return max;
 	}
 	
-	private void makeClusters(Timer t, ArrayList<Read> list){
+	/**
+	 * Groups units into clusters connected by overlaps or pairing.
+	 * @param edgeLists Overlaps found by each thread, as packed unit IDs; if null, clusters are made serially
+	 */
+	private void makeClusters(Timer t, ArrayList<Read> list, ArrayList<LongList> edgeLists){
 		
 		final int clusterlen=70000;
 		long[][] clusterSize=new long[3][clusterlen];
 		int max=0;
-		for(Read r : list){
-			Unit u=(Unit) r.obj;
+		if(edgeLists==null){
+			for(Read r : list){
+				Unit u=(Unit) r.obj;
 
-			if(!u.clustered()){
-				ArrayList<Unit> cluster=u.makeCluster();
-				if(cluster.size()>2){cluster.trimToSize();}
-				if(cluster.size()==1 || (!processClusters && !maxSpanningTree)){processedClusters.add(cluster);}
-				else{clusterQueue.add(cluster);}
-				final int cs=Tools.min(clusterlen-1, cluster.size());
-				{
-					long reads=0, bases=0;
-					for(Unit u2 : cluster){
-						reads++;
-						bases+=u2.length();
-					}
-					clusterSize[0][cs]++;
-					clusterSize[1][cs]+=reads;
-					clusterSize[2][cs]+=bases;
+				if(!u.clustered()){
+					max=Tools.max(max, addCluster(u.makeCluster(), clusterSize));
 				}
-				max=Tools.max(max, cluster.size());
+			}
+		}else{
+			for(ArrayList<Unit> cluster : makeClustersParallel(list, edgeLists)){
+				max=Tools.max(max, addCluster(cluster, clusterSize));
 			}
 		}
 		
@@ -1047,6 +1050,128 @@ public final class Dedupe {
 		}
 	}
 	
+	/** Sends a new cluster to the processing queue or the finished list, and tallies its size; returns its size */
+	private int addCluster(ArrayList<Unit> cluster, long[][] clusterSize){
+		if(cluster.size()>2){cluster.trimToSize();}
+		if(cluster.size()==1 || (!processClusters && !maxSpanningTree)){processedClusters.add(cluster);}
+		else{clusterQueue.add(cluster);}
+		final int cs=Tools.min(clusterSize[0].length-1, cluster.size());
+		{
+			long reads=0, bases=0;
+			for(Unit u2 : cluster){
+				reads++;
+				bases+=u2.length();
+			}
+			clusterSize[0][cs]++;
+			clusterSize[1][cs]+=reads;
+			clusterSize[2][cs]+=bases;
+		}
+		return cluster.size();
+	}
+	
+	/**
+	 * Finds connected components with a concurrent union-find over the overlap edges, then builds each
+	 * cluster by traversal from its smallest unit ID, with threads claiming components dynamically.
+	 * That is the unit a serial scan of the list would reach first, so the clusters are returned
+	 * in the same order, and with the same contents, as the serial method produces.
+	 */
+	private ArrayList<Unit>[] makeClustersParallel(ArrayList<Read> list, ArrayList<LongList> edgeLists){
+		final ConcurrentUnionFind uf=new ConcurrentUnionFind(list.size());
+		runClusterMakers(new ClusterMakerThread[THREADS], uf, edgeLists, null, null, null);
+		
+		//Union is complete, so the roots are exactly the smallest ID of each component
+		final IntList seeds=new IntList();
+		for(int i=0, lim=list.size(); i<lim; i++){
+			if(uf.isRoot(i)){seeds.add(i);}
+		}
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final ArrayList<Unit>[] clusters=new ArrayList[seeds.size];
+		runClusterMakers(new ClusterMakerThread[THREADS], null, null, list, seeds, clusters);
+		
+		if(EA){
+			long units=0, clustered=0;
+			for(Read r : list){units+=1+r.mateCount();}
+			for(ArrayList<Unit> cluster : clusters){clustered+=cluster.size();}
+			assert(units==clustered) : "Overlap edges do not match overlap lists: "+units+", "+clustered;
+		}
+		return clusters;
+	}
+	
+	private void runClusterMakers(ClusterMakerThread[] threads, ConcurrentUnionFind uf, ArrayList<LongList> edgeLists,
+			ArrayList<Read> list, IntList seeds, ArrayList<Unit>[] clusters){
+		final AtomicInteger next=new AtomicInteger(0);
+		for(int i=0; i<threads.length; i++){
+			threads[i]=new ClusterMakerThread(uf, edgeLists, list, seeds, clusters, next);
+			threads[i].start();
+		}
+		for(ClusterMakerThread cmt : threads){
+			while(cmt.getState()!=Thread.State.TERMINATED){
+				try {
+					cmt.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Either unions the endpoints of overlap edges, one edge list at a time,
+	 * or builds the clusters starting from the given seeds, a block of seeds at a time.
+	 */
+	private static final class ClusterMakerThread extends Thread{
+		
+		ClusterMakerThread(ConcurrentUnionFind uf_, ArrayList<LongList> edgeLists_,
+				ArrayList<Read> list_, IntList seeds_, ArrayList<Unit>[] clusters_, AtomicInteger next_){
+			uf=uf_;
+			edgeLists=edgeLists_;
+			list=list_;
+			seeds=seeds_;
+			clusters=clusters_;
+			next=next_;
+		}
+		
+		@Override
+		public void run(){
+			if(uf!=null){union();}
+			else{traverse();}
+		}
+		
+		private void union(){
+			final int lim=uf.size();
+			for(int i=next.getAndIncrement(); i<edgeLists.size(); i=next.getAndIncrement()){
+				final LongList edges=edgeLists.get(i);
+				for(int j=0; j<edges.size; j++){
+					final long edge=edges.array[j];
+					final int a=(int)(edge>>>32), b=(int)edge;
+					if(a>=0 && b>=0 && a<lim && b<lim){uf.union(a, b);}
+				}
+				edgeLists.set(i, null);
+			}
+		}
+		
+		private void traverse(){
+			for(int start=next.getAndAdd(SEED_BLOCK); start<seeds.size; start=next.getAndAdd(SEED_BLOCK)){
+				final int stop=Tools.min(start+SEED_BLOCK, seeds.size);
+				for(int i=start; i<stop; i++){
+					final Unit u=(Unit)list.get(seeds.get(i)).obj;
+					assert(!u.clustered());
+					clusters[i]=u.makeCluster();
+				}
+			}
+		}
+		
+		private final ConcurrentUnionFind uf;
+		private final ArrayList<LongList> edgeLists;
+		private final ArrayList<Read> list;
+		private final IntList seeds;
+		private final ArrayList<Unit>[] clusters;
+		private final AtomicInteger next;
+		
+		private static final int SEED_BLOCK=256;
+	}
+	
 	private String toClusterSizeString(long[][] clusterSizeMatrix){
 		
 		long[] clusterSize=clusterSizeMatrix[0];
@@ -1160,26 +1285,22 @@ public final class Dedupe {
 		
 		if(DISPLAY_PROGRESS){outstream.println("Converting to Maximum Spanning Tree.");}
 		
-		ArrayList<MstThread> alct=new ArrayList<MstThread>(THREADS);
-		for(int i=0; i<THREADS; i++){
-			alct.add(new MstThread());
-		}
+		final ArrayList<MstWorker> alct=new ArrayList<MstWorker>(THREADS);
+		processClusterQueue(new ThreadLocal<MstWorker>(){
+			@Override
+			protected MstWorker initialValue(){
+				MstWorker ct=new MstWorker();
+				synchronized(alct){alct.add(ct);}
+				return ct;
+			}
+		});
 		
 		long overlapsRemoved=0;
 		long overlapBasesRemoved=0;
 		long overlapsRetained=0;
 		long overlapBasesRetained=0;
 		
-		for(MstThread ct : alct){ct.start();}
-		for(MstThread ct : alct){
-			while(ct.getState()!=Thread.State.TERMINATED){
-				try {
-					ct.join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}		
-			
+		for(MstWorker ct : alct){
 			overlapsRemoved+=ct.overlapsRemovedT;
 			overlapBasesRemoved+=ct.overlapBasesRemovedT;
 			overlapsRetained+=ct.overlapsRetainedT;
@@ -1187,13 +1308,13 @@ public final class Dedupe {
 		}
 		assert(clusterQueue.isEmpty());
 		if(processClusters){
-			for(MstThread ct : alct){
+			for(MstWorker ct : alct){
 				clusterQueue.addAll(ct.processedT);
 				ct.processedT.clear();
 				ct.processedT=null;
 			}
 		}else{
-			for(MstThread ct : alct){
+			for(MstWorker ct : alct){
 				processedClusters.addAll(ct.processedT);
 				ct.processedT.clear();
 				ct.processedT=null;
@@ -1228,13 +1349,18 @@ public final class Dedupe {
 		}
 	}
 	
-	private void processClusters(Timer t, boolean mergeClusters){
+	private void processClusters(Timer t, final boolean mergeClusters){
 		
-		ArrayList<ClusterThread> alct=new ArrayList<ClusterThread>(THREADS);
-		for(int i=0; i<THREADS; i++){
-			alct.add(new ClusterThread(fixMultiJoins, canonicizeClusters, removeCycles, fixCanonContradictions, fixOffsetContradictions,
-					mergeClusters, mergeClusters, mergeClusters));
-		}
+		final ArrayList<ClusterProcessor> alct=new ArrayList<ClusterProcessor>(THREADS);
+		processClusterQueue(new ThreadLocal<ClusterProcessor>(){
+			@Override
+			protected ClusterProcessor initialValue(){
+				ClusterProcessor ct=new ClusterProcessor(fixMultiJoins, canonicizeClusters, removeCycles, fixCanonContradictions, fixOffsetContradictions,
+						mergeClusters, mergeClusters, mergeClusters);
+				synchronized(alct){alct.add(ct);}
+				return ct;
+			}
+		});
 		
 		long leafMerges=0;
 		long innerMerges=0;
@@ -1253,15 +1379,8 @@ public final class Dedupe {
 		long cycleOverlaps=0;
 		long cycleClusters=0;
 		
-		for(ClusterThread ct : alct){ct.start();}
-		for(ClusterThread ct : alct){
-			while(ct.getState()!=Thread.State.TERMINATED){
-				try {
-					ct.join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}		
+		for(ClusterProcessor ct : alct){
+			ct.flush();
 			
 			leafMerges+=ct.leafMergesT;
 			innerMerges+=ct.innerMergesT;
@@ -1907,18 +2026,14 @@ public final class Dedupe {
 	}
 	
 	
-	private final class MstThread extends Thread{
+	private final class MstWorker extends ClusterWorker{
 
-		public MstThread(){}
+		public MstWorker(){}
 		
-		public void run(){
-			
-			ArrayList<Unit> cluster=null;
-			while((cluster=nextCluster())!=null){
-				makeMst(cluster);
-				processedT.add(cluster);
-			}
-				
+		@Override
+		void process(ArrayList<Unit> cluster){
+			makeMst(cluster);
+			processedT.add(cluster);
 		}
 		
 		public void makeMst(ArrayList<Unit> cluster){
@@ -2013,9 +2128,9 @@ public final class Dedupe {
 	 * @date Aug 9, 2013
 	 *
 	 */
-	private final class ClusterThread extends Thread{
+	private final class ClusterProcessor extends ClusterWorker{
 		
-		public ClusterThread(boolean fixMultiJoins_, boolean canonicize_, boolean removeCycles_, 
+		public ClusterProcessor(boolean fixMultiJoins_, boolean canonicize_, boolean removeCycles_, 
 				boolean fixCanonContradictions_, boolean fixOffsetContradictions_, boolean mergeClusters_, boolean mergeLeaves_, boolean mergeInner_){
 			fixMultiJoinsT=fixMultiJoins_;
 			canonicizeT=canonicize_;
@@ -2030,157 +2145,156 @@ public final class Dedupe {
 //			assert(false) : fixMultiJoinsT+", "+canonicizeT+", "+fixCanonContradictionsT+", "+fixOffsetContradictionsT+", "+mergeClustersT+", "+removeCycles_;
 		}
 		
-		public void run(){
+		@Override
+		void process(ArrayList<Unit> cluster){
 			
-			final ArrayList<Unit> temp=new ArrayList<Unit>(1000);
+			if(EA){
+				for(Unit u : cluster){assert(u.r.mate==null) : "Cluster processing/merging is not supported for paired reads, only cluster generation.";}
+			}
 			
-			ArrayList<Unit> cluster=null;
-			while((cluster=nextCluster())!=null){
-				
-				if(EA){
-					for(Unit u : cluster){assert(u.r.mate==null) : "Cluster processing/merging is not supported for paired reads, only cluster generation.";}
-				}
-				
 //				for(Unit u : cluster){assert(!u.visited());}
-				unvisit(cluster);
-				
-				reorderClusterBreadthFirst(cluster);
-				int multiJoinCount=findMultiJoinsInCluster(cluster, fixMultiJoinsT);
-				
-				if(EA){
-					for(Unit u : cluster){assert(!u.visited());}
-				}
-				
-				boolean ok=true;
-				if(multiJoinCount!=0){
-					assert(multiJoinCount>0);
-					multiJoinsFoundT+=multiJoinCount;
-					if(!fixMultiJoinsT){
-						multiJoinFailuresT++;
-						ok=false;
-					}
+			unvisit(cluster);
+			
+			reorderClusterBreadthFirst(cluster);
+			int multiJoinCount=findMultiJoinsInCluster(cluster, fixMultiJoinsT);
+			
+			if(EA){
+				for(Unit u : cluster){assert(!u.visited());}
+			}
+			
+			boolean ok=true;
+			if(multiJoinCount!=0){
+				assert(multiJoinCount>0);
+				multiJoinsFoundT+=multiJoinCount;
+				if(!fixMultiJoinsT){
+					multiJoinFailuresT++;
+					ok=false;
 				}
-				
-				int canonContradictions=0;
-				if(ok && canonicizeT){
-					if(EA){
-						for(Unit u : cluster){
-							assert(!u.visited());
-							assert(!u.canonContradiction());
-							assert(!u.canonicized());
-							if(u.overlapList!=null){
-								for(Overlap o : u.overlapList){
-									assert(!o.invalid());
-									assert(!o.canonContradiction()) : 
-										o.u1.canonContradiction()+", "+o.u2.canonContradiction()+", "+cluster.contains(o.u1)+", "+cluster.contains(o.u2);
-								}
+			}
+			
+			int canonContradictions=0;
+			if(ok && canonicizeT){
+				if(EA){
+					for(Unit u : cluster){
+						assert(!u.visited());
+						assert(!u.canonContradiction());
+						assert(!u.canonicized());
+						if(u.overlapList!=null){
+							for(Overlap o : u.overlapList){
+								assert(!o.invalid());
+								assert(!o.canonContradiction()) : 
+									o.u1.canonContradiction()+", "+o.u2.canonContradiction()+", "+cluster.contains(o.u1)+", "+cluster.contains(o.u2);
 							}
 						}
 					}
-					canonContradictions=canonicizeClusterBreadthFirst(cluster, temp);
+				}
+				canonContradictions=canonicizeClusterBreadthFirst(cluster, temp);
 //					System.err.println("Canonicized cluster of size "+cluster.size()+"; contradictions = "+canonContradictions+"; canonicized = "+temp.size());
-					temp.clear();
-					for(Unit u : cluster){assert(!u.visited());}
-					if(canonContradictions>0){
-						canonContradictoryOverlapsT+=canonContradictions;
-						canonContradictoryClustersT++;
-						if(fixCanonContradictionsT){
-							if(verbose){System.err.println("Pruning cluster to remove canonization contradictions.");}
-							fullyPruneCluster(cluster, temp);
-							if(verbose){System.err.println("Resulting size: "+cluster.size());}
-							if(EA){
-								for(Unit u : cluster){
-									assert(!u.visited());
-									assert(!u.canonContradiction());
-									assert(u.canonicized());
-									if(u.overlapList!=null){
-										for(Overlap o : u.overlapList){
-											assert(!o.invalid());
-											assert(!o.canonContradiction());
-											assert(o.type==FORWARD) : "\n"+o+"\n"+
-											o.u1.canonContradiction()+", "+o.u2.canonContradiction()+", "+o.u1.canonicized()+", "+o.u2.canonicized()+
-											"\n"+cluster.contains(o.u1)+", "+cluster.contains(o.u2)+", "+cluster.size();
-										}
+				temp.clear();
+				for(Unit u : cluster){assert(!u.visited());}
+				if(canonContradictions>0){
+					canonContradictoryOverlapsT+=canonContradictions;
+					canonContradictoryClustersT++;
+					if(fixCanonContradictionsT){
+						if(verbose){System.err.println("Pruning cluster to remove canonization contradictions.");}
+						fullyPruneCluster(cluster, temp);
+						if(verbose){System.err.println("Resulting size: "+cluster.size());}
+						if(EA){
+							for(Unit u : cluster){
+								assert(!u.visited());
+								assert(!u.canonContradiction());
+								assert(u.canonicized());
+								if(u.overlapList!=null){
+									for(Overlap o : u.overlapList){
+										assert(!o.invalid());
+										assert(!o.canonContradiction());
+										assert(o.type==FORWARD) : "\n"+o+"\n"+
+										o.u1.canonContradiction()+", "+o.u2.canonContradiction()+", "+o.u1.canonicized()+", "+o.u2.canonicized()+
+										"\n"+cluster.contains(o.u1)+", "+cluster.contains(o.u2)+", "+cluster.size();
 									}
 								}
 							}
-						}else{
-							ok=false;
 						}
+					}else{
+						ok=false;
 					}
 				}
-				
-				int cycleOverlaps=0;
-				if(ok){
-					cycleOverlaps=findCycles(cluster, removeCycles);
-					for(Unit u : cluster){assert(!u.visited());}
-					if(cycleOverlaps>0){
-						cycleOverlapsT+=cycleOverlaps;
-						cycleClustersT++;
-					}
+			}
+			
+			int cycleOverlaps=0;
+			if(ok){
+				cycleOverlaps=findCycles(cluster, removeCycles);
+				for(Unit u : cluster){assert(!u.visited());}
+				if(cycleOverlaps>0){
+					cycleOverlapsT+=cycleOverlaps;
+					cycleClustersT++;
 				}
-				
-				int offsetContradictions=0;
-				if(ok && fixOffsetContradictionsT){
-					if(EA){
-						for(Unit u : cluster){
-							assert(!u.visited());
-							assert(!u.offsetContradiction());
-							assert(!u.offsetValid());
-							assert(u.canonicized());
-							if(u.overlapList!=null){
-								for(Overlap o : u.overlapList){
-									assert(!o.invalid());
-									assert(!o.offsetContradiction());
-									assert(o.type==FORWARD) : o;
-								}
+			}
+			
+			int offsetContradictions=0;
+			if(ok && fixOffsetContradictionsT){
+				if(EA){
+					for(Unit u : cluster){
+						assert(!u.visited());
+						assert(!u.offsetContradiction());
+						assert(!u.offsetValid());
+						assert(u.canonicized());
+						if(u.overlapList!=null){
+							for(Overlap o : u.overlapList){
+								assert(!o.invalid());
+								assert(!o.offsetContradiction());
+								assert(o.type==FORWARD) : o;
 							}
 						}
 					}
-					offsetContradictions=generateOffsetsBreadthFirst(cluster, temp);
+				}
+				offsetContradictions=generateOffsetsBreadthFirst(cluster, temp);
 //					System.err.println("Made offsets for cluster of size "+cluster.size()+"; contradictions = "+offsetContradictions+"; set = "+temp.size());
-					temp.clear();
-					for(Unit u : cluster){assert(!u.visited());}
-					if(offsetContradictions>0){
-						offsetContradictoryOverlapsT+=offsetContradictions;
-						offsetContradictoryClustersT++;
-						if(fixOffsetContradictionsT){
-							if(verbose){System.err.println("Pruning cluster to remove offset contradictions.");}
-							fullyPruneCluster(cluster, temp);
-							if(verbose){System.err.println("Resulting size: "+cluster.size());}
-							if(EA){
-								for(Unit u : cluster){
-									assert(!u.visited());
-									assert(!u.offsetContradiction());
-									assert(u.offsetValid());
-									if(u.overlapList!=null){
-										for(Overlap o : u.overlapList){
-											assert(!o.invalid());
-											assert(!o.offsetContradiction());
-											assert(o.type==FORWARD) : o;
-										}
+				temp.clear();
+				for(Unit u : cluster){assert(!u.visited());}
+				if(offsetContradictions>0){
+					offsetContradictoryOverlapsT+=offsetContradictions;
+					offsetContradictoryClustersT++;
+					if(fixOffsetContradictionsT){
+						if(verbose){System.err.println("Pruning cluster to remove offset contradictions.");}
+						fullyPruneCluster(cluster, temp);
+						if(verbose){System.err.println("Resulting size: "+cluster.size());}
+						if(EA){
+							for(Unit u : cluster){
+								assert(!u.visited());
+								assert(!u.offsetContradiction());
+								assert(u.offsetValid());
+								if(u.overlapList!=null){
+									for(Overlap o : u.overlapList){
+										assert(!o.invalid());
+										assert(!o.offsetContradiction());
+										assert(o.type==FORWARD) : o;
 									}
 								}
 							}
-						}else{
-							ok=false;
 						}
+					}else{
+						ok=false;
 					}
-					if(ok){Collections.sort(cluster, UNIT_OFFSET_COMPARATOR);}
 				}
-				
-				if(ok && absorbOverlap){
-					mergeCluster(cluster);
-				}
-				
-				processedClustersT.add(cluster);
-				if(processedClustersT.size()>=threadMaxReadsToBuffer){
-					synchronized(processedClusters){
-						processedClusters.addAll(processedClustersT);
-						processedClustersT.clear();
-					}
+				if(ok){Collections.sort(cluster, UNIT_OFFSET_COMPARATOR);}
+			}
+			
+			if(ok && absorbOverlap){
+				mergeCluster(cluster);
+			}
+			
+			processedClustersT.add(cluster);
+			if(processedClustersT.size()>=threadMaxReadsToBuffer){
+				synchronized(processedClusters){
+					processedClusters.addAll(processedClustersT);
+					processedClustersT.clear();
 				}
 			}
+		}
+		
+		/** Moves clusters still buffered by this worker to the shared list */
+		void flush(){
 			synchronized(processedClusters){
 				processedClusters.addAll(processedClustersT);
 				processedClustersT.clear();
@@ -2211,9 +2325,7 @@ public final class Dedupe {
 					processedClustersT.add(subcluster);
 				}else{
 					assert(subcluster.size()>1);
-					synchronized(clusterQueue){
-						clusterQueue.add(subcluster);
-					}
+					subclusters.add(subcluster);
 				}
 			}
 		}
@@ -2931,6 +3043,7 @@ public final class Dedupe {
 		}
 
 		private ArrayList<ArrayList<Unit>> processedClustersT=new ArrayList<ArrayList<Unit>>(threadMaxReadsToBuffer);
+		private final ArrayList<Unit> temp=new ArrayList<Unit>(1000);
 
 		long leafMergesT=0;
 		long innerMergesT=0;
@@ -3023,19 +3136,95 @@ public final class Dedupe {
 	
 
 	
-	/** Returns next cluster larger than 1 element.
-	 * Singleton clusters are added directly to 'processed'. */
-	private ArrayList<Unit> nextCluster(){
-		synchronized(clusterQueue){
-			ArrayList<Unit> cluster=clusterQueue.poll();
-			assert(cluster==null || cluster.size()>1);
-//			while(cluster!=null && cluster.size()<2){
-////				unmark(cluster);
-//				processedClustersT.add(cluster);
-//				cluster=clusterQueue.poll();
-//			}
-			return cluster;
+	/**
+	 * Per-thread state for processing clusters on a ForkJoinPool.
+	 * Each pool thread lazily gets its own worker, so clusters are balanced by work stealing
+	 * rather than by polling a shared queue.
+	 */
+	private abstract class ClusterWorker{
+		
+		/** Processes one cluster of at least 2 elements; any subclusters it splits off go in 'subclusters' */
+		abstract void process(ArrayList<Unit> cluster);
+		
+		/** Subclusters of the last processed cluster that still need processing */
+		final ArrayList<ArrayList<Unit>> subclusters=new ArrayList<ArrayList<Unit>>(4);
+	}
+	
+	/**
+	 * Processes a range of clusters, splitting it in half until single clusters remain,
+	 * so idle pool threads can steal whatever is left.  Subclusters are processed as new tasks.
+	 * Halving does not preserve the order of the range, so top-level clusters are claimed by ClusterClaimTasks instead.
+	 */
+	private static final class ClusterTask extends RecursiveAction{
+		
+		ClusterTask(ArrayList<ArrayList<Unit>> clusters_, int from_, int to_, ThreadLocal<? extends ClusterWorker> workers_){
+			clusters=clusters_;
+			from=from_;
+			to=to_;
+			workers=workers_;
 		}
+		
+		@Override
+		protected void compute(){
+			if(to-from>1){
+				final int mid=(from+to)>>>1;
+				invokeAll(new ClusterTask(clusters, from, mid, workers), new ClusterTask(clusters, mid, to, workers));
+			}else if(to>from){
+				final ArrayList<Unit> cluster=clusters.set(from, null);
+				final ClusterWorker w=workers.get();
+				w.process(cluster);
+				if(!w.subclusters.isEmpty()){
+					final ArrayList<ArrayList<Unit>> subs=new ArrayList<ArrayList<Unit>>(w.subclusters);
+					w.subclusters.clear();
+					new ClusterTask(subs, 0, subs.size(), workers).invoke();
+				}
+			}
+		}
+		
+		private final ArrayList<ArrayList<Unit>> clusters;
+		private final int from, to;
+		private final ThreadLocal<? extends ClusterWorker> workers;
+		private static final long serialVersionUID = 1L;
+	}
+	
+	/**
+	 * Claims clusters one at a time from a shared cursor, so they are started in list order.
+	 * Each claimed cluster runs as a ClusterTask, so its subclusters can still be stolen by idle threads.
+	 */
+	private static final class ClusterClaimTask extends RecursiveAction{
+		
+		ClusterClaimTask(ArrayList<ArrayList<Unit>> clusters_, AtomicInteger next_, ThreadLocal<? extends ClusterWorker> workers_){
+			clusters=clusters_;
+			next=next_;
+			workers=workers_;
+		}
+		
+		@Override
+		protected void compute(){
+			final int lim=clusters.size();
+			for(int i=next.getAndIncrement(); i<lim; i=next.getAndIncrement()){
+				new ClusterTask(clusters, i, i+1, workers).invoke();
+			}
+		}
+		
+		private final ArrayList<ArrayList<Unit>> clusters;
+		private final AtomicInteger next;
+		private final ThreadLocal<? extends ClusterWorker> workers;
+		private static final long serialVersionUID = 1L;
+	}
+	
+	/** Runs every cluster in the queue through a worker on a ForkJoinPool, starting the largest clusters first, and empties the queue */
+	private <W extends ClusterWorker> void processClusterQueue(final ThreadLocal<W> workers){
+		final ArrayList<ArrayList<Unit>> clusters=new ArrayList<ArrayList<Unit>>(clusterQueue);
+		clusterQueue.clear();
+		Collections.sort(clusters, CLUSTER_LENGTH_COMPARATOR);
+		final ForkJoinPool pool=new ForkJoinPool(THREADS);
+		final AtomicInteger next=new AtomicInteger(0);
+		final ArrayList<ClusterClaimTask> tasks=new ArrayList<ClusterClaimTask>(THREADS);
+		for(int i=0; i<THREADS; i++){tasks.add(new ClusterClaimTask(clusters, next, workers));}
+		for(ClusterClaimTask task : tasks){pool.execute(task);}
+		for(ClusterClaimTask task : tasks){task.join();}
+		pool.shutdown();
 	}
 	
 	
@@ -3063,6 +3252,7 @@ public final class Dedupe {
 				crisq.add(crisa[(i+tid)%crisa.length]);
 			}
 			bandy=(maxEdits>0 && (findOverlapsT || findContainmentsT) ? BandedAligner.makeBandedAligner(bandwidth) : null);
+			edgesT=(findOverlapsT && makeClusters && !subsetMode ? new LongList() : null);
 			
 //			assert(addToCodeMapT) : "addToCodeMapT="+addToCodeMapT+", addToAffixMapT="+addToAffixMapT+", findContainmentsT="+findContainmentsT+
 //			", findOverlapsT="+findOverlapsT+", findMatchesT="+findMatchesT+", convertToUpperCaseT="+convertToUpperCaseT+", numAffixMaps="+numAffixMaps;
@@ -3478,6 +3668,7 @@ public final class Dedupe {
 													ub.overlapList.add(o);
 													if(verbose || flag){System.err.println("Added overlap "+o);}
 												}
+												if(edgesT!=null){edgesT.add((((long)ua.unitID)<<32)|(ub.unitID&0xFFFFFFFFL));}
 											}else{
 												if(verbose || flag){System.err.println("Already contained overlap "+o);}
 											}
@@ -3706,6 +3897,8 @@ public final class Dedupe {
 		private final int tid;
 		private final ArrayDeque<ConcurrentReadInputStream> crisq;
 		private final BandedAligner bandy;
+		/** Unit IDs of each overlap this thread added, packed as (ua<<32)|ub, for building clusters in parallel */
+		final LongList edgesT;
 	}
 	
 	public static boolean equalsRC(byte[] a, byte[] b){
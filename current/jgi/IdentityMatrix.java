@@ -2,17 +2,19 @@ package jgi;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import align2.BandedAligner;
 import align2.Shared;
 import align2.Tools;
 
-import stream.ConcurrentCollectionReadInputStream;
 import stream.ConcurrentGenericReadInputStream;
 import stream.ConcurrentReadInputStream;
 import stream.FASTQ;
 import stream.Read;
 import structures.ListNum;
+import structures.LongList;
+import dna.AminoAcid;
 import dna.Parser;
 import dna.Timer;
 
@@ -22,6 +24,9 @@ import fileIO.TextStreamWriter;
 
 /**
  * Calculates an all-to-all identity matrix.
+ * The lower triangle is divided into square tiles, which threads claim one at a time.
+ * With a minimum identity, pairs whose kmer sketches predict a lower identity are not aligned,
+ * and output may be sparse: one line per pair at or above the minimum.
  * @author Brian Bushnell
  * @date Nov 23, 2014
  *
@@ -67,6 +72,25 @@ public class IdentityMatrix {
 				maxWidth_=Integer.parseInt(b);
 			}else if(a.equals("percent")){
 				percent=Tools.parseBoolean(b);
+			}else if(a.equals("minid") || a.equals("minidentity")){
+				minID_=Float.parseFloat(b);
+				if(minID_>1){minID_/=100;}
+				assert(minID_>=0 && minID_<=1) : "minid should be between 0 and 1.";
+			}else if(a.equals("sparse")){
+				sparse=Tools.parseBoolean(b);
+			}else if(a.equals("prefilter")){
+				prefilter=Tools.parseBoolean(b);
+			}else if(a.equals("margin") || a.equals("prefiltermargin")){
+				margin=Float.parseFloat(b);
+			}else if(a.equals("k")){
+				k=Integer.parseInt(b);
+				assert(k>0 && k<32) : "k must be 1-31.";
+			}else if(a.equals("sketchsize")){
+				sketchSize=Integer.parseInt(b);
+				assert(sketchSize>0);
+			}else if(a.equals("tile") || a.equals("tilesize")){
+				tileSize=Integer.parseInt(b);
+				assert(tileSize>0 && tileSize<=MAX_TILE) : "tile must be 1-"+MAX_TILE;
 			}else{
 				outstream.println("Unknown parameter "+args[i]);
 				assert(false) : "Unknown parameter "+args[i];
@@ -87,6 +111,9 @@ public class IdentityMatrix {
 		maxEdits=maxEdits_==-1 ? BandedAligner.big : maxEdits_;
 		maxWidth=maxWidth_==-1 ? (int)(Tools.min(maxEdits, BandedAligner.big)*2L+1) : maxWidth_;
 		
+		//Without a minimum identity, every pair must be aligned
+		prefilter&=(minID_>0);
+		
 		ffout1=FileFormat.testOutput(out1, FileFormat.FASTQ, null, true, true, false, false);
 		ffin1=FileFormat.testInput(in1, FileFormat.FASTQ, null, true, true);
 	}
@@ -94,17 +121,23 @@ public class IdentityMatrix {
 	void process(Timer t){
 		
 		allReads=load();
-		Shared.READ_BUFFER_LENGTH=4;
-		ConcurrentCollectionReadInputStream cris=new ConcurrentCollectionReadInputStream(allReads, null, -1);
-		cris.start(); //4567
+		final int numReads=allReads.size();
+		if(!sparse){
+			for(Read r : allReads){r.obj=new float[numReads];}
+		}
 		
+		final int numBlocks=(numReads+tileSize-1)/tileSize;
+		numTiles=(int)(numBlocks*(long)(numBlocks+1)/2);
+		assert(numTiles>=0) : "Too many tiles; increase the tile size.";
+		tileResults=(sparse ? new LongList[numTiles] : null);
 		
 		ArrayList<ProcessThread> threads=new ArrayList<ProcessThread>();
 		final int tmax=Tools.max(Shared.threads(), 1);
 		for(int i=0; i<tmax; i++){
-			threads.add(new ProcessThread(cris));
+			threads.add(new ProcessThread());
 		}
 		for(ProcessThread pt : threads){pt.start();}
+		double sum=0;
 		for(ProcessThread pt : threads){
 			while(pt.getState()!=Thread.State.TERMINATED){
 				try {
@@ -114,44 +147,58 @@ public class IdentityMatrix {
 					e.printStackTrace();
 				}
 			}
+			sum+=pt.sumT;
+			alignments+=pt.alignmentsT;
+			skipped+=pt.skippedT;
+			minID=Tools.min(minID, pt.minIDT);
+			maxID=Tools.max(maxID, pt.maxIDT);
 		}
-		ReadWrite.closeStreams(cris);
+		avgID=sum/Tools.max(1, alignments);
 		
-		final int numReads=allReads.size();
-		for(int i=1; i<numReads; i++){
-			Read r1=allReads.get(i);
-			assert(r1.numericID==i);
-			for(int j=0; j<i; j++){
-				Read r2=allReads.get(j);
-				assert(r2.numericID==j);
-				((float[])r2.obj)[i]=((float[])r1.obj)[j];
+		if(!sparse){
+			for(int i=1; i<numReads; i++){
+				Read r1=allReads.get(i);
+				assert(r1.numericID==i);
+				for(int j=0; j<i; j++){
+					Read r2=allReads.get(j);
+					assert(r2.numericID==j);
+					((float[])r2.obj)[i]=((float[])r1.obj)[j];
+				}
 			}
 		}
 		
 		if(ffout1!=null){
 			TextStreamWriter tsw=new TextStreamWriter(ffout1);
 			tsw.start();
-			for(Read r : allReads){
-				float[] obj=(float[])r.obj;
-				tsw.print(r.id);
-				if(percent){
-					for(float f : obj){
-						tsw.print(String.format("\t%.2f", f));
-					}
-				}else{
-					for(float f : obj){
-						tsw.print(String.format("\t%.4f", f));
+			if(sparse){
+				writeSparse(tsw, numBlocks);
+			}else{
+				for(Read r : allReads){
+					float[] obj=(float[])r.obj;
+					tsw.print(r.id);
+					if(percent){
+						for(float f : obj){
+							tsw.print(String.format("\t%.2f", f));
+						}
+					}else{
+						for(float f : obj){
+							tsw.print(String.format("\t%.4f", f));
+						}
 					}
+					tsw.print("\n");
+					r.obj=null;
 				}
-				tsw.print("\n");
-				r.obj=null;
 			}
 			tsw.poisonAndWait();
 		}
 		
 		t.stop();
 		outstream.println("Total Time:                   \t"+t);
-		outstream.println("Reads Processed:    "+allReads.size()+" \t"+String.format("%.2fk alignments/sec", (allReads.size()*(long)(allReads.size())/(double)(t.elapsed))*1000000));
+		outstream.println("Reads Processed:    "+allReads.size()+" \t"+String.format("%.2fk alignments/sec", (alignments/(double)(t.elapsed))*1000000));
+		outstream.println("Alignments:         "+alignments);
+		if(prefilter){
+			outstream.println("Prefiltered:        "+skipped+" \t"+String.format("%.2f%%", skipped*100.0/Tools.max(1, skipped+alignments)));
+		}
 		outstream.println("Min Similarity:     "+String.format("%.5f", minID));
 		outstream.println("Max Similarity:     "+String.format("%.5f", maxID));
 		outstream.println("Avg Similarity:     "+String.format("%.5f", avgID));
@@ -171,6 +218,7 @@ public class IdentityMatrix {
 		long readsProcessed=0;
 		int maxLen=0;
 		ArrayList<Read> bigList=new ArrayList<Read>();
+		ArrayList<long[]> sketchList=(prefilter ? new ArrayList<long[]>() : null);
 		{
 			
 			ListNum<Read> ln=cris.nextList();
@@ -189,6 +237,7 @@ public class IdentityMatrix {
 					
 					bigList.add(r1);
 					maxLen=Tools.max(maxLen, r1.length());
+					if(sketchList!=null){sketchList.add(makeSketch(r1.bases));}
 					
 					readsProcessed++;
 				}
@@ -206,6 +255,7 @@ public class IdentityMatrix {
 		if(verbose){outstream.println("Finished loading "+readsProcessed+" sequences.");}
 		
 		longestSequence=maxLen;
+		sketches=(sketchList==null ? null : sketchList.toArray(new long[0][]));
 		
 		t.stop();
 		outstream.println("Load Time:                    \t"+t);
@@ -213,12 +263,101 @@ public class IdentityMatrix {
 		return bigList;
 	}
 	
+	/** Writes one line per pair at or above minid, ordered by the first then second sequence */
+	private void writeSparse(TextStreamWriter tsw, int numBlocks){
+		final int[] cursors=new int[numBlocks];
+		final String format=(percent ? "\t%.2f\n" : "\t%.4f\n");
+		for(int bi=0; bi<numBlocks; bi++){
+			Arrays.fill(cursors, 0);
+			final int rowTile=bi*(bi+1)/2;
+			for(int i=bi*tileSize, iLocal=0, lim=Tools.min(allReads.size(), i+tileSize); i<lim; i++, iLocal++){
+				final String id1=allReads.get(i).id;
+				for(int bj=0; bj<=bi; bj++){
+					final LongList list=tileResults[rowTile+bj];
+					if(list==null){continue;}
+					for(int c=cursors[bj]; c<list.size && (int)(list.array[c]>>>48)==iLocal; c++){
+						final long x=list.array[c];
+						final int j=bj*tileSize+(int)((x>>>32)&0xFFFF);
+						final float f=Float.intBitsToFloat((int)x);
+						tsw.print(id1+"\t"+allReads.get(j).id+String.format(format, percent ? 100*f : f));
+						cursors[bj]=c+1;
+					}
+				}
+			}
+			for(int bj=0; bj<=bi; bj++){tileResults[rowTile+bj]=null;}
+		}
+	}
+	
+	/*--------------------------------------------------------------*/
+	
+	/** Returns the sorted lowest hash values of the sequence's canonical kmers */
+	private long[] makeSketch(byte[] bases){
+		if(bases==null || bases.length<k){return new long[0];}
+		final int shift=2*k, shift2=shift-2;
+		final long mask=~((-1L)<<shift);
+		long kmer=0, rkmer=0;
+		int len=0;
+		final long[] hashes=new long[bases.length-k+1];
+		int n=0;
+		for(byte b : bases){
+			final long x=AminoAcid.baseToNumber[b];
+			final long x2=AminoAcid.baseToComplementNumber[b];
+			kmer=((kmer<<2)|x)&mask;
+			rkmer=(rkmer>>>2)|(x2<<shift2);
+			if(x<0){
+				len=0;
+				kmer=rkmer=0;
+			}else{
+				len++;
+			}
+			if(len>=k){hashes[n++]=hash(Tools.min(kmer, rkmer));}
+		}
+		Arrays.sort(hashes, 0, n);
+		int unique=0;
+		for(int i=0; i<n && unique<sketchSize; i++){
+			if(unique==0 || hashes[i]!=hashes[unique-1]){
+				hashes[unique]=hashes[i];
+				unique++;
+			}
+		}
+		return Arrays.copyOf(hashes, unique);
+	}
+	
+	/**
+	 * Estimates identity from two bottom sketches, using the Jaccard index of the combined
+	 * bottom sketch and the Mash distance formula.
+	 */
+	private float estimateIdentity(long[] a, long[] b){
+		final int size=Tools.min(sketchSize, a.length+b.length);
+		int seen=0, shared=0;
+		for(int i=0, j=0; seen<size && (i<a.length || j<b.length); seen++){
+			if(j>=b.length || (i<a.length && a[i]<b[j])){
+				i++;
+			}else if(i>=a.length || b[j]<a[i]){
+				j++;
+			}else{
+				shared++;
+				i++;
+				j++;
+			}
+		}
+		if(shared==0){return 0;}
+		final double jaccard=shared/(double)seen;
+		final double distance=-Math.log(2*jaccard/(1+jaccard))/k;
+		return (float)Tools.max(0, 1-distance);
+	}
+	
+	private static long hash(long x){
+		x=(x^(x>>>30))*0xbf58476d1ce4e5b9L;
+		x=(x^(x>>>27))*0x94d049bb133111ebL;
+		return (x^(x>>>31))&Long.MAX_VALUE;
+	}
+	
 	/*--------------------------------------------------------------*/
 	
 	private class ProcessThread extends Thread {
 		
-		ProcessThread(ConcurrentReadInputStream cris_){
-			cris=cris_;
+		ProcessThread(){
 			maxEdits2=Tools.min(maxEdits, longestSequence);
 			int width=Tools.min(maxEdits2*2+1, maxWidth);
 			bandy=BandedAligner.makeBandedAligner(width);
@@ -226,62 +365,69 @@ public class IdentityMatrix {
 		
 		@Override
 		public void run(){
-			final int numReads=allReads.size();
-			ListNum<Read> ln=cris.nextList();
-			ArrayList<Read> reads=(ln!=null ? ln.list : null);
-
-			if(reads!=null && !reads.isEmpty()){
-				Read r=reads.get(0);
-				assert((ffin1==null || ffin1.samOrBam()) || (r.mate!=null)==cris.paired());
+			for(int tile=nextTile.getAndIncrement(); tile<numTiles; tile=nextTile.getAndIncrement()){
+				//Tiles are numbered by row of the lower triangle: (0,0), (1,0), (1,1), (2,0)...
+				int bi=(int)((Math.sqrt(8.0*tile+1)-1)/2);
+				while(bi*(bi+1)/2>tile){bi--;}
+				while((bi+1)*(bi+2)/2<=tile){bi++;}
+				final int bj=tile-bi*(bi+1)/2;
+				processTile(tile, bi, bj);
 			}
+		}
+		
+		private void processTile(final int tile, final int bi, final int bj){
+			final int numReads=allReads.size();
+			final int iStart=bi*tileSize, iStop=Tools.min(numReads, iStart+tileSize);
+			final int jStart=bj*tileSize;
+			final LongList list=(sparse ? new LongList(16) : null);
 			
-			double sum=0;
-			long compares=0;
-			
-			while(reads!=null && reads.size()>0){
-				if(verbose){outstream.println("Fetched "+reads.size()+" reads.");}
-
-				for(int idx=0; idx<reads.size(); idx++){
-					final Read r1=reads.get(idx);
-					float[] obj=new float[numReads];
-					r1.obj=obj;
-					for(Read r2 : allReads){
-						if(r2.numericID>r1.numericID){break;}
-//						int edits=bandy.alignQuadruple(r1.bases, r2.bases, maxEdits2, false);
-						int edits=bandy.alignQuadrupleProgressive(r1.bases, r2.bases, 10, maxEdits2, false);
-						System.err.println(r1.id+"->"+r2.id+": Edits="+edits);
-						float editRate=edits/(float)Tools.max(r1.length(), r2.length());
-						float similarity=1-editRate;
-						if(r1!=r2){
-							compares++;
-							sum+=similarity;
-							minID=Tools.min(minID, similarity);
-							maxID=Tools.max(maxID, similarity);
-						}
-						if(percent){
-							float id=100*similarity;
-							obj[(int)r2.numericID]=id;
-						}else{
-							obj[(int)r2.numericID]=similarity;
-						}
+			for(int i=iStart; i<iStop; i++){
+				final Read r1=allReads.get(i);
+				final float[] obj=(sparse ? null : (float[])r1.obj);
+				final int jStop=(bi==bj ? i+1 : Tools.min(numReads, jStart+tileSize));
+				for(int j=jStart; j<jStop; j++){
+					final Read r2=allReads.get(j);
+					final float similarity=(i==j ? 1 : compare(r1, r2, i, j));
+					final boolean pass=(similarity>=minID_ && similarity>0);
+					if(obj!=null){
+						final float f=(pass || minID_<=0 ? similarity : 0);
+						obj[j]=(percent ? 100*f : f);
+					}else if(pass && i!=j){
+						list.add((((long)(i-iStart))<<48)|(((long)(j-jStart))<<32)|(Float.floatToRawIntBits(similarity)&0xFFFFFFFFL));
 					}
 				}
-
-				cris.returnList(ln.id, ln.list.isEmpty());
-				if(verbose){outstream.println("Returned a list.");}
-				ln=cris.nextList();
-				reads=(ln!=null ? ln.list : null);
 			}
-			if(ln!=null){
-				cris.returnList(ln.id, ln.list==null || ln.list.isEmpty());
+			if(list!=null && list.size>0){tileResults[tile]=list;}
+		}
+		
+		/** Returns similarity, or -1 if it is known to be below minid without being measured */
+		private float compare(Read r1, Read r2, int i, int j){
+			if(prefilter && estimateIdentity(sketches[i], sketches[j])<minID_-margin){
+				skippedT++;
+				return -1;
 			}
-			
-			avgID=sum/compares;
+			final int maxLen=Tools.max(r1.length(), r2.length());
+			//Edit counts past this cap are below minid, so there is no need to find them exactly
+			final int cap=(minID_>0 ? Tools.min(maxEdits2, (int)((1-minID_)*(double)maxLen+0.0001)+1) : maxEdits2);
+			final int edits=bandy.alignQuadrupleProgressive(r1.bases, r2.bases, 10, cap, false);
+			if(verbose){System.err.println(r1.id+"->"+r2.id+": Edits="+edits);}
+			alignmentsT++;
+			if(edits>=cap && cap<maxEdits2){return -1;}
+			float editRate=edits/(float)maxLen;
+			float similarity=1-editRate;
+			sumT+=similarity;
+			minIDT=Tools.min(minIDT, similarity);
+			maxIDT=Tools.max(maxIDT, similarity);
+			return similarity;
 		}
 		
-		private final ConcurrentReadInputStream cris;
 		private final BandedAligner bandy;
 		private final int maxEdits2;
+		
+		double sumT=0;
+		long alignmentsT=0;
+		long skippedT=0;
+		float minIDT=1, maxIDT=0;
 	}
 	
 	/*--------------------------------------------------------------*/
@@ -300,6 +446,8 @@ public class IdentityMatrix {
 	private boolean percent=false;
 	
 	private ArrayList<Read> allReads;
+	/** Kmer sketches of allReads, for the prefilter */
+	private long[][] sketches;
 	
 	/*--------------------------------------------------------------*/
 	
@@ -308,11 +456,30 @@ public class IdentityMatrix {
 	private final int maxWidth;
 	private int longestSequence;
 	
+	/** Pairs below this identity are reported as 0, or omitted in sparse mode */
+	private float minID_=0;
+	private boolean sparse=false;
+	/** Skip alignment of pairs whose estimated identity is below minid-margin */
+	private boolean prefilter=true;
+	private float margin=0.1f;
+	private int k=12;
+	private int sketchSize=200;
+	
+	/** Sequences per tile side */
+	private int tileSize=64;
+	private int numTiles;
+	private final AtomicInteger nextTile=new AtomicInteger(0);
+	/** Passing pairs per tile for sparse output, packed as (row, column, similarity bits) */
+	private LongList[] tileResults;
+	
 	private double minID=1, maxID=0, avgID=0;
+	private long alignments=0, skipped=0;
 	
 	/*--------------------------------------------------------------*/
 	
 	private java.io.PrintStream outstream=System.err;
 	public static boolean verbose=false;
 	
+	private static final int MAX_TILE=0x7FFF;
+
 }
@@ -453,6 +453,8 @@ public class KmerNormalize {
 				maxPeakCount=Integer.parseInt(b);
 			}else if(a.equals("usetmpdir")){
 				USE_TMPDIR=Tools.parseBoolean(b);
+			}else if(a.equals("binarytemp") || a.equals("bbrtemp")){
+				BINARY_TEMP_FILES=Tools.parseBoolean(b);
 			}else if(a.equals("uselowerdepth") || a.equals("uld")){
 				USE_LOWER_DEPTH=Tools.parseBoolean(b);
 			}else if(a.equals("tmpdir")){
@@ -785,7 +787,10 @@ public class KmerNormalize {
 		assert(tempOutPrefix!=null);
 		String tempOut=null;
 		if(outFname==null || useTmpdir()){
-			tempOut=tempOutPrefix+".fq.gz";
+			tempOut=tempOutPrefix+(BINARY_TEMP_FILES ? ".bbr" : ".fq.gz");
+		}else if(BINARY_TEMP_FILES){
+			outFname=outFname.replace('\\', '/');
+			tempOut=outFname.substring(0, outFname.lastIndexOf('/')+1)+tempOutPrefix+".bbr";
 		}else{
 			outFname=outFname.replace('\\', '/');
 			int idx=outFname.lastIndexOf('/');
@@ -3607,6 +3612,8 @@ public class KmerNormalize {
 	
 	public static boolean REMOVE_TEMP_FILES=true;
 	public static boolean USE_TMPDIR=true;
+	/** Write intermediate passes in the binary read format instead of the output format */
+	public static boolean BINARY_TEMP_FILES=true;
 	public static String TMPDIR=Shared.TMPDIR;
 	public static boolean useTmpdir(){return USE_TMPDIR && TMPDIR!=null;}
 	
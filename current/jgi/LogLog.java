@@ -1,10 +1,16 @@
 package jgi;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import kmer.Primes;
 
@@ -37,9 +43,10 @@ public class LogLog {
 	}
 	
 	public final long cardinality(){
+		merge();
 		long sum=0;
-		for(int i=0; i<maxArray.length(); i++){
-			sum+=maxArray.get(i);
+		for(int i=0; i<maxArray.length; i++){
+			sum+=maxArray[i];
 		}
 		double mean=sum/(double)buckets;
 		long cardinality=(long)((((Math.pow(2, mean)-1)*buckets*SKIPMOD))/1.262);
@@ -48,9 +55,10 @@ public class LogLog {
 	}
 	
 	public final long cardinalityH(){
+		merge();
 		double sum=0;
-		for(int i=0; i<maxArray.length(); i++){
-			int x=Tools.max(1, maxArray.get(i));
+		for(int i=0; i<maxArray.length; i++){
+			int x=Tools.max(1, maxArray[i]);
 			sum+=1.0/x;
 		}
 		double mean=buckets/sum;
@@ -61,13 +69,13 @@ public class LogLog {
 		this(p.loglogbuckets, p.loglogbits, p.loglogk, p.loglogseed);
 	}
 	
-	public LogLog(int buckets_, int bits_, int k_, long seed){
+	public LogLog(int buckets_, int bits_, int k_, long seed_){
 //		hashes=hashes_;
 		buckets=buckets_;
 		bits=bits_;
 		k=Kmer.getKbig(k_);
-		maxArray=(atomic ? new AtomicIntegerArray(buckets) : null);
-		maxArray2=(atomic ? null : new long[buckets]);
+		seed=seed_;
+		maxArray=new byte[buckets];
 		steps=(63+bits)/bits;
 		tables=new long[numTables][][];
 		for(int i=0; i<numTables; i++){
@@ -153,16 +161,80 @@ public class LogLog {
 		if(leading<3){return;}
 		final int bucket=(int)((number&Integer.MAX_VALUE)%buckets);
 		
-//		if(maxArray!=null){
-			int x=maxArray.get(bucket);
-			while(leading>x){
-				boolean b=maxArray.compareAndSet(bucket, x, leading);
-				if(b){x=leading;}
-				else{x=maxArray.get(bucket);}
+		final byte[] array=getLocalArray();
+		if(leading>array[bucket]){array[bucket]=(byte)leading;}
+	}
+	
+	/*--------------------------------------------------------------*/
+	/*----------------      Registers and Files     ----------------*/
+	/*--------------------------------------------------------------*/
+	
+	/** Folds every thread's registers into maxArray; call after hashing threads finish */
+	public final synchronized void merge(){
+		for(byte[] array : localArrays){
+			union(maxArray, array);
+		}
+	}
+	
+	/** Adds another estimator's registers to this one, as if it had seen that data too */
+	public final synchronized void add(LogLog log){
+		assert(compatible(log.buckets, log.bits, log.k, log.seed)) : "Incompatible LogLog parameters.";
+		log.merge();
+		union(maxArray, log.maxArray);
+	}
+	
+	private static void union(byte[] a, byte[] b){
+		for(int i=0; i<a.length; i++){
+			if(b[i]>a[i]){a[i]=b[i];}
+		}
+	}
+	
+	/** True if sketches made with these parameters can be merged with this one */
+	public final boolean compatible(int buckets_, int bits_, int k_, long seed_){
+		return buckets==buckets_ && bits==bits_ && k==k_ && seed==seed_ && seed>=0;
+	}
+	
+	/** Writes parameters and merged registers in binary */
+	public final void write(String fname){
+		merge();
+		assert(seed>=0) : "Sketches made with a random seed cannot be merged.";
+		try {
+			DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+			dos.writeLong(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(buckets);
+			dos.writeInt(bits);
+			dos.writeInt(k);
+			dos.writeLong(seed);
+			dos.write(maxArray);
+			dos.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write LogLog sketch "+fname, e);
+		}
+	}
+	
+	/** Reads a sketch written by write() */
+	public static LogLog read(String fname){
+		try {
+			DataInputStream dis=new DataInputStream(new BufferedInputStream(new FileInputStream(fname)));
+			if(dis.readLong()!=MAGIC){
+				dis.close();
+				throw new RuntimeException(fname+" is not a LogLog sketch.");
+			}
+			final int version=dis.readInt();
+			if(version!=VERSION){
+				dis.close();
+				throw new RuntimeException("Unsupported LogLog sketch version "+version+" in "+fname);
 			}
-//		}else{
-//			maxArray2[bucket]=Tools.max(leading, maxArray2[bucket]);
-//		}
+			final int buckets=dis.readInt(), bits=dis.readInt(), k=dis.readInt();
+			final long seed=dis.readLong();
+			LogLog log=new LogLog(buckets, bits, k, seed);
+			dis.readFully(log.maxArray);
+			dis.close();
+			return log;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read LogLog sketch "+fname, e);
+		}
 	}
 	
 	private static long[][] makeCodes(int length, int bits, long seed){
@@ -192,12 +264,26 @@ public class LogLog {
 	public final int bits;
 //	public final int hashes;
 	public final int steps;
+	public final long seed;
 	private final long[][][] tables;
-	public final AtomicIntegerArray maxArray;
-	public final long[] maxArray2;
+	/** Max leading zeros per bucket; only complete after merge() */
+	public final byte[] maxArray;
 //	public final long[] counts=new long[64];
 	public int buckets;
 	private final ThreadLocal<Kmer> localKmer=new ThreadLocal<Kmer>();
+	/** Each hashing thread updates its own registers, so there is no contention */
+	private final ThreadLocal<byte[]> localArray=new ThreadLocal<byte[]>();
+	private final ArrayList<byte[]> localArrays=new ArrayList<byte[]>();
+	
+	private byte[] getLocalArray(){
+		byte[] array=localArray.get();
+		if(array==null){
+			array=new byte[buckets];
+			localArray.set(array);
+			synchronized(this){localArrays.add(array);}
+		}
+		return array;
+	}
 	
 	protected Kmer getLocalKmer(){
 		Kmer kmer=localKmer.get();
@@ -233,14 +319,22 @@ public class LogLog {
 				}else if(a.equals("buckets") || a.equals("loglogbuckets")){
 					long x=Tools.parseKMG(b);
 					buckets=(int)Primes.primeAtLeast(Tools.min(1000000, x));
+					paramsSet=true;
 				}else if(a.equals("bits") || a.equals("loglogbits")){
 					bits=Integer.parseInt(b);
+					paramsSet=true;
 				}else if(a.equals("k") || a.equals("loglogk")){
 					k=Integer.parseInt(b);
+					paramsSet=true;
 				}else if(a.equals("seed") || a.equals("loglogseed")){
 					seed=Long.parseLong(b);
+					paramsSet=true;
 				}else if(a.equals("verbose")){
 					verbose=Tools.parseBoolean(b);
+				}else if(a.equals("outsketch") || a.equals("sketchout")){
+					outSketch=b;
+				}else if(a.equals("insketch") || a.equals("sketchin") || a.equals("sketches")){
+					inSketches=(b==null ? null : b.split(","));
 				}else if(a.equals("parse_flag_goes_here")){
 					//Set a variable here
 				}else if(in1==null && i==0 && !arg.contains("=") && (arg.toLowerCase().startsWith("stdin") || new File(arg).exists())){
@@ -265,7 +359,13 @@ public class LogLog {
 				out=parser.out1;
 			}
 			
-			assert(in1!=null && in1.length>0) : "No primary input file specified.";
+			if(in1==null){in1=new String[0];}
+			assert(in1.length>0 || inSketches!=null) : "No primary input file specified.";
+			if(inSketches!=null && !paramsSet){
+				//Parameters will be taken from the first sketch
+			}else if(seed<0 && (outSketch!=null || inSketches!=null)){
+				seed=DEFAULT_SKETCH_SEED; //Merging requires identical hash functions
+			}
 			{
 				ffin1=new FileFormat[in1.length];
 				ffin2=new FileFormat[in1.length];
@@ -290,8 +390,13 @@ public class LogLog {
 		
 		void process(){
 			Timer t=new Timer();
-			LogLog log=new LogLog(buckets, bits, k, seed);
-			
+			LogLog log;
+			if(inSketches!=null && !paramsSet){//Take parameters from the first sketch
+				LogLog first=read(inSketches[0]);
+				log=new LogLog(first.buckets, first.bits, first.k, first.seed);
+			}else{
+				log=new LogLog(buckets, bits, k, seed);
+			}
 			
 			for(int ffnum=0; ffnum<ffin1.length; ffnum++){
 				ConcurrentReadInputStream cris=ConcurrentGenericReadInputStream.getReadInputStream(maxReads, false, ffin1[ffnum], ffin2[ffnum]);
@@ -318,11 +423,12 @@ public class LogLog {
 				errorState|=ReadWrite.closeStreams(cris);
 			}
 			
-			int[] copy=new int[log.maxArray.length()];
-			for(int i=0; i<log.maxArray.length(); i++){
-//				System.err.println(log.maxArray.get(i));
-				copy[i]=log.maxArray.get(i);
+			if(inSketches!=null){
+				for(String fname : inSketches){
+					log.add(read(fname));
+				}
 			}
+			if(outSketch!=null){log.write(outSketch);}
 			
 			t.stop();
 			
@@ -383,6 +489,13 @@ public class LogLog {
 		private int bits=8;
 		private int k=31;
 		private long seed=-1;
+		/** True if buckets, bits, k or seed were specified */
+		private boolean paramsSet=false;
+		
+		/** Binary sketches to merge into the result */
+		private String[] inSketches=null;
+		/** Write the final registers here */
+		private String outSketch=null;
 		
 		
 		private String[] in1=null;
@@ -414,8 +527,12 @@ public class LogLog {
 	
 	private static PrintStream outstream=System.err;
 	public static boolean verbose=false;
-	public static boolean atomic=true;
 	private static final long SKIPMOD=3;
+	
+	private static final long MAGIC=0x42424C4F474C4F47L; //"BBLOGLOG"
+	private static final int VERSION=1;
+	/** Used when a sketch is written or merged and no seed was given */
+	private static final long DEFAULT_SKETCH_SEED=12345;
 	public static long lastCardinality=-1;
 	
 }
@@ -3,6 +3,7 @@ package jgi;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -11,6 +12,7 @@ import dna.Parser;
 import dna.Timer;
 
 import stream.FASTQ;
+import stream.ReadPipe;
 import tax.FilterByTaxa;
 import tax.GiToNcbi;
 import tax.TaxTree;
@@ -277,6 +279,8 @@ public class RQCFilter {
 				maxNs=Integer.parseInt(b);
 			}else if(a.equals("usetmpdir")){
 				writeTempToTmpdir=Tools.parseBoolean(b);
+			}else if(a.equals("pipeline")){
+				pipeline=Tools.parseBoolean(b);
 			}else if(a.equals("tmpdir")){
 				tmpDir=b;
 				writeTempToTmpdir=(b!=null);
@@ -537,13 +541,15 @@ public class RQCFilter {
 			int step=0;
 			final int numSteps=(doFilter ? 1 : 0)+(doTrim ? 1 : 0)+(doNextera ? 1 : 0)+(riboFlag ? 1 : 0)+(commonMicrobeFlag ? 1 : 0)+
 					((humanFlag || catDogHumanFlag || mouseCatDogHumanFlag) ? 1 : 0)+mappingRefs.size();
+			//Steps whose output is passed to the next step in memory
+			final boolean[] piped=planPipes(numSteps);
 			String inPrefix=null, outPrefix=null;
 			
 			//Adapter trimming
 			if(doTrim){
 				step++;
 				inPrefix=outPrefix;
-				outPrefix=(step<numSteps ? trimPrefix : null);
+				outPrefix=(step<numSteps ? pipePrefix(trimPrefix, piped[step]) : null);
 //				System.err.println("Trim. step="+step+", in="+in1+", out="+out1+", inPrefix="+inPrefix+", outPrefix="+outPrefix);
 				
 				final String in1z, in2z, out1z, out2z;
@@ -558,7 +564,14 @@ public class RQCFilter {
 					out1z=stripDirs(out1); out2z=stripDirs(out2);
 				}
 				
-				ktrim(in1z, in2z, out1z, out2z, inPrefix, outPrefix, step);
+				{
+					final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+					final int stepF=step;
+					runStage(new Runnable(){
+						@Override
+						public void run(){ktrim(in1z, in2z, out1z, out2z, inPrefixF, outPrefixF, stepF);}
+					}, outPrefix, out1z);
+				}
 				
 				if(in2!=null && out2==null){
 					FASTQ.FORCE_INTERLEAVED=true;
@@ -574,7 +587,7 @@ public class RQCFilter {
 			if(doFilter){
 				step++;
 				inPrefix=outPrefix;
-				outPrefix=(step<numSteps ? filterPrefix : null);
+				outPrefix=(step<numSteps ? pipePrefix(filterPrefix, piped[step]) : null);
 //				System.err.println("Filter. step="+step+", in="+in1+", out="+out1+", inPrefix="+inPrefix+", outPrefix="+outPrefix);
 				
 				final String in1z, in2z, out1z, out2z;
@@ -589,7 +602,14 @@ public class RQCFilter {
 					out1z=stripDirs(out1); out2z=stripDirs(out2);
 				}
 				
-				filter(in1z, in2z, out1z, out2z, synthOutFile, inPrefix, outPrefix, step);
+				{
+					final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+					final int stepF=step;
+					runStage(new Runnable(){
+						@Override
+						public void run(){filter(in1z, in2z, out1z, out2z, synthOutFile, inPrefixF, outPrefixF, stepF);}
+					}, outPrefix, out1z);
+				}
 				
 				if(in2!=null && out2==null){
 					FASTQ.FORCE_INTERLEAVED=true;
@@ -605,7 +625,7 @@ public class RQCFilter {
 			if(riboFlag){
 				step++;
 				inPrefix=outPrefix;
-				outPrefix=(step<numSteps ? riboPrefix : null);
+				outPrefix=(step<numSteps ? pipePrefix(riboPrefix, piped[step]) : null);
 //				System.err.println("Filter. step="+step+", in="+in1+", out="+out1+", inPrefix="+inPrefix+", outPrefix="+outPrefix);
 				
 				final String in1z, in2z, out1z, out2z;
@@ -620,7 +640,14 @@ public class RQCFilter {
 					out1z=stripDirs(out1); out2z=stripDirs(out2);
 				}
 				
-				filterRibo(in1z, in2z, out1z, out2z, riboOutFile, inPrefix, outPrefix, step);
+				{
+					final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+					final int stepF=step;
+					runStage(new Runnable(){
+						@Override
+						public void run(){filterRibo(in1z, in2z, out1z, out2z, riboOutFile, inPrefixF, outPrefixF, stepF);}
+					}, outPrefix, out1z);
+				}
 				
 				if(in2!=null && out2==null){
 					FASTQ.FORCE_INTERLEAVED=true;
@@ -648,7 +675,7 @@ public class RQCFilter {
 			if(commonMicrobeFlag){
 				step++;
 				inPrefix=outPrefix;
-				outPrefix=(step<numSteps ? microbePrefix : null);
+				outPrefix=(step<numSteps ? pipePrefix(microbePrefix, piped[step]) : null);
 //				System.err.println("Filter. step="+step+", in="+in1+", out="+out1+", inPrefix="+inPrefix+", outPrefix="+outPrefix);
 				
 				final String in1z, in2z, out1z, out2z;
@@ -663,13 +690,18 @@ public class RQCFilter {
 					out1z=stripDirs(out1); out2z=stripDirs(out2);
 				}
 
-				String ref=taxFilter(commonMicrobesRef);
+				final String ref=taxFilter(commonMicrobesRef);
 //				System.err.println("in1z="+in1z+"\nout1z="+out1z+"\ninPrefix="+inPrefix+"\noutPrefix="+outPrefix);
 				
 				{
 					int oldMapK=map_k;
 					map_k=13;
-					removeCommonMicrobes(in1z, in2z, out1z, out2z, microbeOutFile, microbeStatsFile, inPrefix, outPrefix, ref, step, aggressiveMappingFlag);
+					final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+					final int stepF=step;
+					runStage(new Runnable(){
+						@Override
+						public void run(){removeCommonMicrobes(in1z, in2z, out1z, out2z, microbeOutFile, microbeStatsFile, inPrefixF, outPrefixF, ref, stepF, aggressiveMappingFlag);}
+					}, outPrefix, out1z);
 					map_k=oldMapK;
 				}
 				
@@ -687,7 +719,7 @@ public class RQCFilter {
 			if(humanFlag || catDogHumanFlag || mouseCatDogHumanFlag){
 				step++;
 				inPrefix=outPrefix;
-				outPrefix=(step<numSteps ? humanPrefix : null);
+				outPrefix=(step<numSteps ? pipePrefix(humanPrefix, piped[step]) : null);
 //				System.err.println("Human. step="+step+", in="+in1+", out="+out1+", inPrefix="+inPrefix+", outPrefix="+outPrefix);
 				
 				final String in1z, in2z, out1z, out2z;
@@ -702,14 +734,21 @@ public class RQCFilter {
 					out1z=stripDirs(out1); out2z=stripDirs(out2);
 				}
 				
-				dehumanize(in1z, in2z, out1z, out2z, humanOutFile, inPrefix, outPrefix, step, catDogHumanFlag, mouseCatDogHumanFlag, aggressiveMappingFlag);
+				{
+					final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+					final int stepF=step;
+					runStage(new Runnable(){
+						@Override
+						public void run(){dehumanize(in1z, in2z, out1z, out2z, humanOutFile, inPrefixF, outPrefixF, stepF, catDogHumanFlag, mouseCatDogHumanFlag, aggressiveMappingFlag);}
+					}, outPrefix, out1z);
+				}
 				
 				if(in2!=null && out2==null){
 					FASTQ.FORCE_INTERLEAVED=true;
 					FASTQ.TEST_INTERLEAVED=false;
 				}
 				
-				Data.unloadAll();
+				unloadData();
 				if(step>1){
 					delete(inPrefix, out1z, out2z);
 				}
@@ -720,7 +759,7 @@ public class RQCFilter {
 				for(int i=0; i<mappingRefs.size(); i++){
 					step++;
 					inPrefix=outPrefix;
-					outPrefix=(step<numSteps ? mappingPrefix[i] : null);
+					outPrefix=(step<numSteps ? pipePrefix(mappingPrefix[i], piped[step]) : null);
 					//				System.err.println("Human. step="+step+", in="+in1+", out="+out1+", inPrefix="+inPrefix+", outPrefix="+outPrefix);
 					
 					final String in1z, in2z, out1z, out2z;
@@ -735,14 +774,22 @@ public class RQCFilter {
 						out1z=stripDirs(out1); out2z=stripDirs(out2);
 					}
 					
-					decontamByMapping(in1z, in2z, out1z, out2z, null, null, inPrefix, outPrefix, mappingRefs.get(i), step);
+					{
+						final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+						final int stepF=step;
+						final String refF=mappingRefs.get(i);
+						runStage(new Runnable(){
+							@Override
+							public void run(){decontamByMapping(in1z, in2z, out1z, out2z, null, null, inPrefixF, outPrefixF, refF, stepF);}
+						}, outPrefix, out1z);
+					}
 					
 					if(in2!=null && out2==null){
 						FASTQ.FORCE_INTERLEAVED=true;
 						FASTQ.TEST_INTERLEAVED=false;
 					}
 					
-					Data.unloadAll();
+					unloadData();
 					if(step>1){
 						delete(inPrefix, out1z, out2z);
 					}
@@ -772,14 +819,21 @@ public class RQCFilter {
 				//Insert size calculation
 				if(doMerge){merge(in1z, in2z, inPrefix);}
 				
-				splitNextera(in1z, in2z, inPrefix, outPrefix, step);
+				{
+					final String inPrefixF=inPrefix, outPrefixF=outPrefix;
+					final int stepF=step;
+					runStage(new Runnable(){
+						@Override
+						public void run(){splitNextera(in1z, in2z, inPrefixF, outPrefixF, stepF);}
+					}, outPrefix, out1z);
+				}
 				
 				if(in2!=null && out2==null){
 					FASTQ.FORCE_INTERLEAVED=true;
 					FASTQ.TEST_INTERLEAVED=false;
 				}
 				
-				Data.unloadAll();
+				unloadData();
 				if(step>1){
 					delete(inPrefix, out1z, out2z);
 				}
@@ -834,6 +888,136 @@ public class RQCFilter {
 	}
 	
 	
+	/*--------------------------------------------------------------*/
+	/*----------------           Pipeline           ----------------*/
+	/*--------------------------------------------------------------*/
+	
+	/**
+	 * Determines which steps send their output to the next step through memory rather than a temp file.
+	 * A step is piped only when the next step is the sole reader of its output,
+	 * and a run of concurrent steps contains at most one mapping step, since mapping uses static state.
+	 * @param numSteps Number of steps
+	 * @return Array indexed by step number
+	 */
+	private boolean[] planPipes(int numSteps){
+		final boolean[] piped=new boolean[numSteps+1];
+		if(!pipeline){return piped;}
+		
+		final int dukSteps=(doTrim ? 1 : 0)+(doFilter ? 1 : 0)+(riboFlag ? 1 : 0);
+		final boolean[] mapping=new boolean[numSteps+2];
+		int step=dukSteps;
+		final int microbeStep=(commonMicrobeFlag ? dukSteps+1 : -1);
+		if(commonMicrobeFlag){mapping[++step]=true;}
+		if(humanFlag || catDogHumanFlag || mouseCatDogHumanFlag){mapping[++step]=true;}
+		for(int i=0; i<mappingRefs.size(); i++){mapping[++step]=true;}
+		
+		boolean segmentMaps=false;
+		for(step=1; step<numSteps; step++){
+			segmentMaps|=mapping[step];
+			boolean ok=!(segmentMaps && mapping[step+1]);
+			if(detectMicrobeFlag && step==dukSteps){ok=false;} //Read again by detectCommonMicrobes
+			if(doNextera && doMerge && step==numSteps-1){ok=false;} //Read again by merge
+			if(taxList!=null && (step==microbeStep || step+1==microbeStep)){ok=false;} //May be skipped by renaming files
+			piped[step]=ok;
+			if(!ok){segmentMaps=false;}
+		}
+		return piped;
+	}
+	
+	private static String pipePrefix(String prefix, boolean piped){
+		return piped ? ReadPipe.PREFIX+prefix : prefix;
+	}
+	
+	/** Location of a temp file with this prefix; pipes have no directory */
+	private String tempPath(String prefix){
+		if(ReadPipe.isPipeName(prefix)){return prefix;}
+		return (tmpDir==null ? outDir : tmpDir)+prefix;
+	}
+	
+	/**
+	 * Runs a step.  If its output goes to a pipe, it runs in its own thread, and this returns
+	 * once the step has opened its output, so the next step can start consuming it.
+	 * Otherwise it runs in this thread, after which any steps feeding it are finished.
+	 * @param stage Step to run
+	 * @param outPrefix Prefix of the step's output
+	 * @param out1 Primary output of the step
+	 */
+	private void runStage(Runnable stage, String outPrefix, String out1){
+		if(outPrefix==null || !ReadPipe.isPipeName(outPrefix)){
+			stage.run();
+			finishStages();
+			return;
+		}
+		final ReadPipe pipe=ReadPipe.get(outPrefix+out1);
+		pipe.hold();
+		final StageThread st=new StageThread(stage, pipe);
+		stageThreads.add(st);
+		st.start();
+		if(!pipe.awaitWriter(st)){
+			log("failed", true);
+			throw new RuntimeException("A pipelined step terminated before opening its output.");
+		}
+	}
+	
+	/** Waits for running steps, then performs cleanup deferred while they ran */
+	private void finishStages(){
+		boolean success=true;
+		for(StageThread st : stageThreads){
+			while(st.getState()!=Thread.State.TERMINATED){
+				try {
+					st.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			success&=st.success;
+		}
+		stageThreads.clear();
+		if(!success){
+			log("failed", true);
+			throw new RuntimeException("A pipelined step failed.");
+		}
+		
+		if(unloadPending){
+			Data.unloadAll();
+			unloadPending=false;
+		}
+		for(String[] x : pendingDeletes){
+			delete(x[0], Arrays.copyOfRange(x, 1, x.length));
+		}
+		pendingDeletes.clear();
+	}
+	
+	/** Unloads the genome, or defers it if steps are still running */
+	private void unloadData(){
+		if(stageThreads.isEmpty()){Data.unloadAll();}
+		else{unloadPending=true;}
+	}
+	
+	/** Runs a step writing to a pipe, and releases the pipe when the step completes */
+	private static class StageThread extends Thread {
+		
+		StageThread(Runnable stage_, ReadPipe pipe_){
+			stage=stage_;
+			pipe=pipe_;
+		}
+		
+		@Override
+		public void run(){
+			try {
+				stage.run();
+				success=true;
+			} finally {
+				pipe.release();
+			}
+		}
+		
+		private final Runnable stage;
+		private final ReadPipe pipe;
+		boolean success=false;
+	}
+	
+	
 	/**
 	 * Runs BBDuk to perform:
 	 * Kmer trimming, short read removal.
@@ -852,8 +1036,8 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 		{//Fill list with BBDuk arguments
 			argList.add("ktrim="+(ktrim==null ? "f" : ktrim));
@@ -983,8 +1167,8 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 //		System.err.println("inPre="+inPre+", outPre="+outPre+", outDir="+outDir+", tmpDir="+tmpDir); //123
 		
@@ -1108,8 +1292,8 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 //		System.err.println("inPre="+inPre+", outPre="+outPre+", outDir="+outDir+", tmpDir="+tmpDir); //123
 		
@@ -1186,8 +1370,8 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 		final String lmpName, fragName, unknownName, singletonName;
 		final String statsName=outPre+nexteraStats;
@@ -1280,8 +1464,8 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 		{
 
@@ -1434,7 +1618,7 @@ public class RQCFilter {
 		
 		log("detectCommonMicrobes start", true);
 		
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
 		
 		if(ref==null){
 			String skipped="Tax filter removed all ref sequences; skipping microbe detection.";
@@ -1529,8 +1713,8 @@ public class RQCFilter {
 		
 		log("removeCommonMicrobes start", true);
 		
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 		if(ref==null){
 			String skipped="Tax filter removed all ref sequences; skipping microbe removal.";
@@ -1668,8 +1852,8 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 		
-		final String inPre=(inPrefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+inPrefix);
-		final String outPre=(outPrefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+outPrefix);
+		final String inPre=(inPrefix==null ? "" : tempPath(inPrefix));
+		final String outPre=(outPrefix==null ? outDir : tempPath(outPrefix));
 		
 		{
 			argList.add("minratio=.9");
@@ -1755,7 +1939,7 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 		
-		final String inPre=(prefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+prefix);
+		final String inPre=(prefix==null ? outDir : tempPath(prefix));
 		
 		{//Fill list with BBMerge arguments
 			if(mergeStrictness!=null){argList.add(mergeStrictness);}
@@ -1821,7 +2005,7 @@ public class RQCFilter {
 		
 		ArrayList<String> argList=new ArrayList<String>();
 
-		final String inPre=(prefix==null ? outDir : (tmpDir==null ? outDir : tmpDir)+prefix);
+		final String inPre=(prefix==null ? outDir : tempPath(prefix));
 		
 		final long cardinality=LogLog.lastCardinality;
 		final long capacity=kmerCapacity(12, true);
@@ -1922,7 +2106,7 @@ public class RQCFilter {
 	 * @param message Message to log
 	 * @param append True to append, false to overwrite
 	 */
-	private void log(String message, boolean append, boolean printTime){
+	private synchronized void log(String message, boolean append, boolean printTime){
 		if(logName!=null){
 			ReadWrite.writeString(message+(printTime ? ", "+timeString() : "")+"\n", logName, append);
 		}
@@ -1935,9 +2119,17 @@ public class RQCFilter {
 	 * @param names Filenames to delete
 	 */
 	private void delete(String prefix, String...names){
+		if(prefix!=null && ReadPipe.isPipeName(prefix)){return;} //Nothing was written
+		if(!stageThreads.isEmpty()){//Inputs may still be open
+			String[] x=new String[names==null ? 1 : names.length+1];
+			x[0]=prefix;
+			for(int i=1; i<x.length; i++){x[i]=names[i-1];}
+			pendingDeletes.add(x);
+			return;
+		}
 		log("delete temp files start", true);
 		if(names!=null){
-			final String pre=(prefix==null ? "" : (tmpDir==null ? outDir : tmpDir)+prefix);
+			final String pre=(prefix==null ? "" : tempPath(prefix));
 			for(String s : names){
 				if(s!=null){
 					s=pre+s;
@@ -2261,6 +2453,15 @@ public class RQCFilter {
 	/** Directory in which to write all temp files */
 	private String tmpDir=Shared.TMPDIR;
 	
+	/** Run consecutive steps concurrently, passing reads in memory instead of through temp files */
+	private boolean pipeline=false;
+	/** Steps currently running in their own threads */
+	private final ArrayList<StageThread> stageThreads=new ArrayList<StageThread>();
+	/** Deletions deferred until running steps finish; each is a prefix followed by names */
+	private final ArrayList<String[]> pendingDeletes=new ArrayList<String[]>();
+	/** Data.unloadAll() was deferred until running steps finish */
+	private boolean unloadPending=false;
+	
 	/** Primary input reads file (required) */
 	private String in1=null;
 	/** Secondary input reads file */
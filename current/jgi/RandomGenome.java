@@ -51,4 +51,18 @@ public class RandomGenome {
 		
 	}
 	
+	/**
+	 * Generates a random chromosome without N blocks.
+	 * @param randy Random source; use a seeded instance for reproducible output
+	 * @param len Chromosome length
+	 * @return Bases as ACGT
+	 */
+	public static byte[] randomChrom(Random randy, int len){
+		final byte[] bases=new byte[len];
+		for(int i=0; i<len; i++){
+			bases[i]=AminoAcid.numberToBase[randy.nextInt(4)];
+		}
+		return bases;
+	}
+	
 }
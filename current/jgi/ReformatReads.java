@@ -15,6 +15,7 @@ import stream.FastaReadInputStream;
 import stream.ConcurrentReadOutputStream;
 import stream.KillSwitch;
 import stream.Read;
+import stream.ReadReservoir;
 import stream.SamLine;
 import structures.ListNum;
 import dna.Data;
@@ -98,6 +99,10 @@ public class ReformatReads {
 			}else if(a.equals("samplebases") || a.equals("samplebasestarget") || a.equals("sbt")){
 				sampleBasesTarget=Tools.parseKMG(b);
 				sampleBasesExact=(sampleBasesTarget>0);
+			}else if(a.equals("reservoir") || a.equals("singlepass")){
+				reservoir=Tools.parseBoolean(b);
+			}else if(a.equals("sampleorder") || a.equals("preserveorder")){
+				preserveSampleOrder=Tools.parseBoolean(b);
 			}else if(a.equals("addslash")){
 				addslash=Tools.parseBoolean(b);
 			}else if(a.equals("slashspace") || a.equals("spaceslash")){
@@ -345,12 +350,18 @@ public class ReformatReads {
 		long readsRemaining=0;
 		long basesRemaining=0;
 		
+		final ReadReservoir rr;
 		if(sampleReadsExact || sampleBasesExact){
-			long[] counts=countReads(maxReads);
-			readsRemaining=counts[0];
-			basesRemaining=counts[2];
 			setSampleSeed(sampleseed);
-		}
+			if(reservoir || ffin1.stdio()){
+				rr=new ReadReservoir(sampleReadsExact ? sampleReadsTarget : -1, sampleReadsExact ? -1 : sampleBasesTarget, randy);
+			}else{
+				rr=null;
+				long[] counts=countReads(maxReads);
+				readsRemaining=counts[0];
+				basesRemaining=counts[2];
+			}
+		}else{rr=null;}
 		
 		
 		final ConcurrentReadInputStream cris;
@@ -391,6 +402,7 @@ public class ReformatReads {
 		
 		long readsProcessed=0;
 		long basesProcessed=0;
+		long nextListID=0;
 		
 		//Only used with deleteEmptyFiles flag
 		long readsOut1=0;
@@ -937,7 +949,10 @@ public class ReformatReads {
 				final ArrayList<Read> listOut;
 				
 //				assert(false) : sampleReadsExact+", "+sampleBasesExact;
-				if(sampleReadsExact || sampleBasesExact){
+				if(rr!=null){
+					rr.add(reads);
+					listOut=new ArrayList<Read>(0);
+				}else if(sampleReadsExact || sampleBasesExact){
 					listOut=new ArrayList<Read>();
 					if(sampleReadsExact){
 						for(Read r : reads){
@@ -991,6 +1006,7 @@ public class ReformatReads {
 //				}
 				if(ros!=null){ros.add(listOut, ln.id);}
 				if(rosb!=null){rosb.add(singles, ln.id);}
+				nextListID=ln.id+1;
 
 				cris.returnList(ln.id, false);
 				ln=cris.nextList();
@@ -1001,6 +1017,24 @@ public class ReformatReads {
 				assert(ln.list.isEmpty());
 				cris.returnList(ln.id, true);
 			}
+			
+			//Reservoir output follows the (empty) lists already sent, so it keeps the output stream in order
+			if(rr!=null){
+				final ArrayList<Read> sampled=rr.toList(preserveSampleOrder);
+				for(Read r : sampled){
+					readsOut1++;
+					basesOut1+=r.length();
+					if(r.mate!=null){
+						readsOut2++;
+						basesOut2+=r.mateLength();
+					}
+				}
+				for(int i=0; i<sampled.size(); i+=Shared.READ_BUFFER_LENGTH){
+					ArrayList<Read> listOut=new ArrayList<Read>(sampled.subList(i, Tools.min(sampled.size(), i+Shared.READ_BUFFER_LENGTH)));
+					if(ros!=null){ros.add(listOut, nextListID);}
+					nextListID++;
+				}
+			}
 		}
 		
 		errorState|=ReadStats.writeAll();
@@ -1390,6 +1424,10 @@ public class ReformatReads {
 	private boolean sampleBasesExact=false;
 	private long sampleReadsTarget=0;
 	private long sampleBasesTarget=0;
+	/** Sample exact targets in one pass with a reservoir, rather than counting the input first */
+	private boolean reservoir=false;
+	/** Emit reservoir samples in input order rather than random order */
+	private boolean preserveSampleOrder=true;
 	
 	/** Recalibrate quality scores using matrices */
 	private boolean recalibrateQuality=false;
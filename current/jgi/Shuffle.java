@@ -5,12 +5,15 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Random;
 
 import stream.ConcurrentGenericReadInputStream;
 import stream.ConcurrentReadInputStream;
+import stream.ConcurrentReadOutputStream;
 import stream.FASTQ;
 import stream.FastaReadInputStream;
 import stream.Read;
+import stream.ReadSorter;
 import structures.ListNum;
 import dna.Parser;
 import dna.Timer;
@@ -31,6 +34,8 @@ import align2.Tools;
 
 /**
  * Randomizes the order of reads.
+ * Shuffling is done in memory up to a budget; beyond that, reads are scattered randomly into
+ * temporary buckets on disk, and each bucket is then loaded, shuffled and written in turn.
  * @author Brian Bushnell
  * @date Oct 27, 2014
  *
@@ -116,6 +121,17 @@ public class Shuffle {
 				}else{
 					throw new RuntimeException("mode must be shuffle, name, coordinate, sequence, or id.");
 				}
+			}else if(a.equals("seed")){
+				seed=Long.parseLong(b);
+			}else if(a.equals("memory") || a.equals("mem") || a.equals("maxmem")){
+				memory=Tools.parseKMG(b);
+			}else if(a.equals("tempbuckets") || a.equals("shufflebuckets")){
+				buckets=Integer.parseInt(b);
+				assert(buckets>1 || buckets<1) : "tempbuckets must be at least 2, or 0 for auto.";
+			}else if(a.equals("tmpdir")){
+				tmpdir=b;
+			}else if(a.equals("usetmpdir")){
+				useTmpdir=Tools.parseBoolean(b);
 			}else if(a.equals("showspeed") || a.equals("ss")){
 				showSpeed=Tools.parseBoolean(b);
 			}else if(parser.in1==null && i==0 && !arg.contains("=") && (arg.toLowerCase().startsWith("stdin") || new File(arg).exists())){
@@ -219,7 +235,12 @@ public class Shuffle {
 	
 	void process(Timer t){
 		
+		final Random randy=(seed>=0 ? new Random(seed) : new Random());
+		//Only random order can be produced from buckets; sorting is handled by SortReads
+		final long budget=(mode!=SHUFFLE ? Long.MAX_VALUE : memory>0 ? memory : (long)(Shared.getAvailableMemory()*MEMORY_FRACTION));
 		ArrayList<Read> bigList=new ArrayList<Read>(65530);
+		long bigListBytes=0;
+		Scatter scatter=null;
 		final ConcurrentReadInputStream cris;
 		{
 			cris=ConcurrentReadInputStream.getReadInputStream(maxReads, true, ffin1, ffin2, qfin1, qfin2);
@@ -261,7 +282,21 @@ public class Shuffle {
 						readsProcessed++;
 						basesProcessed+=initialLength2;
 					}
-					bigList.add(r1);
+					if(scatter!=null){
+						scatter.add(r1);
+					}else{
+						bigList.add(r1);
+						bigListBytes+=ReadSorter.estimateBytes(r1);
+					}
+				}
+				
+				if(scatter==null && bigListBytes>budget){
+					final int p=(buckets>0 ? buckets : estimateBuckets(budget));
+					outstream.println("Input exceeds "+(budget/1000000)+" MB; shuffling through "+p+" temporary buckets.");
+					scatter=new Scatter(p, randy);
+					scatter.add(bigList);
+					bigList=null;
+					bigListBytes=0;
 				}
 
 				cris.returnList(ln.id, ln.list.isEmpty());
@@ -276,8 +311,10 @@ public class Shuffle {
 		errorState|=ReadWrite.closeStream(cris);
 		errorState|=ReadStats.writeAll();
 		
-		if(mode==SHUFFLE){
-			Collections.shuffle(bigList);
+		if(scatter!=null){
+			errorState|=scatter.finish();
+		}else if(mode==SHUFFLE){
+			Collections.shuffle(bigList, randy);
 		}else if(mode==SORT_NAME){
 			Collections.sort(bigList, ReadComparatorName.comparator);
 		}else if(mode==SORT_SEQ){
@@ -300,15 +337,15 @@ public class Shuffle {
 				bsw2=new ByteStreamWriter(ffout2);
 				bsw2.start();
 			}else{bsw2=null;}
-			final boolean b=(bsw2==null);
-			for(int i=0, lim=bigList.size(); i<lim; i++){
-				final Read r1=bigList.set(i, null);
-				final Read r2=r1.mate;
-				bsw1.println(r1, b);
-				if(r2!=null && !b){bsw2.println(r2);}
+			if(scatter==null){
+				write(bigList, bsw1, bsw2);
+			}else{
+				writeBuckets(scatter, randy, budget, bsw1, bsw2);
 			}
 			if(bsw1!=null){errorState|=bsw1.poisonAndWait();}
 			if(bsw2!=null){errorState|=bsw2.poisonAndWait();}
+		}else if(scatter!=null){
+			writeBuckets(scatter, randy, budget, null, null);
 		}
 		
 		t.stop();
@@ -323,6 +360,7 @@ public class Shuffle {
 			while(rpstring.length()<8){rpstring=" "+rpstring;}
 			while(bpstring.length()<8){bpstring=" "+bpstring;}
 			
+			if(tempFiles>0){outstream.println("Temporary files:              \t"+tempFiles);}
 			outstream.println("Time:                         \t"+t);
 			outstream.println("Reads Processed:    "+rpstring+" \t"+String.format("%.2fk reads/sec", rpnano*1000000));
 			outstream.println("Bases Processed:    "+bpstring+" \t"+String.format("%.2fm bases/sec", bpnano*1000));
@@ -337,6 +375,84 @@ public class Shuffle {
 	/*----------------         Inner Methods        ----------------*/
 	/*--------------------------------------------------------------*/
 	
+	private static void write(ArrayList<Read> list, ByteStreamWriter bsw1, ByteStreamWriter bsw2){
+		if(bsw1==null){return;}
+		final boolean b=(bsw2==null);
+		for(int i=0, lim=list.size(); i<lim; i++){
+			final Read r1=list.set(i, null);
+			final Read r2=r1.mate;
+			bsw1.println(r1, b);
+			if(r2!=null && !b){bsw2.println(r2);}
+		}
+	}
+	
+	/**
+	 * Shuffles and writes each bucket in order, deleting it afterward.
+	 * Buckets that turned out larger than the budget are scattered again.
+	 */
+	private void writeBuckets(Scatter scatter, Random randy, long budget, ByteStreamWriter bsw1, ByteStreamWriter bsw2){
+		for(int b=0; b<scatter.fnames.length; b++){
+			final String fname=scatter.fnames[b];
+			final FileFormat ff=FileFormat.testInput(fname, FileFormat.BBR, null, false, false);
+			final ConcurrentReadInputStream cris=ConcurrentReadInputStream.getReadInputStream(-1, false, ff, null, null, null);
+			cris.start();
+			
+			final boolean split=(scatter.bytes[b]>budget && scatter.reads[b]>1);
+			final Scatter sub=(split ? new Scatter((int)Tools.mid(2, 2*scatter.bytes[b]/budget+1, MAX_BUCKETS), randy) : null);
+			final ArrayList<Read> list=(split ? null : new ArrayList<Read>((int)scatter.reads[b]));
+			
+			ListNum<Read> ln=cris.nextList();
+			ArrayList<Read> reads=(ln!=null ? ln.list : null);
+			while(reads!=null && reads.size()>0){
+				if(split){sub.add(reads);}
+				else{list.addAll(reads);}
+				cris.returnList(ln.id, ln.list.isEmpty());
+				ln=cris.nextList();
+				reads=(ln!=null ? ln.list : null);
+			}
+			if(ln!=null){
+				cris.returnList(ln.id, ln.list==null || ln.list.isEmpty());
+			}
+			errorState|=ReadWrite.closeStream(cris);
+			new File(fname).delete();
+			
+			if(split){
+				errorState|=sub.finish();
+				writeBuckets(sub, randy, budget, bsw1, bsw2);
+			}else{
+				Collections.shuffle(list, randy);
+				write(list, bsw1, bsw2);
+			}
+		}
+	}
+	
+	/** Chooses enough buckets that each should fill about half of the budget, based on input file size */
+	private int estimateBuckets(long budget){
+		if(ffin1.stdio()){return DEFAULT_BUCKETS;}
+		long size=new File(in1).length()+(in2==null ? 0 : new File(in2).length());
+		if(size<=0){return DEFAULT_BUCKETS;}
+		final long est=(long)(size*(ffin1.raw() ? 1.5 : 5.0));
+		return (int)Tools.mid(2, 2*est/budget+1, MAX_BUCKETS);
+	}
+	
+	/** Temporary buckets go in tmpdir, or the output directory */
+	private String tempName(){
+		final String dir;
+		if(tmpdir!=null){
+			dir=(tmpdir.endsWith("/") ? tmpdir : tmpdir+"/");
+		}else if(useTmpdir && Shared.TMPDIR!=null){
+			dir=Shared.TMPDIR;
+		}else{
+			final int slash=(out1==null ? -1 : out1.lastIndexOf('/'));
+			dir=(slash<0 ? "" : out1.substring(0, slash+1));
+		}
+		final String core=(out1==null ? "shuffle" : ReadWrite.stripToCore(out1));
+		if(tempID==null){tempID=Long.toHexString((new Random().nextLong()&Long.MAX_VALUE));}
+		final String fname=dir+core+"_shuffle_temp"+tempFiles+"_"+tempID+".bbr";
+		tempFiles++;
+		return fname;
+	}
+	
 	private void printOptions(){
 		assert(false) : "printOptions: TODO";
 //		outstream.println("Syntax:\n");
@@ -355,6 +471,72 @@ public class Shuffle {
 	/*----------------         Inner Classes        ----------------*/
 	/*--------------------------------------------------------------*/
 	
+	/**
+	 * Sends each read (with its mate) to a randomly chosen temporary bucket.
+	 * Each bucket has its own output stream, so buckets are compressed and written in parallel.
+	 * Reads arrive at a bucket in input order, so results are reproducible with a fixed seed.
+	 */
+	private class Scatter {
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Scatter(int buckets_, Random randy_){
+			randy=randy_;
+			fnames=new String[buckets_];
+			streams=new ConcurrentReadOutputStream[buckets_];
+			lists=new ArrayList[buckets_];
+			listNums=new long[buckets_];
+			bytes=new long[buckets_];
+			reads=new long[buckets_];
+			for(int b=0; b<buckets_; b++){
+				fnames[b]=tempName();
+				FileFormat ff=FileFormat.testOutput(fnames[b], FileFormat.BBR, null, false, true, false, true);
+				streams[b]=ConcurrentReadOutputStream.getStream(ff, null, 2, null, false);
+				streams[b].start();
+				lists[b]=new ArrayList<Read>(BUCKET_LIST_LENGTH);
+			}
+		}
+		
+		void add(ArrayList<Read> list){
+			for(Read r : list){add(r);}
+		}
+		
+		void add(Read r){
+			final int b=randy.nextInt(fnames.length);
+			lists[b].add(r);
+			bytes[b]+=ReadSorter.estimateBytes(r);
+			reads[b]++;
+			if(lists[b].size()>=BUCKET_LIST_LENGTH){flush(b);}
+		}
+		
+		private void flush(int b){
+			streams[b].add(lists[b], listNums[b]);
+			listNums[b]++;
+			lists[b]=new ArrayList<Read>(BUCKET_LIST_LENGTH);
+		}
+		
+		/** Flushes and closes all buckets; returns true if there was an error */
+		boolean finish(){
+			boolean error=false;
+			for(int b=0; b<fnames.length; b++){
+				if(!lists[b].isEmpty()){flush(b);}
+				lists[b]=null;
+				error|=ReadWrite.closeStream(streams[b]);
+				streams[b]=null;
+			}
+			return error;
+		}
+		
+		private final Random randy;
+		final String[] fnames;
+		private final ConcurrentReadOutputStream[] streams;
+		private final ArrayList<Read>[] lists;
+		private final long[] listNums;
+		/** Estimated memory needed to load each bucket */
+		final long[] bytes;
+		/** Reads or pairs per bucket */
+		final long[] reads;
+	}
+	
 	static class ShuffleThread extends Thread{
 		
 		ShuffleThread(String in1_, String in2_, String out1_, String out2_, int mode_, boolean ow_){
@@ -416,9 +598,21 @@ public class Shuffle {
 	private String extin=null;
 	private String extout=null;
 	
+	private String tmpdir=null;
+	private boolean useTmpdir=true;
+	
 	/*--------------------------------------------------------------*/
 
 	private long maxReads=-1;
+	/** Shuffle seed; negative for a random seed */
+	private long seed=-1;
+	/** Memory budget for shuffling in memory; if not positive, a fraction of available memory */
+	private long memory=-1;
+	/** Number of temporary buckets; 0 means auto */
+	private int buckets=0;
+	
+	private int tempFiles=0;
+	private String tempID=null;
 	
 	private final int mode;
 	
@@ -473,6 +667,13 @@ public class Shuffle {
 	
 	private static String SHUFFLE_LOCK=new String("SHUFFLE_LOCK");
 	
+	public static float MEMORY_FRACTION=0.5f;
+	/** Used when the input size is unknown */
+	public static int DEFAULT_BUCKETS=64;
+	/** Each bucket has a writer thread and open file, so this should stay modest */
+	public static int MAX_BUCKETS=256;
+	private static final int BUCKET_LIST_LENGTH=100;
+	
 	/*--------------------------------------------------------------*/
 	/*----------------        Common Fields         ----------------*/
 	/*--------------------------------------------------------------*/
@@ -0,0 +1,419 @@
+package jgi;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import stream.ConcurrentGenericReadInputStream;
+import stream.ConcurrentReadInputStream;
+import stream.ConcurrentReadOutputStream;
+import stream.FASTQ;
+import stream.FastaReadInputStream;
+import stream.Read;
+import stream.ReadSorter;
+import stream.SamLine;
+import structures.ListNum;
+import clump.KmerComparator;
+import dna.Parser;
+import dna.Timer;
+import fileIO.ByteFile;
+import fileIO.ByteFile1;
+import fileIO.ByteFile2;
+import fileIO.ReadWrite;
+import fileIO.FileFormat;
+import align2.ReadComparatorID;
+import align2.ReadComparatorMapping;
+import align2.ReadComparatorName;
+import align2.ReadComparatorTopological;
+import align2.ReadStats;
+import align2.Shared;
+import align2.Tools;
+
+
+/**
+ * Sorts reads by name, sequence, mapping position, numeric ID or kmer, keeping pairs together.
+ * Input may be larger than memory; see ReadSorter.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class SortReads {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public static void main(String[] args){
+		Timer t=new Timer();
+		SortReads sr=new SortReads(args);
+		sr.process(t);
+	}
+
+	public SortReads(String[] args){
+
+		args=Parser.parseConfig(args);
+		if(Parser.parseHelp(args, true)){
+			printOptions();
+			System.exit(0);
+		}
+
+		for(String s : args){if(s.startsWith("out=standardout") || s.startsWith("out=stdout")){outstream=System.err;}}
+		if(printClass){outstream.println("Executing "+getClass().getName()+" "+Arrays.toString(args)+"\n");}
+
+		boolean setInterleaved=false; //Whether it was explicitly set.
+
+		Shared.READ_BUFFER_LENGTH=Tools.min(200, Shared.READ_BUFFER_LENGTH);
+		Shared.capBuffers(4);
+		ReadWrite.USE_PIGZ=ReadWrite.USE_UNPIGZ=true;
+		ReadWrite.MAX_ZIP_THREADS=Shared.threads();
+
+		SamLine.SET_FROM_OK=true;
+
+		int mode_=Shuffle.SORT_NAME;
+
+		Parser parser=new Parser();
+		for(int i=0; i<args.length; i++){
+			String arg=args[i];
+			String[] split=arg.split("=");
+			String a=split[0].toLowerCase();
+			String b=split.length>1 ? split[1] : null;
+			if(b==null || b.equalsIgnoreCase("null")){b=null;}
+			while(a.startsWith("-")){a=a.substring(1);} //In case people use hyphens
+
+			if(parser.parse(arg, a, b)){
+				//do nothing
+			}else if(a.equals("verbose")){
+				verbose=Tools.parseBoolean(b);
+				ByteFile1.verbose=verbose;
+				ByteFile2.verbose=verbose;
+				stream.FastaReadInputStream.verbose=verbose;
+				ConcurrentGenericReadInputStream.verbose=verbose;
+				stream.FastqReadInputStream.verbose=verbose;
+				ReadWrite.verbose=verbose;
+				ReadSorter.verbose=verbose;
+			}else if(a.equals("name")){
+				mode_=Shuffle.SORT_NAME;
+			}else if(a.equals("coordinate")){
+				mode_=Shuffle.SORT_COORD;
+			}else if(a.equals("sequence")){
+				mode_=Shuffle.SORT_SEQ;
+			}else if(a.equals("id")){
+				mode_=Shuffle.SORT_ID;
+			}else if(a.equals("kmer")){
+				mode_=SORT_KMER;
+			}else if(a.equals("mode") || a.equals("sort")){
+				mode_=parseMode(b);
+			}else if(a.equals("k")){
+				k=Integer.parseInt(b);
+				assert(k>0 && k<32) : "k must be 1-31.";
+			}else if(a.equals("divisor") || a.equals("div") || a.equals("mindivisor")){
+				minDivisor=Tools.parseKMG(b);
+			}else if(a.equals("rcomp")){
+				rcomp=Tools.parseBoolean(b);
+			}else if(a.equals("memory") || a.equals("mem") || a.equals("maxmem")){
+				memory=Tools.parseKMG(b);
+			}else if(a.equals("fanin") || a.equals("maxfanin")){
+				maxFanIn=Integer.parseInt(b);
+				assert(maxFanIn>1) : "fanin must be at least 2.";
+			}else if(a.equals("tmpdir")){
+				tmpdir=b;
+			}else if(a.equals("usetmpdir")){
+				useTmpdir=Tools.parseBoolean(b);
+			}else if(a.equals("showspeed") || a.equals("ss")){
+				showSpeed=Tools.parseBoolean(b);
+			}else if(parser.in1==null && i==0 && !arg.contains("=") && (arg.toLowerCase().startsWith("stdin") || new File(arg).exists())){
+				parser.in1=arg;
+			}else{
+				outstream.println("Unknown parameter "+args[i]);
+				assert(false) : "Unknown parameter "+args[i];
+				//				throw new RuntimeException("Unknown parameter "+args[i]);
+			}
+		}
+
+		mode=mode_;
+
+		{//Process parser fields
+			Parser.processQuality();
+
+			maxReads=parser.maxReads;
+
+			overwrite=ReadStats.overwrite=parser.overwrite;
+			append=ReadStats.append=parser.append;
+
+			setInterleaved=parser.setInterleaved;
+
+			in1=parser.in1;
+			in2=parser.in2;
+			qfin1=parser.qfin1;
+			qfin2=parser.qfin2;
+
+			out1=parser.out1;
+			out2=parser.out2;
+			qfout1=parser.qfout1;
+			qfout2=parser.qfout2;
+
+			extin=parser.extin;
+			extout=parser.extout;
+		}
+
+		if(in1!=null && in2==null && in1.indexOf('#')>-1 && !new File(in1).exists()){
+			in2=in1.replace("#", "2");
+			in1=in1.replace("#", "1");
+		}
+		if(out1!=null && out2==null && out1.indexOf('#')>-1){
+			out2=out1.replace("#", "2");
+			out1=out1.replace("#", "1");
+		}
+		if(in2!=null){
+			if(FASTQ.FORCE_INTERLEAVED){outstream.println("Reset INTERLEAVED to false because paired input files were specified.");}
+			FASTQ.FORCE_INTERLEAVED=FASTQ.TEST_INTERLEAVED=false;
+		}
+
+		assert(FastaReadInputStream.settingsOK());
+
+		if(in1==null){
+			printOptions();
+			throw new RuntimeException("Error - at least one input file is required.");
+		}
+		if(!ByteFile.FORCE_MODE_BF1 && !ByteFile.FORCE_MODE_BF2 && Shared.threads()>2){
+			ByteFile.FORCE_MODE_BF2=true;
+		}
+
+		if(out1==null){
+			if(out2!=null){
+				printOptions();
+				throw new RuntimeException("Error - cannot define out2 without defining out1.");
+			}
+		}
+
+		if(!setInterleaved){
+			assert(in1!=null && (out1!=null || out2==null)) : "\nin1="+in1+"\nin2="+in2+"\nout1="+out1+"\nout2="+out2+"\n";
+			if(in2!=null){ //If there are 2 input streams.
+				FASTQ.FORCE_INTERLEAVED=FASTQ.TEST_INTERLEAVED=false;
+				outstream.println("Set INTERLEAVED to "+FASTQ.FORCE_INTERLEAVED);
+			}else{ //There is one input stream.
+				if(out2!=null){
+					FASTQ.FORCE_INTERLEAVED=true;
+					FASTQ.TEST_INTERLEAVED=false;
+					outstream.println("Set INTERLEAVED to "+FASTQ.FORCE_INTERLEAVED);
+				}
+			}
+		}
+
+		if(out1!=null && out1.equalsIgnoreCase("null")){out1=null;}
+		if(out2!=null && out2.equalsIgnoreCase("null")){out2=null;}
+
+		if(!Tools.testOutputFiles(overwrite, append, false, out1, out2)){
+			outstream.println((out1==null)+", "+(out2==null)+", "+out1+", "+out2);
+			throw new RuntimeException("\n\noverwrite="+overwrite+"; Can't write to output files "+out1+", "+out2+"\n");
+		}
+
+		ffout1=FileFormat.testOutput(out1, FileFormat.FASTQ, extout, true, overwrite, append, false);
+		ffout2=FileFormat.testOutput(out2, FileFormat.FASTQ, extout, true, overwrite, append, false);
+
+		ffin1=FileFormat.testInput(in1, FileFormat.FASTQ, extin, true, true);
+		ffin2=FileFormat.testInput(in2, FileFormat.FASTQ, extin, true, true);
+
+		if(mode==SORT_KMER && ffin1.samOrBam()){
+			throw new RuntimeException("Kmer sorting is not supported for sam or bam input.");
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	void process(Timer t){
+
+		final boolean useSharedHeader=(ffin1.samOrBam() && ffout1!=null && ffout1.samOrBam());
+		final ConcurrentReadInputStream cris;
+		{
+			cris=ConcurrentReadInputStream.getReadInputStream(maxReads, useSharedHeader, ffin1, ffin2, qfin1, qfin2);
+			if(verbose){outstream.println("Started cris");}
+			cris.start(); //4567
+		}
+		boolean paired=cris.paired();
+		if(!ffin1.samOrBam()){outstream.println("Input is being processed as "+(paired ? "paired" : "unpaired"));}
+
+		final ReadSorter sorter=new ReadSorter(makeComparator(), memory, tempPattern());
+		sorter.maxFanIn=maxFanIn;
+
+		{
+			ListNum<Read> ln=cris.nextList();
+			ArrayList<Read> reads=(ln!=null ? ln.list : null);
+
+			if(reads!=null && !reads.isEmpty()){
+				Read r=reads.get(0);
+				assert((ffin1==null || ffin1.samOrBam()) || (r.mate!=null)==cris.paired());
+			}
+
+			while(reads!=null && reads.size()>0){
+				sorter.add(reads);
+				cris.returnList(ln.id, ln.list.isEmpty());
+				ln=cris.nextList();
+				reads=(ln!=null ? ln.list : null);
+			}
+			if(ln!=null){
+				cris.returnList(ln.id, ln.list==null || ln.list.isEmpty());
+			}
+		}
+
+		errorState|=ReadWrite.closeStream(cris);
+
+		final ConcurrentReadOutputStream ros;
+		if(ffout1!=null){
+			final int buff=4;
+			ros=ConcurrentReadOutputStream.getStream(ffout1, ffout2, qfout1, qfout2, buff, null, useSharedHeader);
+			ros.start();
+		}else{ros=null;}
+
+		sorter.write(ros);
+		if(ros!=null){errorState|=ReadWrite.closeStream(ros);}
+		errorState|=ReadStats.writeAll();
+
+		t.stop();
+
+		final long readsProcessed=sorter.readsIn;
+		final long basesProcessed=sorter.basesIn;
+		outstream.println("Memory budget:                \t"+(sorter.memory/1000000)+" MB");
+		outstream.println("Temporary files:              \t"+sorter.tempFiles());
+
+		if(showSpeed){
+			double rpnano=readsProcessed/(double)(t.elapsed);
+			double bpnano=basesProcessed/(double)(t.elapsed);
+
+			String rpstring=(readsProcessed<100000 ? ""+readsProcessed : readsProcessed<100000000 ? (readsProcessed/1000)+"k" : (readsProcessed/1000000)+"m");
+			String bpstring=(basesProcessed<100000 ? ""+basesProcessed : basesProcessed<100000000 ? (basesProcessed/1000)+"k" : (basesProcessed/1000000)+"m");
+
+			while(rpstring.length()<8){rpstring=" "+rpstring;}
+			while(bpstring.length()<8){bpstring=" "+bpstring;}
+
+			outstream.println("Time:                         \t"+t);
+			outstream.println("Reads Processed:    "+rpstring+" \t"+String.format("%.2fk reads/sec", rpnano*1000000));
+			outstream.println("Bases Processed:    "+bpstring+" \t"+String.format("%.2fm bases/sec", bpnano*1000));
+		}
+
+		if(errorState){
+			throw new RuntimeException(getClass().getName()+" terminated in an error state; the output may be corrupt.");
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private Comparator<Read> makeComparator(){
+		if(mode==Shuffle.SORT_NAME){
+			return ReadComparatorName.comparator;
+		}else if(mode==Shuffle.SORT_SEQ){
+			return new ReadComparatorTopological();
+		}else if(mode==Shuffle.SORT_COORD){
+			return new ReadComparatorMapping();
+		}else if(mode==Shuffle.SORT_ID){
+			return ReadComparatorID.comparator;
+		}else if(mode==SORT_KMER){
+			KmerComparator kc=new KmerComparator(k, minDivisor);
+			kc.addName=false;
+			kc.rcompReads=rcomp;
+			return kc;
+		}
+		throw new RuntimeException("No mode set.");
+	}
+
+	/** Temporary runs go in tmpdir, or the output directory */
+	private String tempPattern(){
+		final String dir;
+		if(tmpdir!=null){
+			dir=(tmpdir.endsWith("/") ? tmpdir : tmpdir+"/");
+		}else if(useTmpdir && Shared.TMPDIR!=null){
+			dir=Shared.TMPDIR;
+		}else{
+			dir=(out1==null ? "" : ReadWrite.getPath(out1));
+		}
+		final String core=(out1==null ? "sortreads" : ReadWrite.stripToCore(out1));
+		return dir+core+"_sort_temp%_"+Long.toHexString((new Random().nextLong()&Long.MAX_VALUE))+".bbr";
+	}
+
+	private static int parseMode(String b){
+		if(b==null){
+			throw new RuntimeException("mode must be name, coordinate, sequence, id, or kmer.");
+		}else if(b.equals("name")){
+			return Shuffle.SORT_NAME;
+		}else if(b.equals("coordinate")){
+			return Shuffle.SORT_COORD;
+		}else if(b.equals("sequence")){
+			return Shuffle.SORT_SEQ;
+		}else if(b.equals("id")){
+			return Shuffle.SORT_ID;
+		}else if(b.equals("kmer")){
+			return SORT_KMER;
+		}
+		throw new RuntimeException("mode must be name, coordinate, sequence, id, or kmer.");
+	}
+
+	private void printOptions(){
+		assert(false) : "printOptions: TODO";
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private String in1=null;
+	private String in2=null;
+
+	private String qfin1=null;
+	private String qfin2=null;
+
+	private String out1=null;
+	private String out2=null;
+
+	private String qfout1=null;
+	private String qfout2=null;
+
+	private String extin=null;
+	private String extout=null;
+
+	private String tmpdir=null;
+	private boolean useTmpdir=true;
+
+	/*--------------------------------------------------------------*/
+
+	private long maxReads=-1;
+
+	private final int mode;
+
+	/** Memory budget in bytes; 0 uses a fraction of available memory */
+	private long memory=0;
+	private int maxFanIn=64;
+
+	private int k=31;
+	private long minDivisor=80000000;
+	private boolean rcomp=true;
+
+	/*--------------------------------------------------------------*/
+
+	private final FileFormat ffin1;
+	private final FileFormat ffin2;
+
+	private final FileFormat ffout1;
+	private final FileFormat ffout2;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Common Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private PrintStream outstream=System.err;
+	public static boolean verbose=false;
+	public boolean errorState=false;
+	private boolean overwrite=false;
+	private boolean append=false;
+	public static boolean showSpeed=true;
+	public static boolean printClass=true;
+
+	public static final int SORT_KMER=6;
+
+}
@@ -301,6 +301,25 @@ public abstract class AbstractKmerTableSet {
 	
 	public abstract int ways();
 	
+	/** 
+	 * Allows fillLeftCounts and fillRightCounts to skip neighbors absent from the tables' edge masks.
+	 * Masks must have been filled since the last kmer was added; removals do not invalidate them.
+	 */
+	public final void setEdgeMasks(boolean b){edgeMasks=b;}
+	
+	/** Reverses the 4 bits of a one-direction edge mask, converting between a kmer and its reverse-complement */
+	protected static final int flipEdges(int bits){return flipEdges[bits&15];}
+	
+	/** 
+	 * Converts an edge mask from the stored key's orientation to a kmer's orientation.
+	 * @param forward True if the kmer is the stored key rather than its reverse-complement
+	 * @return Mask with right extensions in bits 0-3 and left in bits 4-7, or -1 if edges is -1
+	 */
+	protected static final int orientEdges(int edges, boolean forward){
+		if(edges<0 || forward){return edges;}
+		return flipEdges(edges>>4)|(flipEdges(edges)<<4);
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------       Printing Methods       ----------------*/
 	/*--------------------------------------------------------------*/
@@ -394,6 +413,9 @@ public abstract class AbstractKmerTableSet {
 	private int currentPass=0;
 	protected int prepasses=1;
 	
+	/** Use per-kmer edge masks when filling neighbor counts */
+	protected boolean edgeMasks=false;
+	
 	/*--------------------------------------------------------------*/
 	/*----------------       Final Primitives       ----------------*/
 	/*--------------------------------------------------------------*/
@@ -414,6 +436,17 @@ public abstract class AbstractKmerTableSet {
 	
 	protected abstract void allocateTables();
 	protected boolean allocated=false;
+	
+	private static final int[] flipEdges=new int[16];
+	static{
+		for(int i=0; i<16; i++){
+			int x=0;
+			for(int j=0; j<4; j++){
+				if(((i>>j)&1)!=0){x|=(1<<(3-j));}
+			}
+			flipEdges[i]=x;
+		}
+	}
 
 	/** Print messages to this stream */
 	public static PrintStream outstream=System.err;
@@ -228,6 +228,11 @@ public abstract class HashArray extends AbstractKmerTable {
 		return array[cell];
 	}
 	
+	/** Returns the cell containing this kmer, NOT_PRESENT, or HASH_COLLISION if it may be in the victims */
+	public final int findCell(long kmer){
+		return findKmer(kmer);
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------          Ownership           ----------------*/
 	/*--------------------------------------------------------------*/
@@ -295,6 +300,11 @@ public abstract class HashArray extends AbstractKmerTable {
 		return owners.get(cell);
 	}
 	
+	/** Sets the owner without a compare-and-set, for cells that only one thread can reach */
+	public final void setCellOwnerExclusive(final int cell, final int newOwner){
+		owners.lazySet(cell, newOwner);
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------      Nonpublic Methods       ----------------*/
 	/*--------------------------------------------------------------*/
@@ -98,6 +98,45 @@ public final class HashArray1D extends HashArray {
 		values[cell]=vals[0];
 	}
 	
+	/*--------------------------------------------------------------*/
+	/*----------------          Edge Masks          ----------------*/
+	/*--------------------------------------------------------------*/
+	
+	/** Allocates an empty edge mask per cell, to be filled with setCellEdges */
+	public void initializeEdges(){
+		edges=new byte[array.length];
+	}
+	
+	/** 
+	 * Returns the edge mask of this kmer: bits 0-3 are right extensions, bits 4-7 left extensions.
+	 * Returns -1 if there are no masks or the kmer is not in the main array.
+	 */
+	public int getEdges(final long kmer){
+		final byte[] e=edges;
+		if(e==null){return -1;}
+		final int cell=findKmer(kmer);
+		return cell<0 ? -1 : e[cell]&0xFF;
+	}
+	
+	/**
+	 * Same as getValue, but also stores this kmer's edge mask in edgeReturn[pos] from the same probe,
+	 * or -1 if there are no masks or the kmer is not in the main array.
+	 */
+	public int getValue(final long kmer, final int[] edgeReturn, final int pos){
+		final int cell=findKmer(kmer);
+		if(cell<0){
+			edgeReturn[pos]=-1;
+			return cell==NOT_PRESENT ? NOT_PRESENT : victims.getValue(kmer);
+		}
+		final byte[] e=edges;
+		edgeReturn[pos]=(e==null ? -1 : e[cell]&0xFF);
+		return readCellValue(cell);
+	}
+	
+	public void setCellEdges(final int cell, final int mask){
+		edges[cell]=(byte)mask;
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------   Resizing and Rebalancing   ----------------*/
 	/*--------------------------------------------------------------*/
@@ -141,6 +180,7 @@ public final class HashArray1D extends HashArray {
 		}
 		
 		prime=prime2;
+		edges=null;
 //		System.err.println("Resized to "+prime+"; load="+(size*1f/prime));
 		long[] oldk=array;
 		int[] oldc=values;
@@ -177,6 +217,7 @@ public final class HashArray1D extends HashArray {
 	public long regenerate(){
 		long sum=0;
 		assert(owners==null) : "Clear ownership before regeneration.";
+		edges=null;
 		for(int pos=0; pos<values.length; pos++){
 			final long key=array[pos];
 			if(key>=0){
@@ -211,6 +252,8 @@ public final class HashArray1D extends HashArray {
 	/*--------------------------------------------------------------*/
 	
 	private int[] values;
+	/** Optional de Bruijn edge masks, parallel to array; null when absent or invalidated */
+	private byte[] edges;
 	
 	public int[] values(){return values;}
 	
@@ -1040,24 +1040,45 @@ public class KmerTableSet extends AbstractKmerTableSet {
 	}
 	
 	public int fillRightCounts(long kmer, long rkmer, int[] counts, long mask, int shift2){
+		return fillRightCounts(kmer, rkmer, counts, mask, shift2, getEdges(kmer, rkmer), null);
+	}
+	
+	/**
+	 * Fills counts of the 4 right extensions, probing only those present in the edge mask.
+	 * @param edges This kmer's edge mask from getEdges or a previous call's nextEdges, or -1 to probe all 4
+	 * @param nextEdges If not null, receives each extension's edge mask from the same probe as its count,
+	 * so the caller can pass it on after advancing instead of looking the kmer up again
+	 * @return Position of the highest count
+	 */
+	public int fillRightCounts(long kmer, long rkmer, int[] counts, long mask, int shift2, int edges, int[] nextEdges){
 		assert(kmer==rcomp(rkmer));
 		if(verbose){outstream.println("fillRightCounts:   "+toText(kmer)+",   "+toText(rkmer));}
+		final boolean getNext=(edgeMasks && nextEdges!=null);
 		kmer=(kmer<<2)&mask;
 		rkmer=(rkmer>>>2);
 		int max=-1, maxPos=0;
 		
 		for(int i=0; i<=3; i++){
-			long kmer2=kmer|((long)i);
-			long rkmer2=rkmer|(((long)AminoAcid.numberToComplement[i])<<shift2);
-			if(verbose){outstream.println("kmer:               "+toText(kmer2)+", "+toText(rkmer2));}
-			assert(kmer2==(kmer2&mask));
-			assert(rkmer2==(rkmer2&mask));
-			assert(kmer2==rcomp(rkmer2));
-			long key=toValue(kmer2, rkmer2);
-			int way=(int)(key%ways);
-			int count=tables[way].getValue(key);
-			assert(count==NOT_PRESENT || count>=0);
-			count=Tools.max(count, 0);
+			int count=0;
+			if(nextEdges!=null){nextEdges[i]=-1;}
+			if(edges<0 || ((edges>>i)&1)!=0){
+				long kmer2=kmer|((long)i);
+				long rkmer2=rkmer|(((long)AminoAcid.numberToComplement[i])<<shift2);
+				if(verbose){outstream.println("kmer:               "+toText(kmer2)+", "+toText(rkmer2));}
+				assert(kmer2==(kmer2&mask));
+				assert(rkmer2==(rkmer2&mask));
+				assert(kmer2==rcomp(rkmer2));
+				long key=toValue(kmer2, rkmer2);
+				int way=(int)(key%ways);
+				if(getNext){
+					count=((HashArray1D)tables[way]).getValue(key, nextEdges, i);
+					nextEdges[i]=orientEdges(nextEdges[i], key==kmer2);
+				}else{
+					count=tables[way].getValue(key);
+				}
+				assert(count==NOT_PRESENT || count>=0);
+				count=Tools.max(count, 0);
+			}
 			counts[i]=count;
 			if(count>max){
 				max=count;
@@ -1096,24 +1117,45 @@ public class KmerTableSet extends AbstractKmerTableSet {
 	}
 	
 	public int fillLeftCounts(long kmer, long rkmer, int[] counts, long mask, int shift2){
+		return fillLeftCounts(kmer, rkmer, counts, mask, shift2, getEdges(kmer, rkmer), null);
+	}
+	
+	/**
+	 * Fills counts of the 4 left extensions, probing only those present in the edge mask.
+	 * @param edges This kmer's edge mask from getEdges or a previous call's nextEdges, or -1 to probe all 4
+	 * @param nextEdges If not null, receives each extension's edge mask from the same probe as its count
+	 * @return Position of the highest count
+	 */
+	public int fillLeftCounts(long kmer, long rkmer, int[] counts, long mask, int shift2, int edges, int[] nextEdges){
 		assert(kmer==rcomp(rkmer));
 		if(verbose){outstream.println("fillLeftCounts:    "+toText(kmer)+",   "+toText(rkmer));}
+		final boolean getNext=(edgeMasks && rcomp && nextEdges!=null); //Without rcomp the probed key is not the extension's own key
+		edges=(edges<0 ? -1 : edges>>4);
 		rkmer=(rkmer<<2)&mask;
 		kmer=(kmer>>>2);
 		int max=-1, maxPos=0;
 //		assert(false) : shift2+", "+k;
 		for(int i=0; i<=3; i++){
-			long rkmer2=rkmer|((long)AminoAcid.numberToComplement[i]);
-			long kmer2=kmer|(((long)i)<<shift2);
-			if(verbose){outstream.println("kmer:             "+toText(kmer2)+",     "+toText(rkmer2));}
-			assert(kmer2==(kmer2&mask));
-			assert(rkmer2==(rkmer2&mask));
-			assert(kmer2==rcomp(rkmer2)) : "\n"+"kmer:      \t"+toText(rcomp(rkmer2))+", "+toText(rcomp(kmer2));
-			long key=toValue(rkmer2, kmer2);
-			int way=(int)(key%ways);
-			int count=tables[way].getValue(key);
-			assert(count==NOT_PRESENT || count>=0);
-			count=Tools.max(count, 0);
+			int count=0;
+			if(nextEdges!=null){nextEdges[i]=-1;}
+			if(edges<0 || ((edges>>i)&1)!=0){
+				long rkmer2=rkmer|((long)AminoAcid.numberToComplement[i]);
+				long kmer2=kmer|(((long)i)<<shift2);
+				if(verbose){outstream.println("kmer:             "+toText(kmer2)+",     "+toText(rkmer2));}
+				assert(kmer2==(kmer2&mask));
+				assert(rkmer2==(rkmer2&mask));
+				assert(kmer2==rcomp(rkmer2)) : "\n"+"kmer:      \t"+toText(rcomp(rkmer2))+", "+toText(rcomp(kmer2));
+				long key=toValue(rkmer2, kmer2);
+				int way=(int)(key%ways);
+				if(getNext){
+					count=((HashArray1D)tables[way]).getValue(key, nextEdges, i);
+					nextEdges[i]=orientEdges(nextEdges[i], key==kmer2);
+				}else{
+					count=tables[way].getValue(key);
+				}
+				assert(count==NOT_PRESENT || count>=0);
+				count=Tools.max(count, 0);
+			}
 			counts[i]=count;
 			if(count>max){
 				max=count;
@@ -1123,6 +1165,17 @@ public class KmerTableSet extends AbstractKmerTableSet {
 		return maxPos;
 	}
 	
+	/** 
+	 * Edge mask of this kmer in its own orientation: bits 0-3 are right extensions, bits 4-7 left extensions.
+	 * Returns -1 if edge masks are disabled or unknown for this kmer.
+	 */
+	public int getEdges(long kmer, long rkmer){
+		if(!edgeMasks){return -1;}
+		final long key=toValue(kmer, rkmer);
+		final int edges=((HashArray1D)tables[(int)(key%ways)]).getEdges(key);
+		return orientEdges(edges, key==kmer);
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------       Printing Methods       ----------------*/
 	/*--------------------------------------------------------------*/
@@ -1205,6 +1258,8 @@ public class KmerTableSet extends AbstractKmerTableSet {
 	public long estimatedKmerCapacity(){return estimatedKmerCapacity;}
 	@Override
 	public int ways(){return ways;}
+	/** True if each kmer is stored together with its reverse-complement */
+	public final boolean rcompEnabled(){return rcomp;}
 	
 	/** Hold kmers.  A kmer X such that X%WAYS=Y will be stored in tables[Y] */
 	private AbstractKmerTable[] tables;
@@ -0,0 +1,308 @@
+package sketch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import align2.Tools;
+import fileIO.MappedFile;
+import structures.IntList;
+
+/**
+ * Inverted index from sketch hash to the reference sketches containing it,
+ * stored as flat primitive arrays in a memory-mapped file.
+ * A query sketch accumulates shared-hash counts per reference by walking posting lists,
+ * so its cost depends on the number of hits rather than the number of references.
+ * Identity is the same as Sketch.identity.
+ *
+ * Layout (big-endian):
+ * header: magic (long), version, refs (ints), keys, postings (longs);
+ * keys (sorted distinct hashes); offsets (long per key, plus one); postings (int reference number);
+ * sizes, taxIDs (int per reference); nameStart (long per reference, plus one); UTF-8 name pool.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class SketchIndex {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Maps an existing index for reading */
+	public SketchIndex(String fname){
+		file=new MappedFile(fname);
+		if(file.size<HEADER_BYTES || file.readLong(0)!=MAGIC){throw new RuntimeException(fname+" is not a sketch index.");}
+		final int version=file.readInt(8);
+		if(version!=VERSION){throw new RuntimeException("Unsupported sketch index version "+version+" in "+fname);}
+		refs=file.readInt(12);
+		keys=file.readLong(16);
+		postings=file.readLong(24);
+		keysStart=HEADER_BYTES;
+		offsetsStart=keysStart+8*keys;
+		postingsStart=offsetsStart+8*(keys+1);
+		sizesStart=postingsStart+4*postings;
+		taxIDsStart=sizesStart+4L*refs;
+		nameIndexStart=taxIDsStart+4L*refs;
+		poolStart=nameIndexStart+8L*(refs+1);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Builder            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Writes an index of these reference sketches; references are numbered in list order */
+	public static void write(ArrayList<Sketch> sketches, String fname){
+		long total=0;
+		for(Sketch sk : sketches){total+=sk.array.length;}
+		assert(total<Integer.MAX_VALUE) : "Too many hashes for one index: "+total;
+
+		final long[] all=new long[(int)total];
+		{
+			int i=0;
+			for(Sketch sk : sketches){
+				for(long x : sk.array){all[i++]=x;}
+			}
+		}
+		Arrays.sort(all);
+		int unique=0;
+		for(int i=0; i<all.length; i++){
+			if(i==0 || all[i]!=all[i-1]){all[unique++]=all[i];}
+		}
+		final long[] keyArray=Arrays.copyOf(all, unique);
+
+		//Postings for each key are in reference order
+		final int[] counts=new int[unique+1];
+		for(Sketch sk : sketches){
+			for(long x : sk.array){counts[Arrays.binarySearch(keyArray, x)+1]++;}
+		}
+		for(int i=1; i<counts.length; i++){counts[i]+=counts[i-1];}
+		final int[] next=Arrays.copyOf(counts, unique);
+		final int[] postingArray=new int[(int)total];
+		for(int r=0; r<sketches.size(); r++){
+			for(long x : sketches.get(r).array){
+				postingArray[next[Arrays.binarySearch(keyArray, x)]++]=r;
+			}
+		}
+
+		final byte[][] names=new byte[sketches.size()][];
+		for(int r=0; r<names.length; r++){
+			String name=sketches.get(r).name;
+			names[r]=(name==null ? new byte[0] : name.getBytes(UTF8));
+		}
+
+		try {
+			DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname), 1<<20));
+			dos.writeLong(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(sketches.size());
+			dos.writeLong(unique);
+			dos.writeLong(total);
+			for(long x : keyArray){dos.writeLong(x);}
+			for(int x : counts){dos.writeLong(x);}
+			for(int x : postingArray){dos.writeInt(x);}
+			for(Sketch sk : sketches){dos.writeInt(sk.array.length);}
+			for(Sketch sk : sketches){dos.writeInt(sk.taxID);}
+			long pos=0;
+			for(byte[] name : names){
+				dos.writeLong(pos);
+				pos+=name.length;
+			}
+			dos.writeLong(pos);
+			for(byte[] name : names){dos.write(name);}
+			dos.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write sketch index "+fname, e);
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Queries            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Compares each query to every indexed reference using multiple threads.
+	 * @return Per query, hits with identity at least cutoff, best first, at most maxHits.
+	 */
+	public ArrayList<ArrayList<Hit>> query(final ArrayList<Sketch> queries, final float cutoff, final int maxHits, int threads){
+		threads=Tools.mid(1, threads, queries.size());
+		final ArrayList<ArrayList<Hit>> results=new ArrayList<ArrayList<Hit>>(queries.size());
+		for(int i=0; i<queries.size(); i++){results.add(null);}
+
+		final AtomicInteger next=new AtomicInteger(0);
+		ArrayList<QueryThread> alqt=new ArrayList<QueryThread>(threads);
+		for(int i=0; i<threads; i++){
+			alqt.add(new QueryThread(queries, results, next, cutoff, maxHits));
+		}
+		for(QueryThread qt : alqt){qt.start();}
+		for(QueryThread qt : alqt){
+			while(qt.getState()!=Thread.State.TERMINATED){
+				try {
+					qt.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Compares one query to every indexed reference.
+	 * @param counts Per-reference scratch space, all zero, of length refs; left all zero
+	 * @param touched Scratch list
+	 */
+	public ArrayList<Hit> query(final Sketch q, final float cutoff, final int maxHits, final int[] counts, final IntList touched){
+		touched.clear();
+		long lo=0;
+		for(long x : q.array){
+			final long idx=find(x, lo);
+			if(idx>=0){
+				lo=idx+1;
+				final long stop=file.readLong(offsetsStart+8*(idx+1));
+				for(long p=file.readLong(offsetsStart+8*idx); p<stop; p++){
+					final int r=file.readInt(postingsStart+4*p);
+					if(counts[r]==0){touched.add(r);}
+					counts[r]++;
+				}
+			}else{
+				lo=-idx-1;
+			}
+		}
+
+		ArrayList<Hit> hits=new ArrayList<Hit>();
+		for(int i=0; i<touched.size; i++){
+			final int r=touched.get(i);
+			final int matches=counts[r];
+			counts[r]=0;
+			final float identity=matches/(float)(Tools.max(1, Tools.min(q.array.length, getSize(r))));
+			if(identity>=cutoff){hits.add(new Hit(r, matches, identity));}
+		}
+		Collections.sort(hits, hitComparator);
+		while(hits.size()>maxHits){hits.remove(hits.size()-1);}
+		return hits;
+	}
+
+	/** Binary search for key in [lo, keys); returns its index, or -(insertion point)-1 */
+	private long find(final long key, long lo){
+		long hi=keys-1;
+		while(lo<=hi){
+			final long mid=(lo+hi)>>>1;
+			final long x=file.readLong(keysStart+8*mid);
+			if(x<key){lo=mid+1;}
+			else if(x>key){hi=mid-1;}
+			else{return mid;}
+		}
+		return -lo-1;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------          Reference           ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Number of hashes in this reference sketch */
+	public int getSize(int r){return file.readInt(sizesStart+4L*r);}
+
+	public int getTaxID(int r){return file.readInt(taxIDsStart+4L*r);}
+
+	public String getName(int r){
+		final long start=file.readLong(nameIndexStart+8L*r), stop=file.readLong(nameIndexStart+8L*(r+1));
+		if(start==stop){return null;}
+		final byte[] bytes=new byte[(int)(stop-start)];
+		file.readBytes(poolStart+start, bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Nested Classes        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** A reference sharing hashes with a query */
+	public static final class Hit {
+
+		Hit(int ref_, int matches_, float identity_){
+			ref=ref_;
+			matches=matches_;
+			identity=identity_;
+		}
+
+		/** Reference number in the index */
+		public final int ref;
+		public final int matches;
+		public final float identity;
+
+	}
+
+	private static final Comparator<Hit> hitComparator=new Comparator<Hit>(){
+		@Override
+		public int compare(Hit a, Hit b){
+			if(a.identity!=b.identity){return a.identity>b.identity ? -1 : 1;}
+			if(a.matches!=b.matches){return b.matches-a.matches;}
+			return a.ref-b.ref;
+		}
+	};
+
+	private class QueryThread extends Thread {
+
+		QueryThread(ArrayList<Sketch> queries_, ArrayList<ArrayList<Hit>> results_, AtomicInteger next_, float cutoff_, int maxHits_){
+			queries=queries_;
+			results=results_;
+			next=next_;
+			cutoff=cutoff_;
+			maxHits=maxHits_;
+		}
+
+		public void run(){
+			final int[] counts=new int[refs];
+			final IntList touched=new IntList();
+			for(int i=next.getAndIncrement(); i<queries.size(); i=next.getAndIncrement()){
+				ArrayList<Hit> hits=query(queries.get(i), cutoff, maxHits, counts, touched);
+				synchronized(results){results.set(i, hits);}
+			}
+		}
+
+		final ArrayList<Sketch> queries;
+		final ArrayList<ArrayList<Hit>> results;
+		final AtomicInteger next;
+		final float cutoff;
+		final int maxHits;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final MappedFile file;
+	/** Number of reference sketches */
+	public final int refs;
+	/** Number of distinct hashes */
+	public final long keys;
+	public final long postings;
+
+	private final long keysStart;
+	private final long offsetsStart;
+	private final long postingsStart;
+	private final long sizesStart;
+	private final long taxIDsStart;
+	private final long nameIndexStart;
+	private final long poolStart;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final long MAGIC=0x4242534B49445831L; //"BBSKIDX1"
+	private static final int VERSION=1;
+	private static final int HEADER_BYTES=32;
+
+	private static final Charset UTF8=Charset.forName("UTF-8");
+
+}
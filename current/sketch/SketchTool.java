@@ -72,6 +72,8 @@ public final class SketchTool {
 		int mincount_=1;
 		int bitArrayBits_=0;
 		float cutoff=0.02f;
+		String indexFile=null, makeIndexFile=null;
+		int maxHits=10;
 		
 		/* Parse arguments */
 		for(int i=0; i<args.length; i++){
@@ -97,6 +99,12 @@ public final class SketchTool {
 				mincount_=Integer.parseInt(b);
 			}else if(a.equals("cutoff")){
 				cutoff=Float.parseFloat(b);
+			}else if(a.equals("index")){
+				indexFile=b;
+			}else if(a.equals("makeindex") || a.equals("buildindex")){
+				makeIndexFile=b;
+			}else if(a.equals("hits") || a.equals("maxhits")){
+				maxHits=Integer.parseInt(b);
 			}else if(parser.parse(arg, a, b)){
 				//do nothing
 			}else if(b==null){
@@ -121,6 +129,26 @@ public final class SketchTool {
 		t.stop();
 		System.err.println("Loaded "+sketches.size()+" sketches in \t"+t);
 		t.start();
+		if(makeIndexFile!=null){
+			SketchIndex.write(sketches, makeIndexFile);
+			t.stop();
+			System.err.println("Indexed "+sketches.size()+" sketches in \t"+t);
+			return;
+		}else if(indexFile!=null){
+			SketchIndex index=new SketchIndex(indexFile);
+			ArrayList<ArrayList<SketchIndex.Hit>> results=index.query(sketches, cutoff, maxHits, Shared.threads());
+			for(int i=0; i<sketches.size(); i++){
+				Sketch sketch=sketches.get(i);
+				for(SketchIndex.Hit hit : results.get(i)){
+					final int taxID=index.getTaxID(hit.ref);
+					System.out.println(String.format("%.2f%%", 100*hit.identity)+" identity for "+sketch.name+" vs "+index.getName(hit.ref)+
+							(taxID>=0 ? "\ttaxID "+taxID : ""));
+				}
+			}
+			t.stop();
+			System.err.println("Compared "+sketches.size()+" sketches to "+index.refs+" indexed sketches in \t"+t);
+			return;
+		}
 		Sketch sketch=sketches.get(0);
 		for(int i=1; i<sketches.size(); i++){
 			Sketch sketch2=sketches.get(i);
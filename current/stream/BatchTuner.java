@@ -0,0 +1,198 @@
+package stream;
+
+import align2.Shared;
+
+/**
+ * Tunes the list length and buffer count of a read input stream's depot at runtime,
+ * so they need not be set by hand for each workload.
+ * <br>
+ * The producer and consumers report how long they waited for each list.  Every window
+ * of at least WINDOW_LISTS lists and WINDOW_MILLIS milliseconds, the tuner compares the
+ * rate at which consumers take lists, and the time each waited, against thresholds:
+ * <br>- Lists consumed faster than MAX_LISTS_PER_SEC spend too much time being handed off
+ * through the synchronized queue, so lists are made longer (in both reads and bases).
+ * <br>- Lists taking longer than SLOW_LIST_MILLIS of thread time each, while consumers are
+ * not starved, leave threads unevenly loaded near the end, so lists are made shorter.
+ * <br>- If the producer is blocked waiting for empty lists while consumers are also waiting
+ * for full ones, there are too few lists in circulation, so more are added.
+ * <br>
+ * Changes are bounded relative to the initial settings, including the total bases buffered,
+ * and lists never shrink below the smaller of MIN_LENGTH and the initial length.
+ * All calls from the producer happen on its own thread, and calls from consumers must be
+ * serialized by the caller, so the tuner needs no locking.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class BatchTuner {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * @param depot_ Depot to tune, which should have room to grow to maxBuffers() lists
+	 * @param maxData_ Initial bases per list
+	 * @param name_ Stream name, for reporting
+	 */
+	public BatchTuner(ConcurrentDepot<?> depot_, long maxData_, String name_){
+		depot=depot_;
+		name=name_;
+		threads=Math.max(1, Shared.threads());
+		length0=Math.max(1, depot.bufferSize);
+		data0=Math.max(1, maxData_);
+		count0=depot.bufferCount;
+		maxData=data0;
+		windowStart=System.nanoTime();
+	}
+
+	/** Number of lists a depot should have room for, given its initial count */
+	public static int maxBuffers(int initial){
+		return Math.min(initial*MAX_BUFFER_GROWTH, initial+MAX_ADDED_BUFFERS);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Called by the producer after filling a list, before adding it to the full queue.
+	 * May change the depot's list length, its buffer count, and maxData().
+	 * @param waitNanos Time spent waiting for an empty list to fill
+	 */
+	public void listFilled(long waitNanos){
+		producerWait+=waitNanos;
+		listsFilled++;
+		if(listsFilled<WINDOW_LISTS){return;}
+		final long now=System.nanoTime();
+		final long elapsed=now-windowStart;
+		if(elapsed<WINDOW_MILLIS*1000000L){return;}
+
+		final long taken=listsTaken-takenAtStart;
+		final long consumerWaitWindow=consumerWait-consumerWaitAtStart;
+		windows++;
+		if(windows>1){//The first window includes startup
+			evaluate(elapsed, taken, consumerWaitWindow);
+		}
+
+		windowStart=now;
+		listsFilled=0;
+		producerWait=0;
+		takenAtStart=listsTaken;
+		consumerWaitAtStart=consumerWait;
+	}
+
+	/**
+	 * Called by a consumer after taking a list; calls must not be concurrent.
+	 * @param waitNanos Time spent waiting for the list
+	 */
+	public void listTaken(long waitNanos){
+		consumerWait+=waitNanos;
+		listsTaken++;
+	}
+
+	/** Current bases per list */
+	public long maxData(){return maxData;}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private void evaluate(long elapsed, long taken, long consumerWaitWindow){
+		final double seconds=elapsed*0.000000001;
+		final double listsPerSec=taken/seconds;
+		final double threadMillisPerList=(taken<1 ? Double.MAX_VALUE : threads*seconds*1000/taken);
+		final double producerWaitFraction=producerWait/(double)elapsed;
+		final double consumerWaitFraction=consumerWaitWindow/(double)elapsed;
+		final boolean starved=consumerWaitFraction>STARVED_FRACTION;
+
+		if(listsPerSec>MAX_LISTS_PER_SEC && scale<MAX_SCALE){
+			resize(scale*2, String.format("%.0f lists/sec", listsPerSec));
+		}else if(threadMillisPerList>SLOW_LIST_MILLIS && !starved && scale>MIN_SCALE){
+			resize(scale*0.5, String.format("%.0f ms per list", threadMillisPerList));
+		}
+
+		if(producerWaitFraction>BLOCKED_FRACTION && starved && depot.bufferCount<depot.maxBufferCount){
+			final int add=Math.max(1, depot.bufferCount/2);
+			if((depot.bufferCount+add)*(double)maxData<=MAX_DATA_GROWTH*count0*(double)data0){
+				final int before=depot.bufferCount;
+				depot.addBuffers(add);
+				report(String.format("buffers %d -> %d (producer waited %.0f%%, consumers waited %.0f%%)",
+						before, depot.bufferCount, 100*producerWaitFraction, 100*consumerWaitFraction));
+			}
+		}
+	}
+
+	private void resize(double newScale, String reason){
+		final long newData=(long)Math.max(1, data0*newScale);
+		if(newScale>scale && depot.bufferCount*(double)newData>MAX_DATA_GROWTH*count0*(double)data0){return;}
+		final int oldLength=depot.bufferSize;
+		final long oldData=maxData;
+		scale=newScale;
+		depot.bufferSize=(int)Math.max(Math.min(MIN_LENGTH, length0), Math.min(Integer.MAX_VALUE, length0*scale));
+		maxData=newData;
+		report("list length "+oldLength+" -> "+depot.bufferSize+" reads, "+oldData+" -> "+maxData+" bases ("+reason+")");
+	}
+
+	private void report(String s){
+		changes++;
+		if(REPORT){System.err.println("Adaptive buffers for "+name+": "+s);}
+	}
+
+	@Override
+	public String toString(){
+		return "Adaptive buffers for "+name+": "+changes+" changes; final list length "+depot.bufferSize+
+				" reads, "+maxData+" bases; "+depot.bufferCount+" buffers.";
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final ConcurrentDepot<?> depot;
+	private final String name;
+	private final int threads;
+	private final int length0;
+	private final long data0;
+	private final int count0;
+
+	/** List size relative to the initial size */
+	private double scale=1;
+	private long maxData;
+	private int changes=0;
+
+	private long windowStart;
+	private long windows=0;
+	private long listsFilled=0;
+	private long producerWait=0;
+	private long takenAtStart=0;
+	private long consumerWaitAtStart=0;
+
+	/** Written by consumers */
+	private volatile long listsTaken=0;
+	private volatile long consumerWait=0;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Print each decision */
+	public static boolean REPORT=false;
+
+	public static int WINDOW_LISTS=16;
+	public static long WINDOW_MILLIS=250;
+	public static double MAX_LISTS_PER_SEC=1000;
+	public static double SLOW_LIST_MILLIS=2000;
+	/** Fraction of the window a side must spend waiting to count as blocked or starved */
+	public static double BLOCKED_FRACTION=0.2;
+	public static double STARVED_FRACTION=0.05;
+
+	private static final double MIN_SCALE=0.125, MAX_SCALE=8;
+	private static final int MIN_LENGTH=4;
+	private static final int MAX_BUFFER_GROWTH=4;
+	private static final int MAX_ADDED_BUFFERS=64;
+	/** Max ratio of bases that may be buffered to the initial amount */
+	private static final double MAX_DATA_GROWTH=4;
+
+}
@@ -0,0 +1,153 @@
+package stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import align2.Shared;
+
+import fileIO.BinaryReadCodec;
+import fileIO.FileFormat;
+import fileIO.ReadWrite;
+
+/**
+ * Reads the binary read container written by ReadStreamBinaryWriter.
+ * Whether input is interleaved is determined from the first record.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class BinaryReadInputStream extends ReadInputStream {
+
+	public BinaryReadInputStream(String fname, boolean allowSubprocess_){
+		this(FileFormat.testInput(fname, FileFormat.BBR, null, allowSubprocess_, false));
+	}
+
+	public BinaryReadInputStream(FileFormat ff){
+		if(verbose){System.err.println("BinaryReadInputStream("+ff.name()+")");}
+		fname=ff.name();
+		allowSubprocess=ff.allowSubprocess();
+		stdin=ff.stdio();
+		open();
+		fillBlock();
+		interleaved=(block!=null && block.size()>0 && block.get(0).mate!=null);
+	}
+
+	@Override
+	public void start() {}
+
+	@Override
+	public boolean hasMore() {
+		if(buffer==null || next>=buffer.size()){fillBuffer();}
+		return (buffer!=null && next<buffer.size());
+	}
+
+	@Override
+	public Read next() {
+		if(!hasMore()){return null;}
+		Read r=buffer.set(next, null);
+		next++;
+		consumed++;
+		return r;
+	}
+
+	@Override
+	public synchronized ArrayList<Read> nextList() {
+		if(next!=0){throw new RuntimeException("'next' should not be used when doing blockwise access.");}
+		if(buffer==null || next>=buffer.size()){fillBuffer();}
+		ArrayList<Read> list=buffer;
+		buffer=null;
+		if(list!=null && list.size()==0){list=null;}
+		consumed+=(list==null ? 0 : list.size());
+		return list;
+	}
+
+	/** Moves up to BUF_LEN records from the current block into the buffer */
+	private synchronized void fillBuffer(){
+		buffer=null;
+		next=0;
+		if(block!=null && blockPos>=block.size()){fillBlock();}
+		if(block==null){return;}
+
+		final int lim=Math.min(block.size(), blockPos+BUF_LEN);
+		buffer=new ArrayList<Read>(lim-blockPos);
+		for(; blockPos<lim; blockPos++){buffer.add(block.set(blockPos, null));}
+		generated+=buffer.size();
+	}
+
+	private void fillBlock(){
+		blockPos=0;
+		if(is==null){
+			block=null;
+			return;
+		}
+		try {
+			block=codec.readBlock(is);
+		} catch (IOException e) {
+			errorState=true;
+			throw new RuntimeException("Error reading "+fname, e);
+		}
+		if(block==null){finish();}
+	}
+
+	private void open(){
+		is=ReadWrite.getInputStream(fname, true, allowSubprocess);
+		try {
+			BinaryReadCodec.readHeader(is, fname);
+		} catch (IOException e) {
+			errorState=true;
+			throw new RuntimeException("Error reading "+fname, e);
+		}
+	}
+
+	/** Closes the underlying stream */
+	private void finish(){
+		if(is!=null){
+			errorState|=ReadWrite.finishReading(is, fname, allowSubprocess);
+			is=null;
+		}
+	}
+
+	public synchronized boolean close(){
+		if(verbose){System.err.println("Closing "+this.getClass().getName()+" for "+fname+"; errorState="+errorState);}
+		finish();
+		codec.close();
+		return errorState;
+	}
+
+	@Override
+	public synchronized void restart() {
+		finish();
+		generated=0;
+		consumed=0;
+		next=0;
+		buffer=null;
+		open();
+		fillBlock();
+	}
+
+	@Override
+	public boolean paired() {return interleaved;}
+
+	private ArrayList<Read> buffer=null;
+	private int next=0;
+
+	/** Decoded records not yet moved to the buffer */
+	private ArrayList<Read> block=null;
+	private int blockPos=0;
+
+	private final BinaryReadCodec codec=new BinaryReadCodec();
+	private InputStream is;
+	private final String fname;
+	private final boolean allowSubprocess;
+	private final boolean interleaved;
+
+	private final int BUF_LEN=Shared.READ_BUFFER_LENGTH;
+
+	public long generated=0;
+	public long consumed=0;
+
+	public final boolean stdin;
+	public static boolean verbose=false;
+
+}
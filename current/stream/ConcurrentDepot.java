@@ -4,32 +4,54 @@ import java.util.ArrayList;
 import java.util.concurrent.ArrayBlockingQueue;
 
 public class ConcurrentDepot<K> {
-	
-	@SuppressWarnings("unchecked")
+
 	public ConcurrentDepot(int bufSize, int numBufs){
+		this(bufSize, numBufs, numBufs);
+	}
+
+	/**
+	 * @param bufSize Target list length
+	 * @param numBufs Initial number of lists
+	 * @param maxBufs Number of lists the depot may grow to, via addBuffers()
+	 */
+	public ConcurrentDepot(int bufSize, int numBufs, int maxBufs){
 		bufferSize=bufSize;
 		bufferCount=numBufs;
-		
-		lists=new ArrayList[numBufs];
-		empty=new ArrayBlockingQueue<ArrayList<K>>(numBufs+1, fair);
-		full=new ArrayBlockingQueue<ArrayList<K>>(numBufs+1, fair);
-		
-		for(int i=0; i<lists.length; i++){
-			lists[i]=new ArrayList<K>(bufSize);
-			empty.add(lists[i]);
+		maxBufferCount=Math.max(numBufs, maxBufs);
+
+		empty=new ArrayBlockingQueue<ArrayList<K>>(maxBufferCount+1, fair);
+		full=new ArrayBlockingQueue<ArrayList<K>>(maxBufferCount+1, fair);
+
+		for(int i=0; i<numBufs; i++){
+			empty.add(new ArrayList<K>(bufSize));
+		}
+
+	}
+
+	/**
+	 * Adds empty lists, up to maxBufferCount.
+	 * Should only be called by the producer, before it adds poison.
+	 * @return Number added
+	 */
+	public int addBuffers(int count){
+		count=Math.min(count, maxBufferCount-bufferCount);
+		for(int i=0; i<count; i++){
+			empty.add(new ArrayList<K>(bufferSize));
 		}
-		
+		bufferCount+=count;
+		return count;
 	}
-	
-	
+
+
 	public final ArrayBlockingQueue<ArrayList<K>> empty;
 	public final ArrayBlockingQueue<ArrayList<K>> full;
-	
-	public final int bufferSize;
-	public final int bufferCount;
-	
+
+	/** Target list length; may be changed by the producer */
+	public int bufferSize;
+	/** Lists in circulation; may be increased by the producer */
+	public int bufferCount;
+	public final int maxBufferCount;
+
 	public static boolean fair=false;
-	
-	private final ArrayList<K>[] lists;
-	
+
 }
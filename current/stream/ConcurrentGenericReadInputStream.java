@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import align2.Shared;
 import align2.Tools;
 
 import dna.Data;
@@ -119,7 +120,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 	public ConcurrentGenericReadInputStream(ReadInputStream source1, ReadInputStream source2, long maxReadsToGenerate){
 		assert(source1!=source2);
 		producer1=source1;
-		depot=new ConcurrentDepot<Read>(BUF_LEN, NUM_BUFFS);
+		makeDepot();
 //		assert(false) : BUF_LEN+", "+NUM_BUFFS;
 		producer2=source2;
 		assert(source2==null || !FASTQ.FORCE_INTERLEAVED) : "Please do not set 'interleaved=true' with dual input files.";
@@ -137,6 +138,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 	public synchronized ListNum<Read> nextList() {
 		ArrayList<Read> list=null;
 		if(verbose){System.err.println("crisG:    **************** nextList() was called; shutdown="+shutdown+", depot.full="+depot.full.size());}
+		final long waitStart=(tuner==null ? 0 : System.nanoTime());
 		while(list==null){
 			if(shutdown){
 				if(verbose){System.err.println("crisG:    **************** nextList() returning null; shutdown="+shutdown+", depot.full="+depot.full.size());}
@@ -151,6 +153,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 			}
 		}
 
+		if(tuner!=null){tuner.listTaken(System.nanoTime()-waitStart);}
 		if(verbose){System.err.println("crisG:    **************** nextList() returning list of size "+list.size()+"; shutdown="+shutdown+", depot.full="+depot.full.size());}
 		ListNum<Read> ln=new ListNum<Read>(list, listnum);
 		listnum++;
@@ -163,7 +166,17 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 			depot.full.add(new ArrayList<Read>(0));
 		}else{
 			if(verbose){System.err.println("crisG:    A: Adding empty list to empty.");}
-			depot.empty.add(new ArrayList<Read>(BUF_LEN));
+			depot.empty.add(new ArrayList<Read>(depot.bufferSize));
+		}
+	}
+	
+	private void makeDepot(){
+		if(Shared.adaptiveBuffers()){
+			depot=new ConcurrentDepot<Read>(BUF_LEN, NUM_BUFFS, Shared.buffersCapped() ? NUM_BUFFS : BatchTuner.maxBuffers(NUM_BUFFS));
+			tuner=new BatchTuner(depot, MAX_DATA, producer1.getClass().getSimpleName());
+		}else{
+			depot=new ConcurrentDepot<Read>(BUF_LEN, NUM_BUFFS);
+			tuner=null;
 		}
 	}
 	
@@ -188,6 +201,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 
 		readLists();
 //		readSingles();
+		if(tuner!=null && BatchTuner.REPORT){System.err.println(tuner);}
 
 		addPoison();
 		
@@ -297,6 +311,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 //			System.out.println("crisG:    b");
 			if(verbose){System.err.println("crisG:    looping: buffer1==null "+(buffer1==null)+", buffer1==poison "+(buffer1==poison)
 					+", shutdown="+shutdown+", generated<maxReads="+(generated<maxReads));}
+			final long waitStart=(tuner==null ? 0 : System.nanoTime());
 			while(list==null){
 				if(verbose){System.err.println("crisG:    Fetching an empty list: generated="+generated+"/"+maxReads);}
 				try {
@@ -316,9 +331,12 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 			}
 //			System.out.println("crisG:    d");
 			
+			final long waitNanos=(tuner==null ? 0 : System.nanoTime()-waitStart);
+			final long maxData=(tuner==null ? MAX_DATA : tuner.maxData());
+			
 			if(verbose){System.err.println("crisG:    Entering full fetch loop.");}
 			long bases=0;
-			while(list.size()<depot.bufferSize && generated<maxReads && bases<MAX_DATA){
+			while(list.size()<depot.bufferSize && generated<maxReads && bases<maxData){
 				if(verbose){System.err.println("crisG:    list.size()="+list.size()+", depot.bufferSize="+depot.bufferSize+", generated="+generated);}
 				if(buffer1==null || next>=buffer1.size()){
 					buffer1=null;
@@ -404,7 +422,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 //				}else
 				{
 
-					while(next<buffer1.size() && list.size()<depot.bufferSize && generated<maxReads && bases<MAX_DATA){
+					while(next<buffer1.size() && list.size()<depot.bufferSize && generated<maxReads && bases<maxData){
 						Read a=buffer1.get(next);
 						Read b=a.mate;
 						readsIn++;
@@ -454,6 +472,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 //			System.out.println("crisG:    p");
 //			System.err.println("crisG:    Adding list to full depot.  Shutdown="+shutdown);
 			if(verbose){System.err.println("crisG:    F: Adding list("+list.size()+") to full.");}
+			if(tuner!=null){tuner.listFilled(waitNanos);}
 			depot.full.add(list);
 //			System.err.println("crisG:    Added.");
 			
@@ -557,7 +576,7 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 		if(p2q!=null){p2q.clear();}
 		producer1.restart();
 		if(producer2!=null){producer2.restart();}
-		depot=new ConcurrentDepot<Read>(BUF_LEN, NUM_BUFFS);
+		makeDepot();
 		generated=0;
 		basesIn=0;
 		readsIn=0;
@@ -789,6 +808,8 @@ public class ConcurrentGenericReadInputStream extends ConcurrentReadInputStream
 	public final ReadInputStream producer1;
 	public final ReadInputStream producer2;
 	private ConcurrentDepot<Read> depot;
+	/** Adjusts the depot at runtime; null if adaptive buffers are disabled */
+	private BatchTuner tuner;
 	
 	private long basesIn=0;
 	private long readsIn=0;
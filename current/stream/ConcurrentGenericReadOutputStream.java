@@ -35,7 +35,14 @@ public final class ConcurrentGenericReadOutputStream extends ConcurrentReadOutpu
 			if(ff2!=null){assert(!ff1.name().equals(ff2.name())) : ff1.name()+"=="+ff2.name();}
 		}
 		
-		if(BYTE_WRITER){
+		if(ff1.pipe()){
+			//Pairs travel together through a pipe, so ff2 is ignored
+			readstream1=new ReadStreamPipeWriter(ff1, maxSize, header, useSharedHeader);
+			readstream2=null;
+		}else if(ff1.bbr()){
+			readstream1=new ReadStreamBinaryWriter(ff1, qf1, true, maxSize, header, useSharedHeader);
+			readstream2=ff1.stdio() || ff2==null ? null : new ReadStreamBinaryWriter(ff2, qf2, false, maxSize, header, useSharedHeader);
+		}else if(BYTE_WRITER){
 			readstream1=new ReadStreamByteWriter(ff1, qf1, true, maxSize, header, useSharedHeader);
 			readstream2=ff1.stdio() || ff2==null ? null : new ReadStreamByteWriter(ff2, qf2, false, maxSize, header, useSharedHeader);
 		}else{
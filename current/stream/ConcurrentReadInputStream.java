@@ -114,7 +114,12 @@ public abstract class ConcurrentReadInputStream implements ConcurrentReadStreamI
 		
 		final ConcurrentReadInputStream cris;
 		
-		if(ff1.fastq()){
+		if(ff1.pipe()){
+			
+			//Pairs travel together through a pipe, so ff2 is ignored
+			cris=new ConcurrentGenericReadInputStream(new PipeReadInputStream(ff1), null, maxReads);
+			
+		}else if(ff1.fastq()){
 			
 			ReadInputStream ris1=new FastqReadInputStream(ff1);
 			ReadInputStream ris2=(ff2==null ? null : new FastqReadInputStream(ff2));
@@ -139,6 +144,12 @@ public abstract class ConcurrentReadInputStream implements ConcurrentReadStreamI
 			ReadInputStream ris2=(ff2==null ? null : new SamReadInputStream(ff2, false, false));
 			cris=new ConcurrentGenericReadInputStream(ris1, ris2, maxReads);
 			
+		}else if(ff1.bbr()){
+			
+			ReadInputStream ris1=new BinaryReadInputStream(ff1);
+			ReadInputStream ris2=(ff2==null ? null : new BinaryReadInputStream(ff2));
+			cris=new ConcurrentGenericReadInputStream(ris1, ris2, maxReads);
+			
 		}else if(ff1.bread()){
 //			assert(false) : ff1;
 			RTextInputStream rtis=new RTextInputStream(ff1, ff2, maxReads);
@@ -0,0 +1,81 @@
+package stream;
+
+import java.util.ArrayList;
+
+import fileIO.FileFormat;
+
+/**
+ * Reads lists of reads from an in-memory ReadPipe.
+ * Whether input is interleaved is determined from the first list.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class PipeReadInputStream extends ReadInputStream {
+
+	public PipeReadInputStream(FileFormat ff){
+		if(verbose){System.err.println("PipeReadInputStream("+ff.name()+")");}
+		assert(ff.pipe()) : ff.name();
+		pipe=ReadPipe.get(ff.name());
+	}
+
+	@Override
+	public void start() {}
+
+	@Override
+	public boolean hasMore() {
+		if(buffer==null || next>=buffer.size()){
+			buffer=pipe.take();
+			next=0;
+		}
+		return (buffer!=null && next<buffer.size());
+	}
+
+	@Override
+	public Read next() {
+		if(!hasMore()){return null;}
+		Read r=buffer.set(next, null);
+		next++;
+		consumed++;
+		return r;
+	}
+
+	@Override
+	public synchronized ArrayList<Read> nextList() {
+		if(next!=0){throw new RuntimeException("'next' should not be used when doing blockwise access.");}
+		ArrayList<Read> list=(buffer==null ? pipe.take() : buffer);
+		buffer=null;
+		consumed+=(list==null ? 0 : list.size());
+		return list;
+	}
+
+	public synchronized boolean close(){
+		if(verbose){System.err.println("Closing "+this.getClass().getName()+" for "+pipe.name+"; errorState="+errorState);}
+		ReadPipe.remove(pipe.name);
+		return errorState;
+	}
+
+	@Override
+	public synchronized void restart() {
+		throw new RuntimeException("Pipe "+pipe.name+" can't be restarted.");
+	}
+
+	@Override
+	public boolean paired() {
+		if(paired==null){
+			ArrayList<Read> list=pipe.peek();
+			paired=(list!=null && list.get(0).mate!=null);
+		}
+		return paired;
+	}
+
+	private final ReadPipe pipe;
+	private ArrayList<Read> buffer=null;
+	private int next=0;
+	private Boolean paired=null;
+
+	public long consumed=0;
+
+	public static boolean verbose=false;
+
+}
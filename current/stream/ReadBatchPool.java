@@ -0,0 +1,201 @@
+package stream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import structures.ListNum;
+
+/**
+ * Processes the lists from a ConcurrentReadInputStream on a work-stealing pool,
+ * as an alternative to starting a fixed set of threads that each loop on nextList().
+ * <br>
+ * The calling thread reads lists and submits each one as a task, so a slow list occupies
+ * one pool thread while idle threads take the next lists.  Each pool thread gets its own
+ * Worker, made by makeWorker(), which holds the per-thread state and counters that a
+ * processing thread would; all Workers are returned by process() for gathering statistics.
+ * <br>
+ * At most maxInFlight lists are outstanding at once; beyond that, reading blocks, so the
+ * input stream's own buffers fill and it stops reading ahead.  Optionally, complete() is
+ * called on each list in list ID order, one at a time, after it has been processed.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public abstract class ReadBatchPool<W extends ReadBatchPool.Worker> {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * @param cris_ Input stream, which must already be started
+	 * @param threads_ Pool threads
+	 * @param maxInFlight_ Lists read but not yet completed; if not positive, twice the number of threads
+	 * @param ordered_ Call complete() on each list in ID order
+	 */
+	public ReadBatchPool(ConcurrentReadInputStream cris_, int threads_, int maxInFlight_, boolean ordered_){
+		cris=cris_;
+		threads=Math.max(1, threads_);
+		maxInFlight=(maxInFlight_>0 ? maxInFlight_ : 2*threads);
+		ordered=ordered_;
+		permits=new Semaphore(maxInFlight);
+		pending=(ordered ? new HashMap<Long, ListNum<Read>>() : null);
+	}
+
+	/** Creates the state for one pool thread; may be called concurrently */
+	protected abstract W makeWorker();
+
+	/**
+	 * Called after a list has been processed, in list ID order, by one thread at a time.
+	 * Only called if the pool is ordered.
+	 */
+	protected void complete(ListNum<Read> ln){}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Processes lists until the input is exhausted or a Worker asks to stop,
+	 * and waits for all of them to finish.
+	 * @return Every Worker that was made
+	 */
+	public ArrayList<W> process(){
+		final ForkJoinPool pool=new ForkJoinPool(threads);
+
+		ListNum<Read> ln=cris.nextList();
+		ArrayList<Read> reads=(ln!=null ? ln.list : null);
+		if(ln!=null){nextID=ln.id;}
+
+		while(reads!=null && reads.size()>0 && !stop){
+			permits.acquireUninterruptibly();
+			pool.execute(new BatchTask(ln));
+			listsSubmitted++;
+
+			ln=cris.nextList();
+			reads=(ln!=null ? ln.list : null);
+		}
+
+		//Wait for every outstanding list
+		permits.acquireUninterruptibly(maxInFlight);
+		permits.release(maxInFlight);
+		pool.shutdown();
+
+		if(ln!=null){
+			cris.returnList(ln.id, ln.list==null || ln.list.isEmpty());
+		}
+
+		if(error!=null){
+			throw new RuntimeException("A worker failed while processing reads.", error);
+		}
+		synchronized(workers){
+			return new ArrayList<W>(workers);
+		}
+	}
+
+	/** Stops reading new lists; lists already read are still processed */
+	public void stop(){stop=true;}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private void finish(ListNum<Read> ln){
+		if(!ordered){
+			permits.release();
+			return;
+		}
+		synchronized(pending){
+			pending.put(ln.id, ln);
+			for(ListNum<Read> next=pending.remove(nextID); next!=null; next=pending.remove(nextID)){
+				nextID++;
+				try {
+					if(error==null){complete(next);}
+				} catch (Throwable e) {
+					fail(e);
+				}
+				permits.release();
+			}
+		}
+	}
+
+	private synchronized void fail(Throwable e){
+		if(error==null){error=e;}
+		stop=true;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Classes        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Per-thread processing state */
+	public interface Worker {
+
+		/**
+		 * Processes one list; called by only one thread at a time.
+		 * The list is returned to the input stream afterward.
+		 * @return False to stop reading further lists
+		 */
+		public boolean processList(ListNum<Read> ln);
+
+	}
+
+	private final class BatchTask extends RecursiveAction {
+
+		BatchTask(ListNum<Read> ln_){ln=ln_;}
+
+		@Override
+		protected void compute(){
+			try {
+				if(error==null){
+					final boolean more=local.get().processList(ln);
+					if(!more){stop=true;}
+				}
+				cris.returnList(ln.id, ln.list.isEmpty());
+			} catch (Throwable e) {
+				fail(e);
+			} finally {
+				finish(ln);
+			}
+		}
+
+		private final ListNum<Read> ln;
+		private static final long serialVersionUID = 1L;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final ConcurrentReadInputStream cris;
+	private final int threads;
+	private final int maxInFlight;
+	private final boolean ordered;
+
+	/** Bounds the lists read but not yet completed */
+	private final Semaphore permits;
+	/** Processed lists waiting for earlier ones to complete */
+	private final HashMap<Long, ListNum<Read>> pending;
+	private long nextID=0;
+
+	private final ArrayList<W> workers=new ArrayList<W>();
+	private final ThreadLocal<W> local=new ThreadLocal<W>(){
+		@Override
+		protected W initialValue(){
+			W w=makeWorker();
+			synchronized(workers){workers.add(w);}
+			return w;
+		}
+	};
+
+	private volatile boolean stop=false;
+	private volatile Throwable error=null;
+
+	/** Lists handed to the pool */
+	public long listsSubmitted=0;
+
+}
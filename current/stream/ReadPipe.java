@@ -0,0 +1,188 @@
+package stream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A named, bounded in-memory channel for lists of reads, allowing one program stage to
+ * feed the next within a JVM without writing a file.
+ * Pipes are addressed by filenames starting with "pipe.", such as "pipe.trimmed.fq";
+ * the extension determines the format the reads are normalized to, as if they had been
+ * written to and read from a file.  Pairs travel together, so only the read 1 name is used.
+ * Each pipe has one writer and one reader.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class ReadPipe {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public static boolean isPipeName(String fname){
+		return fname!=null && fname.length()>5 && fname.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+	}
+
+	/** Returns the pipe with this name, creating it if needed */
+	public static ReadPipe get(String fname){
+		assert(isPipeName(fname)) : fname;
+		synchronized(map){
+			ReadPipe p=map.get(fname);
+			if(p==null){
+				p=new ReadPipe(fname);
+				map.put(fname, p);
+			}
+			return p;
+		}
+	}
+
+	/** Unregisters a pipe, so the name may be reused */
+	public static void remove(String fname){
+		synchronized(map){map.remove(fname);}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private ReadPipe(String name_){
+		name=name_;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Writer            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public synchronized void openWriter(){
+		assert(!writerOpen) : "Pipe "+name+" already has a writer.";
+		writerOpen=true;
+		notifyAll();
+	}
+
+	/** Blocks while the pipe is full */
+	public void put(ArrayList<Read> list){
+		assert(list!=POISON);
+		if(list.isEmpty()){return;}
+		putInner(list);
+	}
+
+	/** Signals end of data */
+	public void closeWriter(){
+		putInner(POISON);
+	}
+
+	private void putInner(ArrayList<Read> list){
+		while(true){
+			try {
+				queue.put(list);
+				return;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Reader            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Returns the next list without removing it, or null at end of data; blocks until one is available */
+	public ArrayList<Read> peek(){
+		synchronized(readLock){
+			if(head==null && !finished){
+				head=takeInner();
+				if(head==POISON){finished=true;}
+			}
+			return finished ? null : head;
+		}
+	}
+
+	/** Returns the next list, or null at end of data and after the pipe is released */
+	public ArrayList<Read> take(){
+		synchronized(readLock){
+			ArrayList<Read> list=peek();
+			head=null;
+			if(list==null){awaitRelease();}
+			return list;
+		}
+	}
+
+	private ArrayList<Read> takeInner(){
+		while(true){
+			try {
+				return queue.take();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Coordination         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Makes the reader's end of data wait for release(), so that a consuming stage
+	 * cannot finish before the producing stage has completed its own bookkeeping.
+	 */
+	public synchronized void hold(){held=true;}
+
+	public synchronized void release(){
+		held=false;
+		notifyAll();
+	}
+
+	private synchronized void awaitRelease(){
+		while(held){
+			try {
+				wait(1000);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Waits until a writer has opened this pipe.
+	 * @param producer Thread expected to open it; stop waiting if it dies first
+	 * @return True if the writer opened
+	 */
+	public synchronized boolean awaitWriter(Thread producer){
+		while(!writerOpen && (producer==null || producer.isAlive())){
+			try {
+				wait(200);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		return writerOpen;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public final String name;
+	private final ArrayBlockingQueue<ArrayList<Read>> queue=new ArrayBlockingQueue<ArrayList<Read>>(CAPACITY);
+	/** Guards the reader state, so blocking reads do not hold the pipe's monitor */
+	private final Object readLock=new Object();
+	private ArrayList<Read> head=null;
+	private boolean finished=false;
+	private boolean held=false;
+	private boolean writerOpen=false;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Lists buffered in a pipe before the writer blocks */
+	public static int CAPACITY=16;
+	public static final String PREFIX="pipe.";
+
+	private static final ArrayList<Read> POISON=new ArrayList<Read>(0);
+	private static final HashMap<String, ReadPipe> map=new HashMap<String, ReadPipe>();
+
+}
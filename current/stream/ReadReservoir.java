@@ -0,0 +1,171 @@
+package stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Single-pass random sampling of a fixed number of reads or bases, without knowing the input size.
+ * Each read is assigned a uniform random key, and the reads with the lowest keys are retained:
+ * either exactly maxReads of them, or the fewest whose combined length reaches maxBases.
+ * Memory is therefore bounded by the target size rather than the input size.
+ * <br>
+ * Since keys are independent of which reservoir assigned them, reservoirs filled by different
+ * worker threads (each with its own Random) can be merged into one, giving the same distribution
+ * as a single reservoir over all of the input.
+ * Pairs are sampled together, using read 1 with its mate attached.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class ReadReservoir {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * @param maxReads_ Retain exactly this many reads or pairs; ignored if not positive
+	 * @param maxBases_ Retain reads until this many bases are reached; ignored if not positive
+	 * @param randy_ Source of keys; should not be shared with other reservoirs
+	 */
+	public ReadReservoir(long maxReads_, long maxBases_, Random randy_){
+		maxReads=maxReads_;
+		maxBases=maxBases_;
+		randy=(randy_==null ? new Random() : randy_);
+		assert((maxReads>0) != (maxBases>0)) : "Exactly one of maxReads and maxBases should be set: "+maxReads+", "+maxBases;
+		assert(maxReads<Integer.MAX_VALUE) : "Too many reads to sample: "+maxReads;
+		heap=new PriorityQueue<Entry>((int)Math.min(1024, Math.max(maxReads, 1)), DESCENDING);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Offers these reads to the reservoir; null entries are ignored */
+	public void add(ArrayList<Read> list){
+		for(Read r : list){
+			if(r!=null){add(r);}
+		}
+	}
+
+	/** Offers one read, with its mate, to the reservoir */
+	public void add(Read r){
+		readsSeen++;
+		offer(new Entry(r, randy.nextDouble()));
+	}
+
+	/** Adds all of the other reservoir's reads to this one; the other should not be used afterward */
+	public void merge(ReadReservoir rr){
+		assert(rr!=this);
+		assert(rr.maxReads==maxReads && rr.maxBases==maxBases) : "Incompatible reservoirs.";
+		readsSeen+=rr.readsSeen;
+		for(Entry e : rr.heap){offer(e);}
+		rr.heap.clear();
+		rr.basesHeld=0;
+	}
+
+	/**
+	 * Returns the sampled reads and empties the reservoir.
+	 * @param preserveOrder Sort by numeric ID, which restores input order; otherwise, order is random
+	 */
+	public ArrayList<Read> toList(boolean preserveOrder){
+		final ArrayList<Entry> entries=new ArrayList<Entry>(heap);
+		heap.clear();
+		basesHeld=0;
+		Collections.sort(entries, preserveOrder ? BY_ID : ASCENDING);
+		final ArrayList<Read> list=new ArrayList<Read>(entries.size());
+		for(Entry e : entries){list.add(e.r);}
+		return list;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private void offer(Entry e){
+		if(maxReads>0){
+			if(heap.size()<maxReads){
+				heap.add(e);
+			}else if(e.key<heap.peek().key){
+				heap.poll();
+				heap.add(e);
+			}
+		}else{
+			if(basesHeld>=maxBases && e.key>=heap.peek().key){return;}
+			heap.add(e);
+			basesHeld+=e.bases;
+			//Drop the highest keys while the remainder still reaches the target
+			while(basesHeld-heap.peek().bases>=maxBases){
+				basesHeld-=heap.poll().bases;
+			}
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Getters            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Reads or pairs currently retained */
+	public int size(){return heap.size();}
+
+	/** Bases currently retained, including mates; only tracked when sampling by bases */
+	public long basesHeld(){return basesHeld;}
+
+	/** Reads or pairs offered so far */
+	public long readsSeen(){return readsSeen;}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Classes        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final class Entry {
+
+		Entry(Read r_, double key_){
+			r=r_;
+			key=key_;
+			bases=r.length()+r.mateLength();
+		}
+
+		final Read r;
+		final double key;
+		final int bases;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Max-heap on key, so the entry to evict is on top */
+	private final PriorityQueue<Entry> heap;
+	private final long maxReads;
+	private final long maxBases;
+	private final Random randy;
+
+	private long basesHeld=0;
+	private long readsSeen=0;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final Comparator<Entry> ASCENDING=new Comparator<Entry>(){
+		@Override
+		public int compare(Entry a, Entry b){
+			return Double.compare(a.key, b.key);
+		}
+	};
+
+	private static final Comparator<Entry> DESCENDING=Collections.reverseOrder(ASCENDING);
+
+	private static final Comparator<Entry> BY_ID=new Comparator<Entry>(){
+		@Override
+		public int compare(Entry a, Entry b){
+			return a.r.numericID<b.r.numericID ? -1 : a.r.numericID>b.r.numericID ? 1 : 0;
+		}
+	};
+
+}
@@ -0,0 +1,439 @@
+package stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import align2.Shared;
+import align2.Tools;
+import fileIO.BinaryReadCodec;
+import fileIO.ReadWrite;
+
+/**
+ * External merge sort for reads that may not fit in memory.
+ * Reads are buffered until half of the memory budget is used; each full buffer is then sorted
+ * by multiple threads and written to a compressed temporary run while the next buffer fills.
+ * At the end, runs are combined with a k-way merge, in several passes if there are more than maxFanIn.
+ * Pairs stay together and are ordered by read 1, so the comparator sees read 1 with its mate attached.
+ * The sort is stable: output is identical to Collections.sort on the whole input.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class ReadSorter {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * @param comparator_ Sort order
+	 * @param memory_ Memory budget in bytes for buffered reads; if not positive, a fraction of available memory
+	 * @param tempPattern_ Temporary run filename, containing '%' to be replaced by the run number;
+	 * runs are in the binary read format, so a .bbr extension is appropriate
+	 */
+	public ReadSorter(Comparator<Read> comparator_, long memory_, String tempPattern_){
+		comparator=comparator_;
+		memory=(memory_>0 ? memory_ : (long)(Shared.getAvailableMemory()*MEMORY_FRACTION));
+		runBytes=Tools.max(1, memory/2);
+		tempPattern=tempPattern_;
+		assert(tempPattern.indexOf('%')>=0) : "Temp file pattern must contain '%': "+tempPattern;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Adds these reads; blocks if a full buffer is ready and the previous run is still being written */
+	public void add(ArrayList<Read> list){
+		for(Read r : list){
+			buffer.add(r);
+			bufferBytes+=estimateBytes(r);
+			readsIn+=1+r.mateCount();
+			basesIn+=r.length()+r.mateLength();
+		}
+		if(bufferBytes>=runBytes){spill(false);}
+	}
+
+	/**
+	 * Sends all reads to this stream in sorted order, then deletes temporary files.
+	 * The stream is not closed.
+	 * @param ros May be null, in which case reads are discarded.
+	 */
+	public void write(ConcurrentReadOutputStream ros){
+		if(runs.isEmpty()){
+			ArrayList<Read> list=sort(buffer);
+			buffer=null;
+			long listnum=0;
+			for(int i=0; i<list.size(); i+=Shared.READ_BUFFER_LENGTH){
+				ArrayList<Read> out=new ArrayList<Read>(list.subList(i, Tools.min(list.size(), i+Shared.READ_BUFFER_LENGTH)));
+				if(ros!=null){ros.add(out, listnum);}
+				listnum++;
+			}
+			return;
+		}
+
+		spill(true);
+		buffer=null;
+		while(runs.size()>maxFanIn){mergePass();}
+
+		final Merger merger=new Merger(openRuns(runs));
+		long listnum=0;
+		ArrayList<Read> out=new ArrayList<Read>(Shared.READ_BUFFER_LENGTH);
+		for(Read r=merger.next(); r!=null; r=merger.next()){
+			out.add(r);
+			if(out.size()>=Shared.READ_BUFFER_LENGTH){
+				if(ros!=null){ros.add(out, listnum);}
+				listnum++;
+				out=new ArrayList<Read>(Shared.READ_BUFFER_LENGTH);
+			}
+		}
+		if(out.size()>0 && ros!=null){ros.add(out, listnum);}
+		deleteRuns(runs);
+		runs.clear();
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Inner Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Hands the buffer to a thread that sorts it and writes a run */
+	private void spill(boolean wait){
+		waitForRunThread();
+		final String fname=nextTempName();
+		runs.add(fname);
+		if(verbose){System.err.println("Writing run "+fname+" ("+buffer.size()+" pairs, ~"+(bufferBytes/1000000)+" MB)");}
+		runThread=new RunThread(buffer, fname);
+		buffer=new ArrayList<Read>();
+		bufferBytes=0;
+		runThread.start();
+		if(wait){waitForRunThread();}
+	}
+
+	private void waitForRunThread(){
+		if(runThread==null){return;}
+		while(runThread.getState()!=Thread.State.TERMINATED){
+			try {
+				runThread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		runThread=null;
+	}
+
+	/** Merges consecutive groups of runs, so that ties still resolve in input order */
+	private void mergePass(){
+		ArrayList<String> merged=new ArrayList<String>();
+		for(int i=0; i<runs.size(); i+=maxFanIn){
+			final ArrayList<String> group=new ArrayList<String>(runs.subList(i, Tools.min(runs.size(), i+maxFanIn)));
+			if(group.size()==1){
+				merged.add(group.get(0));
+				continue;
+			}
+			final String fname=nextTempName();
+			if(verbose){System.err.println("Merging "+group.size()+" runs into "+fname);}
+			final Merger merger=new Merger(openRuns(group));
+			final RunWriter rw=new RunWriter(fname);
+			for(Read r=merger.next(); r!=null; r=merger.next()){rw.write(r);}
+			rw.close();
+			deleteRuns(group);
+			merged.add(fname);
+		}
+		runs.clear();
+		runs.addAll(merged);
+	}
+
+	/**
+	 * Sorts contiguous chunks of the list in parallel, then merges them.
+	 * @return A sorted list; the input list is cleared unless it is returned.
+	 */
+	private ArrayList<Read> sort(ArrayList<Read> list){
+		final int chunks=Tools.mid(1, Shared.threads(), list.size()/MIN_CHUNK);
+		if(chunks<2){
+			Collections.sort(list, comparator);
+			return list;
+		}
+
+		ArrayList<SortThread> alst=new ArrayList<SortThread>(chunks);
+		for(int i=0; i<chunks; i++){
+			final int from=(int)((list.size()*(long)i)/chunks), to=(int)((list.size()*(long)(i+1))/chunks);
+			alst.add(new SortThread(new ArrayList<Read>(list.subList(from, to))));
+		}
+		final int size=list.size();
+		list.clear();
+		for(SortThread st : alst){st.start();}
+		ArrayList<Source> sources=new ArrayList<Source>(chunks);
+		for(SortThread st : alst){
+			while(st.getState()!=Thread.State.TERMINATED){
+				try {
+					st.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			sources.add(new ListSource(st.list, sources.size()));
+		}
+
+		final ArrayList<Read> sorted=new ArrayList<Read>(size);
+		final Merger merger=new Merger(sources);
+		for(Read r=merger.next(); r!=null; r=merger.next()){sorted.add(r);}
+		return sorted;
+	}
+
+	private ArrayList<Source> openRuns(ArrayList<String> fnames){
+		ArrayList<Source> sources=new ArrayList<Source>(fnames.size());
+		for(String fname : fnames){sources.add(new RunReader(fname, sources.size()));}
+		return sources;
+	}
+
+	private static void deleteRuns(ArrayList<String> fnames){
+		for(String fname : fnames){new File(fname).delete();}
+	}
+
+	private String nextTempName(){
+		return tempPattern.replaceFirst("%", ""+(tempFiles++));
+	}
+
+	/** Approximate heap usage of a read and its mate */
+	public static long estimateBytes(Read r){
+		long sum=0;
+		for(int i=0; i<2 && r!=null; i++, r=r.mate){
+			sum+=READ_OVERHEAD+r.length();
+			if(r.quality!=null){sum+=r.quality.length;}
+			if(r.match!=null){sum+=r.match.length;}
+			if(r.id!=null){sum+=40+2*r.id.length();}
+			if(r.obj!=null){sum+=(r.obj.getClass()==SamLine.class ? SAMLINE_OVERHEAD+2*r.length() : 32);}
+		}
+		return sum;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Nested Classes        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** A sorted sequence of reads being merged */
+	private abstract static class Source {
+
+		Source(int index_){index=index_;}
+
+		/** Returns the next read without consuming it, or null if there are none */
+		final Read peek(){return head;}
+
+		final Read next(){
+			final Read r=head;
+			head=advance();
+			return r;
+		}
+
+		abstract Read advance();
+
+		void close(){}
+
+		/** Position in the merge; lower wins ties */
+		final int index;
+		Read head;
+	}
+
+	private static final class ListSource extends Source {
+
+		ListSource(ArrayList<Read> list_, int index_){
+			super(index_);
+			list=list_;
+			head=advance();
+		}
+
+		@Override
+		Read advance(){
+			return pos<list.size() ? list.set(pos++, null) : null;
+		}
+
+		private final ArrayList<Read> list;
+		private int pos=0;
+	}
+
+	/** K-way merge over sorted sources */
+	private final class Merger {
+
+		Merger(ArrayList<Source> sources){
+			heap=new PriorityQueue<Source>(Tools.max(1, sources.size()), new Comparator<Source>(){
+				@Override
+				public int compare(Source a, Source b){
+					final int x=comparator.compare(a.peek(), b.peek());
+					return x!=0 ? x : a.index-b.index;
+				}
+			});
+			for(Source s : sources){
+				if(s.peek()!=null){heap.add(s);}
+				else{s.close();}
+			}
+		}
+
+		/** Returns the next read in sorted order, or null when all sources are exhausted */
+		Read next(){
+			final Source s=heap.poll();
+			if(s==null){return null;}
+			final Read r=s.next();
+			if(s.peek()!=null){heap.add(s);}
+			else{s.close();}
+			return r;
+		}
+
+		private final PriorityQueue<Source> heap;
+	}
+
+	private final class SortThread extends Thread {
+
+		SortThread(ArrayList<Read> list_){list=list_;}
+
+		@Override
+		public void run(){Collections.sort(list, comparator);}
+
+		final ArrayList<Read> list;
+	}
+
+	/** Sorts a buffer and writes it as a run */
+	private final class RunThread extends Thread {
+
+		RunThread(ArrayList<Read> list_, String fname_){
+			list=list_;
+			fname=fname_;
+		}
+
+		@Override
+		public void run(){
+			ArrayList<Read> sorted=sort(list);
+			list=null;
+			RunWriter rw=new RunWriter(fname);
+			for(int i=0; i<sorted.size(); i++){rw.write(sorted.set(i, null));}
+			rw.close();
+		}
+
+		private ArrayList<Read> list;
+		private final String fname;
+	}
+
+	/** Writes pairs in the binary read format, which preserves every field used by the comparators */
+	private static final class RunWriter {
+
+		RunWriter(String fname_){
+			fname=fname_;
+			os=ReadWrite.getOutputStream(fname, false, true, true);
+			try {
+				BinaryReadCodec.writeHeader(os);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write temporary file "+fname, e);
+			}
+		}
+
+		void write(Read r){
+			codec.add(r, true);
+			if(codec.pendingBytes()>=BinaryReadCodec.BLOCK_BYTES){flush();}
+		}
+
+		private void flush(){
+			try {
+				codec.flush(os);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write temporary file "+fname, e);
+			}
+		}
+
+		void close(){
+			flush();
+			codec.close();
+			ReadWrite.finishWriting(null, os, fname, true);
+		}
+
+		private final String fname;
+		private final OutputStream os;
+		/** Qualities are never binned in runs */
+		private final BinaryReadCodec codec=new BinaryReadCodec(false);
+	}
+
+	private static final class RunReader extends Source {
+
+		RunReader(String fname_, int index_){
+			super(index_);
+			fname=fname_;
+			is=ReadWrite.getInputStream(fname, true, true);
+			try {
+				BinaryReadCodec.readHeader(is, fname);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read temporary file "+fname, e);
+			}
+			head=advance();
+		}
+
+		@Override
+		Read advance(){
+			if(block!=null && pos>=block.size()){
+				try {
+					block=codec.readBlock(is);
+				} catch (IOException e) {
+					throw new RuntimeException("Could not read temporary file "+fname, e);
+				}
+				pos=0;
+			}
+			return block==null ? null : block.set(pos++, null);
+		}
+
+		@Override
+		void close(){
+			codec.close();
+			ReadWrite.finishReading(is, fname, true);
+		}
+
+		private final String fname;
+		private final InputStream is;
+		private final BinaryReadCodec codec=new BinaryReadCodec(false);
+		private ArrayList<Read> block=new ArrayList<Read>(0);
+		private int pos=0;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final Comparator<Read> comparator;
+	/** Memory budget in bytes */
+	public final long memory;
+	/** Buffer size in bytes at which a run is written */
+	private final long runBytes;
+	private final String tempPattern;
+	/** Maximum number of runs merged at once */
+	public int maxFanIn=64;
+
+	private ArrayList<Read> buffer=new ArrayList<Read>();
+	private long bufferBytes=0;
+	private RunThread runThread=null;
+	/** Current runs, in input order */
+	private final ArrayList<String> runs=new ArrayList<String>();
+	private int tempFiles=0;
+
+	public long readsIn=0;
+	public long basesIn=0;
+
+	/** Number of temporary files written so far */
+	public int tempFiles(){return tempFiles;}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Fraction of available memory used as the default budget */
+	public static float MEMORY_FRACTION=0.5f;
+	/** Minimum pairs per sorting thread */
+	private static final int MIN_CHUNK=10000;
+	private static final int READ_OVERHEAD=160;
+	private static final int SAMLINE_OVERHEAD=300;
+
+	public static boolean verbose=false;
+
+}
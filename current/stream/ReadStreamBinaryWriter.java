@@ -0,0 +1,109 @@
+package stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import fileIO.BinaryReadCodec;
+import fileIO.FileFormat;
+import fileIO.ReadWrite;
+
+/**
+ * Writes reads in the binary read container format; see BinaryReadCodec.
+ * Interleaved pairs are stored together in one record.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class ReadStreamBinaryWriter extends ReadStreamWriter {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public ReadStreamBinaryWriter(FileFormat ff, String qfname_, boolean read1_, int bufferSize, CharSequence header, boolean useSharedHeader){
+		super(ff, qfname_, read1_, bufferSize, header, false, true, useSharedHeader);
+		assert(qfname_==null) : "Quality files are not supported for binary output.";
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------          Execution           ----------------*/
+	/*--------------------------------------------------------------*/
+
+	@Override
+	public void run() {
+		try {
+			run2();
+		} catch (IOException e) {
+			finishedSuccessfully=false;
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void run2() throws IOException{
+		final BinaryReadCodec codec=new BinaryReadCodec();
+		BinaryReadCodec.writeHeader(myOutstream);
+
+		Job job=null;
+		while(job==null){
+			try {
+				job=queue.take();
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+
+		while(job!=null && !job.poison){
+			final OutputStream os=job.outstream;
+			if(!job.isEmpty()){writeBinary(job, codec, os);}
+			if(job.close){
+				codec.flush(os);
+				assert(job.outstream!=null && job.outstream!=myOutstream);
+				ReadWrite.finishWriting(null, job.outstream, fname, allowSubprocess);
+			}
+
+			job=null;
+			while(job==null){
+				try {
+					job=queue.take();
+				} catch (InterruptedException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		}
+
+		codec.flush(myOutstream);
+		codec.close();
+		ReadWrite.finishWriting(null, myOutstream, fname, allowSubprocess);
+		finishedSuccessfully=true;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Inner Methods         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private void writeBinary(Job job, BinaryReadCodec codec, OutputStream os) throws IOException {
+		for(final Read r1 : job.list){
+			if(r1!=null){
+				final Read r=(read1 ? r1 : r1.mate);
+				assert(read1 || ignorePairAssertions || (r!=null && r.mate==r1 && r!=r1)) : "\n"+r1.toText(false)+"\n";
+				if(r!=null){
+					final boolean withMate=(read1 && OUTPUT_INTERLEAVED);
+					codec.add(r, withMate);
+					count(r);
+					if(withMate && r.mate!=null){count(r.mate);}
+				}
+			}
+			if(codec.pendingBytes()>=BinaryReadCodec.BLOCK_BYTES){codec.flush(os);}
+		}
+	}
+
+	private void count(Read r){
+		readsWritten++;
+		basesWritten+=(r.bases!=null ? r.length() : 0);
+		validReadsWritten+=(r.valid() && r.mapped() ? 1 : 0);
+		validBasesWritten+=(r.valid() && r.mapped() && r.bases!=null ? r.length() : 0);
+	}
+
+}
@@ -0,0 +1,104 @@
+package stream;
+
+import java.util.ArrayList;
+
+import fileIO.FileFormat;
+
+/**
+ * Sends reads to an in-memory ReadPipe instead of a file.
+ * Reads are copied with only the fields that the pipe's nominal format would retain,
+ * so the next stage sees the same reads it would have read from a file.
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public class ReadStreamPipeWriter extends ReadStreamWriter {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public ReadStreamPipeWriter(FileFormat ff, int bufferSize, CharSequence header, boolean useSharedHeader){
+		super(ff, null, true, bufferSize, header, false, false, useSharedHeader);
+		assert(ff.pipe()) : ff.name();
+		assert(ff.fastq() || ff.fasta()) : "Pipes support fastq and fasta: "+ff.name();
+		pipe=ReadPipe.get(ff.name());
+		pipe.openWriter();
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------          Execution           ----------------*/
+	/*--------------------------------------------------------------*/
+
+	@Override
+	public void run() {
+		Job job=null;
+		while(job==null){
+			try {
+				job=queue.take();
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+
+		while(job!=null && !job.poison){
+			assert(!job.close) : "Pipes can't switch output streams.";
+			if(!job.isEmpty()){pipe.put(copy(job.list));}
+
+			job=null;
+			while(job==null){
+				try {
+					job=queue.take();
+				} catch (InterruptedException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		}
+
+		pipe.closeWriter();
+		finishedSuccessfully=true;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Inner Methods         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private ArrayList<Read> copy(ArrayList<Read> list){
+		final ArrayList<Read> out=new ArrayList<Read>(list.size());
+		for(final Read r1 : list){
+			if(r1!=null){
+				final long id=nextID;
+				nextID++;
+				final Read c1=copy(r1, id);
+				out.add(c1);
+				if(OUTPUT_INTERLEAVED && r1.mate!=null){
+					final Read c2=copy(r1.mate, id);
+					c1.mate=c2;
+					c2.mate=c1;
+				}
+			}
+		}
+		return out;
+	}
+
+	private Read copy(Read r, long id){
+		final Read c=new Read(r.bases, 0, (byte)0, 0, 0, r.id, (OUTPUT_FASTA ? null : r.quality), id);
+		c.setPairnum(r.pairnum());
+		readsWritten++;
+		basesWritten+=(r.bases!=null ? r.length() : 0);
+		validReadsWritten+=(r.valid() && r.mapped() ? 1 : 0);
+		validBasesWritten+=(r.valid() && r.mapped() && r.bases!=null ? r.length() : 0);
+		return c;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final ReadPipe pipe;
+	/** Numeric IDs are renumbered, as a reader of a file would assign them */
+	private long nextID=0;
+
+}
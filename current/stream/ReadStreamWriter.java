@@ -35,11 +35,12 @@ public abstract class ReadStreamWriter extends Thread {
 		OUTPUT_BAM=ff.bam();
 		OUTPUT_ATTACHMENT=ff.attachment();
 		OUTPUT_HEADER=ff.header();
+		OUTPUT_BINARY=ff.bbr();
 		SITES_ONLY=ff.sites();
 		OUTPUT_STANDARD_OUT=ff.stdio();
 		FASTA_WRAP=Shared.FASTA_WRAP;
 		assert(((OUTPUT_SAM ? 1 : 0)+(OUTPUT_FASTQ ? 1 : 0)+(OUTPUT_FASTA ? 1 : 0)+(OUTPUT_ATTACHMENT ? 1 : 0)+
-				(OUTPUT_HEADER ? 1 : 0)+(SITES_ONLY ? 1 : 0))<=1) : 
+				(OUTPUT_HEADER ? 1 : 0)+(SITES_ONLY ? 1 : 0)+(OUTPUT_BINARY ? 1 : 0))<=1) : 
 			OUTPUT_SAM+", "+SITES_ONLY+", "+OUTPUT_FASTQ+", "+OUTPUT_FASTA+", "+OUTPUT_ATTACHMENT;
 		
 		fname=ff.name();
@@ -60,7 +61,7 @@ public abstract class ReadStreamWriter extends Thread {
 		if(header==null){header=HEADER;} //new line; test.
 		
 		
-		if(fname==null && !OUTPUT_STANDARD_OUT){
+		if((fname==null && !OUTPUT_STANDARD_OUT) || ff.pipe()){
 			myOutstream=null;
 			myWriter=null;
 		}else{
@@ -80,7 +81,9 @@ public abstract class ReadStreamWriter extends Thread {
 			final boolean supressHeaderSequences=(NO_HEADER_SEQUENCES);
 //			assert(false) : ff.append()+", "+ff.exists();
 			
-			if(header!=null && !supressHeader){
+			if(OUTPUT_BINARY){
+				//The binary writer writes its own header
+			}else if(header!=null && !supressHeader){
 				if(myWriter!=null){
 					myWriter.println(header);
 				}else{
@@ -342,6 +345,7 @@ public abstract class ReadStreamWriter extends Thread {
 	public final boolean OUTPUT_FASTQ;
 	public final boolean OUTPUT_FASTA;
 	public final boolean OUTPUT_HEADER;
+	public final boolean OUTPUT_BINARY;
 	public final boolean OUTPUT_ATTACHMENT;
 	public final boolean OUTPUT_STANDARD_OUT;
 	public final boolean SITES_ONLY;
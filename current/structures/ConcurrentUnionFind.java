@@ -0,0 +1,73 @@
+package structures;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free disjoint-set forest over the integers 0 to size-1, safe for concurrent unions.
+ * Roots are always linked beneath smaller roots, so each set's representative is its
+ * smallest member, and a node's parent is never greater than the node itself.
+ * Finds use path halving, which is safe under contention since it only shortcuts to ancestors.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class ConcurrentUnionFind {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	public ConcurrentUnionFind(int size){
+		parent=new AtomicIntegerArray(size);
+		for(int i=0; i<size; i++){parent.set(i, i);}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Outer Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Returns the smallest member of x's set */
+	public int find(int x){
+		while(true){
+			final int p=parent.get(x);
+			if(p==x){return x;}
+			final int gp=parent.get(p);
+			if(gp!=p){parent.compareAndSet(x, p, gp);}
+			x=gp;
+		}
+	}
+
+	/**
+	 * Merges the sets containing a and b.
+	 * @return True if they were previously separate
+	 */
+	public boolean union(int a, int b){
+		while(true){
+			a=find(a);
+			b=find(b);
+			if(a==b){return false;}
+			if(a>b){
+				final int temp=a;
+				a=b;
+				b=temp;
+			}
+			//Fails if b stopped being a root, in which case retry from its new root
+			if(parent.compareAndSet(b, b, a)){return true;}
+		}
+	}
+
+	/** True if x is the representative (smallest member) of its set; only meaningful once unions are complete */
+	public boolean isRoot(int x){
+		return parent.get(x)==x;
+	}
+
+	public int size(){return parent.length();}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final AtomicIntegerArray parent;
+
+}
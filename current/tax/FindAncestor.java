@@ -120,17 +120,24 @@ public class FindAncestor {
 		}
 		if(treeFile!=null){
 			outstream.println("Loading tree.");
-			tree=ReadWrite.read(TaxTree.class, treeFile, true);
-			if(tree.nameMap==null){
-				outstream.println("Hashing names.");
-				tree.hashNames();
+			if(treeFile.contains(".flattax")){
+				flatTree=new FlatTaxTree(treeFile);
+				tree=null;
+			}else{
+				flatTree=null;
+				tree=ReadWrite.read(TaxTree.class, treeFile, true);
+				if(tree.nameMap==null){
+					outstream.println("Hashing names.");
+					tree.hashNames();
+				}
+				assert(tree.nameMap!=null);
 			}
-			assert(tree.nameMap!=null);
 		}else{
 			tree=null;
+			flatTree=null;
 			throw new RuntimeException("No tree specified.");
 		}
-		lifeNode=tree.getNodeByName("life");
+		lifeNode=(tree!=null ? tree.getNodeByName("life") : getNode(flatTree.getNodeByName("life")));
 	}
 	
 	void process(Timer t){
@@ -241,7 +248,7 @@ public class FindAncestor {
 	
 	private void fillTraversal(int id, IntList traversal, boolean addLife){
 		traversal.clear();
-		for(TaxNode node=tree.getNode(id); node!=null && node!=lifeNode; node=tree.getNode(node.pid)){
+		for(TaxNode node=getNode(id); node!=null && node!=lifeNode; node=getNode(node.pid)){
 			traversal.add(node.id);
 		}
 		if(addLife || traversal.size==0){traversal.add(lifeNode.id);}
@@ -251,7 +258,7 @@ public class FindAncestor {
 		for(int i=traversal.size-1; i>=0; i--){
 			final int id=traversal.get(i);
 			if(id>=0){
-				TaxNode tn=tree.getNode(id);
+				TaxNode tn=getNode(id);
 				//			bb.append(tn.level+"_"+tn.name);
 				bb.append(/*tn.level+"_"+*/tn.name);
 				if(i>0){bb.append('\t');}
@@ -308,12 +315,12 @@ public class FindAncestor {
 		for(int i=1; i<list.size && ancestor>-1; i++){
 			final int id=list.get(i);
 //			System.err.println(ancestor+"+"+id+" -> "+tree.commonAncestor(ancestor, id));
-			int x=tree.commonAncestor(ancestor, id);
+			int x=commonAncestor(ancestor, id);
 			if(x>-1){
 				ancestor=x;
 			}
 		}
-//		System.err.println("Ancestor node: "+tree.getNode(ancestor));
+//		System.err.println("Ancestor node: "+getNode(ancestor));
 //		System.err.println(list+" -> "+ancestor);
 //		if(ancestor<0){ancestor=lifeNode.id;}
 		return ancestor;
@@ -326,24 +333,24 @@ public class FindAncestor {
 		
 		for(int i=0; i<list.size; i++){
 			final int id=list.get(i);
-			TaxNode tn=tree.getNode(id);
+			TaxNode tn=getNode(id);
 //			System.err.println("Found node "+tn);
 			assert(tn!=null) : "No node for id "+id;
 			if(tn!=null){
-				tree.percolateUp(tn, 1);
+				percolateUp(tn, 1);
 			}
 		}
 		
 		TaxNode best=lifeNode;
 		for(int i=0; i<list.size; i++){
 			final int id=list.get(i);
-			TaxNode tn=tree.getNode(id);
+			TaxNode tn=getNode(id);
 			while(tn!=null && tn!=lifeNode){
 				if(tn.countSum>=majority && tn.level<best.level){
 					best=tn;
 					break;
 				}
-				tn=tree.getNode(tn.pid);
+				tn=getNode(tn.pid);
 			}
 		}
 		
@@ -351,9 +358,9 @@ public class FindAncestor {
 		
 		for(int i=0; i<list.size; i++){
 			final int id=list.get(i);
-			TaxNode tn=tree.getNode(id);
+			TaxNode tn=getNode(id);
 			if(tn!=null){
-				tree.percolateUp(tn, -1);
+				percolateUp(tn, -1);
 			}
 		}
 		
@@ -362,6 +369,22 @@ public class FindAncestor {
 	
 	/*--------------------------------------------------------------*/
 	
+	/** Nodes from a flat tree are cached, so identity comparisons and counts work as with a TaxTree */
+	private TaxNode getNode(int id){
+		return tree!=null ? tree.getNode(id) : flatTree.getCachedNode(id);
+	}
+	
+	private int commonAncestor(int a, int b){
+		return tree!=null ? tree.commonAncestor(a, b) : flatTree.commonAncestor(a, b);
+	}
+	
+	private void percolateUp(TaxNode tn, long amt){
+		if(tree!=null){tree.percolateUp(tn, amt);}
+		else{flatTree.percolateUp(tn, amt);}
+	}
+	
+	/*--------------------------------------------------------------*/
+	
 	private void printOptions(){
 		assert(false) : "printOptions: TODO";
 	}
@@ -377,6 +400,8 @@ public class FindAncestor {
 	private String treeFile=null;
 	
 	private final TaxTree tree;
+	/** Used instead of tree when the tree file is a .flattax file */
+	private final FlatTaxTree flatTree;
 	
 	private final TaxNode lifeNode;
 	
@@ -0,0 +1,356 @@
+package tax;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+import dna.Timer;
+import fileIO.MappedFile;
+import fileIO.ReadWrite;
+import structures.IntList;
+
+/**
+ * Read-only taxonomic tree stored as flat arrays in a memory-mapped file.
+ * Opening it costs nothing beyond mapping the file, and no TaxNode objects are created;
+ * nodes are addressed by taxID.
+ * Tools that accumulate counts on nodes can use getCachedNode, which creates nodes only for taxa that are looked up.
+ *
+ * Layout (big-endian):
+ * header: magic (long), version, slots (max taxID+1), nodeCount, hashSlots (ints), namePoolBytes (long);
+ * pid (int per slot, -1 for absent taxIDs); info (int per slot: level+1, plus CANONICAL);
+ * nameStart (long per slot, plus one), pointing into the UTF-8 name pool;
+ * name hash (int per hash slot: taxID, or -1), keyed by lowercase name with linear probing;
+ * name pool.
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class FlatTaxTree {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Converts a serialized TaxTree to flat format */
+	public static void main(String[] args){
+		ReadWrite.USE_UNPIGZ=true;
+		Timer t=new Timer();
+		TaxTree tree=ReadWrite.read(TaxTree.class, args[0], true);
+		write(tree, args[1]);
+		t.stop();
+		System.err.println("Wrote "+tree.nodeCount+" nodes to "+args[1]+".");
+		System.err.println("Time: \t"+t);
+	}
+
+	/** Maps an existing file for reading */
+	public FlatTaxTree(String fname){
+		file=new MappedFile(fname);
+		if(file.size<HEADER_BYTES || file.readLong(0)!=MAGIC){throw new RuntimeException(fname+" is not a flat tax tree.");}
+		final int version=file.readInt(8);
+		if(version!=VERSION){throw new RuntimeException("Unsupported flat tax tree version "+version+" in "+fname);}
+		slots=file.readInt(12);
+		nodeCount=file.readInt(16);
+		hashSlots=file.readInt(20);
+		hashMask=hashSlots-1;
+		pidStart=HEADER_BYTES;
+		infoStart=pidStart+4L*slots;
+		nameIndexStart=infoStart+4L*slots;
+		hashStart=nameIndexStart+8L*(slots+1);
+		poolStart=hashStart+4L*hashSlots;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Node Access          ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** True if this taxID is present */
+	public boolean contains(int id){
+		return id>=0 && id<slots && file.readInt(pidStart+4L*id)>=0;
+	}
+
+	/** Parent taxID, or -1 if absent; the root is its own parent */
+	public int getParent(int id){
+		return (id<0 || id>=slots) ? -1 : file.readInt(pidStart+4L*id);
+	}
+
+	/** Taxonomic level as in TaxTree, or -1 if unknown */
+	public int getLevel(int id){
+		return (file.readInt(infoStart+4L*id)&LEVEL_MASK)-1;
+	}
+
+	public boolean isCanonical(int id){
+		return (file.readInt(infoStart+4L*id)&CANONICAL)!=0;
+	}
+
+	public String getName(int id){
+		final long start=file.readLong(nameIndexStart+8L*id), stop=file.readLong(nameIndexStart+8L*(id+1));
+		if(start==stop){return null;}
+		final byte[] bytes=new byte[(int)(stop-start)];
+		file.readBytes(poolStart+start, bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/** Creates a TaxNode for this taxID, or returns null if absent; the node is not cached */
+	public TaxNode toTaxNode(int id){
+		if(!contains(id)){return null;}
+		TaxNode tn=new TaxNode(id, getParent(id), getLevel(id), getName(id));
+		tn.canonical=isCanonical(id);
+		return tn;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------         Cached Nodes         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Returns the TaxNode for this taxID, or null if absent.
+	 * Nodes are created on first use and cached, so counts accumulated on them persist.  Not thread-safe.
+	 */
+	public TaxNode getCachedNode(int id){
+		if(!contains(id)){return null;}
+		if(nodeCache==null){nodeCache=new HashMap<Integer, TaxNode>();}
+		TaxNode tn=nodeCache.get(id);
+		if(tn==null){
+			tn=toTaxNode(id);
+			nodeCache.put(id, tn);
+		}
+		return tn;
+	}
+
+	/** Nodes created by getCachedNode, sorted by taxID */
+	public ArrayList<TaxNode> cachedNodes(){
+		final ArrayList<TaxNode> list=new ArrayList<TaxNode>();
+		if(nodeCache==null){return list;}
+		final int[] ids=new int[nodeCache.size()];
+		int i=0;
+		for(Integer id : nodeCache.keySet()){ids[i++]=id;}
+		Arrays.sort(ids);
+		for(int id : ids){list.add(nodeCache.get(id));}
+		return list;
+	}
+
+	/** Add this amount to the cached node and all its ancestors, as in TaxTree.percolateUp */
+	public void percolateUp(TaxNode node, long amt){
+		if(amt==0){return;}
+		while(node.id!=node.pid){
+			node.incrementSum(amt);
+			node=getCachedNode(node.pid);
+		}
+		node.incrementSum(amt);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Queries            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Get the taxID from a name with a gi or ncbi prefix, or a bare number; -1 if not present */
+	public int getNode(String s){
+		final int id=TaxTree.parseNodeID(s);
+		return contains(id) ? id : -1;
+	}
+
+	public int getNode(byte[] s){
+		final int id=TaxTree.parseNodeID(s);
+		return contains(id) ? id : -1;
+	}
+
+	/** Return the ancestor with taxonomic level at least minLevel */
+	public int getNode(String s, int minLevel){
+		int id=getNode(s);
+		while(id>=0 && getLevel(id)<minLevel && getParent(id)!=id){
+			id=getParent(id);
+		}
+		return id;
+	}
+
+	public int commonAncestor(int a, int b){
+		assert(contains(a)) : "Invalid taxID: "+a;
+		assert(contains(b)) : "Invalid taxID: "+b;
+		if(!contains(a) || !contains(b)){return -1;}
+		while(a!=b){
+			if(getLevel(a)<getLevel(b)){
+				a=getParent(a);
+			}else{
+				b=getParent(b);
+			}
+		}
+		return a;
+	}
+
+	/** Ancestors of this node, starting with itself and excluding the root */
+	public IntList getAncestors(int id){
+		IntList list=new IntList();
+		for(int current=(contains(id) ? id : -1); current>=0 && getParent(current)!=current; current=getParent(current)){
+			list.add(current);
+		}
+		return list;
+	}
+
+	public int getNodeByName(String s){
+		IntList list=getNodesByName(s);
+		if(list==null || list.size<1){return -1;}
+		assert(list.size==1) : "Found multiple nodes for '"+s+"':\n"+list+"\n";
+		return list.get(0);
+	}
+
+	/** Same matching rules as TaxTree.getNodesByName */
+	public IntList getNodesByName(String s){
+		IntList list=getNodesByName(s, false);
+		if(list==null){list=getNodesByName(s, true);}
+		return list;
+	}
+
+	private IntList getNodesByName(String s, boolean lowercase){
+		if(s.indexOf('_')>=0){s=s.replace('_', ' ');}
+		if(lowercase){s=s.toLowerCase();}
+		IntList list=lookup(s, lowercase);
+		if(list!=null){return list;}
+
+		if(s.indexOf('_')<0 && s.indexOf(' ')<0){return null;}
+		String[] split=delimiter2.split(lowercase ? s.toLowerCase() : s, 8);
+		list=lookup(split[split.length-1], lowercase);
+		if(list==null){return list;}
+
+		IntList hits=new IntList(list.size);
+		for(int i=0; i<list.size; i++){
+			final int id=list.get(i);
+			if(matchesName(id, split, split.length-1)){hits.add(id);}
+		}
+		return hits.size<1 ? null : hits;
+	}
+
+	/** Same as TaxNode.matchesName */
+	private boolean matchesName(int id, String[] split, int idx){
+		for(; idx>=0; idx--){
+			if(!split[idx].equalsIgnoreCase(getName(id))){return false;}
+			id=getParent(id);
+		}
+		return true;
+	}
+
+	/** All nodes whose name equals s, or whose lowercase name equals s if lowercase is set; null if none */
+	private IntList lookup(String s, boolean lowercase){
+		final String key=s.toLowerCase();
+		IntList list=null;
+		for(int cell=hash(key)&hashMask; ; cell=(cell+1)&hashMask){
+			final int id=file.readInt(hashStart+4L*cell);
+			if(id<0){break;}
+			final String name=getName(id);
+			if(lowercase ? name.toLowerCase().equals(s) : name.equals(s)){
+				if(list==null){list=new IntList(4);}
+				list.add(id);
+			}
+		}
+		return list;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Builder            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Writes this tree in flat format; names are hashed as in TaxTree.hashNames */
+	public static void write(TaxTree tree, String fname){
+		final TaxNode[] nodes=tree.nodes;
+		final int slots=nodes.length;
+
+		final byte[][] names=new byte[slots][];
+		long poolBytes=0;
+		int named=0;
+		for(TaxNode n : nodes){
+			if(n!=null && n.name!=null){
+				names[n.id]=n.name.getBytes(UTF8);
+				poolBytes+=names[n.id].length;
+				if(!n.name.equals("environmental samples")){named++;}
+			}
+		}
+
+		final int hashSlots=Integer.highestOneBit(Math.max(2, named*2-1))<<1;
+		final int[] table=new int[hashSlots];
+		Arrays.fill(table, -1);
+		for(TaxNode n : nodes){//In order, so nodes with equal names are found in TaxTree's order
+			if(n!=null && n.name!=null && !n.name.equals("environmental samples")){
+				int cell=hash(n.name.toLowerCase())&(hashSlots-1);
+				while(table[cell]>=0){cell=(cell+1)&(hashSlots-1);}
+				table[cell]=n.id;
+			}
+		}
+
+		try {
+			DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname), 1<<20));
+			dos.writeLong(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(slots);
+			dos.writeInt(tree.nodeCount);
+			dos.writeInt(hashSlots);
+			dos.writeLong(poolBytes);
+			for(TaxNode n : nodes){dos.writeInt(n==null ? -1 : n.pid);}
+			for(TaxNode n : nodes){dos.writeInt(n==null ? 0 : (n.level+1)|(n.canonical ? CANONICAL : 0));}
+			long pos=0;
+			for(int i=0; i<slots; i++){
+				dos.writeLong(pos);
+				if(names[i]!=null){pos+=names[i].length;}
+			}
+			dos.writeLong(pos);
+			for(int x : table){dos.writeInt(x);}
+			for(byte[] name : names){
+				if(name!=null){dos.write(name);}
+			}
+			dos.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write flat tax tree "+fname, e);
+		}
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Helper Methods        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static int hash(String s){
+		int x=s.hashCode();
+		x^=(x>>>15);
+		x*=0x2c1b3c6d;
+		return x^(x>>>12);
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final MappedFile file;
+	/** Max taxID+1 */
+	public final int slots;
+	public final int nodeCount;
+	private final int hashSlots;
+	private final int hashMask;
+
+	private final long pidStart;
+	private final long infoStart;
+	private final long nameIndexStart;
+	private final long hashStart;
+	private final long poolStart;
+
+	/** Nodes created by getCachedNode, keyed by taxID */
+	private HashMap<Integer, TaxNode> nodeCache=null;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final long MAGIC=0x4242464C41545458L; //"BBFLATTX"
+	private static final int VERSION=1;
+	private static final int HEADER_BYTES=32;
+
+	private static final int LEVEL_MASK=0xFFFF;
+	private static final int CANONICAL=1<<16;
+
+	private static final Charset UTF8=Charset.forName("UTF-8");
+	private static final Pattern delimiter2=Pattern.compile("[\\s_]+");
+
+}
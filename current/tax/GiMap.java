@@ -0,0 +1,125 @@
+package tax;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import fileIO.MappedFile;
+
+/**
+ * Memory-mapped gi to taxID table.
+ * The file is a two-level page table: a directory with one entry per page of gi numbers,
+ * followed by only the pages that contain at least one gi.
+ * Lookups read the mapped file directly, so there is no load phase,
+ * and concurrent processes share the same page cache.
+ *
+ * Layout (big-endian):
+ * magic (long), version, pageBits, length (max gi+1), pages, usedPages, unused (ints);
+ * directory (int per page: index of the stored page, or -1);
+ * stored pages (int per gi: taxID, or -1).
+ *
+ * @author Brian Bushnell
+ * @date Oct 18, 2016
+ *
+ */
+public final class GiMap {
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Initialization        ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Maps an existing file for reading */
+	public GiMap(String fname){
+		file=new MappedFile(fname);
+		if(file.size<HEADER_BYTES || file.readLong(0)!=MAGIC){throw new RuntimeException(fname+" is not a gi map.");}
+		final int version=file.readInt(8);
+		if(version!=VERSION){throw new RuntimeException("Unsupported gi map version "+version+" in "+fname);}
+		pageBits=file.readInt(12);
+		pageMask=(1<<pageBits)-1;
+		length=file.readInt(16);
+		pages=file.readInt(20);
+		dataStart=HEADER_BYTES+4L*pages;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Methods            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/** Get the taxID for this gi number, or -1 if it is not present */
+	public int get(int gi){
+		if(gi<0 || gi>=length){return -1;}
+		final int page=file.readInt(HEADER_BYTES+4L*(gi>>>pageBits));
+		if(page<0){return -1;}
+		return file.readInt(dataStart+((((long)page)<<pageBits)+(gi&pageMask))*4);
+	}
+
+	/** Number of gi numbers covered (max gi+1) */
+	public int length(){return length;}
+
+	/*--------------------------------------------------------------*/
+	/*----------------           Builder            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	/**
+	 * Writes a dense gi to taxID array, with -1 for absent gi numbers, in mapped format.
+	 * @return Number of pages stored.
+	 */
+	public static int write(int[] array, String fname){
+		final int pageLen=1<<PAGE_BITS;
+		final int pages=(int)((array.length+(long)pageLen-1)>>>PAGE_BITS);
+		final int[] directory=new int[pages];
+		int used=0;
+		for(int p=0; p<pages; p++){
+			final int start=p<<PAGE_BITS, stop=Math.min(array.length, start+pageLen);
+			boolean empty=true;
+			for(int i=start; i<stop && empty; i++){empty=(array[i]<0);}
+			directory[p]=(empty ? -1 : used++);
+		}
+
+		try {
+			DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname), 1<<20));
+			dos.writeLong(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(PAGE_BITS);
+			dos.writeInt(array.length);
+			dos.writeInt(pages);
+			dos.writeInt(used);
+			dos.writeInt(0);
+			for(int x : directory){dos.writeInt(x);}
+			for(int p=0; p<pages; p++){
+				if(directory[p]>=0){
+					final int start=p<<PAGE_BITS;
+					for(int i=start, stop=start+pageLen; i<stop; i++){
+						dos.writeInt(i<array.length ? array[i] : -1);
+					}
+				}
+			}
+			dos.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write gi table "+fname, e);
+		}
+		return used;
+	}
+
+	/*--------------------------------------------------------------*/
+	/*----------------            Fields            ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private final MappedFile file;
+	private final int pageBits;
+	private final int pageMask;
+	private final int length;
+	private final int pages;
+	private final long dataStart;
+
+	/*--------------------------------------------------------------*/
+	/*----------------        Static Fields         ----------------*/
+	/*--------------------------------------------------------------*/
+
+	private static final long MAGIC=0x42424749444D4150L; //"BBGIDMAP"
+	private static final int VERSION=1;
+	private static final int HEADER_BYTES=32;
+	private static final int PAGE_BITS=12;
+
+}
@@ -23,7 +23,11 @@ public class GiToNcbi {
 		if(args.length>2){//Run a test
 			test(args);
 		}else if(args.length==2){//Write array
-			ReadWrite.write(array, args[1], true);
+			if(args[1].contains(".gimap")){
+				GiMap.write(array, args[1]);
+			}else{
+				ReadWrite.write(array, args[1], true);
+			}
 		}
 	}
 	
@@ -77,15 +81,15 @@ public class GiToNcbi {
 	public static int parseGiToNcbi(String s){
 		int x=parseGiNumber(s);
 		assert(x>=0);
-		assert(array!=null) : "To use gi numbers, you must load a gi table.";
+		assert(array!=null || map!=null) : "To use gi numbers, you must load a gi table.";
 //		if(x>=array.length || array[x]<0){x=(int)(Math.random()*array.length);} //Test to make sure array is nonempty.
-		if(x>=0/* && x<array.length*/){return array[x];}
+		if(x>=0/* && x<array.length*/){return lookup(x);}
 		return -1;
 	}
 	
 	public static int parseGiToNcbi(byte[] s){
 		int x=parseGiNumber(s);
-		if(x>=0){return array[x];}
+		if(x>=0){return lookup(x);}
 		return -1;
 	}
 	
@@ -150,7 +154,7 @@ public class GiToNcbi {
 	/** Get the taxID from a header starting with a taxID or gi number */
 	public static int getID(String s){
 		int x=parseGiNumber(s);
-		if(x>=0){return array[x];}
+		if(x>=0){return lookup(x);}
 		return parseNcbiNumber(s);
 	}
 	
@@ -203,15 +207,20 @@ public class GiToNcbi {
 	/** Get the taxID from a header starting with a taxID or gi number */
 	public static int getID(byte[] s){
 		int x=parseGiNumber(s);
-		if(x>=0){return array[x];}
+		if(x>=0){return lookup(x);}
 		return parseNcbiNumber(s);
 	}
 	
 	/** Get the taxID from a gi number */
 	public static int getID(int gi){
 		assert(gi>=0) : gi;
-		assert(gi<array.length) : gi+", "+array.length;
-		return array[gi];
+		assert(map!=null || gi<array.length) : gi+", "+array.length;
+		return lookup(gi);
+	}
+	
+	/** Reads the mapped table if one was loaded, otherwise the array */
+	private static int lookup(int gi){
+		return map==null ? array[gi] : map.get(gi);
 	}
 	
 	public static void initialize(String fname){
@@ -220,7 +229,11 @@ public class GiToNcbi {
 			synchronized(GiToNcbi.class){
 				if(!initialized || fileString==null || !fileString.equals(fname)){
 					fileString=fname;
-					if(fname.contains(".int1d")){
+					array=null;
+					map=null;
+					if(fname.contains(".gimap")){
+						map=new GiMap(fname);
+					}else if(fname.contains(".int1d")){
 						array=ReadWrite.read(int[].class, fname, true);
 					}else{
 						array=makeArray(fname);
@@ -235,6 +248,7 @@ public class GiToNcbi {
 	
 	public static synchronized void unload(){
 		array=null;
+		map=null;
 		fileString=null;
 		initialized=false;
 	}
@@ -295,6 +309,8 @@ public class GiToNcbi {
 	}
 	
 	private static int[] array;
+	/** Memory-mapped table, used instead of the array for .gimap files */
+	private static GiMap map;
 	private static String fileString;
 	
 	public static boolean verbose=false;
@@ -15,6 +15,7 @@ import fileIO.TextStreamWriter;
 import align2.ReadStats;
 import align2.Shared;
 import align2.Tools;
+import structures.IntList;
 
 /**
  * Filters sequences according to their taxonomy,
@@ -134,14 +135,21 @@ public class PrintTaxonomy {
 		}
 		if(treeFile!=null){
 			outstream.println("Loading tree.");
-			tree=ReadWrite.read(TaxTree.class, treeFile, true);
-			if(tree.nameMap==null){
-				outstream.println("Hashing names.");
-				tree.hashNames();
+			if(treeFile.contains(".flattax")){
+				flatTree=new FlatTaxTree(treeFile);
+				tree=null;
+			}else{
+				flatTree=null;
+				tree=ReadWrite.read(TaxTree.class, treeFile, true);
+				if(tree.nameMap==null){
+					outstream.println("Hashing names.");
+					tree.hashNames();
+				}
+				assert(tree.nameMap!=null);
 			}
-			assert(tree.nameMap!=null);
 		}else{
 			tree=null;
+			flatTree=null;
 			throw new RuntimeException("No tree specified.");
 		}
 	}
@@ -170,7 +178,7 @@ public class PrintTaxonomy {
 		if(ffcount!=null){
 			TextStreamWriter tswc=new TextStreamWriter(ffcount);
 			tswc.start();
-			for(TaxNode tn : tree.nodes){
+			for(TaxNode tn : (tree!=null ? Arrays.asList(tree.nodes) : flatTree.cachedNodes())){
 				if(tn!=null && tn.countRaw>0){
 					tswc.println(tn.countRaw+"\t"+tn.name);
 				}
@@ -206,12 +214,12 @@ public class PrintTaxonomy {
 	
 	void printTaxonomy(String name, final TextStreamWriter tsw){
 		tsw.print("\n");
-		TaxNode tn=tree.getNode(name);
+		TaxNode tn=getNode(name);
 		if(tn!=null){
 			printTaxonomy(tn, tsw);
 			return;
 		}else{
-			List<TaxNode> list=tree.getNodesByName(name);
+			List<TaxNode> list=getNodesByName(name);
 			if(list!=null){
 				for(TaxNode tn2 : list){
 					printTaxonomy(tn2, tsw);
@@ -225,12 +233,12 @@ public class PrintTaxonomy {
 	
 	void printTaxLevel(String name, final TextStreamWriter tsw){
 		tsw.print("\n");
-		TaxNode tn=tree.getNode(name);
+		TaxNode tn=getNode(name);
 		if(tn!=null){
 			printTaxLevel(tn, tsw);
 			return;
 		}else{
-			List<TaxNode> list=tree.getNodesByName(name);
+			List<TaxNode> list=getNodesByName(name);
 			if(list!=null){
 				for(TaxNode tn2 : list){
 					printTaxLevel(tn2, tsw);
@@ -258,13 +266,13 @@ public class PrintTaxonomy {
 		do{
 			if(tn.level<=taxLevel){tn.incrementRaw(1);}
 			tsw.println(tn.levelString()+"\t"+tn.id+"\t"+tn.name);
-			tn=tree.getNode(tn.pid);
+			tn=getNode(tn.pid);
 		}while(tn!=null && tn.id!=tn.pid);
 	}
 	
 	void printTaxLevel(TaxNode tn, final TextStreamWriter tsw){
 		if(tn==null){tn=unknown;}
-		while(tn!=null && tn.id!=tn.pid && tn.level<taxLevel){tn=tree.getNode(tn.pid);}
+		while(tn!=null && tn.id!=tn.pid && tn.level<taxLevel){tn=getNode(tn.pid);}
 		if(tsw!=null)tsw.println(tn.name);
 		tn.incrementRaw(1);
 	}
@@ -276,6 +284,28 @@ public class PrintTaxonomy {
 //		tn.incrementRaw(1);
 //	}
 	
+	/*--------------------------------------------------------------*/
+	
+	/** Nodes from a flat tree are cached, so raw counts accumulate as with a TaxTree */
+	private TaxNode getNode(int id){
+		return tree!=null ? tree.getNode(id) : flatTree.getCachedNode(id);
+	}
+	
+	private TaxNode getNode(String name){
+		if(tree!=null){return tree.getNode(name);}
+		final int id=flatTree.getNode(name);
+		return id<0 ? null : flatTree.getCachedNode(id);
+	}
+	
+	private List<TaxNode> getNodesByName(String name){
+		if(tree!=null){return tree.getNodesByName(name);}
+		final IntList ids=flatTree.getNodesByName(name);
+		if(ids==null){return null;}
+		ArrayList<TaxNode> list=new ArrayList<TaxNode>(ids.size);
+		for(int i=0; i<ids.size; i++){list.add(flatTree.getCachedNode(ids.get(i)));}
+		return list;
+	}
+	
 	/** This is called if the program runs with no parameters */
 	private void printOptions(){
 		throw new RuntimeException("TODO");
@@ -297,6 +327,8 @@ public class PrintTaxonomy {
 	private String treeFile=TaxTree.DefaultTreeFile;
 	
 	private final TaxTree tree;
+	/** Used instead of tree when the tree file is a .flattax file */
+	private final FlatTaxTree flatTree;
 	
 	/** Level to print */
 	private int taxLevel=TaxTree.stringToLevel("phylum");
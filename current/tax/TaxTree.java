@@ -61,7 +61,11 @@ public class TaxTree implements Serializable{
 		System.out.println("Time: \t"+t);
 		
 		if(args.length>2){//Write a tree
-			ReadWrite.write(tree, args[2], true);
+			if(args[2].contains(".flattax")){
+				FlatTaxTree.write(tree, args[2]);
+			}else{
+				ReadWrite.write(tree, args[2], true);
+			}
 		}
 	}
 	
@@ -412,6 +416,17 @@ public class TaxTree implements Serializable{
 	}
 	
 	public TaxNode getNode(String s){
+		final int id=parseNodeID(s);
+		return id<0 ? null : getNode(id);
+	}
+	
+	public TaxNode getNode(byte[] s){
+		final int id=parseNodeID(s);
+		return id<0 ? null : getNode(id);
+	}
+	
+	/** Get the taxID from a name with a gi or ncbi prefix, or a bare number; -1 if it cannot be parsed */
+	static int parseNodeID(String s){
 		{
 			int index=s.indexOf('|');
 			if(index<0){index=s.indexOf("_");}
@@ -424,21 +439,22 @@ public class TaxTree implements Serializable{
 //				System.err.println("Parsing ncbi number.");
 				number=GiToNcbi.getID(s);
 			}
-			if(number>=0){return getNode(number);}
+			if(number>=0){return number;}
 		}
 		if(verbose){System.err.println("Can't process name "+s);}
 		if(Character.isDigit(s.charAt(0)) && s.length()<=9){
 			try {
-				return getNode(Integer.parseInt(s));
+				return Integer.parseInt(s);
 			} catch (NumberFormatException e) {
 				//ignore
 			}
 		}
-		return null;
+		return -1;
 	}
 	
-	public TaxNode getNode(byte[] s){
-		if(Tools.indexOf(s, (byte)'|')>=0){return getNode(GiToNcbi.getID(s));}
+	/** Get the taxID from a name with a gi or ncbi prefix, or a bare number; -1 if it cannot be parsed */
+	static int parseNodeID(byte[] s){
+		if(Tools.indexOf(s, (byte)'|')>=0){return GiToNcbi.getID(s);}
 		
 		{
 			int index=Tools.indexOf(s, (byte)'|');
@@ -451,17 +467,17 @@ public class TaxTree implements Serializable{
 //				System.err.println("Parsing ncbi number.");
 				number=GiToNcbi.getID(s);
 			}
-			if(number>=0){return getNode(number);}
+			if(number>=0){return number;}
 		}
 		if(verbose){System.err.println("Can't process name "+new String(s));}
 		if(Character.isDigit(s[0]) && s.length<=9){
 			try {
-				return getNode(Tools.parseInt(s, 0, s.length));
+				return Tools.parseInt(s, 0, s.length);
 			} catch (NumberFormatException e) {
 				//ignore
 			}
 		}
-		return null;
+		return -1;
 	}
 	
 	public TaxNode getNode(int id){
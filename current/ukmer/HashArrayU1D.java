@@ -137,6 +137,45 @@ public final class HashArrayU1D extends HashArrayU {
 		return r;
 	}
 	
+	/*--------------------------------------------------------------*/
+	/*----------------          Edge Masks          ----------------*/
+	/*--------------------------------------------------------------*/
+	
+	/** Allocates an empty edge mask per cell, to be filled with setCellEdges */
+	public void initializeEdges(){
+		edges=new byte[arrayLength()];
+	}
+	
+	/** 
+	 * Returns the edge mask of this kmer's key orientation: bits 0-3 are right extensions, bits 4-7 left extensions.
+	 * Returns -1 if there are no masks or the kmer is not in the main arrays.
+	 */
+	public int getEdges(final Kmer kmer){
+		final byte[] e=edges;
+		if(e==null){return -1;}
+		final int cell=findKmer(kmer);
+		return cell<0 ? -1 : e[cell]&0xFF;
+	}
+	
+	/**
+	 * Same as getValue, but also stores this kmer's edge mask in edgeReturn[pos] from the same probe,
+	 * or -1 if there are no masks or the kmer is not in the main arrays.
+	 */
+	public int getValue(final Kmer kmer, final int[] edgeReturn, final int pos){
+		final int cell=findKmer(kmer);
+		if(cell<0){
+			edgeReturn[pos]=-1;
+			return cell==NOT_PRESENT ? NOT_PRESENT : victims.getValue(kmer);
+		}
+		final byte[] e=edges;
+		edgeReturn[pos]=(e==null ? -1 : e[cell]&0xFF);
+		return readCellValue(cell);
+	}
+	
+	public void setCellEdges(final int cell, final int mask){
+		edges[cell]=(byte)mask;
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------   Resizing and Rebalancing   ----------------*/
 	/*--------------------------------------------------------------*/
@@ -180,6 +219,7 @@ public final class HashArrayU1D extends HashArrayU {
 		}
 		
 		prime=prime2;
+		edges=null;
 //		System.err.println("Resized to "+prime+"; load="+(size*1f/prime));
 		long[][] oldk=arrays;
 		int[] oldc=values;
@@ -254,6 +294,7 @@ public final class HashArrayU1D extends HashArrayU {
 	public long regenerate(){
 		long sum=0;
 		assert(owners==null) : "Clear ownership before regeneration.";
+		edges=null;
 		final Kmer kmer=new Kmer(kbig);
 		for(int pos=0; pos<values.length; pos++){
 			Kmer key=fillKmer(pos, kmer);
@@ -290,6 +331,8 @@ public final class HashArrayU1D extends HashArrayU {
 	/*--------------------------------------------------------------*/
 	
 	private int[] values;
+	/** Optional de Bruijn edge masks, parallel to arrays; null when absent or invalidated */
+	private byte[] edges;
 	
 	public int[] values(){return values;}
 	
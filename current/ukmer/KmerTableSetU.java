@@ -973,64 +973,116 @@ public class KmerTableSetU extends AbstractKmerTableSet {
 	}
 	
 	public int fillRightCounts(Kmer kmer, int[] counts){
+		return fillRightCounts(kmer, counts, getEdges(kmer), null);
+	}
+	
+	/**
+	 * Fills counts of the 4 right extensions, probing only those present in the edge mask.
+	 * @param edges This kmer's edge mask from getEdges or a previous call's nextEdges, or -1 to probe all 4
+	 * @param nextEdges If not null, receives each extension's edge mask from the same probe as its count,
+	 * so the caller can pass it on after advancing instead of looking the kmer up again
+	 * @return Position of the highest count
+	 */
+	public int fillRightCounts(Kmer kmer, int[] counts, int edges, int[] nextEdges){
 		assert(kmer.len>=kbig);
 		if(verbose){outstream.println("fillRightCounts:   "+kmer);}
+		final boolean getNext=(edgeMasks && nextEdges!=null);
 		int max=-1, maxPos=0;
 		
 //		final Kmer kmer2=new Kmer(kmer);//123 TODO: Slow, for an assertion only;
 		
 		for(int i=0; i<=3; i++){
-			final long old=kmer.addRightNumeric(i);
-			if(verbose){outstream.println("kmer:               "+kmer);}
-			int way=kmer.mod(ways);
-			int count=tables[way].getValue(kmer);
-			assert(count==NOT_PRESENT || count>=0);
-			count=Tools.max(count, 0);
+			int count=0;
+			if(nextEdges!=null){nextEdges[i]=-1;}
+			if(edges<0 || ((edges>>i)&1)!=0){
+				final long old=kmer.addRightNumeric(i);
+				if(verbose){outstream.println("kmer:               "+kmer);}
+				int way=kmer.mod(ways);
+				if(getNext){
+					count=((HashArrayU1D)tables[way]).getValue(kmer, nextEdges, i);
+					nextEdges[i]=orientEdges(nextEdges[i], kmer.key()==kmer.array1());
+				}else{
+					count=tables[way].getValue(kmer);
+				}
+				assert(count==NOT_PRESENT || count>=0);
+				count=Tools.max(count, 0);
+				kmer.addLeftNumeric(old);
+			}
 			counts[i]=count;
 			if(count>max){
 				max=count;
 				maxPos=i;
 			}
-			kmer.addLeftNumeric(old);
 //			assert(kmer.equals(kmer2));
 		}
 		return maxPos;
 	}
 	
 	public int fillLeftCounts(final Kmer kmer, int[] counts){
+		return fillLeftCounts(kmer, counts, getEdges(kmer), null);
+	}
+	
+	/**
+	 * Fills counts of the 4 left extensions, probing only those present in the edge mask.
+	 * @param edges This kmer's edge mask from getEdges or a previous call's nextEdges, or -1 to probe all 4
+	 * @param nextEdges If not null, receives each extension's edge mask from the same probe as its count
+	 * @return Position of the highest count
+	 */
+	public int fillLeftCounts(final Kmer kmer, int[] counts, int edges, int[] nextEdges){
 		assert(kmer.len>=kbig);
 		if(verbose){outstream.println("fillLeftCounts:    "+kmer);}
+		final boolean getNext=(edgeMasks && nextEdges!=null);
+		edges=(edges<0 ? -1 : edges>>4);
 		int max=-1, maxPos=0;
 		
 //		final Kmer kmer2=new Kmer(kmer);//123 TODO: Slow, for an assertion only;
 //		assert(false) : kmer+", "+kmer2;
 		
 		for(int i=0; i<=3; i++){
-			if(verbose){
-				outstream.println("kmer:               "+kmer+" (key==array1 ? "+(kmer.key()==kmer.array1()));
-//				outstream.println("kmer2:              "+kmer2);
-			}
-			final long old=kmer.addLeftNumeric(i);
-			if(verbose){
-				outstream.println("after:              "+kmer+" (key==array1 ? "+(kmer.key()==kmer.array1()));
-				outstream.println("i="+i+", old="+old);
+			int count=0;
+			if(nextEdges!=null){nextEdges[i]=-1;}
+			if(edges<0 || ((edges>>i)&1)!=0){
+				if(verbose){
+					outstream.println("kmer:               "+kmer+" (key==array1 ? "+(kmer.key()==kmer.array1()));
+//					outstream.println("kmer2:              "+kmer2);
+				}
+				final long old=kmer.addLeftNumeric(i);
+				if(verbose){
+					outstream.println("after:              "+kmer+" (key==array1 ? "+(kmer.key()==kmer.array1()));
+					outstream.println("i="+i+", old="+old);
+				}
+				int way=kmer.mod(ways);
+				if(getNext){
+					count=((HashArrayU1D)tables[way]).getValue(kmer, nextEdges, i);
+					nextEdges[i]=orientEdges(nextEdges[i], kmer.key()==kmer.array1());
+				}else{
+					count=tables[way].getValue(kmer);
+				}
+				assert(count==NOT_PRESENT || count>=0);
+				count=Tools.max(count, 0);
+				kmer.addRightNumeric(old);
+				if(verbose){outstream.println("restored:           "+kmer);}
 			}
-			int way=kmer.mod(ways);
-			int count=tables[way].getValue(kmer);
-			assert(count==NOT_PRESENT || count>=0);
-			count=Tools.max(count, 0);
 			counts[i]=count;
 			if(count>max){
 				max=count;
 				maxPos=i;
 			}
-			kmer.addRightNumeric(old);
-			if(verbose){outstream.println("restored:           "+kmer);}
 //			assert(kmer.equals(kmer2)) : kmer+", "+kmer2+", "+kmer.xor()+", "+kmer2.xor();
 		}
 		return maxPos;
 	}
 	
+	/** 
+	 * Edge mask of this kmer in its own orientation: bits 0-3 are right extensions, bits 4-7 left extensions.
+	 * Returns -1 if edge masks are disabled or unknown for this kmer.
+	 */
+	public int getEdges(final Kmer kmer){
+		if(!edgeMasks){return -1;}
+		final int edges=((HashArrayU1D)tables[kmer.mod(ways)]).getEdges(kmer);
+		return orientEdges(edges, kmer.key()==kmer.array1());
+	}
+	
 	/*--------------------------------------------------------------*/
 	/*----------------       Printing Methods       ----------------*/
 	/*--------------------------------------------------------------*/
@@ -254,6 +254,13 @@ gcpairs=t               Use average GC of paired reads.
 idhist=<file>           Histogram of read count versus percent identity.
 idbins=100              Number idhist bins.  Set to 'auto' to use read length.
 statsfile=stderr        Mapping statistics are printed here.
+stagestats=f            Time each mapping stage (find, scoring, rescue, match 
+                        strings, output) per thread.  Set to a filename to 
+                        write the totals there; .json gives JSON, else TSV.
+                        Times are exclusive of nested stages (such as 
+                        scoring during rescue).  'none' disables.
+stagestatsinterval=0    If positive, append a snapshot of stage timings to 
+                        <stagestats>.interval every this many seconds.
 
 Coverage output parameters (these may reduce speed and use more RAM):
 
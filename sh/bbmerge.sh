@@ -76,6 +76,8 @@ trimpolya=t          Trim trailing poly-A tail from adapter output.
 Processing Parameters:
 usejni=f             (jni) Do overlapping in C code, which is faster.  Requires
                      compiling the C code; details are in /jni/README.txt.
+bitoverlap=t         Score candidate overlaps on packed reads in Java when jni
+                     is not used.  Results are identical either way.
 merge=t              Create merged reads.  If set to false, you can still 
                      generate an insert histogram.
 ecco=f               Error-correct the overlapping part, but don't merge.
@@ -39,6 +39,7 @@ zerobin=f           Set to true if you want kmers with a count of 0 to go in the
                     The reason is that based on the 'minq' and 'minprob' settings, some kmers may be excluded from the bloom filter.
 tmpdir=$TMPDIR      This will specify a directory for temp files (only needed for multipass runs).  If null, they will be written to the output directory.
 usetempdir=t        Allows enabling/disabling of temporary directory; if disabled, temp files will be written to the output directory.
+binarytemp=t        Write temp files in BBTools' binary read format (.bbr), which is faster to write and reread than fastq.
 qout=auto           ASCII offset for output quality.  May be 33 (Sanger), 64 (Illumina), or auto (same as input).
 rename=f            Rename reads based on their kmer depth.
 
@@ -63,6 +63,7 @@ bs=<file>            Write a shell script to 'file' that will turn the sam outpu
 scafstats=<file>     Write statistics on how many reads mapped to which scaffold to this file.
 refstats=<file>      Write statistics on how many reads mapped to which reference to this file.
 nzo=t                Only print lines with nonzero coverage.
+splitrouter=t        Route reads and stats through per-thread integer tables rather than name lookups.
 
 ***** Notes *****
 Almost all BBMap parameters can be used; run bbmap.sh for more details.
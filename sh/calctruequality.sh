@@ -32,6 +32,9 @@ passes=2            Generate matrices for 1-pass recalibration only.  Max is 2.
 recalqmax=42        Adjust max quality scores tracked.
 loadq102=           For each recalibration matrix, enable or disable that matrix with t/f.
                     You can specify pass1 or pass2 like this: loadq102_p1=f loadq102_p2=t.
+binarytable=t       Also write the selected matrices as one flattened binary table
+                    per pass (recaltable_p#.bin).  Recalibration loads it instead
+                    of the text matrices when it is newer and has the same matrices.
 
 Java Parameters:
 -Xmx                This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
@@ -19,6 +19,8 @@ Optional parameters (and their defaults)
 in=<file>           Input file.
 out=<file>          Output file.  May not be standard out.
 groups=16           Use this many intermediate files (to save memory).
+binarytemp=t        Write intermediate files in BBTools' binary read format (.bbr)
+                    rather than the output format.
 rcomp=t             Give read clumps the same orientation.
                     Should be disabled for paired reads.
 rename=t            Add kmer information to the name.
@@ -19,6 +19,14 @@ in=<file,file...>   List of sketches.
 size=10000          Default size of sketches.  Does not need to be specified,
                     but setting it correctly may let the program run faster.
 
+Index parameters:
+makeindex=<file>    Write an inverted index of all input sketches, instead of
+                    comparing them.  The index is memory-mapped when used.
+index=<file>        Compare every input sketch to all sketches in this index,
+                    using multiple threads.
+hits=10             Report at most this many matches per sketch, best first.
+cutoff=0.02         Ignore matches with identity below this.
+
 Java Parameters:
 -Xmx            This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
                 -Xmx20g will specify 20 gigs of RAM, and -Xmx200m will specify 200 megs.  The max is typically 85% of physical memory.
@@ -16,6 +16,9 @@ Usage:  gi2ancestors.sh in=<input file> out=<output file>
 Standard parameters:
 in=<file>       Input text file with names sequence names and GI numbers.
 out=<file>      Output file.
+table=<file>    A table translating gi numbers to NCBI taxIDs.
+tree=<file>     A taxonomic tree made by TaxTree, such as tree.taxtree.gz.
+                A flat tree such as tree.flattax may also be used.
 overwrite=f     (ow) Set to false to force the program to abort rather than
                 overwrite an existing file.
 
@@ -13,6 +13,10 @@ Dump files are at ftp://ftp.ncbi.nih.gov/pub/taxonomy/
 
 Usage:  gitable.sh gi_taxid_nucl.dmp.gz,gi_taxid_prot.dmp.gz gitable.int1d.gz
 
+If the output name contains .gimap, a memory-mapped table is written instead.
+It needs no load phase and is shared by concurrent processes; any program
+accepting a gi table can use it.  An existing .int1d file may be the input.
+
 
 Java Parameters:
 -Xmx    This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
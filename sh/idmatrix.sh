@@ -20,6 +20,17 @@ percent=f           Output identity as percent rather than a fraction.
 edits=              Allow at most this much edit distance.  Default is the
                     length of the longest input sequence. Lower is faster.
 width=              Alignment bandwidth, lower is faster.  Default: 2*edits+1.
+minid=0             Report pairs below this identity (fraction or percent) as 0.
+                    Alignments stop early once a pair falls below it.
+sparse=f            Instead of a matrix, print one line per pair with identity
+                    at least minid: name1, name2, identity.
+prefilter=t         When minid is set, skip aligning pairs whose kmer sketches
+                    predict an identity below minid-margin.
+margin=0.1          Prefilter tolerance for sketch estimation error.
+k=12                Prefilter kmer length.
+sketchsize=200      Prefilter kmers per sequence.
+tile=64             Pairs are processed in tiles of this many rows and columns,
+                    which are shared among threads for load balancing.
 usejni=f            (jni) Do alignments faster, in C code.  Requires 
                     compiling the C code; details are in /jni/README.txt.
 
@@ -19,6 +19,12 @@ k=31              Use this kmer length for counting.
 buckets=1999      Use this many buckets for counting; higher decreases variance.
 bits=8            Hash this many bits per cycle.
 seed=-1           Use this seed for hash functions.  A negative number forces a random seed.
+outsketch=<file>  Write the estimator state to a binary sketch file.
+insketch=<file>   Comma-delimited list of sketch files to merge into the result.
+                  Input files are optional when merging.  Unless buckets, bits,
+                  k or seed are given, they are taken from the first sketch.
+                  Sketches can only be merged if all four parameters match;
+                  when writing or merging, a negative seed becomes 12345.
 
 Shortcuts: 
 The # symbol will be substituted for 1 and 2.
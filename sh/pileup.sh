@@ -56,8 +56,17 @@ arrays=auto         Set to t/f to manually force the use of coverage arrays.  Ar
 bitsets=auto        Set to t/f to manually force the use of coverage bitsets.
 32bit=f             Set to true if you need per-base coverage over 64k; does not affect per-scaffold coverage precision.
                     This option will double RAM usage (when calculating per-base coverage).
+sparse=4g           (sparsecov) Use sparse coverage arrays, which only allocate
+                    covered regions, when the reference has at least this many
+                    bases.  Set to t or f to force them on or off.
 delcoverage=t       (delcov) Count bases covered by deletions as covered.
                     True is faster than false.
+mt=t                (multithreaded) Parse sam lines on multiple threads.  Set
+                    the thread count with threads=; physical coverage mode
+                    always uses one thread.  Threads keep their own counts,
+                    and lock coverage arrays in 4kb stripes, so sorted input
+                    and references with few scaffolds still use all threads.
+                    Bitsets are locked per scaffold.
 
 Java Parameters:
 -Xmx                This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
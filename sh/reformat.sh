@@ -92,7 +92,12 @@ samplerate=1            Randomly output only this fraction of reads; 1 means sam
 sampleseed=-1           Set to a positive number to use that prng seed for sampling (allowing deterministic sampling).
 samplereadstarget=0     (srt) Exact number of OUTPUT reads (or pairs) desired.
 samplebasestarget=0     (sbt) Exact number of OUTPUT bases desired.
-                        Important: srt/sbt flags should not be used with stdin, samplerate, qtrim, minlength, or minavgquality.
+                        Important: srt/sbt flags should not be used with samplerate, qtrim, minlength, or minavgquality.
+reservoir=f             Sample srt/sbt targets in a single pass, holding only the sample
+                        in memory, instead of counting the input first.  Used
+                        automatically when reading from stdin.
+sampleorder=t           With reservoir, output the sample in input order rather than
+                        random order.
 
 Trimming and filtering parameters:
 
@@ -161,8 +166,9 @@ Java Parameters:
 -Xmx                    This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
                         -Xmx20g will specify 20 gigs of RAM, and -Xmx200m will specify 200 megs.  The max is typically 85% of physical memory.
 
-Supported input formats are fastq, fasta, fast+qual, scarf, and bread (BBMap's native format)
-Supported output formats are fastq, fasta, fast+qual, bread, sam, and bam (bam only if samtools is installed)
+Supported input formats are fastq, fasta, fast+qual, scarf, bread (BBMap's native format), and bbr (binary reads)
+Supported output formats are fastq, fasta, fast+qual, bread, bbr, sam, and bam (bam only if samtools is installed)
+The bbr format is intended for temporary files; it is compact and fast, but does not retain sam headers.
 Supported compression formats are gz, zip, and bz2
 To read from stdin, set 'in=stdin'.  The format should be specified with an extension, like 'in=stdin.fq.gz'
 To write to stdout, set 'out=stdout'.  The format should be specified with an extension, like 'out=stdout.fasta'
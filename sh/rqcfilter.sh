@@ -45,6 +45,8 @@ outribo=ribo.fq.gz           Output for ribosomal reads, if removeribo=t.
 reproduceName=reproduce.sh   Name of shellscript to reproduce these results.
 usetmpdir=t                  Write temp files to TMPDIR.
 tmpdir=                      Override TMPDIR.
+pipeline=f                   Stream reads between consecutive steps in memory, running
+                             them concurrently, instead of writing temp files.
 
 Adapter trimming parameters:
 trimhdist=1         Hamming distance used for trimming.
@@ -25,6 +25,17 @@ shuffle             Randomly reorders reads (default).
 name                Sort reads by name.
 coordinate          Sort reads by mapping location.
 sequence            Sort reads by sequence.
+seed=-1             Set to a nonnegative number for deterministic shuffling.
+
+Memory parameters:
+memory=             Memory budget for shuffling in memory.  Default is half of
+                    available memory.  Larger inputs are scattered randomly into
+                    temporary buckets on disk, which are then shuffled one at a time.
+                    Only applies to shuffling; use sortreads.sh to sort large inputs.
+tempbuckets=0       Number of temporary buckets; 0 chooses automatically from the
+                    input size.  Oversized buckets are split again as needed.
+tmpdir=             Override the temporary bucket directory.
+usetmpdir=t         Write temporary buckets to TMPDIR rather than the output directory.
 
 
 Java Parameters:
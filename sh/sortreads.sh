@@ -0,0 +1,97 @@
+#!/bin/bash
+#sortreads in=<infile> out=<outfile>
+
+usage(){
+echo "
+Written by Brian Bushnell
+Last modified October 18, 2016
+
+Description:  Sorts reads by name, sequence, mapping position, numeric ID, or kmer,
+keeping pairs together.  Input may be larger than memory; sorted runs are written
+to compressed temporary files and merged.
+
+Usage:  sortreads.sh in=<file> out=<file>
+
+
+Standard parameters:
+in=<file>           The 'in=' flag is needed if the input file is not the first parameter.  'in=stdin' will pipe from standard in.
+in2=<file>          Use this if 2nd read of pairs are in a different file.
+out=<file>          The 'out=' flag is needed if the output file is not the second parameter.  'out=stdout' will pipe to standard out.
+out2=<file>         Use this to write 2nd read of pairs to a different file.
+overwrite=t         (ow) Set to false to force the program to abort rather than overwrite an existing file.
+ziplevel=2          (zl) Set to 1 (lowest) through 9 (max) to change compression level; lower compression is faster.
+interleaved=auto    (int) Set to t or f to override interleaving autodetection.
+
+Sorting parameters:
+name                Sort reads by name (default).
+coordinate          Sort reads by mapping location.
+sequence            Sort reads by sequence.
+id                  Sort reads by numeric ID.
+kmer                Sort reads by their highest-hashing kmer, like Clumpify.  Not for sam input.
+k=31                Kmer length for kmer sorting.
+rcomp=t             Reverse-complement reads in kmer mode so shared kmers have the same orientation.
+
+Memory parameters:
+memory=             Bytes of reads to hold in memory at once, e.g. memory=2g.
+                    Default is half of the available heap.
+fanin=64            Maximum number of temporary files merged at once.
+tmpdir=             Write temporary files here.  Default is $TMPDIR if set,
+                    otherwise the output directory.
+usetmpdir=t         Set to false to ignore $TMPDIR.
+
+
+Java Parameters:
+-Xmx                This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
+                    -Xmx20g will specify 20 gigs of RAM, and -Xmx200m will specify 200 megs.  The max is typically 85% of physical memory.
+
+Please contact Brian Bushnell at bbushnell@lbl.gov if you encounter any problems.
+"
+}
+
+pushd . > /dev/null
+DIR="${BASH_SOURCE[0]}"
+while [ -h "$DIR" ]; do
+  cd "$(dirname "$DIR")"
+  DIR="$(readlink "$(basename "$DIR")")"
+done
+cd "$(dirname "$DIR")"
+DIR="$(pwd)/"
+popd > /dev/null
+
+#DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )/"
+CP="$DIR""current/"
+
+z="-Xmx2g"
+z2="-Xms2g"
+EA="-ea"
+set=0
+
+if [ -z "$1" ] || [[ $1 == -h ]] || [[ $1 == --help ]]; then
+	usage
+	exit
+fi
+
+calcXmx () {
+	source "$DIR""/calcmem.sh"
+	parseXmx "$@"
+	if [[ $set == 1 ]]; then
+		return
+	fi
+	freeRam 2000m 84
+	z="-Xmx${RAM}m"
+	z2="-Xms${RAM}m"
+}
+calcXmx "$@"
+
+sortreads() {
+	if [[ $NERSC_HOST == genepool ]]; then
+		module unload oracle-jdk
+		module load oracle-jdk/1.7_64bit
+		module load pigz
+	fi
+	local CMD="java $EA $z -cp $CP jgi.SortReads $@"
+	echo $CMD >&2
+	eval $CMD
+}
+
+sortreads "$@"
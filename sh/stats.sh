@@ -29,6 +29,12 @@ pdl=<f>         (printduplicatelines) Set to true to print lines in the
 n_=<t>          This flag will prefix the terms 'contigs' and 'scaffolds'
                 with 'n_' in formats 3-6.
 addname=<f>     Adds a column for input file name, for formats 3-6.
+t=<1>           Threads for counting uncompressed fasta files; 'auto' uses
+                all available.  Results are identical to t=1.  Each thread
+                needs its own length histograms, so raise -Xmx with threads.
+chunksize=16m   Bytes per chunk of the input processed by a thread.
+cutoff=1m       Contigs and scaffolds shorter than this are tallied in length
+                histograms for N50/L50; longer ones are sorted individually.
 
 format=<0-7>    Format of the stats information; default 1.
 	format=0 prints no assembly stats.
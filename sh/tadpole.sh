@@ -71,6 +71,18 @@ trimends=0          (trim) Trim contig ends by this much.  Trimming by K/2
 contigpasses=16     Build contigs with decreasing seed depth for this many iterations.
 contigpassmult=1.7  Ratio between seed depth of two iterations.
 ownership=auto      For concurrency; do not touch.
+unitigs=f           (compact) Experimental; must be enabled explicitly.  In
+                    contig mode, build contigs from non-branching paths in
+                    a parallel pass before the normal build, avoiding
+                    contended ownership claims.  Only for k<32; ignored
+                    otherwise.  Shaving still runs on kmers beforehand, but
+                    the paths are not extended or shaved as a unitig graph,
+                    and extend/correct modes do not use them.  Contigs
+                    contain the same sequences as with unitigs=f, but their
+                    orientation, order, and numbering differ.
+edgemasks=f         Store a 1-byte neighbor mask per kmer after loading, so
+                    extension only looks up neighbors that exist.  Uses
+                    1 extra byte per hash table cell.
 
 Processing modes:
 mode=contig         contig: Make contigs from kmers.
@@ -17,6 +17,7 @@ For example, taxonomy.sh tree=tree.taxtree.gz homo_sapiens
 
 Processing parameters:
 tree=           A taxonomic tree made by TaxTree, such as tree.taxtree.gz.
+                A flat tree such as tree.flattax may also be used.
 table=          A table translating gi numbers to NCBI taxIDs.
                 Only needed if gi numbers will be used.
 * Note *
@@ -12,6 +12,11 @@ like Seal and SortByTaxa.
 
 Usage:  taxtree.sh names.dmp nodes.dmp tree.taxtree.gz
 
+If the output name contains .flattax, a flat read-only tree is written instead.
+It is memory-mapped when opened, so it loads instantly and is shared between
+processes, but it cannot hold per-node counts.  An existing serialized tree
+can be converted with:  java -cp <classpath> tax.FlatTaxTree tree.taxtree.gz tree.flattax
+
 Java Parameters:
 -Xmx    This will be passed to Java to set memory usage, overriding the program's automatic memory detection.
         -Xmx20g will specify 20 gigs of RAM.  The max is typically 85% of physical memory.